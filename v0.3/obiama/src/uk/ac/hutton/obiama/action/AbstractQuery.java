@@ -35,6 +35,7 @@ import uk.ac.hutton.obiama.exception.IntegrationInconsistencyException;
 import uk.ac.hutton.obiama.exception.QueryInvokationException;
 import uk.ac.hutton.obiama.exception.ScheduleException;
 import uk.ac.hutton.obiama.model.Log;
+import uk.ac.hutton.obiama.model.Profiler;
 import uk.ac.hutton.util.FloatingPointComparison;
 import uk.ac.hutton.util.Reflection;
 
@@ -121,6 +122,7 @@ public abstract class AbstractQuery<T> extends AbstractProcess implements Query<
   public synchronized T ask(URI agent, URI requester, Process originator, Object... args)
       throws IntegrationInconsistencyException {
 
+    Profiler.Sample sample = Profiler.start();
     this.originator = originator;
 
     // Create a list of ask() methods that can be called with these arguments
@@ -166,8 +168,11 @@ public abstract class AbstractQuery<T> extends AbstractProcess implements Query<
       Method ask = asks.removeFirst();
       try {
         T result = (T)ask.invoke(this, invokationArgs);
-        Log.query(agent, requester, this.getClass().getCanonicalName(), this.getQueryID(), result, args);
+        if(Log.isEnabled(Log.Messages.QUERY)) {
+          Log.query(agent, requester, this.getClass().getCanonicalName(), this.getQueryID(), result, args);
+        }
         originator = null;
+        Profiler.stop(sample, Profiler.Category.QUERY, this.getClass().getName());
         return result;
       }
       catch(IllegalArgumentException e) {
@@ -183,6 +188,7 @@ public abstract class AbstractQuery<T> extends AbstractProcess implements Query<
         errors.put(ask, e);
       }
     }
+    Profiler.stop(sample, Profiler.Category.QUERY, this.getClass().getName());
     throw new QueryInvokationException(originator, this, errors);
   }
 
@@ -0,0 +1,285 @@
+/*
+ * uk.ac.hutton.obiama.action: CSVStream.java 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.action;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <!-- CSVStream -->
+ * 
+ * A CSV file read a row at a time, rather than all at once as with
+ * {@link uk.ac.hutton.util.CSVReader}. Actions using this class can process
+ * files in chunks of rows ({@link LoadCSVAllIndividualsAction}) or a window of
+ * rows ahead of the current time ({@link LoadCSVTimeSeriesAction}), so the
+ * memory the rows need depends on the size of the chunk or window rather than
+ * the size of the file. Cells may be quoted with double quotes, in which case
+ * they may contain commas, new lines and (doubled) double quotes.
+ * 
+ * @author Gary Polhill
+ */
+class CSVStream {
+  /**
+   * Name of the file (for error messages)
+   */
+  private final String filename;
+
+  /**
+   * The file
+   */
+  private final BufferedReader reader;
+
+  /**
+   * Column headings
+   */
+  private final String[] headings;
+
+  /**
+   * Number of the next line to be read (for error messages)
+   */
+  private int line;
+
+  /**
+   * Row read from the file but not yet returned (when there is no header row,
+   * the first row has to be read to know how many columns there are)
+   */
+  private String[] pending;
+
+  /**
+   * Constructor
+   * 
+   * @param filename The CSV file to read
+   * @param headers <code>true</code> if the first row of the file contains
+   *          column headings; if <code>false</code>, the headings default to
+   *          "A", "B", ... "Z", "AA", ... as for
+   *          {@link uk.ac.hutton.util.HeadedTable}
+   * @throws IOException
+   */
+  CSVStream(String filename, boolean headers) throws IOException {
+    this.filename = filename;
+    reader = new BufferedReader(new FileReader(filename));
+    line = 1;
+    pending = null;
+    if(headers) {
+      headings = readRow();
+      if(headings == null) {
+        reader.close();
+        throw new IOException("CSV file " + filename + " is empty");
+      }
+      for(int i = 0; i < headings.length; i++) {
+        headings[i] = headings[i].trim();
+      }
+    }
+    else {
+      pending = readRow();
+      headings = new String[pending == null ? 0 : pending.length];
+      for(int i = 0; i < headings.length; i++) {
+        headings[i] = defaultHeading(i);
+      }
+    }
+  }
+
+  /**
+   * <!-- defaultHeading -->
+   * 
+   * @param column A column number (0 first)
+   * @return The default heading for the column
+   */
+  private static String defaultHeading(int column) {
+    StringBuffer buff = new StringBuffer();
+    for(int i = column; i >= 0; i = (i / 26) - 1) {
+      buff.insert(0, (char)('A' + (i % 26)));
+    }
+    return buff.toString();
+  }
+
+  /**
+   * <!-- getFilename -->
+   * 
+   * @return The name of the file being read
+   */
+  String getFilename() {
+    return filename;
+  }
+
+  /**
+   * <!-- getColumnHeadings -->
+   * 
+   * @return The column headings
+   */
+  String[] getColumnHeadings() {
+    return headings;
+  }
+
+  /**
+   * <!-- getColumn -->
+   * 
+   * @param heading A column heading
+   * @return The number of the column with that heading, or -1 if there is none
+   */
+  int getColumn(String heading) {
+    for(int i = 0; i < headings.length; i++) {
+      if(headings[i].equals(heading)) return i;
+    }
+    return -1;
+  }
+
+  /**
+   * <!-- skip -->
+   * 
+   * Skip rows of data
+   * 
+   * @param nRows The number of rows to skip
+   * @return The number of rows actually skipped (fewer than requested if the
+   *         end of the file is reached)
+   * @throws IOException
+   */
+  int skip(int nRows) throws IOException {
+    int n = 0;
+    while(n < nRows && next() != null) {
+      n++;
+    }
+    return n;
+  }
+
+  /**
+   * <!-- next -->
+   * 
+   * @return The next row of data, padded with <code>null</code> to the number
+   *         of columns, or <code>null</code> at the end of the file
+   * @throws IOException
+   */
+  String[] next() throws IOException {
+    String[] row;
+    if(pending != null) {
+      row = pending;
+      pending = null;
+    }
+    else {
+      row = readRow();
+    }
+    if(row == null) return null;
+    if(row.length < headings.length) {
+      String[] padded = new String[headings.length];
+      System.arraycopy(row, 0, padded, 0, row.length);
+      row = padded;
+    }
+    return row;
+  }
+
+  /**
+   * <!-- readChunk -->
+   * 
+   * Read up to a specified number of rows of data
+   * 
+   * @param chunk List to put the rows in (which will be cleared first)
+   * @param maxRows The maximum number of rows to read
+   * @return The number of rows read, which is zero at the end of the file
+   * @throws IOException
+   */
+  int readChunk(List<String[]> chunk, int maxRows) throws IOException {
+    chunk.clear();
+    String[] row;
+    while(chunk.size() < maxRows && (row = next()) != null) {
+      chunk.add(row);
+    }
+    return chunk.size();
+  }
+
+  /**
+   * <!-- close -->
+   * 
+   * Close the file
+   * 
+   * @throws IOException
+   */
+  void close() throws IOException {
+    reader.close();
+  }
+
+  /**
+   * <!-- readRow -->
+   * 
+   * Parse the next row from the file. Blank lines are skipped.
+   * 
+   * @return The cells in the row, or <code>null</code> at the end of the file
+   * @throws IOException
+   */
+  private String[] readRow() throws IOException {
+    String text = reader.readLine();
+    while(text != null && text.length() == 0) {
+      line++;
+      text = reader.readLine();
+    }
+    if(text == null) return null;
+    int startLine = line++;
+
+    List<String> cells = new ArrayList<String>(headings == null ? 16 : headings.length);
+    StringBuffer cell = new StringBuffer();
+    boolean quoted = false;
+    int i = 0;
+    while(true) {
+      if(i == text.length()) {
+        if(!quoted) break;
+        text = reader.readLine();
+        if(text == null) {
+          throw new IOException("Unterminated quoted cell starting on line " + startLine + " of CSV file " + filename);
+        }
+        line++;
+        cell.append('\n');
+        i = 0;
+        continue;
+      }
+      char c = text.charAt(i++);
+      if(quoted) {
+        if(c == '"') {
+          if(i < text.length() && text.charAt(i) == '"') {
+            cell.append('"');
+            i++;
+          }
+          else {
+            quoted = false;
+          }
+        }
+        else {
+          cell.append(c);
+        }
+      }
+      else if(c == '"') {
+        quoted = true;
+      }
+      else if(c == ',') {
+        cells.add(cell.toString());
+        cell.setLength(0);
+      }
+      else {
+        cell.append(c);
+      }
+    }
+    cells.add(cell.toString());
+    return cells.toArray(new String[cells.size()]);
+  }
+}
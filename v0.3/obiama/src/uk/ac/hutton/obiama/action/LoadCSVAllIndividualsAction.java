@@ -0,0 +1,393 @@
+/*
+ * uk.ac.hutton.obiama.action: LoadCSVAllIndividualsAction.java 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.action;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import uk.ac.hutton.obiama.exception.ErrorHandler;
+import uk.ac.hutton.obiama.exception.IntegrationInconsistencyException;
+import uk.ac.hutton.obiama.msb.Concept;
+import uk.ac.hutton.obiama.msb.Instance;
+import uk.ac.hutton.obiama.msb.Var;
+import uk.ac.hutton.obiama.msb.XSDHelper;
+
+/**
+ * <!-- LoadCSVAllIndividualsAction -->
+ * 
+ * <p>
+ * Create an individual of a concept for every row of data in a CSV file,
+ * setting the individual's properties from the cells in the row. The
+ * parameters <code>identifier</code>, <code>headers</code>,
+ * <code>columnPropertyMap</code>, <code>startRow</code> and
+ * <code>ignoreEmpty</code> have the same meaning as for
+ * {@link LoadCSVIndividualsCreator}. Values for non-functional properties may
+ * be separated within a cell using <code>nonFunctionalSeparator</code>, but
+ * not spread over several rows.
+ * </p>
+ * 
+ * <p>
+ * Unlike {@link LoadCSVIndividualsCreator}, the file is not read into memory
+ * all at once. It is read with {@link CSVStream} in chunks of
+ * <code>chunkSize</code> rows. Each column of the chunk is converted from
+ * strings to the datatype of the range of the property it is mapped to (or to
+ * URIs for object properties), the chunk's rows are dropped, and then the
+ * individuals for the chunk are created and their properties set with the
+ * converted values. The memory needed for the file's rows therefore depends
+ * on the chunk size rather than the number of rows in the file.
+ * </p>
+ * 
+ * <p>
+ * The remaining limit is the model state broker: the axioms asserting the
+ * individuals and their properties are pending in it until it next updates,
+ * so the memory they need still grows with the number of rows in the file.
+ * </p>
+ * 
+ * @see LoadCSVIndividualsCreator
+ * @author Gary Polhill
+ */
+public class LoadCSVAllIndividualsAction extends AbstractAction {
+  /**
+   * Default number of rows to read at a time
+   */
+  public static final String DEFAULT_CHUNK_SIZE = "10000";
+
+  /**
+   * CSV file to load data from
+   */
+  protected ActionParameter filename;
+
+  /**
+   * Concept to create individuals of
+   */
+  protected ActionParameter concept;
+
+  /**
+   * Column heading of the column containing identifiers for individuals
+   */
+  protected ActionParameter identifier;
+
+  /**
+   * Boolean: <code>true</code> if the CSV file has column headings
+   */
+  protected ActionParameter headers;
+
+  /**
+   * Map of column headings to OWL property names, as property=value pairs
+   */
+  protected ActionParameter columnPropertyMap;
+
+  /**
+   * Regular expression separating values for non-functional properties in a
+   * cell
+   */
+  protected ActionParameter nonFunctionalSeparator;
+
+  /**
+   * Row at which to start loading data
+   */
+  protected ActionParameter startRow;
+
+  /**
+   * Whether or not to ignore empty cells
+   */
+  protected ActionParameter ignoreEmpty;
+
+  /**
+   * Number of rows to read at a time
+   */
+  protected ActionParameter chunkSize;
+
+  /**
+   * The concept to create individuals of
+   */
+  private Concept createdConcept;
+
+  /**
+   * Column headings of the file
+   */
+  private String[] headings;
+
+  /**
+   * Map of Vars to column names, in the order the columns are processed
+   */
+  private Map<Var, String> varColumns;
+
+  /**
+   * Whether identifiers are to be read from the identifier column
+   */
+  private boolean useIdentifier;
+
+  /**
+   * Constructor, initialising the action parameters
+   */
+  public LoadCSVAllIndividualsAction() {
+    varColumns = new LinkedHashMap<Var, String>();
+    filename = new ActionParameter("filename", String.class, "The name of the CSV file from which to load individuals");
+    concept = new ActionParameter("concept", URI.class, "The concept to create individuals of");
+    identifier = new ActionParameter("identifier", String.class, "The name of the column to use for identifiers");
+    headers =
+      new ActionParameter("headers", Boolean.class, "true", "Whether or not the CSV file has a header row. "
+        + "(If false, then column headers default to \"A\", \"B\", ... \"Z\", \"AA\", ... etc.)");
+    columnPropertyMap =
+      new ActionParameter("columnPropertyMap", String.class, "Map of CSV column headers to OWL property names. "
+        + "(Format is as per Java properties, one line per key=value pair. "
+        + "White space in the key name should be escaped with \\.)");
+    nonFunctionalSeparator =
+      new ActionParameter("nonFunctionalSeparator", String.class,
+          "Separator used for non-functional properties where multiple values are stored in a single cell");
+    startRow =
+      new ActionParameter("startRow", Integer.class, "0",
+          "Row to start reading data from (0 first, header row not included)");
+    ignoreEmpty =
+      new ActionParameter("ignoreEmpty", Boolean.class, "false",
+          "Whether to ignore empty cells. If true, empty cells will"
+            + " result in no assignment to the corresponding property");
+    chunkSize =
+      new ActionParameter("chunkSize", Integer.class, DEFAULT_CHUNK_SIZE,
+          "Number of rows of the CSV file to read at a time");
+  }
+
+  /**
+   * <!-- initialise -->
+   * 
+   * Read the column headings from the CSV file and get the vars the columns
+   * are mapped to.
+   * 
+   * @see uk.ac.hutton.obiama.action.AbstractAction#initialise()
+   * @throws IntegrationInconsistencyException
+   */
+  @Override
+  protected void initialise() throws IntegrationInconsistencyException {
+    try {
+      CSVStream csv = new CSVStream(filename.getParameter(), headers.getBooleanParameter());
+      headings = csv.getColumnHeadings();
+      csv.close();
+    }
+    catch(IOException e) {
+      ErrorHandler.redo(e, "reading CSV file " + filename.getParameter());
+    }
+
+    Map<String, String> columnVars = new LinkedHashMap<String, String>();
+    if(columnPropertyMap.parameterSet()) {
+      Properties columnMap = columnPropertyMap.getPropertiesParameter();
+      for(String key: columnMap.stringPropertyNames()) {
+        if(indexOf(key) >= 0) {
+          columnVars.put(columnMap.getProperty(key), key);
+        }
+        else {
+          ErrorHandler.warn("No column " + key + " in CSV file " + filename.getParameter(), "initialising action "
+            + getClass() + "(" + uri + ")", "the mapping from this column to property " + columnMap.getProperty(key)
+            + " will be ignored");
+        }
+      }
+    }
+    else {
+      if(!headers.getBooleanParameter()) {
+        ErrorHandler.warn(new Exception("CSV file " + filename.getParameter()
+          + " is asserted to have no column headers and no mappings "
+          + "from columns to property names have been specified"), "initialising action " + getClass() + "(" + uri
+          + ")", "unless there are properties named \"A\", \"B\", ... (the default "
+          + "labels assigned to columns), an inconsistency will be detected");
+      }
+      for(String name: headings) {
+        if(identifier.parameterSet() && name.equals(identifier.getParameter())) continue;
+        columnVars.put(name, name);
+      }
+    }
+
+    useIdentifier = identifier.parameterSet();
+    if(useIdentifier && indexOf(identifier.getParameter()) < 0) {
+      ErrorHandler.warn("No identifier column " + identifier.getParameter() + " in CSV file "
+        + filename.getParameter(), "initialising action " + getClass() + "(" + uri + ")",
+          "system-generated URIs will be used for the individuals created");
+      useIdentifier = false;
+    }
+
+    for(String varName: columnVars.keySet()) {
+      Var var = msb.getVariableName(buildURI(varName), this);
+      vars.add(var);
+      varColumns.put(var, columnVars.get(varName));
+    }
+
+    createdConcept = getConcept(getURIFor(concept.getURIParameter()), vars);
+    addConcept(createdConcept);
+  }
+
+  /**
+   * <!-- indexOf -->
+   * 
+   * @param heading A column heading
+   * @return The index of the column with that heading, or -1 if none
+   */
+  private int indexOf(String heading) {
+    for(int i = 0; i < headings.length; i++) {
+      if(headings[i].equals(heading)) return i;
+    }
+    return -1;
+  }
+
+  /**
+   * <!-- step -->
+   * 
+   * Create the individuals, one chunk of rows at a time
+   * 
+   * @see uk.ac.hutton.obiama.action.Action#step(java.net.URI)
+   * @param individual
+   * @throws IntegrationInconsistencyException
+   */
+  @Override
+  public void step(URI individual) throws IntegrationInconsistencyException {
+    CSVStream csv;
+    try {
+      csv = new CSVStream(filename.getParameter(), headers.getBooleanParameter());
+    }
+    catch(IOException e) {
+      ErrorHandler.redo(e, "reading CSV file " + filename.getParameter());
+      return;
+    }
+
+    int nVars = varColumns.size();
+    Var[] columnVar = varColumns.keySet().toArray(new Var[nVars]);
+    int[] columnIndex = new int[nVars];
+    for(int c = 0; c < nVars; c++) {
+      columnIndex[c] = csv.getColumn(varColumns.get(columnVar[c]));
+    }
+    int idIndex = useIdentifier ? csv.getColumn(identifier.getParameter()) : -1;
+
+    int maxRows = chunkSize.getIntParameter();
+    List<String[]> chunk = new ArrayList<String[]>(maxRows);
+    Object[][] columns = new Object[nVars][maxRows];
+    URI[] ids = new URI[maxRows];
+    int row = startRow.getIntParameter();
+    int nCreated = 0;
+
+    try {
+      csv.skip(row);
+      int n;
+      while((n = csv.readChunk(chunk, maxRows)) > 0) {
+
+        // Convert the chunk a column at a time, then drop its rows
+
+        for(int c = 0; c < nVars; c++) {
+          for(int r = 0; r < n; r++) {
+            columns[c][r] = convert(columnVar[c], chunk.get(r)[columnIndex[c]], row + r);
+          }
+        }
+        for(int r = 0; r < n; r++) {
+          String id = idIndex >= 0 ? chunk.get(r)[idIndex] : null;
+          ids[r] = id == null || id.length() == 0 ? null : buildURI(id);
+        }
+        chunk.clear();
+
+        // Create the individuals in the chunk
+
+        for(int r = 0; r < n; r++) {
+          Instance creation = ids[r] == null ? createdConcept.createInstance() : createdConcept.createInstance(ids[r]);
+          ids[r] = null;
+          for(int c = 0; c < nVars; c++) {
+            Object value = columns[c][r];
+            columns[c][r] = null;
+            if(value == null) continue;
+            if(value instanceof Object[]) {
+              for(Object element: (Object[])value) {
+                creation.addProperty(columnVar[c], element);
+              }
+            }
+            else {
+              creation.setProperty(columnVar[c], value);
+            }
+          }
+          nCreated++;
+        }
+        row += n;
+      }
+    }
+    catch(IOException e) {
+      ErrorHandler.redo(e, "reading row " + row + " of CSV file " + filename.getParameter());
+    }
+    finally {
+      try {
+        csv.close();
+      }
+      catch(IOException e) {
+        ErrorHandler.warn(e, "closing CSV file " + filename.getParameter(), "none");
+      }
+    }
+    ErrorHandler.note("Created " + nCreated + " individual(s) from CSV file " + filename.getParameter());
+  }
+
+  /**
+   * <!-- convert -->
+   * 
+   * Convert the contents of a cell to the type of value the var takes
+   * 
+   * @param var The var the cell's column is mapped to
+   * @param cell The contents of the cell
+   * @param row The row the cell is on (for warnings)
+   * @return The value (an array of values if the var is non-functional), or
+   *         <code>null</code> if no value is to be set
+   */
+  private Object convert(Var var, String cell, int row) {
+    if(cell == null || cell.length() == 0) {
+      if(ignoreEmpty.getBooleanParameter() || var.isObjectVar() || var.isNonFunctional()) return null;
+      cell = "";
+    }
+    try {
+      if(var.isFunctional()) return convertOne(var, cell);
+
+      String[] cells =
+        nonFunctionalSeparator.parameterSet() ? cell.split(nonFunctionalSeparator.getParameter())
+                                             : new String[] { cell };
+      Object[] values = new Object[cells.length];
+      for(int i = 0; i < cells.length; i++) {
+        values[i] = convertOne(var, cells[i]);
+      }
+      return values;
+    }
+    catch(IllegalArgumentException e) {
+      ErrorHandler.warn(e, "converting \"" + cell + "\" on row " + row + " of CSV file " + filename.getParameter()
+        + " to a value for " + var.getURI(), "the value will not be set");
+      return null;
+    }
+  }
+
+  /**
+   * <!-- convertOne -->
+   * 
+   * @param var The var
+   * @param cell A single value from a cell
+   * @return The value converted to the var's type
+   */
+  private Object convertOne(Var var, String cell) {
+    if(var.isDataVar()) return XSDHelper.instantiate(var.getType(), cell);
+    URI value = buildURI(cell);
+    if(value == null) throw new IllegalArgumentException(cell);
+    return value;
+  }
+}
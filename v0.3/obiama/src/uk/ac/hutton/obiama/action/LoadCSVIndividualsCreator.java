@@ -46,7 +46,7 @@ import uk.ac.hutton.util.HeadedTable;
  * <p>
  * This creator loads in a single row of data from a CSV file, using it to set
  * certain properties of an individual. (To load in all individuals, use
- * LoadCSVAllIndividualsCreator.) It can be used in a number of ways. First,
+ * LoadCSVAllIndividualsAction.) It can be used in a number of ways. First,
  * either an identifier column can be specified or not. If an identifier column
  * is specified, then the entries in that column will be used for the URIs of
  * the individuals created/modified. (If not, system-generated URIs will be
@@ -137,7 +137,7 @@ import uk.ac.hutton.util.HeadedTable;
  * 
  * @see java.lang.String.split()
  * @see java.util.Properties.load()
- * @see LoadCSVAllIndividualsCreator
+ * @see LoadCSVAllIndividualsAction
  * @author Gary Polhill
  */
 public class LoadCSVIndividualsCreator extends AbstractCreator {
@@ -25,16 +25,17 @@ package uk.ac.hutton.obiama.action;
 
 import java.io.IOException;
 import java.net.URI;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.semanticweb.owl.vocab.XSDVocabulary;
 
 import uk.ac.hutton.obiama.exception.ErrorHandler;
 import uk.ac.hutton.obiama.exception.IntegrationInconsistencyException;
+import uk.ac.hutton.obiama.msb.StateChangeListener;
 import uk.ac.hutton.obiama.msb.Value;
 import uk.ac.hutton.obiama.msb.Var;
-import uk.ac.hutton.util.CSVException;
-import uk.ac.hutton.util.CSVReader;
-import uk.ac.hutton.util.HeadedTable;
 
 /**
  * <!-- LoadCSVTimeSeries -->
@@ -45,18 +46,43 @@ import uk.ac.hutton.util.HeadedTable;
  * has. The first row in the file is expected to contain the URIs of those
  * properties.
  * 
+ * If the <code>shareRow</code> parameter is <code>true</code>, then there is
+ * one row per time step instead, which all agents read. The next row is moved
+ * to by the first step after each update of the model state broker, which
+ * tells the action about updates as a {@link StateChangeListener} with an empty
+ * vocabulary (so no changes to the state are compared for it).
+ * 
+ * The file is not read into memory all at once: a {@link TimeSeriesWindow}
+ * reads up to <code>window</code> rows ahead of the current row in the
+ * background, converting them to the types of the properties.
+ * 
  * @author Gary Polhill
  */
 public class LoadCSVTimeSeriesAction extends AbstractAction {
   ActionParameter csvFile;
-  private HeadedTable<String> table;
-  private int row;
-  private Map<Var, String> varMap;
+  ActionParameter shareRow;
+  ActionParameter window;
+  private TimeSeriesWindow series;
+  private Var[] columnVars;
+
+  /**
+   * Whether the model state broker has been updated since the current row
+   * was moved to (or no row has been moved to yet)
+   */
+  private boolean updated;
+  private boolean started;
+  private boolean available;
   private boolean warned;
 
   public LoadCSVTimeSeriesAction() {
     csvFile = new ActionParameter("csvFile", String.class, "The file from which to load the time series");
-    varMap = new HashMap<Var, String>();
+    shareRow =
+      new ActionParameter("shareRow", Boolean.class, "false",
+          "Whether all agents read the same row in a time step, rather than one row each");
+    window = new ActionParameter("window", Integer.class, "4096", "Number of rows of the file to read ahead");
+    updated = true;
+    started = false;
+    available = false;
     warned = false;
   }
 
@@ -69,21 +95,26 @@ public class LoadCSVTimeSeriesAction extends AbstractAction {
   @Override
   protected void initialise() throws IntegrationInconsistencyException {
     try {
-      CSVReader csvReader = new CSVReader(csvFile.getParameter());
-      table = csvReader.getHeadedTable();
-      row = 0;
-      for(String name: table.getColumnHeadingsSet()) {
-        Var var = msb.getVariableName(buildURI(name), this);
+      CSVStream csv = new CSVStream(csvFile.getParameter(), true);
+      String[] headings = csv.getColumnHeadings();
+      columnVars = new Var[headings.length];
+      int[] columnIndex = new int[headings.length];
+      Class<?>[] types = new Class<?>[headings.length];
+      XSDVocabulary[] xsdTypes = new XSDVocabulary[headings.length];
+      for(int i = 0; i < headings.length; i++) {
+        Var var = msb.getVariableName(buildURI(headings[i]), this);
         vars.add(var);
-        varMap.put(var, name);
+        columnVars[i] = var;
+        columnIndex[i] = i;
+        types[i] = var.getJavaType();
+        xsdTypes[i] = var.isDataVar() ? var.getType() : null;
       }
+      series = new TimeSeriesWindow(csv, columnIndex, types, xsdTypes, window.getIntParameter());
     }
     catch(IOException e) {
       ErrorHandler.redo(e, "Trying to read from CSV file " + csvFile.getParameter());
     }
-    catch(CSVException e) {
-      ErrorHandler.redo(e, "Reading from CSV file " + csvFile.getParameter());
-    }
+    if(shareRow.getBooleanParameter()) msb.addStateChangeListener(new UpdateListener(), Collections.<URI>emptySet());
   }
 
   /**
@@ -95,18 +126,89 @@ public class LoadCSVTimeSeriesAction extends AbstractAction {
    */
   @Override
   public void step(URI individual) throws IntegrationInconsistencyException {
-    if(row >= table.nrows()) {
+    if(!shareRow.getBooleanParameter() || updated) {
+      updated = false;
+      nextRow();
+    }
+    if(!available) {
       if(!warned) {
-        ErrorHandler.warn(new ArrayIndexOutOfBoundsException(), "reading row " + row + " from "
-          + csvFile.getParameter(), "no further changes to " + table.getColumnHeadingsSet() + " will be made ");
+        ErrorHandler.warn(new ArrayIndexOutOfBoundsException(), "reading row " + (series.getRow() + 1) + " from "
+          + csvFile.getParameter(), "no further changes to " + vars + " will be made ");
         warned = true;
       }
+      return;
+    }
+    for(int i = 0; i < columnVars.length; i++) {
+      Object datum = series.get(i);
+      if(datum == null) continue;
+      Value<Object> value = columnVars[i].getValueFor(individual);
+      value.set(datum);
+    }
+  }
+
+  /**
+   * <!-- nextRow -->
+   * 
+   * Move the time series on to the next row
+   */
+  private void nextRow() {
+    if(series == null || (started && !available)) return;
+    started = true;
+    List<String> problems = new LinkedList<String>();
+    try {
+      available = series.next(problems);
+    }
+    catch(IOException e) {
+      available = false;
+      ErrorHandler.warn(e, "reading row " + (series.getRow() + 1) + " from " + csvFile.getParameter(),
+          "no further changes to " + vars + " will be made");
+      warned = true;
+    }
+    catch(InterruptedException e) {
+      available = false;
+      warned = true;
+      series.close();
     }
-    for(Var var: vars) {
-      Value<?> value = var.getValueFor(individual);
-      value.setString(table.getRow(row).get(varMap.get(var)));
+    for(String problem: problems) {
+      ErrorHandler.warn(problem, "reading from CSV file " + csvFile.getParameter(),
+          "the corresponding property will not be changed for that row");
+    }
+  }
+
+  /**
+   * UpdateListener
+   * 
+   * Notes when the model state broker has been updated, so that the next step
+   * moves to the next row
+   */
+  private class UpdateListener implements StateChangeListener {
+    public void memberAdded(URI concept, URI individual) {
+      // Not told about any classes
+    }
+
+    public void memberRemoved(URI concept, URI individual) {
+      // Not told about any classes
+    }
+
+    public void dataValueAdded(URI individual, URI property, Object value) {
+      // Not told about any properties
+    }
+
+    public void dataValueRemoved(URI individual, URI property, Object value) {
+      // Not told about any properties
+    }
+
+    public void objectValueAdded(URI subject, URI property, URI object) {
+      // Not told about any properties
+    }
+
+    public void objectValueRemoved(URI subject, URI property, URI object) {
+      // Not told about any properties
+    }
+
+    public void changesApplied() {
+      updated = true;
     }
-    row++;
   }
 
 }
@@ -30,6 +30,7 @@ import org.semanticweb.owl.vocab.XSDVocabulary;
 import uk.ac.hutton.obiama.exception.IntegrationInconsistencyException;
 import uk.ac.hutton.obiama.msb.Instance;
 import uk.ac.hutton.obiama.msb.Var;
+import uk.ac.hutton.obiama.random.DoubleSampler;
 import uk.ac.hutton.obiama.random.RNG;
 import uk.ac.hutton.obiama.random.RNGFactory;
 
@@ -49,6 +50,8 @@ public class NormalDistCreator extends AbstractCreator implements Creator {
 
   RNG rng;
 
+  private DoubleSampler normal;
+
   /**
    * 
    */
@@ -68,6 +71,7 @@ public class NormalDistCreator extends AbstractCreator implements Creator {
   protected void initialise() throws IntegrationInconsistencyException {
     normalProperty = msb.getVariableName(NORMAL_PROPERTY_URI, XSDVocabulary.DOUBLE, this);
     addVars(normalProperty);
+    normal = rng.normal(mean.getDoubleParameter(), variance.getDoubleParameter());
   }
 
   /**
@@ -81,7 +85,7 @@ public class NormalDistCreator extends AbstractCreator implements Creator {
    */
   @Override
   protected void step(URI actor, Instance creation) throws IntegrationInconsistencyException {
-    creation.setNewProperty(normalProperty, rng.sampleNormal(mean.getDoubleParameter(), variance.getDoubleParameter()));
+    creation.setNewProperty(normalProperty, normal.sample());
   }
 
 }
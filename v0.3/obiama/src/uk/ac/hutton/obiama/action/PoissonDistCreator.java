@@ -32,6 +32,7 @@ import org.semanticweb.owl.vocab.XSDVocabulary;
 import uk.ac.hutton.obiama.exception.IntegrationInconsistencyException;
 import uk.ac.hutton.obiama.msb.Instance;
 import uk.ac.hutton.obiama.msb.Var;
+import uk.ac.hutton.obiama.random.IntSampler;
 import uk.ac.hutton.obiama.random.RNG;
 import uk.ac.hutton.obiama.random.RNGFactory;
 
@@ -50,6 +51,8 @@ public class PoissonDistCreator extends AbstractCreator implements Creator {
 
   RNG rng;
 
+  private IntSampler poisson;
+
   /**
    * 
    */
@@ -68,7 +71,7 @@ public class PoissonDistCreator extends AbstractCreator implements Creator {
    */
   @Override
   protected void step(URI actor, Instance creation) throws IntegrationInconsistencyException {
-    creation.setNewProperty(poissonProperty, rng.samplePoisson(mean.getDoubleParameter()));
+    creation.setNewProperty(poissonProperty, poisson.sample());
   }
 
   /**
@@ -81,6 +84,7 @@ public class PoissonDistCreator extends AbstractCreator implements Creator {
   protected void initialise() throws IntegrationInconsistencyException {
     poissonProperty = msb.getVariableName(POISSON_PROPERTY_URI, XSDVocabulary.INT, this);
     addVars(poissonProperty);
+    poisson = rng.poisson(mean.getDoubleParameter());
   }
 
 }
@@ -23,6 +23,8 @@
  */
 package uk.ac.hutton.obiama.action;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -37,6 +39,7 @@ import uk.ac.hutton.obiama.exception.NoSuchProcessImplementationException;
 import uk.ac.hutton.obiama.exception.OntologyConfigurationException;
 import uk.ac.hutton.obiama.exception.ScheduleException;
 import uk.ac.hutton.obiama.model.FCmpOntology;
+import uk.ac.hutton.obiama.model.Profiler;
 import uk.ac.hutton.obiama.model.ScheduleOntology;
 import uk.ac.hutton.obiama.msb.ModelStateBroker;
 import uk.ac.hutton.obiama.msb.XSDHelper;
@@ -52,10 +55,42 @@ import uk.ac.hutton.util.Reflection;
  * @author Gary Polhill
  */
 public class ProcessFactory {
+  /**
+   * Cache of constructors for implementations that have been successfully
+   * loaded, so that schedules with many processes using the same
+   * implementation only look the class up once
+   */
+  private static final Map<URI, Constructor<? extends Process>> constructors =
+    new HashMap<URI, Constructor<? extends Process>>();
+
+  /**
+   * Error messages for implementations that could not be loaded, so that the
+   * search for them is not repeated
+   */
+  private static final Map<URI, String> failedImplementations = new HashMap<URI, String>();
+
+  /**
+   * Names of JAR files that have been loaded dynamically
+   */
+  private static final Set<String> loadedJars = new HashSet<String>();
+
   private ProcessFactory() {
     // disable construction
   }
 
+  /**
+   * <!-- reset -->
+   * 
+   * Forget the implementations loaded or failed to load, and the JARs loaded,
+   * so that a new run (which may have a different schedule ontology and JAR
+   * search path) looks them up again
+   */
+  public static void reset() {
+    constructors.clear();
+    failedImplementations.clear();
+    loadedJars.clear();
+  }
+
   /**
    * <!-- buildProcess -->
    * 
@@ -75,7 +110,7 @@ public class ProcessFactory {
    */
   public static <P extends Process> P buildProcess(URI processURI, ModelStateBroker msb, ScheduleOntology ontology,
       Class<P> processClass) throws NoSuchProcessImplementationException {
-    System.out.println("Building process " + processURI);
+    ErrorHandler.debug("process", "Building process " + processURI);
     Set<URI> implementations = ontology.getObjectPropertyOf(processURI, ScheduleOntology.IMPLEMENTED_BY_URI);
     String uriBase = ontology.getStringFunctionalDataPropertyOf(processURI, ScheduleOntology.URI_BASE_URI);
     String uriExtension = ontology.getStringFunctionalDataPropertyOf(processURI, ScheduleOntology.URI_EXTENSION_URI);
@@ -83,18 +118,32 @@ public class ProcessFactory {
     Map<String, String> errMap = new HashMap<String, String>();
     Set<URI> tryToLoad = new HashSet<URI>();
 
+    // Try implementations that have already been loaded
+
+    for(URI implementation: implementations) {
+      if(constructors.containsKey(implementation)) {
+        P process = tryProcess(implementation, uriBase, uriExtension, msb, processURI, ontology, errMap);
+        if(process != null) return process;
+      }
+    }
+
     // Try to load the implementations with jars currently available
     for(URI implementation: implementations) {
+      if(constructors.containsKey(implementation)) continue;
       String implementationClass =
         ontology.getStringFunctionalDataPropertyOf(implementation, ScheduleOntology.CLASS_NAME_URI);
+      if(failedImplementations.containsKey(implementation)) {
+        errMap.put(implementationClass, failedImplementations.get(implementation));
+        continue;
+      }
       if(!Reflection.classPresent(implementationClass)) {
         String jarName = ontology.getStringFunctionalDataPropertyOf(implementation, ScheduleOntology.JAR_FILE_URI);
-        if(!Reflection.jarPresent(jarName)) {
+        if(!loadedJars.contains(jarName) && !Reflection.jarPresent(jarName)) {
           tryToLoad.add(implementation);
           continue;
         }
       }
-      P process = tryProcess(implementationClass, uriBase, uriExtension, msb, processURI, ontology, errMap);
+      P process = tryProcess(implementation, uriBase, uriExtension, msb, processURI, ontology, errMap);
       if(process != null) return process;
     }
 
@@ -106,11 +155,14 @@ public class ProcessFactory {
       Set<URI> jarSearch = ontology.getURIDataPropertyOf(implementation, ScheduleOntology.JAR_FILE_SEARCH_URI);
       Map<URI, Set<Exception>> loadErrors = new HashMap<URI, Set<Exception>>();
       if(LoadClass.classSearch(implementationClass, jarName, jarSearch, loadErrors)) {
-        P process = tryProcess(implementationClass, uriBase, uriExtension, msb, processURI, ontology, errMap);
+        loadedJars.add(jarName);
+        P process = tryProcess(implementation, uriBase, uriExtension, msb, processURI, ontology, errMap);
         if(process != null) return process;
       }
       else {
-        errMap.put(implementationClass, buildErrorMessage(loadErrors, implementationClass, jarName));
+        String message = buildErrorMessage(loadErrors, implementationClass, jarName);
+        failedImplementations.put(implementation, message);
+        errMap.put(implementationClass, message);
       }
     }
     throw new NoSuchProcessImplementationException(processURI, processClass, errMap);
@@ -149,13 +201,37 @@ public class ProcessFactory {
     return buff.toString();
   }
 
+  /**
+   * <!-- getConstructor -->
+   * 
+   * Get the constructor for an implementation, looking up the class if this
+   * has not already been done.
+   * 
+   * @param implementation URI of the implementation in the schedule ontology
+   * @param implementationClass The name of the class containing the Process
+   * @return The no-argument constructor of the implementation class
+   * @throws ClassNotFoundException
+   * @throws NoSuchMethodException
+   */
+  private static Constructor<? extends Process> getConstructor(URI implementation, String implementationClass)
+      throws ClassNotFoundException, NoSuchMethodException {
+    Constructor<? extends Process> constructor = constructors.get(implementation);
+    if(constructor == null) {
+      Class<?> namedClass = Class.forName(implementationClass);
+      if(!Reflection.classImplements(namedClass, Process.class)) return null;
+      constructor = namedClass.asSubclass(Process.class).getConstructor();
+      constructors.put(implementation, constructor);
+    }
+    return constructor;
+  }
+
   /**
    * <!-- tryProcess -->
    * 
    * Attempt to build the Process, maintaining a list of error messages on
    * failure.
    * 
-   * @param implementationClass The name of the class containing the Process
+   * @param implementation URI of the implementation in the schedule ontology
    * @param uriBase A base URI for the Process ontology
    * @param uriExtension An extension to the URI for the Process ontology
    * @param msb The model state broker
@@ -166,13 +242,14 @@ public class ProcessFactory {
    * @return A successfully created Process, or null on failure
    */
   @SuppressWarnings("unchecked")
-  private static <P extends Process> P tryProcess(String implementationClass, String uriBase, String uriExtension,
+  private static <P extends Process> P tryProcess(URI implementation, String uriBase, String uriExtension,
       ModelStateBroker msb, URI ProcessURI, ScheduleOntology ontology, Map<String, String> errMap) {
+    String implementationClass =
+      ontology.getStringFunctionalDataPropertyOf(implementation, ScheduleOntology.CLASS_NAME_URI);
     try {
-      Class<?> namedClass = Class.forName(implementationClass);
-      if(Reflection.classImplements(namedClass, Process.class)) {
-        Class<P> ProcessClass = (Class<P>)namedClass;
-        return createProcess(ProcessClass, uriBase, uriExtension, msb, ProcessURI, ontology);
+      Constructor<? extends Process> constructor = getConstructor(implementation, implementationClass);
+      if(constructor != null) {
+        return createProcess((Constructor<P>)constructor, uriBase, uriExtension, msb, ProcessURI, ontology);
       }
       else {
         errMap.put(implementationClass, "not a process (does not implement the inferface)");
@@ -181,12 +258,18 @@ public class ProcessFactory {
     catch(ClassNotFoundException e) {
       errMap.put(implementationClass, "class not found");
     }
+    catch(NoSuchMethodException e) {
+      errMap.put(implementationClass, "no public constructor with no arguments");
+    }
     catch(InstantiationException e) {
       errMap.put(implementationClass, "could not instantiate instance");
     }
     catch(IllegalAccessException e) {
       errMap.put(implementationClass, "security violation");
     }
+    catch(InvocationTargetException e) {
+      errMap.put(implementationClass, "constructor threw exception: " + e.getCause());
+    }
     catch(IntegrationInconsistencyException e) {
       errMap.put(implementationClass, "caused integration inconsistency: " + e.getMessage());
     }
@@ -201,7 +284,7 @@ public class ProcessFactory {
    * 
    * Create the Process, initialising its parameters.
    * 
-   * @param processClass The subclass of Process to build
+   * @param constructor The constructor of the subclass of Process to build
    * @param uriBase Base URI for the Process to use for ontological entities it
    *          refers to (possibly null)
    * @param uriExtension Extension to URIs for the Process to use for
@@ -212,14 +295,16 @@ public class ProcessFactory {
    * @return The Process
    * @throws InstantiationException
    * @throws IllegalAccessException
+   * @throws InvocationTargetException
    * @throws IntegrationInconsistencyException
    * @throws ScheduleException
    * @throws OntologyConfigurationException
    */
-  private static <P extends Process> P createProcess(Class<P> processClass, String uriBase, String uriExtension,
-      ModelStateBroker msb, URI processURI, ScheduleOntology ontology) throws InstantiationException,
-      IllegalAccessException, IntegrationInconsistencyException, ScheduleException {
-    P process = processClass.newInstance();
+  private static <P extends Process> P createProcess(Constructor<P> constructor, String uriBase,
+      String uriExtension, ModelStateBroker msb, URI processURI, ScheduleOntology ontology)
+      throws InstantiationException, IllegalAccessException, InvocationTargetException,
+      IntegrationInconsistencyException, ScheduleException {
+    P process = constructor.newInstance();
     Set<URI> params = ontology.getObjectPropertyOf(processURI, ScheduleOntology.HAS_PARAMETERS_URI);
     Map<String, ActionParameter> paramMap = new HashMap<String, ActionParameter>();
     for(URI param: params) {
@@ -265,7 +350,9 @@ public class ProcessFactory {
             "floating point comparison " + fcmpURI + " will be ignored");
       }
     }
+    Profiler.Sample sample = Profiler.start();
     process.initialise(processURI, uriBase, uriExtension, msb, paramMap, fcmpMap);
+    Profiler.stop(sample, Profiler.Category.SETUP, constructor.getDeclaringClass().getName());
     return process;
   }
 }
@@ -31,6 +31,7 @@ import org.semanticweb.owl.vocab.XSDVocabulary;
 import uk.ac.hutton.obiama.exception.IntegrationInconsistencyException;
 import uk.ac.hutton.obiama.msb.Value;
 import uk.ac.hutton.obiama.msb.Var;
+import uk.ac.hutton.obiama.random.DoubleSampler;
 import uk.ac.hutton.obiama.random.RNG;
 import uk.ac.hutton.obiama.random.RNGFactory;
 
@@ -54,6 +55,8 @@ public class StochasticNormalAutocorrelativeTimeSeriesAction extends AbstractAct
 
   private RNG rng;
 
+  private DoubleSampler normal;
+
   /**
    * 
    */
@@ -86,6 +89,7 @@ public class StochasticNormalAutocorrelativeTimeSeriesAction extends AbstractAct
       // TODO throw exception
     }
     timeSeries = msb.getVariableName(TIME_SERIES_URI, XSDVocabulary.DOUBLE, this);
+    normal = rng.normal(mean.getDoubleParameter(), variance.getDoubleParameter());
   }
 
   /**
@@ -98,7 +102,7 @@ public class StochasticNormalAutocorrelativeTimeSeriesAction extends AbstractAct
   @Override
   public void step(URI individual) throws IntegrationInconsistencyException {
     Value<Double> value = timeSeries.getExistingValueFor(individual);
-    value.set(value.get() + rng.sampleNormal(mean.getDoubleParameter(), variance.getDoubleParameter()));
+    value.addDouble(normal.sample());
   }
 
 }
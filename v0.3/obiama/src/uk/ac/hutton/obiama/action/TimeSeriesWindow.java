@@ -0,0 +1,438 @@
+/*
+ * uk.ac.hutton.obiama.action: TimeSeriesWindow.java 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.action;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.semanticweb.owl.vocab.XSDVocabulary;
+
+import uk.ac.hutton.obiama.msb.XSDHelper;
+
+/**
+ * <!-- TimeSeriesWindow -->
+ * 
+ * A window onto a time series in a CSV file. A background thread reads ahead
+ * of the row currently in use, a block of rows at a time, converting each
+ * column of a block into an array of the type the column is to be stored as
+ * (primitive arrays for numeric and boolean columns). At most a fixed number of
+ * blocks are held, so memory use depends on the size of the window rather than
+ * the length of the file, and the strings in each cell are converted once,
+ * however many individuals use the row.
+ * 
+ * @author Gary Polhill
+ */
+class TimeSeriesWindow {
+  /**
+   * A column of a block, converted to the type it is stored as
+   */
+  private static abstract class Column {
+    /**
+     * Rows with no value
+     */
+    final boolean missing[];
+
+    Column(int nRows) {
+      missing = new boolean[nRows];
+    }
+
+    /**
+     * <!-- set -->
+     * 
+     * @param row The row
+     * @param cell The contents of the cell in the row
+     */
+    abstract void set(int row, String cell);
+
+    /**
+     * <!-- get -->
+     * 
+     * @param row The row
+     * @return The value in the row, or <code>null</code> if there isn't one
+     */
+    Object get(int row) {
+      return missing[row] ? null : getValue(row);
+    }
+
+    /**
+     * <!-- getValue -->
+     * 
+     * @param row A row that is not missing
+     * @return The value in the row, boxed in the class the column is stored as
+     */
+    abstract Object getValue(int row);
+  }
+
+  /**
+   * Column of floating point numbers
+   */
+  private static class DoubleColumn extends Column {
+    final double values[];
+    final boolean isFloat;
+
+    DoubleColumn(int nRows, boolean isFloat) {
+      super(nRows);
+      values = new double[nRows];
+      this.isFloat = isFloat;
+    }
+
+    void set(int row, String cell) {
+      values[row] = isFloat ? Float.parseFloat(cell) : Double.parseDouble(cell);
+    }
+
+    Object getValue(int row) {
+      return isFloat ? Float.valueOf((float)values[row]) : Double.valueOf(values[row]);
+    }
+  }
+
+  /**
+   * Column of integers that fit in a long
+   */
+  private static class LongColumn extends Column {
+    final long values[];
+    final Class<?> type;
+
+    LongColumn(int nRows, Class<?> type) {
+      super(nRows);
+      values = new long[nRows];
+      this.type = type;
+    }
+
+    void set(int row, String cell) {
+      if(type == Integer.class) values[row] = Integer.parseInt(cell);
+      else if(type == Short.class) values[row] = Short.parseShort(cell);
+      else if(type == Byte.class) values[row] = Byte.parseByte(cell);
+      else
+        values[row] = Long.parseLong(cell);
+    }
+
+    Object getValue(int row) {
+      if(type == Integer.class) return Integer.valueOf((int)values[row]);
+      if(type == Short.class) return Short.valueOf((short)values[row]);
+      if(type == Byte.class) return Byte.valueOf((byte)values[row]);
+      return Long.valueOf(values[row]);
+    }
+  }
+
+  /**
+   * Column of booleans
+   */
+  private static class BooleanColumn extends Column {
+    final boolean values[];
+
+    BooleanColumn(int nRows) {
+      super(nRows);
+      values = new boolean[nRows];
+    }
+
+    void set(int row, String cell) {
+      values[row] = Boolean.valueOf(cell);
+    }
+
+    Object getValue(int row) {
+      return Boolean.valueOf(values[row]);
+    }
+  }
+
+  /**
+   * Column of objects of any other type
+   */
+  private static class ObjectColumn extends Column {
+    final Object values[];
+    final XSDVocabulary type;
+
+    /**
+     * @param nRows Number of rows
+     * @param type The XSD type of the column, or <code>null</code> if it
+     *          contains URIs of individuals
+     */
+    ObjectColumn(int nRows, XSDVocabulary type) {
+      super(nRows);
+      values = new Object[nRows];
+      this.type = type;
+    }
+
+    void set(int row, String cell) {
+      values[row] = type == null ? URI.create(cell) : XSDHelper.instantiate(type, cell);
+    }
+
+    Object getValue(int row) {
+      return values[row];
+    }
+  }
+
+  /**
+   * A block of rows read from the file
+   */
+  private static class Block {
+    final int nRows;
+
+    final Column columns[];
+
+    /**
+     * Cells that could not be converted
+     */
+    final List<String> problems;
+
+    Block(int nRows, int nColumns) {
+      this.nRows = nRows;
+      columns = new Column[nColumns];
+      problems = new LinkedList<String>();
+    }
+  }
+
+  /**
+   * Block put in the window when the file has been read
+   */
+  private static final Block END = new Block(0, 0);
+
+  /**
+   * The file
+   */
+  private final CSVStream csv;
+
+  /**
+   * Columns of the file to read
+   */
+  private final int columnIndex[];
+
+  /**
+   * Java classes of the values in each column
+   */
+  private final Class<?> types[];
+
+  /**
+   * XSD types of each column (<code>null</code> for URIs of individuals)
+   */
+  private final XSDVocabulary xsdTypes[];
+
+  /**
+   * Number of rows in each block
+   */
+  private final int blockRows;
+
+  /**
+   * Blocks read ahead of the current block
+   */
+  private final BlockingQueue<Block> window;
+
+  /**
+   * The thread reading blocks
+   */
+  private final Thread reader;
+
+  /**
+   * Exception causing the reader to stop early
+   */
+  private volatile IOException error;
+
+  /**
+   * The block containing the current row
+   */
+  private Block current;
+
+  /**
+   * The current row in the current block
+   */
+  private int row;
+
+  /**
+   * Number of rows moved to so far
+   */
+  private int nRead;
+
+  /**
+   * Constructor. Reading starts immediately.
+   * 
+   * @param csv The file to read
+   * @param columnIndex The columns of the file to read
+   * @param types The Java classes to store the values in each column as
+   * @param xsdTypes The XSD types of each column (<code>null</code> if the
+   *          column contains URIs of individuals)
+   * @param windowRows The (approximate) number of rows to read ahead
+   */
+  TimeSeriesWindow(CSVStream csv, int columnIndex[], Class<?> types[], XSDVocabulary xsdTypes[], int windowRows) {
+    this.csv = csv;
+    this.columnIndex = columnIndex;
+    this.types = types;
+    this.xsdTypes = xsdTypes;
+    int nBlocks = Math.min(windowRows, 4);
+    blockRows = Math.max(1, windowRows / Math.max(1, nBlocks));
+    window = new ArrayBlockingQueue<Block>(Math.max(1, nBlocks));
+    error = null;
+    current = null;
+    row = 0;
+    nRead = 0;
+    reader = new Thread(new Runnable() {
+      public void run() {
+        readAhead();
+      }
+    }, "Time series reader for " + csv.getFilename());
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  /**
+   * <!-- readAhead -->
+   * 
+   * Read blocks from the file until it ends or the reader is interrupted
+   */
+  private void readAhead() {
+    List<String[]> chunk = new ArrayList<String[]>(blockRows);
+    int firstRow = 0;
+    try {
+      int n;
+      while((n = csv.readChunk(chunk, blockRows)) > 0) {
+        Block block = new Block(n, columnIndex.length);
+        for(int c = 0; c < columnIndex.length; c++) {
+          block.columns[c] = newColumn(n, types[c], xsdTypes[c]);
+          for(int r = 0; r < n; r++) {
+            String cell = chunk.get(r)[columnIndex[c]];
+            if(cell == null || cell.length() == 0) {
+              block.columns[c].missing[r] = true;
+              continue;
+            }
+            try {
+              block.columns[c].set(r, cell.trim());
+            }
+            catch(IllegalArgumentException e) {
+              block.columns[c].missing[r] = true;
+              block.problems.add("cannot convert \"" + cell + "\" in column " + (columnIndex[c] + 1) + " of row "
+                + (firstRow + r) + " to " + types[c].getSimpleName());
+            }
+          }
+        }
+        firstRow += n;
+        window.put(block);
+      }
+    }
+    catch(IOException e) {
+      error = e;
+    }
+    catch(RuntimeException e) {
+      // Make sure the end of the window is still marked, so next() does not
+      // wait for ever
+      IOException ioe = new IOException("reading " + csv.getFilename() + " after row " + firstRow + ": " + e);
+      ioe.initCause(e);
+      error = ioe;
+    }
+    catch(InterruptedException e) {
+      return;
+    }
+    finally {
+      try {
+        csv.close();
+      }
+      catch(IOException e) {
+        // Nothing can be done about it
+      }
+    }
+    try {
+      window.put(END);
+    }
+    catch(InterruptedException e) {
+      return;
+    }
+  }
+
+  /**
+   * <!-- newColumn -->
+   * 
+   * @param nRows Number of rows in the block
+   * @param type Class of values in the column
+   * @param xsdType XSD type of values in the column
+   * @return A column suitable for storing the values
+   */
+  private static Column newColumn(int nRows, Class<?> type, XSDVocabulary xsdType) {
+    if(type == Double.class || type == Float.class) return new DoubleColumn(nRows, type == Float.class);
+    if(type == Long.class || type == Integer.class || type == Short.class || type == Byte.class) {
+      return new LongColumn(nRows, type);
+    }
+    if(type == Boolean.class) return new BooleanColumn(nRows);
+    return new ObjectColumn(nRows, xsdType);
+  }
+
+  /**
+   * <!-- next -->
+   * 
+   * Move to the next row, waiting for the reader if it has not yet got that far
+   * 
+   * @param problems List to which to add descriptions of any cells in the next
+   *          block that could not be converted
+   * @return <code>false</code> if there are no more rows
+   * @throws IOException if the reader stopped because of an error
+   * @throws InterruptedException
+   */
+  boolean next(List<String> problems) throws IOException, InterruptedException {
+    if(current == END) return false;
+    if(current != null && row + 1 < current.nRows) {
+      row++;
+      nRead++;
+      return true;
+    }
+    current = window.take();
+    row = 0;
+    if(current == END) {
+      if(error != null) throw error;
+      return false;
+    }
+    problems.addAll(current.problems);
+    nRead++;
+    return true;
+  }
+
+  /**
+   * <!-- getRow -->
+   * 
+   * @return The number of the current row (0 first)
+   */
+  int getRow() {
+    return nRead - 1;
+  }
+
+  /**
+   * <!-- get -->
+   * 
+   * @param column One of the columns read (as an index into the array of
+   *          columns given to the constructor)
+   * @return The value of the column in the current row, or <code>null</code>
+   *         if there is no value
+   */
+  Object get(int column) {
+    return current.columns[column].get(row);
+  }
+
+  /**
+   * <!-- close -->
+   * 
+   * Stop reading the file
+   */
+  void close() {
+    reader.interrupt();
+  }
+}
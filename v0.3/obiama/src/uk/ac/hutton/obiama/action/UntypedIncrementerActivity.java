@@ -73,11 +73,11 @@ public class UntypedIncrementerActivity extends IncrementerActivity {
     switch(type) {
     case DOUBLE:
       Value<Double> value_d = incrementedVar.getExistingValueFor(individual);
-      value_d.set(value_d.get() + 1.0);
+      value_d.addDouble(1.0);
       break;
     case FLOAT:
       Value<Float> value_f = incrementedVar.getExistingValueFor(individual);
-      value_f.set(value_f.get() + 1.0F);
+      value_f.addDouble(1.0);
       break;
     case LONG:
       Value<Long> value_l = incrementedVar.getExistingValueFor(individual);
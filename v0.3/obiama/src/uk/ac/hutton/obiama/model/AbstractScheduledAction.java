@@ -173,7 +173,33 @@ public abstract class AbstractScheduledAction extends AbstractNonScheduledAction
    */
   public void step() throws IntegrationInconsistencyException, ScheduleException {
     Log.action(actionURI);
-    stepImpl();
+    Profiler.Sample sample = Profiler.start();
+    try {
+      stepImpl();
+    }
+    finally {
+      Profiler.stop(sample, Profiler.Category.SCHEDULE, actionURI.toString());
+    }
+  }
+
+  /**
+   * <!-- stepAction -->
+   * 
+   * Get an action to perform a step for an individual, profiling it if
+   * profiling is enabled
+   * 
+   * @param action The action
+   * @param individual The individual performing it
+   * @throws IntegrationInconsistencyException
+   */
+  static void stepAction(Action action, URI individual) throws IntegrationInconsistencyException {
+    Profiler.Sample sample = Profiler.start();
+    try {
+      action.step(individual);
+    }
+    finally {
+      Profiler.stop(sample, Profiler.Category.ACTION, action.getClass().getName());
+    }
   }
 
   /**
@@ -0,0 +1,190 @@
+/*
+ * uk.ac.hutton.obiama.model: AsyncLogWriter.java 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.model;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * <!-- AsyncLogWriter -->
+ * 
+ * Writes messages to a log file on a separate thread. Messages are put in a
+ * bounded ring buffer, which the writer thread drains in batches to the
+ * (buffered) log file. The file is only flushed when {@link #flush()} or
+ * {@link #close()} is called, which {@link Log} does at the start and end of
+ * schedules and when the log is closed. If the buffer is full, threads writing
+ * messages wait for the writer to catch up.
+ * 
+ * @author Gary Polhill
+ */
+class AsyncLogWriter implements Runnable {
+  /**
+   * Default capacity of the ring buffer
+   */
+  public static final int DEFAULT_CAPACITY = 8192;
+
+  /**
+   * Item put in the buffer to stop the writer
+   */
+  private static final Object CLOSE = new Object();
+
+  /**
+   * The log file
+   */
+  private final PrintWriter fp;
+
+  /**
+   * The ring buffer; items are either messages, latches to count down when
+   * everything before them has been written and flushed, or {@link #CLOSE}
+   */
+  private final BlockingQueue<Object> ring;
+
+  /**
+   * The writer thread
+   */
+  private final Thread writer;
+
+  /**
+   * Constructor. Starts the writer thread.
+   * 
+   * @param fp The log file to write to
+   * @param capacity The number of messages the ring buffer can hold
+   * @param logfile The name of the log file (used to name the thread)
+   */
+  AsyncLogWriter(PrintWriter fp, int capacity, String logfile) {
+    this.fp = fp;
+    ring = new ArrayBlockingQueue<Object>(capacity > 0 ? capacity : DEFAULT_CAPACITY);
+    writer = new Thread(this, "Log writer for " + logfile);
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * <!-- write -->
+   * 
+   * @param message A message to write to the log file
+   */
+  void write(String message) {
+    put(message);
+  }
+
+  /**
+   * <!-- flush -->
+   * 
+   * Wait until all messages written so far are in the log file
+   */
+  void flush() {
+    CountDownLatch done = new CountDownLatch(1);
+    put(done);
+    boolean interrupted = false;
+    while(true) {
+      try {
+        done.await();
+        break;
+      }
+      catch(InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if(interrupted) Thread.currentThread().interrupt();
+  }
+
+  /**
+   * <!-- close -->
+   * 
+   * Write all outstanding messages, flush the log file and stop the writer
+   * thread. The log file itself is not closed.
+   */
+  void close() {
+    put(CLOSE);
+    boolean interrupted = false;
+    while(writer.isAlive()) {
+      try {
+        writer.join();
+      }
+      catch(InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if(interrupted) Thread.currentThread().interrupt();
+  }
+
+  /**
+   * <!-- put -->
+   * 
+   * Put an item in the ring buffer, waiting for space if need be
+   * 
+   * @param item The item
+   */
+  private void put(Object item) {
+    boolean interrupted = false;
+    while(true) {
+      try {
+        ring.put(item);
+        break;
+      }
+      catch(InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if(interrupted) Thread.currentThread().interrupt();
+  }
+
+  /**
+   * <!-- run -->
+   * 
+   * Drain the ring buffer until closed
+   * 
+   * @see java.lang.Runnable#run()
+   */
+  public void run() {
+    List<Object> batch = new ArrayList<Object>();
+    while(true) {
+      try {
+        batch.add(ring.take());
+      }
+      catch(InterruptedException e) {
+        continue;
+      }
+      ring.drainTo(batch);
+      for(Object item: batch) {
+        if(item instanceof String) {
+          fp.write((String)item);
+        }
+        else if(item instanceof CountDownLatch) {
+          fp.flush();
+          ((CountDownLatch)item).countDown();
+        }
+        else if(item == CLOSE) {
+          fp.flush();
+          return;
+        }
+      }
+      batch.clear();
+    }
+  }
+}
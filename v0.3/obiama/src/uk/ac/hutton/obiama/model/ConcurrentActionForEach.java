@@ -114,7 +114,7 @@ public class ConcurrentActionForEach extends AbstractNoUpdateAction {
   public void stepNoUpdate() throws IntegrationInconsistencyException {
     Set<Instance> agents = concept.getInstances();
     for(Instance agent: agents) {
-      action.step(agent.getURI());
+      stepAction(action, agent.getURI());
     }
   }
 
@@ -114,7 +114,7 @@ public class IndividualAction extends AbstractNoUpdateAction {
    * ()
    */
   public void stepNoUpdate() throws IntegrationInconsistencyException {
-    action.step(agent);
+    stepAction(action, agent);
   }
 
   /**
@@ -21,11 +21,13 @@
  */
 package uk.ac.hutton.obiama.model;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.URI;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -44,6 +46,13 @@ import uk.ac.hutton.util.StringTools;
  * individual log files as objects. The log file name is configurable, but note
  * that the name may be changed if a file with that name already exists.
  * 
+ * Callers that would have to do some work to build the arguments to a message
+ * can check whether the message is being recorded first using
+ * {@link #isEnabled(Messages)}. A log can also be made asynchronous, in which
+ * case messages are written by a separate thread (see {@link AsyncLogWriter}),
+ * and the file is flushed at the start and end of schedules, and when the log
+ * is closed or {@link #flush()} is called.
+ * 
  * @author Gary Polhill
  */
 public class Log {
@@ -324,13 +333,31 @@ public class Log {
    */
   private Formats format;
 
+  /**
+   * Writer thread for asynchronous logging (<code>null</code> if synchronous)
+   */
+  private AsyncLogWriter async;
+
+  /**
+   * Capacity of the ring buffer to use for asynchronous logging (0 if
+   * synchronous)
+   */
+  private int asyncCapacity;
+
+  /**
+   * Whether a shutdown hook has been added to flush the global log
+   */
+  private static boolean flushOnExit = false;
+
   /**
    * Basic constructor, LOG format, no file, and no messages.
    */
   public Log() {
-    logItems = new HashSet<Messages>();
+    logItems = EnumSet.noneOf(Messages.class);
     fp = null;
     format = Formats.DEFAULT_FORMAT;
+    async = null;
+    asyncCapacity = 0;
   }
 
   /**
@@ -463,10 +490,74 @@ public class Log {
       }
     }
     this.logfile = file.getAbsolutePath();
-    fp = new PrintWriter(new FileWriter(file));
+    fp = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+    if(asyncCapacity > 0) async = new AsyncLogWriter(fp, asyncCapacity, this.logfile);
     write(format.header());
   }
 
+  /**
+   * <!-- asynchronous -->
+   * 
+   * Make the global log file asynchronous. The log is flushed when the Java
+   * virtual machine exits, if it has not been closed by then.
+   * 
+   * @param capacity The number of messages to buffer (0 to make the log
+   *          synchronous again)
+   */
+  public static final synchronized void asynchronous(int capacity) {
+    i.setAsynchronous(capacity);
+    if(capacity > 0 && !flushOnExit) {
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+        public void run() {
+          i.flushLog();
+        }
+      });
+      flushOnExit = true;
+    }
+  }
+
+  /**
+   * <!-- setAsynchronous -->
+   * 
+   * Set whether messages are written to this log file by a separate thread.
+   * This can be called before or after the log file is opened.
+   * 
+   * @param capacity The number of messages that can be buffered before writing
+   *          a message waits for the writer thread (0 to write messages
+   *          synchronously)
+   */
+  public final void setAsynchronous(int capacity) {
+    if(async != null) {
+      async.close();
+      async = null;
+    }
+    asyncCapacity = capacity;
+    if(fp != null && capacity > 0) async = new AsyncLogWriter(fp, capacity, logfile);
+  }
+
+  /**
+   * <!-- isEnabled -->
+   * 
+   * Check whether the global log file is recording a message, so that callers
+   * need not build the message's arguments if it isn't.
+   * 
+   * @param msg The message
+   * @return <code>true</code> if the message is recorded
+   */
+  public static final boolean isEnabled(Messages msg) {
+    return i.logItems.contains(msg);
+  }
+
+  /**
+   * <!-- logs -->
+   * 
+   * @param msg The message
+   * @return <code>true</code> if this log file records the message
+   */
+  public final boolean logs(Messages msg) {
+    return logItems.contains(msg);
+  }
+
   /**
    * <!-- messages -->
    * 
@@ -547,10 +638,33 @@ public class Log {
    */
   public final void closeLog() {
     write(format.footer());
+    if(async != null) {
+      async.close();
+      async = null;
+    }
     fp.close();
     fp = null;
   }
 
+  /**
+   * <!-- flush -->
+   * 
+   * Make sure all messages written so far to the global log are in the file
+   */
+  public static void flush() {
+    i.flushLog();
+  }
+
+  /**
+   * <!-- flushLog -->
+   * 
+   * Make sure all messages written so far are in the log file
+   */
+  public final void flushLog() {
+    if(async != null) async.flush();
+    else if(fp != null) fp.flush();
+  }
+
   /**
    * <!-- logfile -->
    * 
@@ -577,13 +691,15 @@ public class Log {
   /**
    * <!-- write -->
    * 
-   * Write a message to the log file, and flush
+   * Write a message to the log file, and flush (unless the log is
+   * asynchronous)
    * 
    * @param message The message to write
    */
   public final void write(String message) {
     if(message != null) {
       if(fp == null) System.err.println(message);
+      else if(async != null) async.write(message);
       else {
         fp.write(message);
         fp.flush();
@@ -987,6 +1103,7 @@ public class Log {
     if(logItems.contains(Messages.START_INITIAL_SCHEDULE)) {
       write(format.message(Messages.START_INITIAL_SCHEDULE, new String[] { "schedule-uri" }, uri));
     }
+    flushLog();
   }
 
   /**
@@ -1007,6 +1124,7 @@ public class Log {
     if(logItems.contains(Messages.STOP_INITIAL_SCHEDULE)) {
       write(format.message(Messages.STOP_INITIAL_SCHEDULE, new String[] { "schedule-uri" }, uri));
     }
+    flushLog();
   }
 
 
@@ -1028,6 +1146,7 @@ public class Log {
     if(logItems.contains(Messages.START_MAIN_SCHEDULE)) {
       write(format.message(Messages.START_MAIN_SCHEDULE, new String[] { "schedule-uri" }, uri));
     }
+    flushLog();
   }
 
   /**
@@ -1048,6 +1167,7 @@ public class Log {
     if(logItems.contains(Messages.STOP_MAIN_SCHEDULE)) {
       write(format.message(Messages.STOP_MAIN_SCHEDULE, new String[] { "schedule-uri" }, uri));
     }
+    flushLog();
   }
 
   public static void query(URI agent, URI requester, String className, URI queryID, Object result, Object[] args) {
@@ -27,6 +27,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.semanticweb.owl.model.OWLAntiSymmetricObjectPropertyAxiom;
@@ -61,6 +62,7 @@ import org.semanticweb.owl.model.OWLEquivalentObjectPropertiesAxiom;
 import org.semanticweb.owl.model.OWLFunctionalDataPropertyAxiom;
 import org.semanticweb.owl.model.OWLFunctionalObjectPropertyAxiom;
 import org.semanticweb.owl.model.OWLIndividual;
+import org.semanticweb.owl.model.OWLIndividualAxiom;
 import org.semanticweb.owl.model.OWLInverseFunctionalObjectPropertyAxiom;
 import org.semanticweb.owl.model.OWLInverseObjectPropertiesAxiom;
 import org.semanticweb.owl.model.OWLIrreflexiveObjectPropertyAxiom;
@@ -2085,4 +2087,38 @@ public enum OWLSpecies {
     return nAxiomsRemoved;
   }
 
+  /**
+   * <!-- conformingAxioms -->
+   * 
+   * Select those of a set of axioms about to be added to an ontology that are
+   * expressible with this species, so that only new axioms are checked, rather
+   * than the whole ontology. Decisions about logical axioms other than
+   * assertions about individuals are kept in <code>checked</code>, which the
+   * caller keeps for as long as it goes on generating the same T-box axioms
+   * (e.g. in a reasoner session), so each is only checked once. Assertions
+   * change from one ontology to the next, so they are checked every time.
+   * 
+   * @param axioms The axioms
+   * @param checked Decisions about axioms checked before, added to as axioms
+   *          are checked (or <code>null</code> not to keep any)
+   * @return The axioms that would not be removed by
+   *         {@link #cleanOntology(OWLOntology, OWLOntologyManager)}
+   */
+  public Set<OWLAxiom> conformingAxioms(Set<? extends OWLAxiom> axioms, Map<OWLAxiom, Boolean> checked) {
+    Set<OWLAxiom> conforming = new HashSet<OWLAxiom>();
+    for(OWLAxiom axiom: axioms) {
+      if(!axiom.isLogicalAxiom()) {
+        conforming.add(axiom);
+        continue;
+      }
+      Boolean has = (checked == null || axiom instanceof OWLIndividualAxiom) ? null : checked.get(axiom);
+      if(has == null) {
+        has = hasLogicalAxiom(axiom);
+        if(checked != null && !(axiom instanceof OWLIndividualAxiom)) checked.put(axiom, has);
+      }
+      if(has) conforming.add(axiom);
+    }
+    return conforming;
+  }
+
 }
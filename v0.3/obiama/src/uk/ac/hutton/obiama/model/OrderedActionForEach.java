@@ -138,7 +138,7 @@ public class OrderedActionForEach extends RandomOrderActionForEach {
     Collections.sort(agentList, var);
     if(!sortAscending) Collections.reverse(agentList);
     for(Instance agent: agentList) {
-      action.step(agent.getURI());
+      stepAction(action, agent.getURI());
       msb.update();
     }
   }
@@ -0,0 +1,384 @@
+/*
+ * uk.ac.hutton.obiama.model: Profiler.java 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.model;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <!-- Profiler -->
+ * 
+ * Records how much time is spent in each part of a simulation: schedule nodes,
+ * actions, queries and the phases of updating the model state broker. For each
+ * it keeps the number of calls, the wall-clock time, the CPU time of the
+ * calling thread, and the memory allocated by the calling thread, and writes
+ * these to a CSV file at the end of each time step and, as totals, at the end
+ * of the run. CPU time and memory allocated are left empty in the file where
+ * the JVM cannot measure them.
+ * 
+ * Code to be profiled calls {@link #start()} before and
+ * {@link #stop(Sample, Category, String)} after the work. When profiling is not
+ * enabled, {@link #start()} returns <code>null</code> without reading any
+ * clocks, and {@link #stop(Sample, Category, String)} returns immediately, so
+ * the cost is a static field read per call. Times are inclusive: the time for
+ * a schedule node includes the actions, queries and updates run in it.
+ * 
+ * @author Gary Polhill
+ */
+public final class Profiler {
+  /**
+   * <!-- Category -->
+   * 
+   * The kinds of thing that are profiled
+   * 
+   * @author Gary Polhill
+   */
+  public enum Category {
+    SETUP("setup"), SCHEDULE("schedule"), ACTION("action"), QUERY("query"), MSB("msb");
+
+    private final String label;
+
+    private Category(String label) {
+      this.label = label;
+    }
+
+    public String toString() {
+      return label;
+    }
+  }
+
+  /**
+   * <!-- Sample -->
+   * 
+   * The clock readings taken when some work to be profiled started
+   * 
+   * @author Gary Polhill
+   */
+  public static final class Sample {
+    final long wall;
+    final long cpu;
+    final long alloc;
+
+    private Sample(long wall, long cpu, long alloc) {
+      this.wall = wall;
+      this.cpu = cpu;
+      this.alloc = alloc;
+    }
+  }
+
+  /**
+   * <!-- Stats -->
+   * 
+   * Accumulated measurements for one thing being profiled
+   * 
+   * @author Gary Polhill
+   */
+  private static final class Stats {
+    long calls = 0L;
+    long wall = 0L;
+    long cpu = 0L;
+    long alloc = 0L;
+
+    void add(long dWall, long dCPU, long dAlloc) {
+      calls++;
+      wall += dWall;
+      cpu += dCPU;
+      alloc += dAlloc;
+    }
+  }
+
+  /**
+   * Whether profiling is enabled. This is the only thing read when it isn't.
+   */
+  private static volatile boolean enabled = false;
+
+  /**
+   * File the profile is written to
+   */
+  private static PrintWriter fp = null;
+
+  /**
+   * Name of the file the profile is written to
+   */
+  private static String profileFile = null;
+
+  /**
+   * Bean used to get the CPU time of the current thread
+   */
+  private static ThreadMXBean threads = null;
+
+  /**
+   * Whether CPU time can be measured
+   */
+  private static boolean cpuTime = false;
+
+  /**
+   * Method to get the bytes allocated by a thread, where the JVM provides one
+   * (<code>null</code> otherwise, in which case memory allocated is not
+   * measured)
+   */
+  private static Method allocatedBytes = null;
+
+  /**
+   * Measurements taken since the end of the last time step
+   */
+  private static Map<Category, Map<String, Stats>> step = null;
+
+  /**
+   * Measurements for the whole run
+   */
+  private static Map<Category, Map<String, Stats>> run = null;
+
+  /**
+   * Disabled constructor
+   */
+  private Profiler() {
+    // Static methods only
+  }
+
+  /**
+   * <!-- enable -->
+   * 
+   * Start profiling, writing the results to the file given
+   * 
+   * @param file The file to write the profile to
+   * @throws IOException
+   */
+  public static synchronized void enable(String file) throws IOException {
+    if(enabled) close();
+    fp = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+    fp.println("step,category,name,calls,wall.ms,cpu.ms,alloc.bytes");
+    profileFile = file;
+
+    threads = ManagementFactory.getThreadMXBean();
+    cpuTime = threads.isCurrentThreadCpuTimeSupported();
+    if(cpuTime && !threads.isThreadCpuTimeEnabled()) {
+      try {
+        threads.setThreadCpuTimeEnabled(true);
+      }
+      catch(UnsupportedOperationException e) {
+        cpuTime = false;
+      }
+    }
+    allocatedBytes = null;
+    try {
+      Class<?> sunThreads = Class.forName("com.sun.management.ThreadMXBean");
+      if(sunThreads.isInstance(threads)) {
+        allocatedBytes = sunThreads.getMethod("getThreadAllocatedBytes", long.class);
+        allocatedBytes.invoke(threads, Thread.currentThread().getId());
+      }
+    }
+    catch(Exception e) {
+      // Memory allocated will not be measured
+      allocatedBytes = null;
+    }
+
+    step = new EnumMap<Category, Map<String, Stats>>(Category.class);
+    run = new EnumMap<Category, Map<String, Stats>>(Category.class);
+    enabled = true;
+
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      public void run() {
+        close();
+      }
+    }, "Profiler shutdown for " + file));
+  }
+
+  /**
+   * <!-- isEnabled -->
+   * 
+   * @return <code>true</code> if profiling is enabled
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * <!-- getProfileFile -->
+   * 
+   * @return The file the profile is being written to, or <code>null</code> if
+   *         profiling is not enabled
+   */
+  public static String getProfileFile() {
+    return enabled ? profileFile : null;
+  }
+
+  /**
+   * <!-- start -->
+   * 
+   * @return The clock readings to pass to
+   *         {@link #stop(Sample, Category, String)} when the work being
+   *         profiled is finished, or <code>null</code> if profiling is not
+   *         enabled
+   */
+  public static Sample start() {
+    if(!enabled) return null;
+    return new Sample(System.nanoTime(), cpu(), allocated());
+  }
+
+  /**
+   * <!-- stop -->
+   * 
+   * Record the work done since a sample was taken
+   * 
+   * @param sample The value returned by {@link #start()} (may be
+   *          <code>null</code>, in which case nothing is done)
+   * @param category The kind of thing profiled
+   * @param name The name of the thing profiled
+   */
+  public static void stop(Sample sample, Category category, String name) {
+    if(sample == null) return;
+    long wall = System.nanoTime() - sample.wall;
+    long cpu = cpu() - sample.cpu;
+    long alloc = Math.max(0L, allocated() - sample.alloc);
+    synchronized(Profiler.class) {
+      if(!enabled) return;
+      get(step, category, name).add(wall, cpu, alloc);
+      get(run, category, name).add(wall, cpu, alloc);
+    }
+  }
+
+  /**
+   * <!-- lap -->
+   * 
+   * Record the work done since a sample was taken, and take another sample for
+   * the work following it
+   * 
+   * @param sample The value returned by {@link #start()} or a previous lap
+   * @param category The kind of thing profiled
+   * @param name The name of the thing profiled
+   * @return A sample for the next piece of work (<code>null</code> if
+   *         profiling is not enabled)
+   */
+  public static Sample lap(Sample sample, Category category, String name) {
+    if(sample == null) return null;
+    stop(sample, category, name);
+    return start();
+  }
+
+  /**
+   * <!-- endStep -->
+   * 
+   * Write the measurements taken since the last time step to the profile
+   * 
+   * @param time The time step just finished
+   */
+  public static synchronized void endStep(double time) {
+    if(!enabled) return;
+    write(Double.toString(time), step);
+    step.clear();
+    fp.flush();
+  }
+
+  /**
+   * <!-- close -->
+   * 
+   * Write anything outstanding and the totals for the run to the profile, and
+   * stop profiling
+   */
+  public static synchronized void close() {
+    if(!enabled) return;
+    enabled = false;
+    write("unfinished", step);
+    write("total", run);
+    fp.close();
+    fp = null;
+    step = null;
+    run = null;
+  }
+
+  /**
+   * <!-- get -->
+   * 
+   * @param stats Measurements
+   * @param category A category
+   * @param name A name
+   * @return The measurements for the name in the category, created if need be
+   */
+  private static Stats get(Map<Category, Map<String, Stats>> stats, Category category, String name) {
+    Map<String, Stats> named = stats.get(category);
+    if(named == null) {
+      named = new TreeMap<String, Stats>();
+      stats.put(category, named);
+    }
+    Stats stat = named.get(name);
+    if(stat == null) {
+      stat = new Stats();
+      named.put(name, stat);
+    }
+    return stat;
+  }
+
+  /**
+   * <!-- write -->
+   * 
+   * @param label The entry in the step column of the profile
+   * @param stats The measurements to write
+   */
+  private static void write(String label, Map<Category, Map<String, Stats>> stats) {
+    for(Map.Entry<Category, Map<String, Stats>> entry: stats.entrySet()) {
+      for(Map.Entry<String, Stats> named: entry.getValue().entrySet()) {
+        Stats stat = named.getValue();
+        fp.println(label + "," + entry.getKey() + ",\"" + named.getKey().replace("\"", "\"\"") + "\","
+          + stat.calls + "," + (stat.wall / 1.0E6) + "," + (cpuTime ? Double.toString(stat.cpu / 1.0E6) : "")
+          + "," + (allocatedBytes != null ? Long.toString(stat.alloc) : ""));
+      }
+    }
+  }
+
+  /**
+   * <!-- cpu -->
+   * 
+   * @return CPU time of the current thread in nanoseconds, or 0 if it cannot
+   *         be measured
+   */
+  private static long cpu() {
+    return cpuTime ? threads.getCurrentThreadCpuTime() : 0L;
+  }
+
+  /**
+   * <!-- allocated -->
+   * 
+   * @return Bytes allocated by the current thread, or 0 if they cannot be
+   *         measured
+   */
+  private static long allocated() {
+    if(allocatedBytes != null) {
+      try {
+        return (Long)allocatedBytes.invoke(threads, Thread.currentThread().getId());
+      }
+      catch(Exception e) {
+        allocatedBytes = null;
+      }
+    }
+    return 0L;
+  }
+}
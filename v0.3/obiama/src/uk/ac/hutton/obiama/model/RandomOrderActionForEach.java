@@ -24,6 +24,7 @@
 package uk.ac.hutton.obiama.model;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -113,11 +114,11 @@ public class RandomOrderActionForEach extends AbstractScheduledAction {
   @Override
   public void stepImpl() throws IntegrationInconsistencyException {
     Set<Instance> agents = concept.getInstances();
-    LinkedList<Instance> agentList = new LinkedList<Instance>(agents);
+    ArrayList<Instance> agentList = new ArrayList<Instance>(agents);
     RNGFactory.getRNG().shuffle(agentList);
 
     for(Instance agent: agentList) {
-      action.step(agent.getURI());
+      stepAction(action, agent.getURI());
       msb.update();
     }
   }
@@ -129,7 +130,7 @@ public class RandomOrderActionForEach extends AbstractScheduledAction {
     Set<Instance> stepped = new HashSet<Instance>();
     while(agentList.size() > 0) {
       Instance agent = agentList.removeFirst();
-      action.step(agent.getURI());
+      stepAction(action, agent.getURI());
       msb.update();
       stepped.add(agent);
       agents = concept.getInstances();
@@ -76,6 +76,7 @@ import uk.ac.hutton.obiama.msb.ModelStateBrokerFactory;
 import uk.ac.hutton.obiama.msb.ObiamaSetUp;
 import uk.ac.hutton.obiama.msb.OntologyIOHelper;
 import uk.ac.hutton.obiama.msb.Var;
+import uk.ac.hutton.obiama.observer.AbstractObserver;
 import uk.ac.hutton.obiama.random.RNGFactory;
 import uk.ac.hutton.util.InterfaceCreator;
 
@@ -403,6 +404,7 @@ public class RepastModel extends SimModelImpl implements InvocationHandler, Mode
         msb.createState();
         Log.startInitialSchedule(initialSchedule.getURI());
         initialSchedule.run();
+        RNGFactory.getRNG().flush();
         Log.stopInitialSchedule(initialSchedule.getURI());
       }
       catch(IntegrationInconsistencyException e) {
@@ -469,6 +471,7 @@ public class RepastModel extends SimModelImpl implements InvocationHandler, Mode
    * of action(group). This is the top level schedule building method.
    */
   private void buildSchedule() {
+    schedule.scheduleActionAtInterval(clockTick, this, "endTimeStep", Schedule.LAST);
     if(mainSchedule.isTimed()) {
       buildSchedule(mainSchedule.getActionGroup());
 
@@ -621,18 +624,33 @@ public class RepastModel extends SimModelImpl implements InvocationHandler, Mode
     }
   }
 
+  /**
+   * <!-- endTimeStep -->
+   * 
+   * Write out any random numbers being recorded and the profile of the time
+   * step at the end of each time step
+   */
+  public void endTimeStep() {
+    RNGFactory.getRNG().flush();
+    Profiler.endStep(getTimeStep());
+  }
+
   /**
    * <!-- stop -->
    * 
-   * Stop the model and save the state.
+   * Stop the model, save the state and close the observers' data.
    * 
    * @see uchicago.src.sim.engine.SimModelImpl#stop()
    */
   @Override
   public void stop() {
     super.stop();
+    RNGFactory.getRNG().flush();
     msb.saveState(ObiamaSetUp.getSaveLast());
+    AbstractObserver.closeAll();
+    msb.dispose();
     Log.stopMainSchedule(mainSchedule.getURI());
+    Profiler.close();
   }
 
   /**
@@ -645,6 +663,7 @@ public class RepastModel extends SimModelImpl implements InvocationHandler, Mode
   @Override
   public void pause() {
     super.pause();
+    RNGFactory.getRNG().flush();
     msb.saveState(ObiamaSetUp.getSaveLast());
   }
 
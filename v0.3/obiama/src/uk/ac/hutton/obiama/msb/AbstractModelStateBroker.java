@@ -93,6 +93,8 @@ abstract class AbstractModelStateBroker implements ModelStateBroker {
 
   abstract <T> AbstractValue<T> registerValue(AbstractValue<T> value) throws IntegrationInconsistencyException;
 
+  abstract AbstractValue<?> getLockedValue(URI propertyURI, URI individualURI);
+
   abstract AbstractInstance registerInstance(AbstractInstance instance);
 
   abstract Set<URI> getClassesOf(URI individualURI);
@@ -124,6 +124,18 @@ public abstract class AbstractNonFunctionalValue<T> extends AbstractValue<T> {
     throw new NeedFunctionalGotNonFunctionalPropertyException(process, uri);
   }
 
+  /**
+   * <!-- setDouble -->
+   * 
+   * Throw an exception because a functional value access method has been called
+   * for a non-functional value
+   * 
+   * @see uk.ac.hutton.obiama.msb.Value#setDouble(double)
+   */
+  public double setDouble(double value) throws IntegrationInconsistencyException {
+    throw new NeedFunctionalGotNonFunctionalPropertyException(process, uri);
+  }
+
   /**
    * <!-- unset -->
    * 
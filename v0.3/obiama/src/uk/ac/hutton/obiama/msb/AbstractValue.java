@@ -26,7 +26,9 @@ package uk.ac.hutton.obiama.msb;
 import java.net.URI;
 
 import org.semanticweb.owl.model.OWLIndividual;
+import org.semanticweb.owl.vocab.XSDVocabulary;
 
+import uk.ac.hutton.obiama.exception.InconsistentRangeException;
 import uk.ac.hutton.obiama.exception.IntegrationInconsistencyException;
 import uk.ac.hutton.obiama.action.Process;
 
@@ -100,6 +102,33 @@ public abstract class AbstractValue<T> implements Value<T> {
     return individual.getURI();
   }
 
+  /**
+   * <!-- getDouble -->
+   * 
+   * Unbox the value. Values storing numbers as primitives override this.
+   * 
+   * @see uk.ac.hutton.obiama.msb.Value#getDouble()
+   */
+  public double getDouble() throws IntegrationInconsistencyException {
+    T value = get();
+    if(!(value instanceof Number)) {
+      XSDVocabulary type = getVar().getType();
+      throw new InconsistentRangeException(getVar().getURI(), type == null ? null : type.getURI(),
+          XSDVocabulary.DOUBLE.getURI(), process);
+    }
+    return ((Number)value).doubleValue();
+  }
+
+  /**
+   * <!-- addDouble -->
+   * 
+   * @see uk.ac.hutton.obiama.msb.Value#addDouble(double)
+   */
+  public double addDouble(double amount) throws IntegrationInconsistencyException {
+    setDouble(getDouble() + amount);
+    return getDouble();
+  }
+
   /**
    * <!-- readOnly -->
    * 
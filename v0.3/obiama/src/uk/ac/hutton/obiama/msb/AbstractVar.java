@@ -29,6 +29,9 @@ import org.semanticweb.owl.model.OWLProperty;
 
 import uk.ac.hutton.obiama.action.Process;
 import uk.ac.hutton.obiama.action.Action;
+import uk.ac.hutton.obiama.exception.IntegrationInconsistencyException;
+import uk.ac.hutton.obiama.exception.NeedDataGotObjectPropertyException;
+import uk.ac.hutton.obiama.exception.NeedFunctionalGotNonFunctionalPropertyException;
 
 /**
  * AbstractVar
@@ -110,4 +113,31 @@ public abstract class AbstractVar implements Var {
   public boolean readOnly() {
     return readOnly;
   }
+
+  /**
+   * <!-- getValuesFor -->
+   * 
+   * Throw an exception: columns are only available for functional data
+   * variables
+   * 
+   * @see uk.ac.hutton.obiama.msb.Var#getValuesFor(uk.ac.hutton.obiama.msb.Concept)
+   */
+  public Column getValuesFor(Concept concept) throws IntegrationInconsistencyException {
+    if(isObjectVar()) throw new NeedDataGotObjectPropertyException(process, getURI());
+    throw new NeedFunctionalGotNonFunctionalPropertyException(process, getURI());
+  }
+
+  /**
+   * <!-- setValuesFor -->
+   * 
+   * Throw an exception: columns are only available for functional data
+   * variables
+   * 
+   * @see uk.ac.hutton.obiama.msb.Var#setValuesFor(uk.ac.hutton.obiama.msb.Concept,
+   *      uk.ac.hutton.obiama.msb.Column)
+   */
+  public void setValuesFor(Concept concept, Column column) throws IntegrationInconsistencyException {
+    if(isObjectVar()) throw new NeedDataGotObjectPropertyException(process, getURI());
+    throw new NeedFunctionalGotNonFunctionalPropertyException(process, getURI());
+  }
 }
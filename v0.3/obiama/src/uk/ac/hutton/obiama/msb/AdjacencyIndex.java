@@ -0,0 +1,473 @@
+/*
+ * uk.ac.hutton.obiama.msb: AdjacencyIndex.java 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.msb;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.owl.model.OWLAxiom;
+import org.semanticweb.owl.model.OWLObjectProperty;
+import org.semanticweb.owl.model.OWLObjectPropertyAssertionAxiom;
+import org.semanticweb.owl.model.OWLObjectPropertyChainSubPropertyAxiom;
+import org.semanticweb.owl.model.OWLObjectPropertyExpression;
+import org.semanticweb.owl.model.OWLOntology;
+
+/**
+ * AdjacencyIndex
+ * 
+ * An index of the networks formed by asserted values of selected object
+ * properties, stored in compressed sparse row format (an array of offsets into
+ * an array of target node IDs for each property). Individuals are interned as
+ * integers shared across all the properties indexed. Edges for inverse and
+ * symmetric properties (as declared in the model structure ontology) are
+ * included, but no other reasoning is done, so only simple properties (see
+ * {@link #isSimple(OWLObjectProperty, Set)}) should be indexed: for these, the
+ * index contains the same values as the inferred state would. Changes are
+ * accumulated as they are applied to the state ontology, and patched into the
+ * index by {@link #commit()}, which the MSB calls at the end of each update.
+ * Individuals left with no edges are dropped from the index when enough of
+ * them have accumulated.
+ * 
+ * @author Gary Polhill
+ */
+class AdjacencyIndex {
+  /**
+   * Compressed sparse row network for one property
+   */
+  private static class CSR {
+    /**
+     * offsets[i] is the index in targets of the first neighbour of node i;
+     * offsets[i + 1] the index after its last. Each row of targets is sorted.
+     */
+    int offsets[] = new int[1];
+
+    int targets[] = new int[0];
+
+    /**
+     * Edges to add at the next commit, by source node
+     */
+    Map<Integer, List<Integer>> added = new HashMap<Integer, List<Integer>>();
+
+    /**
+     * Edges to remove at the next commit, by source node
+     */
+    Map<Integer, List<Integer>> removed = new HashMap<Integer, List<Integer>>();
+
+    /**
+     * <!-- nNodes -->
+     * 
+     * @return The number of nodes the offsets array covers
+     */
+    int nNodes() {
+      return offsets.length - 1;
+    }
+  }
+
+  /**
+   * Map of individual URI to node ID
+   */
+  private final Map<URI, Integer> nodeIDs;
+
+  /**
+   * Individual URIs indexed by node ID
+   */
+  private final List<URI> nodes;
+
+  /**
+   * Networks indexed by the URI of the property
+   */
+  private final Map<URI, CSR> networks;
+
+  /**
+   * Map of asserted property to indexed properties the assertion adds an edge
+   * to in the same direction
+   */
+  private final Map<URI, Set<URI>> forward;
+
+  /**
+   * Map of asserted property to indexed properties the assertion adds an edge
+   * to in the opposite direction
+   */
+  private final Map<URI, Set<URI>> reverse;
+
+  /**
+   * Constructor
+   * 
+   * @param properties The properties to index
+   * @param model The model structure ontologies, used to find the inverses of
+   *          the properties and whether they are symmetric
+   */
+  AdjacencyIndex(Set<OWLObjectProperty> properties, Set<OWLOntology> model) {
+    nodeIDs = new HashMap<URI, Integer>();
+    nodes = new ArrayList<URI>();
+    networks = new HashMap<URI, CSR>();
+    forward = new HashMap<URI, Set<URI>>();
+    reverse = new HashMap<URI, Set<URI>>();
+
+    for(OWLObjectProperty property: properties) {
+      URI indexed = property.getURI();
+      networks.put(indexed, new CSR());
+      addSource(forward, indexed, indexed);
+      if(property.isSymmetric(model)) addSource(reverse, indexed, indexed);
+      for(OWLObjectPropertyExpression inverse: property.getInverses(model)) {
+        if(inverse.isAnonymous()) continue;
+        URI inverseURI = inverse.asOWLObjectProperty().getURI();
+        addSource(reverse, inverseURI, indexed);
+        if(inverse.isSymmetric(model)) addSource(forward, inverseURI, indexed);
+      }
+    }
+  }
+
+  /**
+   * <!-- isSimple -->
+   * 
+   * @param property An object property
+   * @param model The model structure ontologies
+   * @return <code>true</code> if the values of the property follow from
+   *         assertions of it and its inverses, and its symmetry, alone: that
+   *         is, neither it nor its inverses are transitive, or have
+   *         sub-properties, equivalent properties or property chains implying
+   *         them
+   */
+  static boolean isSimple(OWLObjectProperty property, Set<OWLOntology> model) {
+    Set<OWLObjectPropertyExpression> expressions = new HashSet<OWLObjectPropertyExpression>();
+    expressions.add(property);
+    expressions.addAll(property.getInverses(model));
+    for(OWLObjectPropertyExpression expression: expressions) {
+      if(expression.isTransitive(model)) return false;
+      if(expression.getSubProperties(model).size() > 0) return false;
+      if(expression.getEquivalentProperties(model).size() > 0) return false;
+      if(expression.isAnonymous()) continue;
+      for(OWLOntology ontology: model) {
+        for(OWLAxiom axiom: ontology.getReferencingAxioms(expression.asOWLObjectProperty())) {
+          if(axiom instanceof OWLObjectPropertyChainSubPropertyAxiom
+            && ((OWLObjectPropertyChainSubPropertyAxiom)axiom).getSuperProperty().equals(expression)) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * <!-- addSource -->
+   * 
+   * @param map The forward or reverse map
+   * @param asserted An asserted property
+   * @param indexed An indexed property receiving edges from it
+   */
+  private static void addSource(Map<URI, Set<URI>> map, URI asserted, URI indexed) {
+    if(!map.containsKey(asserted)) map.put(asserted, new HashSet<URI>());
+    map.get(asserted).add(indexed);
+  }
+
+  /**
+   * <!-- isIndexed -->
+   * 
+   * @param property A property
+   * @return <code>true</code> if the network formed by the property is indexed
+   */
+  boolean isIndexed(URI property) {
+    return networks.containsKey(property);
+  }
+
+  /**
+   * <!-- assertAxiom -->
+   * 
+   * Note an assertion added to the state, to be reflected in the index at the
+   * next commit.
+   * 
+   * @param axiom The axiom added
+   */
+  void assertAxiom(OWLObjectPropertyAssertionAxiom axiom) {
+    change(axiom, true);
+  }
+
+  /**
+   * <!-- retractAxiom -->
+   * 
+   * Note an assertion removed from the state, to be reflected in the index at
+   * the next commit.
+   * 
+   * @param axiom The axiom removed
+   */
+  void retractAxiom(OWLObjectPropertyAssertionAxiom axiom) {
+    change(axiom, false);
+  }
+
+  /**
+   * <!-- change -->
+   * 
+   * @param axiom An assertion
+   * @param add Whether the assertion is being added or removed
+   */
+  private void change(OWLObjectPropertyAssertionAxiom axiom, boolean add) {
+    if(axiom.getProperty().isAnonymous()) return;
+    URI property = axiom.getProperty().asOWLObjectProperty().getURI();
+    if(!forward.containsKey(property) && !reverse.containsKey(property)) return;
+    int subject = intern(axiom.getSubject().getURI());
+    int object = intern(axiom.getObject().getURI());
+    if(forward.containsKey(property)) {
+      for(URI indexed: forward.get(property)) {
+        pend(networks.get(indexed), subject, object, add);
+      }
+    }
+    if(reverse.containsKey(property)) {
+      for(URI indexed: reverse.get(property)) {
+        pend(networks.get(indexed), object, subject, add);
+      }
+    }
+  }
+
+  /**
+   * <!-- pend -->
+   * 
+   * @param csr The network to change
+   * @param from Source node
+   * @param to Target node
+   * @param add Whether the edge is added or removed
+   */
+  private static void pend(CSR csr, int from, int to, boolean add) {
+    Map<Integer, List<Integer>> pending = add ? csr.added : csr.removed;
+    if(!pending.containsKey(from)) pending.put(from, new LinkedList<Integer>());
+    pending.get(from).add(to);
+  }
+
+  /**
+   * <!-- commit -->
+   * 
+   * Patch all pending changes into the networks. Rows with no changes are
+   * copied as they are. If edges have been removed, and more than half the
+   * nodes no longer have any edges, the index is compacted.
+   */
+  void commit() {
+    int n = nodes.size();
+    boolean removals = false;
+    for(CSR csr: networks.values()) {
+      if(csr.removed.size() > 0) removals = true;
+      if(csr.added.size() == 0 && csr.removed.size() == 0 && csr.nNodes() == n) continue;
+      int nOld = csr.nNodes();
+      int offsets[] = new int[n + 1];
+      int size = csr.targets.length;
+      for(List<Integer> add: csr.added.values()) {
+        size += add.size();
+      }
+      int targets[] = new int[size];
+      int k = 0;
+      for(int i = 0; i < n; i++) {
+        offsets[i] = k;
+        int start = i < nOld ? csr.offsets[i] : 0;
+        int end = i < nOld ? csr.offsets[i + 1] : 0;
+        List<Integer> add = csr.added.get(i);
+        List<Integer> remove = csr.removed.get(i);
+        if(add == null && remove == null) {
+          System.arraycopy(csr.targets, start, targets, k, end - start);
+          k += end - start;
+          continue;
+        }
+        int rowStart = k;
+        for(int j = start; j < end; j++) {
+          targets[k++] = csr.targets[j];
+        }
+        if(add != null) {
+          for(Integer to: add) {
+            targets[k++] = to;
+          }
+        }
+        Arrays.sort(targets, rowStart, k);
+        if(remove != null) {
+          for(Integer to: remove) {
+            int pos = Arrays.binarySearch(targets, rowStart, k, to);
+            if(pos < 0) continue;
+            System.arraycopy(targets, pos + 1, targets, pos, k - pos - 1);
+            k--;
+          }
+        }
+      }
+      offsets[n] = k;
+      csr.offsets = offsets;
+      csr.targets = k == targets.length ? targets : Arrays.copyOf(targets, k);
+      csr.added.clear();
+      csr.removed.clear();
+    }
+    if(removals) compact();
+  }
+
+  /**
+   * <!-- compact -->
+   * 
+   * Drop nodes with no edges in any network if there are more of them than
+   * nodes with edges, renumbering the remaining nodes. Numbering is kept in
+   * the same order, so rows remain sorted.
+   */
+  private void compact() {
+    int n = nodes.size();
+    BitSet live = new BitSet(n);
+    for(CSR csr: networks.values()) {
+      for(int i = 0; i < csr.nNodes(); i++) {
+        if(csr.offsets[i] < csr.offsets[i + 1]) live.set(i);
+      }
+      for(int j = 0; j < csr.targets.length; j++) {
+        live.set(csr.targets[j]);
+      }
+    }
+    int nLive = live.cardinality();
+    if(nLive * 2 >= n) return;
+
+    int newIDs[] = new int[n];
+    List<URI> kept = new ArrayList<URI>(nLive);
+    nodeIDs.clear();
+    for(int i = 0; i < n; i++) {
+      if(live.get(i)) {
+        newIDs[i] = kept.size();
+        nodeIDs.put(nodes.get(i), kept.size());
+        kept.add(nodes.get(i));
+      }
+      else {
+        newIDs[i] = -1;
+      }
+    }
+    nodes.clear();
+    nodes.addAll(kept);
+
+    for(CSR csr: networks.values()) {
+      int offsets[] = new int[nLive + 1];
+      for(int i = 0; i < csr.nNodes(); i++) {
+        if(newIDs[i] >= 0) offsets[newIDs[i] + 1] = csr.offsets[i + 1] - csr.offsets[i];
+      }
+      for(int i = 0; i < nLive; i++) {
+        offsets[i + 1] += offsets[i];
+      }
+      for(int j = 0; j < csr.targets.length; j++) {
+        csr.targets[j] = newIDs[csr.targets[j]];
+      }
+      csr.offsets = offsets;
+    }
+  }
+
+  /**
+   * <!-- clear -->
+   * 
+   * Remove all nodes and edges from the index
+   */
+  void clear() {
+    nodeIDs.clear();
+    nodes.clear();
+    for(URI property: networks.keySet()) {
+      networks.put(property, new CSR());
+    }
+  }
+
+  /**
+   * <!-- getDegree -->
+   * 
+   * @param individual An individual
+   * @param property An indexed property
+   * @return The number of distinct individuals the individual has as value of
+   *         the property
+   */
+  int getDegree(URI individual, URI property) {
+    CSR csr = networks.get(property);
+    Integer node = nodeIDs.get(individual);
+    if(node == null || node >= csr.nNodes()) return 0;
+    int degree = 0;
+    int prev = -1;
+    for(int j = csr.offsets[node]; j < csr.offsets[node + 1]; j++) {
+      if(csr.targets[j] != prev) degree++;
+      prev = csr.targets[j];
+    }
+    return degree;
+  }
+
+  /**
+   * <!-- breadthFirst -->
+   * 
+   * Traverse the network of a property breadth first from an individual. The
+   * nodes visited are recorded per call, so traversals may be nested or made
+   * from more than one thread, provided the index is not being committed at
+   * the same time.
+   * 
+   * @param individual The individual to start from
+   * @param property An indexed property
+   * @param hops The maximum number of edges to traverse (negative for no
+   *          limit)
+   * @return The individuals reachable within the number of hops, in the order
+   *         they were visited, not including the starting individual (unless
+   *         it is reachable from itself)
+   */
+  List<URI> breadthFirst(URI individual, URI property, int hops) {
+    List<URI> visited = new ArrayList<URI>();
+    CSR csr = networks.get(property);
+    Integer start = nodeIDs.get(individual);
+    if(start == null || hops == 0) return visited;
+
+    BitSet seen = new BitSet();
+    int n = csr.nNodes();
+    int frontier[] = new int[] { start };
+    int nFrontier = 1;
+    for(int hop = 0; nFrontier > 0 && (hops < 0 || hop < hops); hop++) {
+      int next[] = new int[16];
+      int nNext = 0;
+      for(int f = 0; f < nFrontier; f++) {
+        int from = frontier[f];
+        if(from >= n) continue;
+        for(int j = csr.offsets[from]; j < csr.offsets[from + 1]; j++) {
+          int to = csr.targets[j];
+          if(seen.get(to)) continue;
+          seen.set(to);
+          visited.add(nodes.get(to));
+          if(nNext == next.length) next = Arrays.copyOf(next, nNext * 2);
+          next[nNext++] = to;
+        }
+      }
+      frontier = next;
+      nFrontier = nNext;
+    }
+    return visited;
+  }
+
+  /**
+   * <!-- intern -->
+   * 
+   * @param individual An individual's URI
+   * @return The node ID of the individual, allocating one if it hasn't been
+   *         seen before
+   */
+  private int intern(URI individual) {
+    Integer id = nodeIDs.get(individual);
+    if(id != null) return id;
+    int n = nodes.size();
+    nodes.add(individual);
+    nodeIDs.put(individual, n);
+    return n;
+  }
+}
@@ -0,0 +1,1169 @@
+/*
+ * uk.ac.hutton.obiama.msb: AxiomSerialiser.java 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.msb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.owl.model.OWLAnnotation;
+import org.semanticweb.owl.model.OWLAntiSymmetricObjectPropertyAxiom;
+import org.semanticweb.owl.model.OWLAxiom;
+import org.semanticweb.owl.model.OWLAxiomAnnotationAxiom;
+import org.semanticweb.owl.model.OWLClass;
+import org.semanticweb.owl.model.OWLClassAssertionAxiom;
+import org.semanticweb.owl.model.OWLConstant;
+import org.semanticweb.owl.model.OWLConstantAnnotation;
+import org.semanticweb.owl.model.OWLDataAllRestriction;
+import org.semanticweb.owl.model.OWLDataComplementOf;
+import org.semanticweb.owl.model.OWLDataExactCardinalityRestriction;
+import org.semanticweb.owl.model.OWLDataFactory;
+import org.semanticweb.owl.model.OWLDataMaxCardinalityRestriction;
+import org.semanticweb.owl.model.OWLDataMinCardinalityRestriction;
+import org.semanticweb.owl.model.OWLDataOneOf;
+import org.semanticweb.owl.model.OWLDataProperty;
+import org.semanticweb.owl.model.OWLDataPropertyAssertionAxiom;
+import org.semanticweb.owl.model.OWLDataPropertyDomainAxiom;
+import org.semanticweb.owl.model.OWLDataPropertyExpression;
+import org.semanticweb.owl.model.OWLDataPropertyRangeAxiom;
+import org.semanticweb.owl.model.OWLDataRange;
+import org.semanticweb.owl.model.OWLDataRangeFacetRestriction;
+import org.semanticweb.owl.model.OWLDataRangeRestriction;
+import org.semanticweb.owl.model.OWLDataSomeRestriction;
+import org.semanticweb.owl.model.OWLDataSubPropertyAxiom;
+import org.semanticweb.owl.model.OWLDataType;
+import org.semanticweb.owl.model.OWLDataValueRestriction;
+import org.semanticweb.owl.model.OWLDeclarationAxiom;
+import org.semanticweb.owl.model.OWLDescription;
+import org.semanticweb.owl.model.OWLDifferentIndividualsAxiom;
+import org.semanticweb.owl.model.OWLDisjointClassesAxiom;
+import org.semanticweb.owl.model.OWLDisjointDataPropertiesAxiom;
+import org.semanticweb.owl.model.OWLDisjointObjectPropertiesAxiom;
+import org.semanticweb.owl.model.OWLDisjointUnionAxiom;
+import org.semanticweb.owl.model.OWLEntity;
+import org.semanticweb.owl.model.OWLEntityAnnotationAxiom;
+import org.semanticweb.owl.model.OWLEquivalentClassesAxiom;
+import org.semanticweb.owl.model.OWLEquivalentDataPropertiesAxiom;
+import org.semanticweb.owl.model.OWLEquivalentObjectPropertiesAxiom;
+import org.semanticweb.owl.model.OWLFunctionalDataPropertyAxiom;
+import org.semanticweb.owl.model.OWLFunctionalObjectPropertyAxiom;
+import org.semanticweb.owl.model.OWLImportsDeclaration;
+import org.semanticweb.owl.model.OWLIndividual;
+import org.semanticweb.owl.model.OWLInverseFunctionalObjectPropertyAxiom;
+import org.semanticweb.owl.model.OWLInverseObjectPropertiesAxiom;
+import org.semanticweb.owl.model.OWLIrreflexiveObjectPropertyAxiom;
+import org.semanticweb.owl.model.OWLNegativeDataPropertyAssertionAxiom;
+import org.semanticweb.owl.model.OWLNegativeObjectPropertyAssertionAxiom;
+import org.semanticweb.owl.model.OWLObjectAllRestriction;
+import org.semanticweb.owl.model.OWLObjectAnnotation;
+import org.semanticweb.owl.model.OWLObjectComplementOf;
+import org.semanticweb.owl.model.OWLObjectExactCardinalityRestriction;
+import org.semanticweb.owl.model.OWLObjectIntersectionOf;
+import org.semanticweb.owl.model.OWLObjectMaxCardinalityRestriction;
+import org.semanticweb.owl.model.OWLObjectMinCardinalityRestriction;
+import org.semanticweb.owl.model.OWLObjectOneOf;
+import org.semanticweb.owl.model.OWLObjectProperty;
+import org.semanticweb.owl.model.OWLObjectPropertyAssertionAxiom;
+import org.semanticweb.owl.model.OWLObjectPropertyChainSubPropertyAxiom;
+import org.semanticweb.owl.model.OWLObjectPropertyDomainAxiom;
+import org.semanticweb.owl.model.OWLObjectPropertyExpression;
+import org.semanticweb.owl.model.OWLObjectPropertyInverse;
+import org.semanticweb.owl.model.OWLObjectPropertyRangeAxiom;
+import org.semanticweb.owl.model.OWLObjectSelfRestriction;
+import org.semanticweb.owl.model.OWLObjectSomeRestriction;
+import org.semanticweb.owl.model.OWLObjectSubPropertyAxiom;
+import org.semanticweb.owl.model.OWLObjectUnionOf;
+import org.semanticweb.owl.model.OWLObjectValueRestriction;
+import org.semanticweb.owl.model.OWLOntology;
+import org.semanticweb.owl.model.OWLOntologyAnnotationAxiom;
+import org.semanticweb.owl.model.OWLReflexiveObjectPropertyAxiom;
+import org.semanticweb.owl.model.OWLSameIndividualsAxiom;
+import org.semanticweb.owl.model.OWLSubClassAxiom;
+import org.semanticweb.owl.model.OWLSymmetricObjectPropertyAxiom;
+import org.semanticweb.owl.model.OWLTransitiveObjectPropertyAxiom;
+import org.semanticweb.owl.model.OWLTypedConstant;
+import org.semanticweb.owl.model.OWLUntypedConstant;
+import org.semanticweb.owl.vocab.OWLRestrictedDataRangeFacetVocabulary;
+
+/**
+ * AxiomSerialiser
+ * 
+ * Reads and writes the axioms of an ontology in a compact binary format for
+ * the {@link OntologyCache}. Each axiom, description, data range, property
+ * and constant is written as a one byte tag followed by its parts, and each
+ * URI and literal is written out in full only the first time it appears,
+ * after which it is referred to by its position in a table. Reading the axioms
+ * back needs no parser: they are built directly with the data factory.
+ * 
+ * SWRL rules and deprecation axioms are not covered by the format; ontologies
+ * containing them are cached in OWL functional syntax instead.
+ * 
+ * @author Gary Polhill
+ */
+final class AxiomSerialiser {
+  /**
+   * Marks the start of a file in this format ("OBAX")
+   */
+  private static final int MAGIC = 0x4f424158;
+
+  /**
+   * Version of the format, to be increased if the format changes
+   */
+  private static final int VERSION = 1;
+
+  /**
+   * Reference to a string not already in the table, which follows in full
+   */
+  private static final int NEW_STRING = -1;
+
+  // Axiom tags
+
+  private static final byte DECLARATION = 1;
+  private static final byte SUB_CLASS = 2;
+  private static final byte EQUIVALENT_CLASSES = 3;
+  private static final byte DISJOINT_CLASSES = 4;
+  private static final byte DISJOINT_UNION = 5;
+  private static final byte CLASS_ASSERTION = 6;
+  private static final byte OBJECT_PROPERTY_ASSERTION = 7;
+  private static final byte NEGATIVE_OBJECT_PROPERTY_ASSERTION = 8;
+  private static final byte DATA_PROPERTY_ASSERTION = 9;
+  private static final byte NEGATIVE_DATA_PROPERTY_ASSERTION = 10;
+  private static final byte SAME_INDIVIDUALS = 11;
+  private static final byte DIFFERENT_INDIVIDUALS = 12;
+  private static final byte OBJECT_PROPERTY_DOMAIN = 13;
+  private static final byte OBJECT_PROPERTY_RANGE = 14;
+  private static final byte DATA_PROPERTY_DOMAIN = 15;
+  private static final byte DATA_PROPERTY_RANGE = 16;
+  private static final byte SUB_OBJECT_PROPERTY = 17;
+  private static final byte SUB_DATA_PROPERTY = 18;
+  private static final byte EQUIVALENT_OBJECT_PROPERTIES = 19;
+  private static final byte EQUIVALENT_DATA_PROPERTIES = 20;
+  private static final byte DISJOINT_OBJECT_PROPERTIES = 21;
+  private static final byte DISJOINT_DATA_PROPERTIES = 22;
+  private static final byte INVERSE_OBJECT_PROPERTIES = 23;
+  private static final byte FUNCTIONAL_OBJECT_PROPERTY = 24;
+  private static final byte INVERSE_FUNCTIONAL_OBJECT_PROPERTY = 25;
+  private static final byte SYMMETRIC_OBJECT_PROPERTY = 26;
+  private static final byte ANTI_SYMMETRIC_OBJECT_PROPERTY = 27;
+  private static final byte REFLEXIVE_OBJECT_PROPERTY = 28;
+  private static final byte IRREFLEXIVE_OBJECT_PROPERTY = 29;
+  private static final byte TRANSITIVE_OBJECT_PROPERTY = 30;
+  private static final byte FUNCTIONAL_DATA_PROPERTY = 31;
+  private static final byte PROPERTY_CHAIN = 32;
+  private static final byte ENTITY_ANNOTATION = 33;
+  private static final byte AXIOM_ANNOTATION = 34;
+  private static final byte ONTOLOGY_ANNOTATION = 35;
+  private static final byte IMPORTS = 36;
+
+  // Description tags
+
+  private static final byte CLASS = 1;
+  private static final byte OBJECT_INTERSECTION = 2;
+  private static final byte OBJECT_UNION = 3;
+  private static final byte OBJECT_COMPLEMENT = 4;
+  private static final byte OBJECT_ONE_OF = 5;
+  private static final byte OBJECT_SOME = 6;
+  private static final byte OBJECT_ALL = 7;
+  private static final byte OBJECT_VALUE = 8;
+  private static final byte OBJECT_MIN = 9;
+  private static final byte OBJECT_EXACT = 10;
+  private static final byte OBJECT_MAX = 11;
+  private static final byte OBJECT_SELF = 12;
+  private static final byte DATA_SOME = 13;
+  private static final byte DATA_ALL = 14;
+  private static final byte DATA_VALUE = 15;
+  private static final byte DATA_MIN = 16;
+  private static final byte DATA_EXACT = 17;
+  private static final byte DATA_MAX = 18;
+
+  // Data range tags
+
+  private static final byte DATATYPE = 1;
+  private static final byte DATA_COMPLEMENT = 2;
+  private static final byte DATA_ONE_OF = 3;
+  private static final byte DATA_RANGE_RESTRICTION = 4;
+
+  // Entity tags (also used for object property expressions and individuals)
+
+  private static final byte ENTITY_CLASS = 1;
+  private static final byte ENTITY_OBJECT_PROPERTY = 2;
+  private static final byte ENTITY_DATA_PROPERTY = 3;
+  private static final byte ENTITY_INDIVIDUAL = 4;
+  private static final byte ENTITY_DATATYPE = 5;
+  private static final byte INVERSE_PROPERTY = 6;
+  private static final byte ANONYMOUS_INDIVIDUAL = 7;
+
+  // Constant and annotation tags
+
+  private static final byte TYPED_CONSTANT = 1;
+  private static final byte UNTYPED_CONSTANT = 2;
+  private static final byte LANG_CONSTANT = 3;
+  private static final byte CONSTANT_ANNOTATION = 1;
+  private static final byte OBJECT_ANNOTATION = 2;
+
+  /**
+   * Thrown internally when an axiom cannot be written in this format
+   */
+  private static final class UnsupportedAxiomException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+  }
+
+  private AxiomSerialiser() {
+    // Only static methods
+  }
+
+  /**
+   * <!-- write -->
+   * 
+   * Write axioms to a file. If any of the axioms cannot be written in this
+   * format, nothing useful is written, and the file should be deleted.
+   * 
+   * @param axioms The axioms
+   * @param file The file to write them to
+   * @return <code>true</code> if all the axioms were written
+   * @throws IOException
+   */
+  static boolean write(Set<OWLAxiom> axioms, File file) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      Writer writer = new Writer(out);
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(axioms.size());
+      for(OWLAxiom axiom: axioms) {
+        writer.axiom(axiom);
+      }
+      return true;
+    }
+    catch(UnsupportedAxiomException e) {
+      return false;
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * <!-- read -->
+   * 
+   * Read axioms from a file written by {@link #write(Set, File)}
+   * 
+   * @param file The file
+   * @param factory The data factory to build the axioms with
+   * @param ontology The ontology imports declarations and ontology annotations
+   *          are about
+   * @return The axioms
+   * @throws IOException if the file cannot be read or is not in this format
+   */
+  static Set<OWLAxiom> read(File file, OWLDataFactory factory, OWLOntology ontology) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException(file + " is not a cached ontology in the current format");
+      }
+      Reader reader = new Reader(in, factory, ontology);
+      int n = in.readInt();
+      Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+      for(int i = 0; i < n; i++) {
+        axioms.add(reader.axiom());
+      }
+      return axioms;
+    }
+    catch(RuntimeException e) {
+      // e.g. a reference to a string not in the table
+      IOException ioe = new IOException(file + " is damaged");
+      ioe.initCause(e);
+      throw ioe;
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Writer
+   * 
+   * Writes axioms to a stream, keeping the table of strings written so far
+   */
+  private static final class Writer {
+    private final DataOutputStream out;
+    private final Map<String, Integer> strings;
+
+    Writer(DataOutputStream out) {
+      this.out = out;
+      strings = new HashMap<String, Integer>();
+    }
+
+    void string(String str) throws IOException {
+      Integer ref = strings.get(str);
+      if(ref != null) {
+        out.writeInt(ref);
+      }
+      else {
+        out.writeInt(NEW_STRING);
+        byte bytes[] = str.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        strings.put(str, strings.size());
+      }
+    }
+
+    void uri(URI uri) throws IOException {
+      string(uri.toString());
+    }
+
+    void axiom(OWLAxiom axiom) throws IOException {
+      if(axiom instanceof OWLDeclarationAxiom) {
+        out.writeByte(DECLARATION);
+        entity(((OWLDeclarationAxiom)axiom).getEntity());
+      }
+      else if(axiom instanceof OWLSubClassAxiom) {
+        out.writeByte(SUB_CLASS);
+        description(((OWLSubClassAxiom)axiom).getSubClass());
+        description(((OWLSubClassAxiom)axiom).getSuperClass());
+      }
+      else if(axiom instanceof OWLEquivalentClassesAxiom) {
+        out.writeByte(EQUIVALENT_CLASSES);
+        descriptions(((OWLEquivalentClassesAxiom)axiom).getDescriptions());
+      }
+      else if(axiom instanceof OWLDisjointClassesAxiom) {
+        out.writeByte(DISJOINT_CLASSES);
+        descriptions(((OWLDisjointClassesAxiom)axiom).getDescriptions());
+      }
+      else if(axiom instanceof OWLDisjointUnionAxiom) {
+        out.writeByte(DISJOINT_UNION);
+        uri(((OWLDisjointUnionAxiom)axiom).getOWLClass().getURI());
+        descriptions(((OWLDisjointUnionAxiom)axiom).getDescriptions());
+      }
+      else if(axiom instanceof OWLClassAssertionAxiom) {
+        out.writeByte(CLASS_ASSERTION);
+        individual(((OWLClassAssertionAxiom)axiom).getIndividual());
+        description(((OWLClassAssertionAxiom)axiom).getDescription());
+      }
+      else if(axiom instanceof OWLObjectPropertyAssertionAxiom) {
+        OWLObjectPropertyAssertionAxiom assertion = (OWLObjectPropertyAssertionAxiom)axiom;
+        out.writeByte(OBJECT_PROPERTY_ASSERTION);
+        individual(assertion.getSubject());
+        objectProperty(assertion.getProperty());
+        individual(assertion.getObject());
+      }
+      else if(axiom instanceof OWLNegativeObjectPropertyAssertionAxiom) {
+        OWLNegativeObjectPropertyAssertionAxiom assertion = (OWLNegativeObjectPropertyAssertionAxiom)axiom;
+        out.writeByte(NEGATIVE_OBJECT_PROPERTY_ASSERTION);
+        individual(assertion.getSubject());
+        objectProperty(assertion.getProperty());
+        individual(assertion.getObject());
+      }
+      else if(axiom instanceof OWLDataPropertyAssertionAxiom) {
+        OWLDataPropertyAssertionAxiom assertion = (OWLDataPropertyAssertionAxiom)axiom;
+        out.writeByte(DATA_PROPERTY_ASSERTION);
+        individual(assertion.getSubject());
+        dataProperty(assertion.getProperty());
+        constant(assertion.getObject());
+      }
+      else if(axiom instanceof OWLNegativeDataPropertyAssertionAxiom) {
+        OWLNegativeDataPropertyAssertionAxiom assertion = (OWLNegativeDataPropertyAssertionAxiom)axiom;
+        out.writeByte(NEGATIVE_DATA_PROPERTY_ASSERTION);
+        individual(assertion.getSubject());
+        dataProperty(assertion.getProperty());
+        constant(assertion.getObject());
+      }
+      else if(axiom instanceof OWLSameIndividualsAxiom) {
+        out.writeByte(SAME_INDIVIDUALS);
+        individuals(((OWLSameIndividualsAxiom)axiom).getIndividuals());
+      }
+      else if(axiom instanceof OWLDifferentIndividualsAxiom) {
+        out.writeByte(DIFFERENT_INDIVIDUALS);
+        individuals(((OWLDifferentIndividualsAxiom)axiom).getIndividuals());
+      }
+      else if(axiom instanceof OWLObjectPropertyDomainAxiom) {
+        out.writeByte(OBJECT_PROPERTY_DOMAIN);
+        objectProperty(((OWLObjectPropertyDomainAxiom)axiom).getProperty());
+        description(((OWLObjectPropertyDomainAxiom)axiom).getDomain());
+      }
+      else if(axiom instanceof OWLObjectPropertyRangeAxiom) {
+        out.writeByte(OBJECT_PROPERTY_RANGE);
+        objectProperty(((OWLObjectPropertyRangeAxiom)axiom).getProperty());
+        description(((OWLObjectPropertyRangeAxiom)axiom).getRange());
+      }
+      else if(axiom instanceof OWLDataPropertyDomainAxiom) {
+        out.writeByte(DATA_PROPERTY_DOMAIN);
+        dataProperty(((OWLDataPropertyDomainAxiom)axiom).getProperty());
+        description(((OWLDataPropertyDomainAxiom)axiom).getDomain());
+      }
+      else if(axiom instanceof OWLDataPropertyRangeAxiom) {
+        out.writeByte(DATA_PROPERTY_RANGE);
+        dataProperty(((OWLDataPropertyRangeAxiom)axiom).getProperty());
+        dataRange(((OWLDataPropertyRangeAxiom)axiom).getRange());
+      }
+      else if(axiom instanceof OWLObjectSubPropertyAxiom) {
+        out.writeByte(SUB_OBJECT_PROPERTY);
+        objectProperty(((OWLObjectSubPropertyAxiom)axiom).getSubProperty());
+        objectProperty(((OWLObjectSubPropertyAxiom)axiom).getSuperProperty());
+      }
+      else if(axiom instanceof OWLDataSubPropertyAxiom) {
+        out.writeByte(SUB_DATA_PROPERTY);
+        dataProperty(((OWLDataSubPropertyAxiom)axiom).getSubProperty());
+        dataProperty(((OWLDataSubPropertyAxiom)axiom).getSuperProperty());
+      }
+      else if(axiom instanceof OWLEquivalentObjectPropertiesAxiom) {
+        out.writeByte(EQUIVALENT_OBJECT_PROPERTIES);
+        objectProperties(((OWLEquivalentObjectPropertiesAxiom)axiom).getProperties());
+      }
+      else if(axiom instanceof OWLEquivalentDataPropertiesAxiom) {
+        out.writeByte(EQUIVALENT_DATA_PROPERTIES);
+        dataProperties(((OWLEquivalentDataPropertiesAxiom)axiom).getProperties());
+      }
+      else if(axiom instanceof OWLDisjointObjectPropertiesAxiom) {
+        out.writeByte(DISJOINT_OBJECT_PROPERTIES);
+        objectProperties(((OWLDisjointObjectPropertiesAxiom)axiom).getProperties());
+      }
+      else if(axiom instanceof OWLDisjointDataPropertiesAxiom) {
+        out.writeByte(DISJOINT_DATA_PROPERTIES);
+        dataProperties(((OWLDisjointDataPropertiesAxiom)axiom).getProperties());
+      }
+      else if(axiom instanceof OWLInverseObjectPropertiesAxiom) {
+        out.writeByte(INVERSE_OBJECT_PROPERTIES);
+        objectProperty(((OWLInverseObjectPropertiesAxiom)axiom).getFirstProperty());
+        objectProperty(((OWLInverseObjectPropertiesAxiom)axiom).getSecondProperty());
+      }
+      else if(axiom instanceof OWLFunctionalObjectPropertyAxiom) {
+        out.writeByte(FUNCTIONAL_OBJECT_PROPERTY);
+        objectProperty(((OWLFunctionalObjectPropertyAxiom)axiom).getProperty());
+      }
+      else if(axiom instanceof OWLInverseFunctionalObjectPropertyAxiom) {
+        out.writeByte(INVERSE_FUNCTIONAL_OBJECT_PROPERTY);
+        objectProperty(((OWLInverseFunctionalObjectPropertyAxiom)axiom).getProperty());
+      }
+      else if(axiom instanceof OWLSymmetricObjectPropertyAxiom) {
+        out.writeByte(SYMMETRIC_OBJECT_PROPERTY);
+        objectProperty(((OWLSymmetricObjectPropertyAxiom)axiom).getProperty());
+      }
+      else if(axiom instanceof OWLAntiSymmetricObjectPropertyAxiom) {
+        out.writeByte(ANTI_SYMMETRIC_OBJECT_PROPERTY);
+        objectProperty(((OWLAntiSymmetricObjectPropertyAxiom)axiom).getProperty());
+      }
+      else if(axiom instanceof OWLReflexiveObjectPropertyAxiom) {
+        out.writeByte(REFLEXIVE_OBJECT_PROPERTY);
+        objectProperty(((OWLReflexiveObjectPropertyAxiom)axiom).getProperty());
+      }
+      else if(axiom instanceof OWLIrreflexiveObjectPropertyAxiom) {
+        out.writeByte(IRREFLEXIVE_OBJECT_PROPERTY);
+        objectProperty(((OWLIrreflexiveObjectPropertyAxiom)axiom).getProperty());
+      }
+      else if(axiom instanceof OWLTransitiveObjectPropertyAxiom) {
+        out.writeByte(TRANSITIVE_OBJECT_PROPERTY);
+        objectProperty(((OWLTransitiveObjectPropertyAxiom)axiom).getProperty());
+      }
+      else if(axiom instanceof OWLFunctionalDataPropertyAxiom) {
+        out.writeByte(FUNCTIONAL_DATA_PROPERTY);
+        dataProperty(((OWLFunctionalDataPropertyAxiom)axiom).getProperty());
+      }
+      else if(axiom instanceof OWLObjectPropertyChainSubPropertyAxiom) {
+        List<OWLObjectPropertyExpression> chain = ((OWLObjectPropertyChainSubPropertyAxiom)axiom).getPropertyChain();
+        out.writeByte(PROPERTY_CHAIN);
+        out.writeInt(chain.size());
+        for(OWLObjectPropertyExpression link: chain) {
+          objectProperty(link);
+        }
+        objectProperty(((OWLObjectPropertyChainSubPropertyAxiom)axiom).getSuperProperty());
+      }
+      else if(axiom instanceof OWLEntityAnnotationAxiom) {
+        out.writeByte(ENTITY_ANNOTATION);
+        entity(((OWLEntityAnnotationAxiom)axiom).getSubject());
+        annotation(((OWLEntityAnnotationAxiom)axiom).getAnnotation());
+      }
+      else if(axiom instanceof OWLAxiomAnnotationAxiom) {
+        out.writeByte(AXIOM_ANNOTATION);
+        axiom(((OWLAxiomAnnotationAxiom)axiom).getSubject());
+        annotation(((OWLAxiomAnnotationAxiom)axiom).getAnnotation());
+      }
+      else if(axiom instanceof OWLOntologyAnnotationAxiom) {
+        out.writeByte(ONTOLOGY_ANNOTATION);
+        annotation(((OWLOntologyAnnotationAxiom)axiom).getAnnotation());
+      }
+      else if(axiom instanceof OWLImportsDeclaration) {
+        out.writeByte(IMPORTS);
+        uri(((OWLImportsDeclaration)axiom).getImportedOntologyURI());
+      }
+      else {
+        throw new UnsupportedAxiomException();
+      }
+    }
+
+    void description(OWLDescription desc) throws IOException {
+      if(desc instanceof OWLClass) {
+        out.writeByte(CLASS);
+        uri(((OWLClass)desc).getURI());
+      }
+      else if(desc instanceof OWLObjectIntersectionOf) {
+        out.writeByte(OBJECT_INTERSECTION);
+        descriptions(((OWLObjectIntersectionOf)desc).getOperands());
+      }
+      else if(desc instanceof OWLObjectUnionOf) {
+        out.writeByte(OBJECT_UNION);
+        descriptions(((OWLObjectUnionOf)desc).getOperands());
+      }
+      else if(desc instanceof OWLObjectComplementOf) {
+        out.writeByte(OBJECT_COMPLEMENT);
+        description(((OWLObjectComplementOf)desc).getOperand());
+      }
+      else if(desc instanceof OWLObjectOneOf) {
+        out.writeByte(OBJECT_ONE_OF);
+        individuals(((OWLObjectOneOf)desc).getIndividuals());
+      }
+      else if(desc instanceof OWLObjectSomeRestriction) {
+        out.writeByte(OBJECT_SOME);
+        objectProperty(((OWLObjectSomeRestriction)desc).getProperty());
+        description(((OWLObjectSomeRestriction)desc).getFiller());
+      }
+      else if(desc instanceof OWLObjectAllRestriction) {
+        out.writeByte(OBJECT_ALL);
+        objectProperty(((OWLObjectAllRestriction)desc).getProperty());
+        description(((OWLObjectAllRestriction)desc).getFiller());
+      }
+      else if(desc instanceof OWLObjectValueRestriction) {
+        out.writeByte(OBJECT_VALUE);
+        objectProperty(((OWLObjectValueRestriction)desc).getProperty());
+        individual(((OWLObjectValueRestriction)desc).getValue());
+      }
+      else if(desc instanceof OWLObjectMinCardinalityRestriction) {
+        OWLObjectMinCardinalityRestriction card = (OWLObjectMinCardinalityRestriction)desc;
+        out.writeByte(OBJECT_MIN);
+        objectProperty(card.getProperty());
+        out.writeInt(card.getCardinality());
+        description(card.getFiller());
+      }
+      else if(desc instanceof OWLObjectExactCardinalityRestriction) {
+        OWLObjectExactCardinalityRestriction card = (OWLObjectExactCardinalityRestriction)desc;
+        out.writeByte(OBJECT_EXACT);
+        objectProperty(card.getProperty());
+        out.writeInt(card.getCardinality());
+        description(card.getFiller());
+      }
+      else if(desc instanceof OWLObjectMaxCardinalityRestriction) {
+        OWLObjectMaxCardinalityRestriction card = (OWLObjectMaxCardinalityRestriction)desc;
+        out.writeByte(OBJECT_MAX);
+        objectProperty(card.getProperty());
+        out.writeInt(card.getCardinality());
+        description(card.getFiller());
+      }
+      else if(desc instanceof OWLObjectSelfRestriction) {
+        out.writeByte(OBJECT_SELF);
+        objectProperty(((OWLObjectSelfRestriction)desc).getProperty());
+      }
+      else if(desc instanceof OWLDataSomeRestriction) {
+        out.writeByte(DATA_SOME);
+        dataProperty(((OWLDataSomeRestriction)desc).getProperty());
+        dataRange(((OWLDataSomeRestriction)desc).getFiller());
+      }
+      else if(desc instanceof OWLDataAllRestriction) {
+        out.writeByte(DATA_ALL);
+        dataProperty(((OWLDataAllRestriction)desc).getProperty());
+        dataRange(((OWLDataAllRestriction)desc).getFiller());
+      }
+      else if(desc instanceof OWLDataValueRestriction) {
+        out.writeByte(DATA_VALUE);
+        dataProperty(((OWLDataValueRestriction)desc).getProperty());
+        constant(((OWLDataValueRestriction)desc).getValue());
+      }
+      else if(desc instanceof OWLDataMinCardinalityRestriction) {
+        OWLDataMinCardinalityRestriction card = (OWLDataMinCardinalityRestriction)desc;
+        out.writeByte(DATA_MIN);
+        dataProperty(card.getProperty());
+        out.writeInt(card.getCardinality());
+        dataRange(card.getFiller());
+      }
+      else if(desc instanceof OWLDataExactCardinalityRestriction) {
+        OWLDataExactCardinalityRestriction card = (OWLDataExactCardinalityRestriction)desc;
+        out.writeByte(DATA_EXACT);
+        dataProperty(card.getProperty());
+        out.writeInt(card.getCardinality());
+        dataRange(card.getFiller());
+      }
+      else if(desc instanceof OWLDataMaxCardinalityRestriction) {
+        OWLDataMaxCardinalityRestriction card = (OWLDataMaxCardinalityRestriction)desc;
+        out.writeByte(DATA_MAX);
+        dataProperty(card.getProperty());
+        out.writeInt(card.getCardinality());
+        dataRange(card.getFiller());
+      }
+      else {
+        throw new UnsupportedAxiomException();
+      }
+    }
+
+    void descriptions(Collection<? extends OWLDescription> descs) throws IOException {
+      out.writeInt(descs.size());
+      for(OWLDescription desc: descs) {
+        description(desc);
+      }
+    }
+
+    void dataRange(OWLDataRange range) throws IOException {
+      if(range instanceof OWLDataType) {
+        out.writeByte(DATATYPE);
+        uri(((OWLDataType)range).getURI());
+      }
+      else if(range instanceof OWLDataComplementOf) {
+        out.writeByte(DATA_COMPLEMENT);
+        dataRange(((OWLDataComplementOf)range).getDataRange());
+      }
+      else if(range instanceof OWLDataOneOf) {
+        Set<? extends OWLConstant> values = ((OWLDataOneOf)range).getValues();
+        out.writeByte(DATA_ONE_OF);
+        out.writeInt(values.size());
+        for(OWLConstant value: values) {
+          constant(value);
+        }
+      }
+      else if(range instanceof OWLDataRangeRestriction) {
+        Set<OWLDataRangeFacetRestriction> facets = ((OWLDataRangeRestriction)range).getFacetRestrictions();
+        out.writeByte(DATA_RANGE_RESTRICTION);
+        dataRange(((OWLDataRangeRestriction)range).getDataRange());
+        out.writeInt(facets.size());
+        for(OWLDataRangeFacetRestriction facet: facets) {
+          string(facet.getFacet().name());
+          constant(facet.getFacetValue());
+        }
+      }
+      else {
+        throw new UnsupportedAxiomException();
+      }
+    }
+
+    void objectProperty(OWLObjectPropertyExpression prop) throws IOException {
+      if(prop instanceof OWLObjectProperty) {
+        out.writeByte(ENTITY_OBJECT_PROPERTY);
+        uri(((OWLObjectProperty)prop).getURI());
+      }
+      else if(prop instanceof OWLObjectPropertyInverse) {
+        out.writeByte(INVERSE_PROPERTY);
+        objectProperty(((OWLObjectPropertyInverse)prop).getInverse());
+      }
+      else {
+        throw new UnsupportedAxiomException();
+      }
+    }
+
+    void objectProperties(Set<OWLObjectPropertyExpression> props) throws IOException {
+      out.writeInt(props.size());
+      for(OWLObjectPropertyExpression prop: props) {
+        objectProperty(prop);
+      }
+    }
+
+    void dataProperty(OWLDataPropertyExpression prop) throws IOException {
+      if(!(prop instanceof OWLDataProperty)) throw new UnsupportedAxiomException();
+      uri(((OWLDataProperty)prop).getURI());
+    }
+
+    void dataProperties(Set<OWLDataPropertyExpression> props) throws IOException {
+      out.writeInt(props.size());
+      for(OWLDataPropertyExpression prop: props) {
+        dataProperty(prop);
+      }
+    }
+
+    void individual(OWLIndividual individual) throws IOException {
+      out.writeByte(individual.isAnonymous() ? ANONYMOUS_INDIVIDUAL : ENTITY_INDIVIDUAL);
+      uri(individual.getURI());
+    }
+
+    void individuals(Set<OWLIndividual> individuals) throws IOException {
+      out.writeInt(individuals.size());
+      for(OWLIndividual individual: individuals) {
+        individual(individual);
+      }
+    }
+
+    void entity(OWLEntity entity) throws IOException {
+      if(entity instanceof OWLClass) {
+        out.writeByte(ENTITY_CLASS);
+        uri(entity.getURI());
+      }
+      else if(entity instanceof OWLObjectProperty) {
+        out.writeByte(ENTITY_OBJECT_PROPERTY);
+        uri(entity.getURI());
+      }
+      else if(entity instanceof OWLDataProperty) {
+        out.writeByte(ENTITY_DATA_PROPERTY);
+        uri(entity.getURI());
+      }
+      else if(entity instanceof OWLIndividual) {
+        individual((OWLIndividual)entity);
+      }
+      else if(entity instanceof OWLDataType) {
+        out.writeByte(ENTITY_DATATYPE);
+        uri(entity.getURI());
+      }
+      else {
+        throw new UnsupportedAxiomException();
+      }
+    }
+
+    void constant(OWLConstant constant) throws IOException {
+      if(constant.isTyped()) {
+        out.writeByte(TYPED_CONSTANT);
+        string(constant.getLiteral());
+        uri(((OWLTypedConstant)constant).getDataType().getURI());
+      }
+      else if(((OWLUntypedConstant)constant).hasLang()) {
+        out.writeByte(LANG_CONSTANT);
+        string(constant.getLiteral());
+        string(((OWLUntypedConstant)constant).getLang());
+      }
+      else {
+        out.writeByte(UNTYPED_CONSTANT);
+        string(constant.getLiteral());
+      }
+    }
+
+    void annotation(OWLAnnotation<?> note) throws IOException {
+      if(note instanceof OWLConstantAnnotation) {
+        out.writeByte(CONSTANT_ANNOTATION);
+        uri(note.getAnnotationURI());
+        constant(((OWLConstantAnnotation)note).getAnnotationValue());
+      }
+      else if(note instanceof OWLObjectAnnotation) {
+        out.writeByte(OBJECT_ANNOTATION);
+        uri(note.getAnnotationURI());
+        individual(((OWLObjectAnnotation)note).getAnnotationValue());
+      }
+      else {
+        throw new UnsupportedAxiomException();
+      }
+    }
+  }
+
+  /**
+   * Reader
+   * 
+   * Reads axioms from a stream, keeping the table of strings read so far
+   */
+  private static final class Reader {
+    private final DataInputStream in;
+    private final OWLDataFactory factory;
+    private final OWLOntology ontology;
+    private final List<String> strings;
+
+    /**
+     * URIs made from the strings in the table, so each is only parsed once
+     */
+    private final List<URI> uris;
+
+    Reader(DataInputStream in, OWLDataFactory factory, OWLOntology ontology) {
+      this.in = in;
+      this.factory = factory;
+      this.ontology = ontology;
+      strings = new ArrayList<String>();
+      uris = new ArrayList<URI>();
+    }
+
+    int stringRef() throws IOException {
+      int ref = in.readInt();
+      if(ref != NEW_STRING) return ref;
+      byte bytes[] = new byte[in.readInt()];
+      in.readFully(bytes);
+      strings.add(new String(bytes, "UTF-8"));
+      uris.add(null);
+      return strings.size() - 1;
+    }
+
+    String string() throws IOException {
+      return strings.get(stringRef());
+    }
+
+    URI uri() throws IOException {
+      int ref = stringRef();
+      URI uri = uris.get(ref);
+      if(uri == null) {
+        uri = URI.create(strings.get(ref));
+        uris.set(ref, uri);
+      }
+      return uri;
+    }
+
+    IOException unknown(String what, byte tag) {
+      return new IOException("unknown " + what + " tag " + tag);
+    }
+
+    OWLAxiom axiom() throws IOException {
+      byte tag = in.readByte();
+      switch(tag) {
+      case DECLARATION:
+        return factory.getOWLDeclarationAxiom(entity());
+      case SUB_CLASS:
+        OWLDescription sub = description();
+        return factory.getOWLSubClassAxiom(sub, description());
+      case EQUIVALENT_CLASSES:
+        return factory.getOWLEquivalentClassesAxiom(descriptions());
+      case DISJOINT_CLASSES:
+        return factory.getOWLDisjointClassesAxiom(descriptions());
+      case DISJOINT_UNION:
+        OWLClass union = factory.getOWLClass(uri());
+        return factory.getOWLDisjointUnionAxiom(union, descriptions());
+      case CLASS_ASSERTION:
+        OWLIndividual member = individual();
+        return factory.getOWLClassAssertionAxiom(member, description());
+      case OBJECT_PROPERTY_ASSERTION: {
+        OWLIndividual subject = individual();
+        OWLObjectPropertyExpression prop = objectProperty();
+        return factory.getOWLObjectPropertyAssertionAxiom(subject, prop, individual());
+      }
+      case NEGATIVE_OBJECT_PROPERTY_ASSERTION: {
+        OWLIndividual subject = individual();
+        OWLObjectPropertyExpression prop = objectProperty();
+        return factory.getOWLNegativeObjectPropertyAssertionAxiom(subject, prop, individual());
+      }
+      case DATA_PROPERTY_ASSERTION: {
+        OWLIndividual subject = individual();
+        OWLDataPropertyExpression prop = dataProperty();
+        return factory.getOWLDataPropertyAssertionAxiom(subject, prop, constant());
+      }
+      case NEGATIVE_DATA_PROPERTY_ASSERTION: {
+        OWLIndividual subject = individual();
+        OWLDataPropertyExpression prop = dataProperty();
+        return factory.getOWLNegativeDataPropertyAssertionAxiom(subject, prop, constant());
+      }
+      case SAME_INDIVIDUALS:
+        return factory.getOWLSameIndividualsAxiom(individuals());
+      case DIFFERENT_INDIVIDUALS:
+        return factory.getOWLDifferentIndividualsAxiom(individuals());
+      case OBJECT_PROPERTY_DOMAIN: {
+        OWLObjectPropertyExpression prop = objectProperty();
+        return factory.getOWLObjectPropertyDomainAxiom(prop, description());
+      }
+      case OBJECT_PROPERTY_RANGE: {
+        OWLObjectPropertyExpression prop = objectProperty();
+        return factory.getOWLObjectPropertyRangeAxiom(prop, description());
+      }
+      case DATA_PROPERTY_DOMAIN: {
+        OWLDataPropertyExpression prop = dataProperty();
+        return factory.getOWLDataPropertyDomainAxiom(prop, description());
+      }
+      case DATA_PROPERTY_RANGE: {
+        OWLDataPropertyExpression prop = dataProperty();
+        return factory.getOWLDataPropertyRangeAxiom(prop, dataRange());
+      }
+      case SUB_OBJECT_PROPERTY: {
+        OWLObjectPropertyExpression prop = objectProperty();
+        return factory.getOWLSubObjectPropertyAxiom(prop, objectProperty());
+      }
+      case SUB_DATA_PROPERTY: {
+        OWLDataPropertyExpression prop = dataProperty();
+        return factory.getOWLSubDataPropertyAxiom(prop, dataProperty());
+      }
+      case EQUIVALENT_OBJECT_PROPERTIES:
+        return factory.getOWLEquivalentObjectPropertiesAxiom(objectProperties());
+      case EQUIVALENT_DATA_PROPERTIES:
+        return factory.getOWLEquivalentDataPropertiesAxiom(dataProperties());
+      case DISJOINT_OBJECT_PROPERTIES:
+        return factory.getOWLDisjointObjectPropertiesAxiom(objectProperties());
+      case DISJOINT_DATA_PROPERTIES:
+        return factory.getOWLDisjointDataPropertiesAxiom(dataProperties());
+      case INVERSE_OBJECT_PROPERTIES: {
+        OWLObjectPropertyExpression prop = objectProperty();
+        return factory.getOWLInverseObjectPropertiesAxiom(prop, objectProperty());
+      }
+      case FUNCTIONAL_OBJECT_PROPERTY:
+        return factory.getOWLFunctionalObjectPropertyAxiom(objectProperty());
+      case INVERSE_FUNCTIONAL_OBJECT_PROPERTY:
+        return factory.getOWLInverseFunctionalObjectPropertyAxiom(objectProperty());
+      case SYMMETRIC_OBJECT_PROPERTY:
+        return factory.getOWLSymmetricObjectPropertyAxiom(objectProperty());
+      case ANTI_SYMMETRIC_OBJECT_PROPERTY:
+        return factory.getOWLAntiSymmetricObjectPropertyAxiom(objectProperty());
+      case REFLEXIVE_OBJECT_PROPERTY:
+        return factory.getOWLReflexiveObjectPropertyAxiom(objectProperty());
+      case IRREFLEXIVE_OBJECT_PROPERTY:
+        return factory.getOWLIrreflexiveObjectPropertyAxiom(objectProperty());
+      case TRANSITIVE_OBJECT_PROPERTY:
+        return factory.getOWLTransitiveObjectPropertyAxiom(objectProperty());
+      case FUNCTIONAL_DATA_PROPERTY:
+        return factory.getOWLFunctionalDataPropertyAxiom(dataProperty());
+      case PROPERTY_CHAIN: {
+        int n = in.readInt();
+        List<OWLObjectPropertyExpression> chain = new ArrayList<OWLObjectPropertyExpression>(n);
+        for(int i = 0; i < n; i++) {
+          chain.add(objectProperty());
+        }
+        return factory.getOWLObjectPropertyChainSubPropertyAxiom(chain, objectProperty());
+      }
+      case ENTITY_ANNOTATION: {
+        OWLEntity subject = entity();
+        return factory.getOWLEntityAnnotationAxiom(subject, annotation());
+      }
+      case AXIOM_ANNOTATION: {
+        OWLAxiom subject = axiom();
+        return factory.getOWLAxiomAnnotationAxiom(subject, annotation());
+      }
+      case ONTOLOGY_ANNOTATION:
+        return factory.getOWLOntologyAnnotationAxiom(ontology, annotation());
+      case IMPORTS:
+        return factory.getOWLImportsDeclarationAxiom(ontology, uri());
+      default:
+        throw unknown("axiom", tag);
+      }
+    }
+
+    OWLDescription description() throws IOException {
+      byte tag = in.readByte();
+      switch(tag) {
+      case CLASS:
+        return factory.getOWLClass(uri());
+      case OBJECT_INTERSECTION:
+        return factory.getOWLObjectIntersectionOf(descriptions());
+      case OBJECT_UNION:
+        return factory.getOWLObjectUnionOf(descriptions());
+      case OBJECT_COMPLEMENT:
+        return factory.getOWLObjectComplementOf(description());
+      case OBJECT_ONE_OF:
+        return factory.getOWLObjectOneOf(individuals());
+      case OBJECT_SOME: {
+        OWLObjectPropertyExpression prop = objectProperty();
+        return factory.getOWLObjectSomeRestriction(prop, description());
+      }
+      case OBJECT_ALL: {
+        OWLObjectPropertyExpression prop = objectProperty();
+        return factory.getOWLObjectAllRestriction(prop, description());
+      }
+      case OBJECT_VALUE: {
+        OWLObjectPropertyExpression prop = objectProperty();
+        return factory.getOWLObjectValueRestriction(prop, individual());
+      }
+      case OBJECT_MIN: {
+        OWLObjectPropertyExpression prop = objectProperty();
+        int card = in.readInt();
+        return factory.getOWLObjectMinCardinalityRestriction(prop, card, description());
+      }
+      case OBJECT_EXACT: {
+        OWLObjectPropertyExpression prop = objectProperty();
+        int card = in.readInt();
+        return factory.getOWLObjectExactCardinalityRestriction(prop, card, description());
+      }
+      case OBJECT_MAX: {
+        OWLObjectPropertyExpression prop = objectProperty();
+        int card = in.readInt();
+        return factory.getOWLObjectMaxCardinalityRestriction(prop, card, description());
+      }
+      case OBJECT_SELF:
+        return factory.getOWLObjectSelfRestriction(objectProperty());
+      case DATA_SOME: {
+        OWLDataPropertyExpression prop = dataProperty();
+        return factory.getOWLDataSomeRestriction(prop, dataRange());
+      }
+      case DATA_ALL: {
+        OWLDataPropertyExpression prop = dataProperty();
+        return factory.getOWLDataAllRestriction(prop, dataRange());
+      }
+      case DATA_VALUE: {
+        OWLDataPropertyExpression prop = dataProperty();
+        return factory.getOWLDataValueRestriction(prop, constant());
+      }
+      case DATA_MIN: {
+        OWLDataPropertyExpression prop = dataProperty();
+        int card = in.readInt();
+        return factory.getOWLDataMinCardinalityRestriction(prop, card, dataRange());
+      }
+      case DATA_EXACT: {
+        OWLDataPropertyExpression prop = dataProperty();
+        int card = in.readInt();
+        return factory.getOWLDataExactCardinalityRestriction(prop, card, dataRange());
+      }
+      case DATA_MAX: {
+        OWLDataPropertyExpression prop = dataProperty();
+        int card = in.readInt();
+        return factory.getOWLDataMaxCardinalityRestriction(prop, card, dataRange());
+      }
+      default:
+        throw unknown("description", tag);
+      }
+    }
+
+    Set<OWLDescription> descriptions() throws IOException {
+      int n = in.readInt();
+      Set<OWLDescription> descs = new HashSet<OWLDescription>();
+      for(int i = 0; i < n; i++) {
+        descs.add(description());
+      }
+      return descs;
+    }
+
+    OWLDataRange dataRange() throws IOException {
+      byte tag = in.readByte();
+      switch(tag) {
+      case DATATYPE:
+        return factory.getOWLDataType(uri());
+      case DATA_COMPLEMENT:
+        return factory.getOWLDataComplementOf(dataRange());
+      case DATA_ONE_OF: {
+        int n = in.readInt();
+        Set<OWLConstant> values = new HashSet<OWLConstant>();
+        for(int i = 0; i < n; i++) {
+          values.add(constant());
+        }
+        return factory.getOWLDataOneOf(values);
+      }
+      case DATA_RANGE_RESTRICTION: {
+        OWLDataRange restricted = dataRange();
+        int n = in.readInt();
+        Set<OWLDataRangeFacetRestriction> facets = new HashSet<OWLDataRangeFacetRestriction>();
+        for(int i = 0; i < n; i++) {
+          OWLRestrictedDataRangeFacetVocabulary facet = OWLRestrictedDataRangeFacetVocabulary.valueOf(string());
+          OWLConstant value = constant();
+          if(!value.isTyped()) throw new IOException("untyped value for facet " + facet);
+          facets.add(factory.getOWLDataRangeFacetRestriction(facet, (OWLTypedConstant)value));
+        }
+        return factory.getOWLDataRangeRestriction(restricted, facets);
+      }
+      default:
+        throw unknown("data range", tag);
+      }
+    }
+
+    OWLObjectPropertyExpression objectProperty() throws IOException {
+      byte tag = in.readByte();
+      switch(tag) {
+      case ENTITY_OBJECT_PROPERTY:
+        return factory.getOWLObjectProperty(uri());
+      case INVERSE_PROPERTY:
+        return factory.getOWLObjectPropertyInverse(objectProperty());
+      default:
+        throw unknown("object property", tag);
+      }
+    }
+
+    Set<OWLObjectPropertyExpression> objectProperties() throws IOException {
+      int n = in.readInt();
+      Set<OWLObjectPropertyExpression> props = new HashSet<OWLObjectPropertyExpression>();
+      for(int i = 0; i < n; i++) {
+        props.add(objectProperty());
+      }
+      return props;
+    }
+
+    OWLDataPropertyExpression dataProperty() throws IOException {
+      return factory.getOWLDataProperty(uri());
+    }
+
+    Set<OWLDataPropertyExpression> dataProperties() throws IOException {
+      int n = in.readInt();
+      Set<OWLDataPropertyExpression> props = new HashSet<OWLDataPropertyExpression>();
+      for(int i = 0; i < n; i++) {
+        props.add(dataProperty());
+      }
+      return props;
+    }
+
+    OWLIndividual individual() throws IOException {
+      return individual(in.readByte());
+    }
+
+    OWLIndividual individual(byte tag) throws IOException {
+      switch(tag) {
+      case ENTITY_INDIVIDUAL:
+        return factory.getOWLIndividual(uri());
+      case ANONYMOUS_INDIVIDUAL:
+        return factory.getOWLAnonymousIndividual(uri());
+      default:
+        throw unknown("individual", tag);
+      }
+    }
+
+    Set<OWLIndividual> individuals() throws IOException {
+      int n = in.readInt();
+      Set<OWLIndividual> individuals = new HashSet<OWLIndividual>();
+      for(int i = 0; i < n; i++) {
+        individuals.add(individual());
+      }
+      return individuals;
+    }
+
+    OWLEntity entity() throws IOException {
+      byte tag = in.readByte();
+      switch(tag) {
+      case ENTITY_CLASS:
+        return factory.getOWLClass(uri());
+      case ENTITY_OBJECT_PROPERTY:
+        return factory.getOWLObjectProperty(uri());
+      case ENTITY_DATA_PROPERTY:
+        return factory.getOWLDataProperty(uri());
+      case ENTITY_INDIVIDUAL:
+      case ANONYMOUS_INDIVIDUAL:
+        return individual(tag);
+      case ENTITY_DATATYPE:
+        return factory.getOWLDataType(uri());
+      default:
+        throw unknown("entity", tag);
+      }
+    }
+
+    OWLConstant constant() throws IOException {
+      byte tag = in.readByte();
+      switch(tag) {
+      case TYPED_CONSTANT: {
+        String literal = string();
+        return factory.getOWLTypedConstant(literal, factory.getOWLDataType(uri()));
+      }
+      case LANG_CONSTANT: {
+        String literal = string();
+        return factory.getOWLUntypedConstant(literal, string());
+      }
+      case UNTYPED_CONSTANT:
+        return factory.getOWLUntypedConstant(string());
+      default:
+        throw unknown("constant", tag);
+      }
+    }
+
+    OWLAnnotation<?> annotation() throws IOException {
+      byte tag = in.readByte();
+      switch(tag) {
+      case CONSTANT_ANNOTATION: {
+        URI annotationURI = uri();
+        return factory.getOWLConstantAnnotation(annotationURI, constant());
+      }
+      case OBJECT_ANNOTATION: {
+        URI annotationURI = uri();
+        return factory.getOWLObjectAnnotation(annotationURI, individual());
+      }
+      default:
+        throw unknown("annotation", tag);
+      }
+    }
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * uk.ac.hutton.obiama.msb: ClassificationCache.java 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.msb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.semanticweb.owl.apibinding.OWLManager;
+import org.semanticweb.owl.io.OWLFunctionalSyntaxOntologyFormat;
+import org.semanticweb.owl.io.RDFXMLOntologyFormat;
+import org.semanticweb.owl.io.StringOutputTarget;
+import org.semanticweb.owl.model.OWLAxiom;
+import org.semanticweb.owl.model.OWLDeclarationAxiom;
+import org.semanticweb.owl.model.OWLException;
+import org.semanticweb.owl.model.OWLImportsDeclaration;
+import org.semanticweb.owl.model.OWLOntology;
+import org.semanticweb.owl.model.OWLOntologyManager;
+
+import uk.ac.hutton.obiama.exception.Bug;
+import uk.ac.hutton.obiama.exception.ErrorHandler;
+import uk.ac.hutton.obiama.exception.Panic;
+import uk.ac.hutton.obiama.model.OWLSpecies;
+
+/**
+ * <!-- ClassificationCache -->
+ * 
+ * A directory of files containing the axioms inferred from the model structure
+ * ontologies, so that runs with the same model and reasoner can load them
+ * rather than classify the model again. Each file is named by a digest of the
+ * axioms in the ontologies inferred from, the reasoner class and its version,
+ * and the inferences made. A change to any of these gives a different name, so
+ * entries never need to be invalidated: they are just no longer found.
+ * 
+ * @author Gary Polhill
+ */
+class ClassificationCache {
+  /**
+   * Suffix of files in the cache
+   */
+  public static final String SUFFIX = ".owl";
+
+  /**
+   * Algorithm used to digest the inputs to the classification
+   */
+  public static final String DIGEST = "SHA-1";
+
+  /**
+   * URI of the ontology the axioms are copied into to render them for the key
+   */
+  public static final URI KEY_ONTOLOGY_URI = URI.create("http://www.hutton.ac.uk/obiama/ontologies/key.owl");
+
+  /**
+   * The cache directory (<code>null</code> if there is no cache)
+   */
+  private static File directory = null;
+
+  /**
+   * Disabled constructor
+   */
+  private ClassificationCache() {
+    // Static methods only
+  }
+
+  /**
+   * <!-- setDirectory -->
+   * 
+   * Use a directory for the cache, creating it if need be
+   * 
+   * @param dir The directory (<code>null</code> to stop using the cache)
+   */
+  static synchronized void setDirectory(String dir) {
+    if(dir == null) {
+      directory = null;
+      return;
+    }
+    File file = new File(dir);
+    if(!file.isDirectory() && !file.mkdirs()) {
+      ErrorHandler.warn("cannot create directory " + dir, "setting up the classification cache",
+          "the model will be classified without using the cache");
+      directory = null;
+      return;
+    }
+    directory = file;
+  }
+
+  /**
+   * <!-- isEnabled -->
+   * 
+   * @return <code>true</code> if there is a cache directory
+   */
+  static synchronized boolean isEnabled() {
+    return directory != null;
+  }
+
+  /**
+   * <!-- key -->
+   * 
+   * Build the key for the results of a classification. The axioms in the
+   * ontologies are rendered in OWL functional syntax, which (unlike
+   * <code>toString()</code>, which uses short forms) gives every URI in full or
+   * with a prefix it declares, so entities with the same local name in
+   * different namespaces give different keys. The lines of the rendering are
+   * digested in sorted order, so the key does not depend on the URIs of the
+   * ontologies, which are anonymous for some of those OBIAMA creates, on which
+   * ontology each axiom is in, or on the order the renderer writes them.
+   * 
+   * @param ontologies The ontologies classified
+   * @param reasonerClass The class of reasoner used
+   * @param spp The OWL species the inferred ontology is cleaned to
+   * @param realiseIndividuals Whether the individuals are realised
+   * @param classifyTaxonomy Whether the taxonomy is classified
+   * @return The key
+   */
+  static String key(Set<OWLOntology> ontologies, Class<?> reasonerClass, OWLSpecies spp, boolean realiseIndividuals,
+      boolean classifyTaxonomy) {
+    Set<String> axioms = new TreeSet<String>();
+    for(String line: render(ontologies).split("\n")) {
+      axioms.add(line.trim());
+    }
+    String version = reasonerClass.getPackage() == null ? null : reasonerClass.getPackage().getImplementationVersion();
+    try {
+      MessageDigest digest = MessageDigest.getInstance(DIGEST);
+      digest.update((reasonerClass.getName() + " " + version + " " + spp + " " + realiseIndividuals + " "
+        + classifyTaxonomy + "\n").getBytes("UTF-8"));
+      for(String axiom: axioms) {
+        digest.update((axiom + "\n").getBytes("UTF-8"));
+      }
+      StringBuffer buf = new StringBuffer();
+      for(byte b: digest.digest()) {
+        buf.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+      }
+      return buf.toString();
+    }
+    catch(NoSuchAlgorithmException e) {
+      throw new Bug();
+    }
+    catch(UnsupportedEncodingException e) {
+      throw new Bug();
+    }
+  }
+
+  /**
+   * <!-- render -->
+   * 
+   * Render the axioms in a set of ontologies in OWL functional syntax, by
+   * copying them into one ontology with a fixed URI
+   * 
+   * @param ontologies The ontologies
+   * @return The rendering
+   */
+  private static String render(Set<OWLOntology> ontologies) {
+    OWLOntologyManager renderer = OWLManager.createOWLOntologyManager();
+    StringOutputTarget target = new StringOutputTarget();
+    try {
+      OWLOntology all = renderer.createOntology(KEY_ONTOLOGY_URI);
+      Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+      for(OWLOntology ontology: ontologies) {
+        axioms.addAll(ontology.getAxioms());
+      }
+      renderer.addAxioms(all, axioms);
+      renderer.saveOntology(all, new OWLFunctionalSyntaxOntologyFormat(), target);
+    }
+    catch(OWLException e) {
+      ErrorHandler.fatal(e, "rendering ontologies " + ontologies + " to build a classification cache key");
+      throw new Panic();
+    }
+    return target.toString();
+  }
+
+  /**
+   * <!-- load -->
+   * 
+   * @param key The key for the classification
+   * @return The axioms cached for the key, or <code>null</code> if there are
+   *         none or the cache file cannot be read
+   */
+  static Set<OWLAxiom> load(String key) {
+    File file;
+    synchronized(ClassificationCache.class) {
+      if(directory == null) return null;
+      file = new File(directory, key + SUFFIX);
+    }
+    if(!file.isFile()) return null;
+    OWLOntologyManager reader = OWLManager.createOWLOntologyManager();
+    try {
+      OWLOntology cached = reader.loadOntologyFromPhysicalURI(file.toURI());
+      Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+      for(OWLAxiom axiom: cached.getAxioms()) {
+        // The parser declares entities the saved axioms refer to; save() only
+        // caches sets of axioms without declarations, so these are dropped
+        if(!(axiom instanceof OWLDeclarationAxiom)) axioms.add(axiom);
+      }
+      ErrorHandler.note("Loaded classification of model from cache file " + file);
+      return axioms;
+    }
+    catch(OWLException e) {
+      ErrorHandler.warn(e, "loading classification from cache file " + file, "the model will be classified again");
+      return null;
+    }
+  }
+
+  /**
+   * <!-- save -->
+   * 
+   * Save the axioms inferred by a classification. The file is written under a
+   * temporary name and then renamed, so that other runs sharing the cache
+   * never see it half-written. Sets of axioms including declarations or
+   * imports are not saved, as they would not be loaded back exactly.
+   * 
+   * @param key The key for the classification
+   * @param axioms The axioms inferred
+   */
+  static void save(String key, Set<OWLAxiom> axioms) {
+    File dir;
+    synchronized(ClassificationCache.class) {
+      if(directory == null) return;
+      dir = directory;
+    }
+    for(OWLAxiom axiom: axioms) {
+      if(axiom instanceof OWLDeclarationAxiom || axiom instanceof OWLImportsDeclaration) return;
+    }
+    File file = new File(dir, key + SUFFIX);
+    File tmp = null;
+    try {
+      tmp = File.createTempFile(key, SUFFIX, dir);
+      OWLOntologyManager writer = OWLManager.createOWLOntologyManager();
+      OWLOntology cached = writer.createOntology(file.toURI());
+      writer.addAxioms(cached, axioms);
+      writer.saveOntology(cached, new RDFXMLOntologyFormat(), tmp.toURI());
+      if(!tmp.renameTo(file)) tmp.delete();
+    }
+    catch(IOException e) {
+      ErrorHandler.warn(e, "saving classification to cache file " + file, "the model will be classified next run");
+      if(tmp != null) tmp.delete();
+    }
+    catch(OWLException e) {
+      ErrorHandler.warn(e, "saving classification to cache file " + file, "the model will be classified next run");
+      if(tmp != null) tmp.delete();
+    }
+  }
+}
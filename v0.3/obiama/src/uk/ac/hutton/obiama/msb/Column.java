@@ -0,0 +1,206 @@
+/*
+ * uk.ac.hutton.obiama.msb: Column.java 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.msb;
+
+import java.net.URI;
+
+/**
+ * <!-- Column -->
+ * 
+ * The values of a functional numeric data property for all the members of a
+ * concept, as a primitive array, obtained from
+ * {@link Var#getValuesFor(Concept)}. Actions updating the property for every
+ * member can work on the array in a loop, and write the changes back with
+ * {@link Var#setValuesFor(Concept, Column)}, rather than getting a
+ * {@link Value} for each individual.
+ * 
+ * Individuals with no value for the property have <code>NaN</code> in the
+ * array. They are given a value if the entry is set to something else; other
+ * entries are written back only if they have changed. Values cannot be unset
+ * through a column.
+ * 
+ * Obtaining a column registers a value for each individual, as getting a
+ * {@link Value} would, so the values are locked for the rest of the step.
+ * Individuals whose values were registered earlier in the step have the
+ * registered value in the column, and cannot be changed through it. Since
+ * there is still a registration with the model state broker per individual,
+ * a column saves the caller's calls per individual, but is not otherwise
+ * cheaper for the broker than getting each {@link Value}: it should not be
+ * chosen for large concepts in the expectation that it will be. If any
+ * changed entry cannot be written back, none are.
+ * 
+ * @author Gary Polhill
+ */
+public final class Column {
+  /**
+   * The variable the values are for
+   */
+  final FunctionalDataVar var;
+
+  /**
+   * The concept the individuals are members of
+   */
+  final URI concept;
+
+  /**
+   * The individuals
+   */
+  final URI individuals[];
+
+  /**
+   * The values, which the caller may change
+   */
+  final double values[];
+
+  /**
+   * The values when the column was obtained
+   */
+  final double original[];
+
+  /**
+   * Individuals that had no value when the column was obtained
+   */
+  final boolean missing[];
+
+  /**
+   * The values registered with the model state broker for the individuals,
+   * which lock them for the rest of the step, and which changes are written
+   * back to
+   */
+  final Value<?> registered[];
+
+  /**
+   * Constructor
+   * 
+   * @param var The variable the values are for
+   * @param concept The concept the individuals are members of
+   * @param size The number of members
+   */
+  Column(FunctionalDataVar var, URI concept, int size) {
+    this.var = var;
+    this.concept = concept;
+    individuals = new URI[size];
+    values = new double[size];
+    original = new double[size];
+    missing = new boolean[size];
+    registered = new Value<?>[size];
+  }
+
+  /**
+   * <!-- size -->
+   * 
+   * @return The number of individuals in the column
+   */
+  public int size() {
+    return individuals.length;
+  }
+
+  /**
+   * <!-- getIndividuals -->
+   * 
+   * @return The individuals, in the same order as the values (the array is not
+   *         copied, and should not be changed)
+   */
+  public URI[] getIndividuals() {
+    return individuals;
+  }
+
+  /**
+   * <!-- getValues -->
+   * 
+   * @return The values, which may be changed in place before calling
+   *         {@link Var#setValuesFor(Concept, Column)}
+   */
+  public double[] getValues() {
+    return values;
+  }
+
+  /**
+   * <!-- getIndividual -->
+   * 
+   * @param i An entry in the column
+   * @return The individual
+   */
+  public URI getIndividual(int i) {
+    return individuals[i];
+  }
+
+  /**
+   * <!-- get -->
+   * 
+   * @param i An entry in the column
+   * @return The value for the individual (<code>NaN</code> if it has none)
+   */
+  public double get(int i) {
+    return values[i];
+  }
+
+  /**
+   * <!-- set -->
+   * 
+   * @param i An entry in the column
+   * @param value The new value for the individual
+   */
+  public void set(int i, double value) {
+    values[i] = value;
+  }
+
+  /**
+   * <!-- isMissing -->
+   * 
+   * @param i An entry in the column
+   * @return <code>true</code> if the individual has no value
+   */
+  public boolean isMissing(int i) {
+    return missing[i] && Double.isNaN(values[i]);
+  }
+
+  /**
+   * <!-- isChanged -->
+   * 
+   * @param i An entry in the column
+   * @return <code>true</code> if the value for the individual is to be written
+   *         back
+   */
+  boolean isChanged(int i) {
+    return missing[i] ? !Double.isNaN(values[i]) : Double.compare(values[i], original[i]) != 0;
+  }
+
+  /**
+   * <!-- getVar -->
+   * 
+   * @return The variable the values are for
+   */
+  public Var getVar() {
+    return var;
+  }
+
+  /**
+   * <!-- getConcept -->
+   * 
+   * @return The URI of the concept the individuals are members of
+   */
+  public URI getConcept() {
+    return concept;
+  }
+}
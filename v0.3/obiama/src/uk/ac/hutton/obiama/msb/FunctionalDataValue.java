@@ -28,11 +28,9 @@ import java.math.BigInteger;
 import java.net.URI;
 import java.util.Set;
 
-import javax.xml.datatype.DatatypeConfigurationException;
-import javax.xml.datatype.DatatypeFactory;
+import org.semanticweb.owl.vocab.XSDVocabulary;
 
 import uk.ac.hutton.obiama.action.Action;
-import uk.ac.hutton.obiama.exception.Bug;
 import uk.ac.hutton.obiama.exception.InconsistentRangeException;
 import uk.ac.hutton.obiama.exception.IndividualAlreadyHasPropertyException;
 import uk.ac.hutton.obiama.exception.IndividualDoesNotHavePropertyException;
@@ -63,6 +61,21 @@ public class FunctionalDataValue<T> extends AbstractFunctionalValue<T> implement
    */
   T original;
 
+  /**
+   * For variables with a floating point range, or an integer range no wider
+   * than long, the value as a primitive. When {@link #unboxed} is
+   * <code>true</code>, this is the value presented to the caller, and
+   * {@link #stored} is out of date. The value is only boxed when it is needed
+   * as an object, including when it is written back to the ontology.
+   */
+  double storedDouble;
+
+  /**
+   * Whether the value is held in {@link #storedDouble} rather than
+   * {@link #stored}
+   */
+  boolean unboxed;
+
   /**
    * The variable from which the data value was obtained
    */
@@ -94,6 +107,11 @@ public class FunctionalDataValue<T> extends AbstractFunctionalValue<T> implement
     return manifest(var.msb, new FunctionalDataValue<U>(individual, var, existing, fcmp));
   }
 
+  static <U> Value<U> manifest(URI individual, FunctionalDataVar var, boolean missing, double original)
+      throws IntegrationInconsistencyException {
+    return manifest(var.msb, new FunctionalDataValue<U>(individual, var, missing, original));
+  }
+
   /**
    * Basic constructor
    * 
@@ -123,7 +141,7 @@ public class FunctionalDataValue<T> extends AbstractFunctionalValue<T> implement
       }
       try {
         stored = XSDHelper.instantiate(var.type, valueStr);
-        original = XSDHelper.instantiate(var.type, valueStr);
+        original = XSDHelper.isImmutable(stored) ? stored : XSDHelper.<T> instantiate(var.type, valueStr);
       }
       catch(ClassCastException e) {
         throw new InconsistentRangeException(var.getURI(), var.getType().getURI(), null, var.process);
@@ -180,6 +198,32 @@ public class FunctionalDataValue<T> extends AbstractFunctionalValue<T> implement
     this.fcmp = fcmp;
   }
 
+  /**
+   * Constructor for values read into a {@link Column}, which has already read
+   * the original value from the ontology
+   * 
+   * @param individual
+   * @param var
+   * @param missing <code>true</code> if the individual had no value
+   * @param originalValue The value the individual had otherwise
+   * @throws IntegrationInconsistencyException
+   */
+  private FunctionalDataValue(URI individual, FunctionalDataVar var, boolean missing, double originalValue)
+      throws IntegrationInconsistencyException {
+    super(individual, var);
+    this.var = var;
+    writeOnly = missing;
+    stored = null;
+    original = null;
+    if(!missing) {
+      storedDouble = originalValue;
+      unboxed = true;
+      box();
+      original = stored;
+    }
+    fcmp = var.getFCmp();
+  }
+
   /**
    * <!-- update -->
    * 
@@ -192,6 +236,7 @@ public class FunctionalDataValue<T> extends AbstractFunctionalValue<T> implement
    */
   @Override
   void update(AbstractModelStateBroker msb) throws IntegrationInconsistencyException {
+    box();
     if(original == null && stored == null) return;
 
     if((original == null && stored != null) || !original.equals(stored)) {
@@ -215,6 +260,7 @@ public class FunctionalDataValue<T> extends AbstractFunctionalValue<T> implement
    * @see uk.ac.hutton.obiama.msb.Value#get()
    */
   public T get() throws IntegrationInconsistencyException {
+    box();
     if(stored == null) {
       throw new UninitialisedValueException(var.process, individual.getURI(), var.property.getURI());
     }
@@ -237,6 +283,7 @@ public class FunctionalDataValue<T> extends AbstractFunctionalValue<T> implement
       throw new ModificationOfReadOnlyValueException(var.process, individual.getURI(), var.property.getURI());
     }
 
+    box();
     T tmp = stored;
     stored = value;
     return tmp;
@@ -251,11 +298,84 @@ public class FunctionalDataValue<T> extends AbstractFunctionalValue<T> implement
       throw new ModificationOfReadOnlyValueException(var.process, individual.getURI(), var.property.getURI());
     }
 
+    box();
     T tmp = stored;
     stored = XSDHelper.instantiate(var.type, value);
     return tmp;
   }
 
+  /**
+   * <!-- getDouble -->
+   * 
+   * Return the value as a primitive, without boxing it if it was set as one
+   * 
+   * @see uk.ac.hutton.obiama.msb.AbstractValue#getDouble()
+   */
+  @Override
+  public double getDouble() throws IntegrationInconsistencyException {
+    if(unboxed) return storedDouble;
+    return super.getDouble();
+  }
+
+  /**
+   * <!-- setDouble -->
+   * 
+   * Set the value from a primitive. For the numeric types Java has primitives
+   * for, the value is kept as a primitive until it is needed as an object.
+   * Integer values are held as doubles, so longs of more than 53 bits lose
+   * precision.
+   * 
+   * @see uk.ac.hutton.obiama.msb.Value#setDouble(double)
+   */
+  @SuppressWarnings("unchecked")
+  public double setDouble(double value) throws IntegrationInconsistencyException {
+    if(var.readOnly()) {
+      throw new ModificationOfReadOnlyValueException(var.process, individual.getURI(), var.property.getURI());
+    }
+
+    double tmp = (unboxed || stored != null) ? getDouble() : Double.NaN;
+    Class<?> type = var.getJavaType();
+    if(!XSDHelper.holdsDouble(type, value)) {
+      throw new InconsistentRangeException(var.getURI(), var.getType().getURI(), XSDVocabulary.DOUBLE.getURI(),
+          var.process);
+    }
+    if(type == BigDecimal.class || type == BigInteger.class) {
+      stored = (T)XSDHelper.fromDouble(type, value);
+      unboxed = false;
+    }
+    else {
+      storedDouble = type == Float.class ? (float)value : value;
+      unboxed = true;
+      stored = null;
+    }
+    return tmp;
+  }
+
+  /**
+   * <!-- addDouble -->
+   * 
+   * Add an amount to the value, keeping it as a primitive where possible
+   * 
+   * @see uk.ac.hutton.obiama.msb.AbstractValue#addDouble(double)
+   */
+  @Override
+  public double addDouble(double amount) throws IntegrationInconsistencyException {
+    setDouble(getDouble() + amount);
+    return unboxed ? storedDouble : getDouble();
+  }
+
+  /**
+   * <!-- box -->
+   * 
+   * If the value is held as a primitive, put it in {@link #stored}
+   */
+  @SuppressWarnings("unchecked")
+  private void box() {
+    if(!unboxed) return;
+    stored = (T)XSDHelper.fromDouble(var.getJavaType(), storedDouble);
+    unboxed = false;
+  }
+
   /**
    * <!-- unset -->
    * 
@@ -270,6 +390,7 @@ public class FunctionalDataValue<T> extends AbstractFunctionalValue<T> implement
     }
 
     stored = null;
+    unboxed = false;
   }
 
   /**
@@ -282,10 +403,11 @@ public class FunctionalDataValue<T> extends AbstractFunctionalValue<T> implement
    */
   @SuppressWarnings({ "unchecked", "rawtypes" })
   public int compareTo(T o) {
+    box();
     if(stored == null) return o == null ? 0 : -1;
     if(fcmp != null && (stored instanceof Double || stored instanceof Float) && o instanceof Number) {
       int result = fcmp.compare((Number)stored, (Number)o);
-      Log.comparison(var, (Number)stored, (Object)o, result);
+      if(Log.isEnabled(Log.Messages.COMPARISON)) Log.comparison(var, (Number)stored, (Object)o, result);
       return result;
     }
     if(stored instanceof Comparable && o instanceof Comparable) {
@@ -296,75 +418,96 @@ public class FunctionalDataValue<T> extends AbstractFunctionalValue<T> implement
     }
   }
 
+  /**
+   * <!-- compareToString -->
+   * 
+   * Compare the value with a literal. The literal is parsed to the class of
+   * the value by the variable, which keeps it parsed for later comparisons, as
+   * the literals compared with (e.g. the tests of a decision tree) are usually
+   * constant.
+   * 
+   * @param arg The literal
+   * @return The result of comparing the value with the parsed literal
+   * @throws IntegrationInconsistencyException
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
   public int compareToString(String arg) throws IntegrationInconsistencyException {
+    box();
     if(stored == null) {
       throw new UninitialisedValueException(var.process, individual.getURI(), var.property.getURI());
     }
-    if(fcmp != null && (stored instanceof Double || stored instanceof Float)) {
-      Number o;
-      if(stored instanceof Double) {
-        o = Double.parseDouble(arg);
-      }
-      else {
-        o = Float.parseFloat(arg);
-      }
-      int result = fcmp.compare((Number)stored, o);
-      Log.comparison(var, (Number)stored, (Object)o, result);
+    Object o = var.parsedArgument(stored, arg);
+    if(o == null) {
+      return stored.toString().compareTo(arg);
+    }
+    else if(fcmp != null && (stored instanceof Double || stored instanceof Float)) {
+      int result = fcmp.compare((Number)stored, (Number)o);
+      if(Log.isEnabled(Log.Messages.COMPARISON)) Log.comparison(var, (Number)stored, o, result);
       return result;
     }
-    else if(stored instanceof Double) {
-      return ((Double)stored).compareTo(Double.parseDouble(arg));
+    else if(stored instanceof javax.xml.datatype.XMLGregorianCalendar) {
+      return ((javax.xml.datatype.XMLGregorianCalendar)stored).compare((javax.xml.datatype.XMLGregorianCalendar)o);
     }
-    else if(stored instanceof Float) {
-      return ((Float)stored).compareTo(Float.parseFloat(arg));
+    else if(stored instanceof javax.xml.datatype.Duration) {
+      return ((javax.xml.datatype.Duration)stored).compare((javax.xml.datatype.Duration)o);
     }
-    else if(stored instanceof Integer) {
-      return ((Integer)stored).compareTo(Integer.parseInt(arg));
+    else {
+      return ((Comparable)stored).compareTo(o);
     }
-    else if(stored instanceof Long) {
-      return ((Long)stored).compareTo(Long.parseLong(arg));
+  }
+
+  /**
+   * <!-- parseLike -->
+   * 
+   * Parse a literal to the same class as a value
+   * 
+   * @param like The value
+   * @param arg The literal
+   * @return The parsed literal, or <code>null</code> if values of the class of
+   *         <code>like</code> are compared with literals as strings
+   */
+  static Object parseLike(Object like, String arg) {
+    if(like instanceof Double) {
+      return Double.parseDouble(arg);
     }
-    else if(stored instanceof Short) {
-      return ((Short)stored).compareTo(Short.parseShort(arg));
+    else if(like instanceof Float) {
+      return Float.parseFloat(arg);
     }
-    else if(stored instanceof Byte) {
-      return ((Byte)stored).compareTo(Byte.parseByte(arg));
+    else if(like instanceof Integer) {
+      return Integer.parseInt(arg);
     }
-    else if(stored instanceof String) {
-      return ((String)stored).compareTo(arg);
+    else if(like instanceof Long) {
+      return Long.parseLong(arg);
     }
-    else if(stored instanceof URI) {
-      return ((URI)stored).compareTo(URI.create(arg));
+    else if(like instanceof Short) {
+      return Short.parseShort(arg);
     }
-    else if(stored instanceof Boolean) {
-      return ((Boolean)stored).compareTo(Boolean.parseBoolean(arg));
+    else if(like instanceof Byte) {
+      return Byte.parseByte(arg);
     }
-    else if(stored instanceof BigDecimal) {
-      return ((BigDecimal)stored).compareTo(new BigDecimal(arg));
+    else if(like instanceof String) {
+      return arg;
     }
-    else if(stored instanceof BigInteger) {
-      return ((BigInteger)stored).compareTo(new BigInteger(arg));
+    else if(like instanceof URI) {
+      return URI.create(arg);
     }
-    else if(stored instanceof javax.xml.datatype.XMLGregorianCalendar) {
-      try {
-        DatatypeFactory factory = DatatypeFactory.newInstance();
-        return ((javax.xml.datatype.XMLGregorianCalendar)stored).compare(factory.newXMLGregorianCalendar(arg));
-      }
-      catch(DatatypeConfigurationException e) {
-        throw new Bug(e.getMessage());
-      }
+    else if(like instanceof Boolean) {
+      return Boolean.parseBoolean(arg);
     }
-    else if(stored instanceof javax.xml.datatype.Duration) {
-      try {
-        DatatypeFactory factory = DatatypeFactory.newInstance();
-        return ((javax.xml.datatype.Duration)stored).compare(factory.newDuration(arg));
-      }
-      catch(DatatypeConfigurationException e) {
-        throw new Bug(e.getMessage());
-      }
+    else if(like instanceof BigDecimal) {
+      return new BigDecimal(arg);
+    }
+    else if(like instanceof BigInteger) {
+      return new BigInteger(arg);
+    }
+    else if(like instanceof javax.xml.datatype.XMLGregorianCalendar) {
+      return XSDHelper.instantiate(XSDVocabulary.DATE_TIME, arg);
+    }
+    else if(like instanceof javax.xml.datatype.Duration) {
+      return XSDHelper.instantiate(XSDVocabulary.DURATION, arg);
     }
     else {
-      return stored.toString().compareTo(arg);
+      return null;
     }
   }
 
@@ -376,10 +519,11 @@ public class FunctionalDataValue<T> extends AbstractFunctionalValue<T> implement
    *         otherwise
    */
   public int nElements() {
-    return stored == null ? 0 : 1;
+    return stored == null && !unboxed ? 0 : 1;
   }
 
   public int compareTo(FunctionalDataValue<T> o) {
+    o.box();
     return compareTo(o.stored);
   }
 
@@ -24,14 +24,22 @@
 package uk.ac.hutton.obiama.msb;
 
 import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 
 import org.semanticweb.owl.model.OWLDataProperty;
+import org.semanticweb.owl.model.OWLIndividual;
 import org.semanticweb.owl.vocab.XSDVocabulary;
 
 import uk.ac.hutton.obiama.action.Process;
+import uk.ac.hutton.obiama.exception.Bug;
 import uk.ac.hutton.obiama.exception.ErrorHandler;
 import uk.ac.hutton.obiama.exception.InconsistentRangeException;
 import uk.ac.hutton.obiama.exception.IntegrationInconsistencyException;
+import uk.ac.hutton.obiama.exception.ModificationOfLockedValueException;
+import uk.ac.hutton.obiama.exception.ModificationOfReadOnlyValueException;
+import uk.ac.hutton.obiama.exception.NeedFunctionalGotNonFunctionalPropertyException;
 import uk.ac.hutton.obiama.exception.Panic;
 import uk.ac.hutton.util.FloatingPointComparison;
 
@@ -43,8 +51,20 @@ import uk.ac.hutton.util.FloatingPointComparison;
  * @author Gary Polhill
  */
 public class FunctionalDataVar extends AbstractDataVar implements Var {
+  /**
+   * Maximum number of literals kept parsed by
+   * {@link #parsedArgument(Object, String)}; any more are parsed each time
+   */
+  static final int MAX_PARSED_ARGUMENTS = 256;
+
   private FloatingPointComparison fcmp;
 
+  /**
+   * Literals values of this variable have been compared with, parsed to the
+   * class of the values
+   */
+  private final Map<String, Object> parsedArguments = new HashMap<String, Object>();
+
   /**
    * Constructor
    * 
@@ -112,6 +132,114 @@ public class FunctionalDataVar extends AbstractDataVar implements Var {
       return FunctionalDataValue.manifest(individual, this, false);
   }
 
+  /**
+   * <!-- getFCmp -->
+   * 
+   * @return The floating point comparison for values of this variable, or
+   *         <code>null</code> if there isn't one
+   */
+  FloatingPointComparison getFCmp() {
+    return fcmp;
+  }
+
+  /**
+   * <!-- getValuesFor -->
+   * 
+   * Read the values for all members of a concept into a column. A value is
+   * registered with the model state broker for each member, locking it as
+   * {@link #getValueFor(URI)} would. Members whose values were registered
+   * earlier in the step (e.g. by another action) get the registered value,
+   * and cannot be written back from the column. The ontology is only read for
+   * members not already registered.
+   * 
+   * @see uk.ac.hutton.obiama.msb.AbstractVar#getValuesFor(uk.ac.hutton.obiama.msb.Concept)
+   */
+  @Override
+  public Column getValuesFor(Concept concept) throws IntegrationInconsistencyException {
+    Class<?> javaType = getJavaType();
+    if(javaType != Double.class && javaType != Float.class && javaType != Long.class && javaType != Integer.class
+      && javaType != Short.class && javaType != Byte.class) {
+      throw new InconsistentRangeException(getURI(), type.getURI(), XSDVocabulary.DOUBLE.getURI(), process);
+    }
+    Set<OWLIndividual> members = msb.getMembers(process, concept.getURI());
+    Column column = new Column(this, concept.getURI(), members.size());
+    int i = 0;
+    for(OWLIndividual member: members) {
+      URI individual = member.getURI();
+      column.individuals[i] = individual;
+      Value<?> value;
+      if(msb.getLockedValue(getURI(), individual) != null) {
+        // Registering returns a ShellValue of the locked value
+        value = FunctionalDataValue.manifest(individual, this, true, Double.NaN);
+      }
+      else {
+        Set<String> literals = msb.getDataPropertyValues(member, property);
+        String literal = null;
+        if(literals != null) {
+          for(String str: literals) {
+            if(literal == null) {
+              literal = str;
+            }
+            else if(!literal.equals(str)) {
+              throw new NeedFunctionalGotNonFunctionalPropertyException(process, getURI(), literal, str);
+            }
+          }
+        }
+        double original;
+        try {
+          original = literal == null ? Double.NaN : Double.parseDouble(literal);
+        }
+        catch(NumberFormatException e) {
+          throw new InconsistentRangeException(getURI(), type.getURI(), null, process);
+        }
+        value = FunctionalDataValue.manifest(individual, this, literal == null, original);
+      }
+      column.registered[i] = value;
+      column.missing[i] = value.nElements() == 0;
+      column.original[i] = column.missing[i] ? Double.NaN : value.getDouble();
+      column.values[i] = column.original[i];
+      i++;
+    }
+    return column;
+  }
+
+  /**
+   * <!-- setValuesFor -->
+   * 
+   * Set the changed values in a column on the values registered for them when
+   * the column was read, with no further registration or reading of the
+   * ontology. The model state broker makes all the changes together when it
+   * next updates. Values that were already registered when the column was read
+   * are locked, and cannot be changed. Every changed entry is checked before
+   * any is set, so if one cannot be written back, none are.
+   * 
+   * @see uk.ac.hutton.obiama.msb.AbstractVar#setValuesFor(uk.ac.hutton.obiama.msb.Concept,
+   *      uk.ac.hutton.obiama.msb.Column)
+   */
+  @Override
+  public void setValuesFor(Concept concept, Column column) throws IntegrationInconsistencyException {
+    if(column.var != this || !column.concept.equals(concept.getURI())) {
+      throw new Bug("Column for " + column.var.getURI() + " of " + column.concept + " written back to " + getURI()
+        + " of " + concept.getURI());
+    }
+    Class<?> javaType = getJavaType();
+    for(int i = 0; i < column.size(); i++) {
+      if(!column.isChanged(i)) continue;
+      if(readOnly()) {
+        throw new ModificationOfReadOnlyValueException(process, column.individuals[i], getURI());
+      }
+      if(column.registered[i] instanceof ShellValue<?>) {
+        throw new ModificationOfLockedValueException(process, column.individuals[i], getURI());
+      }
+      if(!XSDHelper.holdsDouble(javaType, column.values[i])) {
+        throw new InconsistentRangeException(getURI(), type.getURI(), XSDVocabulary.DOUBLE.getURI(), process);
+      }
+    }
+    for(int i = 0; i < column.size(); i++) {
+      if(column.isChanged(i)) column.registered[i].setDouble(column.values[i]);
+    }
+  }
+
   /**
    * <!-- isFunctional -->
    * 
@@ -134,6 +262,27 @@ public class FunctionalDataVar extends AbstractDataVar implements Var {
     return false;
   }
 
+  /**
+   * <!-- parsedArgument -->
+   * 
+   * Return a literal a value of this variable is being compared with, parsed
+   * to the class of the value. The variable is shared by all individuals, so a
+   * literal is parsed once however many values it is compared with.
+   * 
+   * @param like The value
+   * @param arg The literal
+   * @return The parsed literal, or <code>null</code> if it should be compared
+   *         as a string
+   */
+  synchronized Object parsedArgument(Object like, String arg) {
+    Object parsed = parsedArguments.get(arg);
+    if(parsed == null || parsed.getClass() != like.getClass()) {
+      parsed = FunctionalDataValue.parseLike(like, arg);
+      if(parsed != null && parsedArguments.size() < MAX_PARSED_ARGUMENTS) parsedArguments.put(arg, parsed);
+    }
+    return parsed;
+  }
+
   /**
    * <!-- compare -->
    * 
@@ -34,6 +34,7 @@ import uk.ac.hutton.obiama.exception.IndividualAlreadyHasPropertyException;
 import uk.ac.hutton.obiama.exception.IndividualDoesNotHavePropertyException;
 import uk.ac.hutton.obiama.exception.IntegrationInconsistencyException;
 import uk.ac.hutton.obiama.exception.ModificationOfReadOnlyValueException;
+import uk.ac.hutton.obiama.exception.NeedDataGotObjectPropertyException;
 import uk.ac.hutton.obiama.exception.UninitialisedValueException;
 
 /**
@@ -263,6 +264,17 @@ public class FunctionalObjectValue extends AbstractFunctionalValue<URI> {
     return stored.getURI().compareTo(o.stored.getURI());
   }
   
+  /**
+   * <!-- setDouble -->
+   * 
+   * Throw an exception because numbers are not values of object properties
+   * 
+   * @see uk.ac.hutton.obiama.msb.Value#setDouble(double)
+   */
+  public double setDouble(double value) throws IntegrationInconsistencyException {
+    throw new NeedDataGotObjectPropertyException(var.process, var.property.getURI());
+  }
+
   public int compareToString(String arg) throws IntegrationInconsistencyException {
     if(stored == null)
       throw new UninitialisedValueException(var.process, individual.getURI(), var.property.getURI());
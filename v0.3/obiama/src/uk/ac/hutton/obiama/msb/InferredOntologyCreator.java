@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.semanticweb.owl.inference.OWLReasoner;
@@ -35,6 +36,7 @@ import org.semanticweb.owl.inference.OWLReasonerException;
 import org.semanticweb.owl.model.AddAxiom;
 import org.semanticweb.owl.model.OWLAxiom;
 import org.semanticweb.owl.model.OWLClass;
+import org.semanticweb.owl.model.OWLEntity;
 import org.semanticweb.owl.model.OWLException;
 import org.semanticweb.owl.model.OWLOntology;
 import org.semanticweb.owl.model.OWLOntologyChangeException;
@@ -50,7 +52,6 @@ import org.semanticweb.owl.util.InferredEquivalentDataPropertiesAxiomGenerator;
 import org.semanticweb.owl.util.InferredEquivalentObjectPropertyAxiomGenerator;
 import org.semanticweb.owl.util.InferredInverseObjectPropertiesAxiomGenerator;
 import org.semanticweb.owl.util.InferredObjectPropertyCharacteristicAxiomGenerator;
-import org.semanticweb.owl.util.InferredOntologyGenerator;
 import org.semanticweb.owl.util.InferredPropertyAssertionGenerator;
 import org.semanticweb.owl.util.InferredSubClassAxiomGenerator;
 import org.semanticweb.owl.util.InferredSubDataPropertyAxiomGenerator;
@@ -59,6 +60,7 @@ import org.semanticweb.owl.util.InferredSubObjectPropertyAxiomGenerator;
 import uk.ac.hutton.obiama.exception.ErrorHandler;
 import uk.ac.hutton.obiama.exception.Panic;
 import uk.ac.hutton.obiama.model.OWLSpecies;
+import uk.ac.hutton.obiama.model.Profiler;
 
 /**
  * InferredOntologyCreator
@@ -103,6 +105,16 @@ import uk.ac.hutton.obiama.model.OWLSpecies;
  * name, class, or OWLReasoner object.
  * </p>
  * 
+ * <p>
+ * Checking the consistency of the input ontologies is an extra reasoning task,
+ * so instances only do it when it is due according to the schedule set with
+ * {@link #setConsistencyCheck(int)}: for every inference, every N inferences,
+ * only when {@link #checkConsistency()} is called (e.g. at the end of a run),
+ * or never. The model state broker follows the same schedule for its updates,
+ * using {@link #checkConsistency(ReasonerSession, Set)}. The inferred axioms
+ * and their number are only worked out if asked for.
+ * </p>
+ * 
  * @author Gary Polhill
  * 
  */
@@ -117,6 +129,33 @@ public class InferredOntologyCreator {
    */
   public static final OWLSpecies DEFAULT_OWL_SPP = OWLSpecies.OWL_DL;
 
+  /**
+   * Consistency check schedule: check before every inference
+   */
+  public static final int CHECK_EVERY = 1;
+
+  /**
+   * Consistency check schedule: never check
+   */
+  public static final int CHECK_OFF = 0;
+
+  /**
+   * Consistency check schedule: only check when {@link #checkConsistency()} is
+   * called
+   */
+  public static final int CHECK_AT_END = -1;
+
+  /**
+   * Number of inferences between consistency checks, or one of
+   * {@link #CHECK_OFF} and {@link #CHECK_AT_END}
+   */
+  private static int consistencyCheck = CHECK_EVERY;
+
+  /**
+   * Number of inferences made by instances since the schedule was set
+   */
+  private static long nInferences = 0L;
+
   /**
    * OWLOntologyManager to use for handling the ontologies
    */
@@ -143,13 +182,13 @@ public class InferredOntologyCreator {
   private Set<OWLOntology> inconsistentOntologies;
 
   /**
-   * The set of axioms from the original ontology/ontologies
+   * Whether the consistency of the ontologies has been checked
    */
-  private Set<OWLAxiom> originalAxioms;
+  private boolean consistencyChecked;
 
   /**
-   * The set of axioms in the inferred ontology (which may intersect with the
-   * set of original axioms)
+   * The set of axioms in the inferred ontology that are not in the original
+   * ontologies (<code>null</code> until asked for)
    */
   private Set<OWLAxiom> inferredAxioms;
 
@@ -966,6 +1005,124 @@ public class InferredOntologyCreator {
     }
   }
 
+  /**
+   * <!-- infer -->
+   * 
+   * Obtain an inferred ontology using a reasoner session, which only reloads
+   * those ontologies that have changed since it last loaded them.
+   * 
+   * @param inferred
+   * @param session
+   * @param ontologies
+   */
+  static void infer(OWLOntology inferred, ReasonerSession session, Set<OWLOntology> ontologies) {
+    infer(inferred, session, ontologies, DEFAULT_OWL_SPP, null, true, true);
+  }
+
+  /**
+   * <!-- inferIndividuals -->
+   * 
+   * Infer A-box axioms using a reasoner session
+   * 
+   * @param inferred
+   * @param session
+   * @param ontologies
+   */
+  static void inferIndividuals(OWLOntology inferred, ReasonerSession session, Set<OWLOntology> ontologies) {
+    infer(inferred, session, ontologies, DEFAULT_OWL_SPP, null, true, false);
+  }
+
+  /**
+   * <!-- inferIndividuals -->
+   * 
+   * Infer A-box axioms using a reasoner session, only materialising class and
+   * property assertions for the entities in a given vocabulary
+   * 
+   * @param inferred
+   * @param session
+   * @param ontologies
+   * @param vocabulary
+   */
+  static void inferIndividuals(OWLOntology inferred, ReasonerSession session, Set<OWLOntology> ontologies,
+      Set<OWLEntity> vocabulary) {
+    infer(inferred, session, ontologies, DEFAULT_OWL_SPP, vocabulary, true, false);
+  }
+
+  /**
+   * <!-- infer -->
+   * 
+   * Main static method for obtaining an inferred ontology using a reasoner
+   * session
+   * 
+   * @param inferred
+   * @param session
+   * @param ontologies
+   * @param spp
+   * @param vocabulary
+   * @param realiseIndividuals
+   * @param classifyTaxonomy
+   */
+  private static void infer(OWLOntology inferred, ReasonerSession session, Set<OWLOntology> ontologies,
+      OWLSpecies spp, Set<OWLEntity> vocabulary, boolean realiseIndividuals, boolean classifyTaxonomy) {
+    Set<OWLOntology> myOntologies = new HashSet<OWLOntology>(ontologies);
+    myOntologies.remove(inferred);
+    try {
+      OWLReasoner reasoner = session.synchronise(myOntologies);
+      generateWithExceptions(session.getManager(), inferred, reasoner, spp,
+          spp == null ? null : session.getCheckedAxioms(spp), vocabulary, realiseIndividuals, classifyTaxonomy);
+    }
+    catch(OWLException e) {
+      ErrorHandler.fatal(e, "inferring from ontologies " + myOntologies + " using reasoner class "
+        + session.getReasoner().getClass().getName());
+      throw new Panic();
+    }
+  }
+
+  /**
+   * <!-- inferModel -->
+   * 
+   * Infer A-box and T-box axioms from all the ontologies in the manager, as
+   * {@link #infer(OWLOntologyManager, OWLOntology)}, but loading them from the
+   * classification cache if an earlier run has already inferred them from the
+   * same axioms with the same reasoner, and saving them to the cache if not.
+   * This is meant for the model structure, which does not change between runs.
+   * 
+   * @param manager
+   * @param inferred
+   */
+  static void inferModel(OWLOntologyManager manager, OWLOntology inferred) {
+    if(!ClassificationCache.isEnabled()) {
+      infer(manager, inferred);
+      return;
+    }
+    Class<?> reasonerClass;
+    try {
+      reasonerClass = ObiamaSetUp.getRequestedReasonerClass();
+    }
+    catch(ClassNotFoundException e) {
+      ErrorHandler.fatal(e, "finding reasoner class to look up the classification cache");
+      throw new Panic();
+    }
+    Profiler.Sample sample = Profiler.start();
+    String key = ClassificationCache.key(manager.getOntologies(), reasonerClass, DEFAULT_OWL_SPP, true, true);
+    Set<OWLAxiom> cached = ClassificationCache.load(key);
+    sample = Profiler.lap(sample, Profiler.Category.SETUP, "classification cache load");
+    if(cached != null) {
+      try {
+        manager.addAxioms(inferred, cached);
+      }
+      catch(OWLOntologyChangeException e) {
+        ErrorHandler.fatal(e, "adding cached classification to inferred ontology " + inferred.getURI());
+        throw new Panic();
+      }
+      return;
+    }
+    infer(manager, inferred);
+    sample = Profiler.lap(sample, Profiler.Category.SETUP, "classify model");
+    ClassificationCache.save(key, inferred.getAxioms());
+    Profiler.stop(sample, Profiler.Category.SETUP, "classification cache save");
+  }
+
   public static void infer(OWLOntologyManager manager, OWLOntology inferred, OWLSpecies spp) {
     infer(manager, inferred, spp, true, true);
   }
@@ -1805,11 +1962,41 @@ public class InferredOntologyCreator {
     reasoner.clearOntologies();
     reasoner.loadOntologies(ontologies);
 
-    if(classifyTaxonomy) {
+    generateWithExceptions(manager, inferred, reasoner, spp, null, null, realiseIndividuals, classifyTaxonomy);
+  }
+
+  /**
+   * <!-- generateWithExceptions -->
+   * 
+   * Generate the inferred axioms from the ontologies already loaded in a
+   * reasoner. Classification and realisation are only done if the reasoner
+   * has not already done them for the ontologies it has loaded. Only the
+   * generated axioms are checked against the species, and only those that
+   * conform to it are added to the inferred ontology; any axioms already in
+   * it are cleaned as before.
+   * 
+   * @param manager
+   * @param inferred
+   * @param reasoner
+   * @param spp
+   * @param checked Decisions about whether axioms conform to the species,
+   *          kept between calls (or <code>null</code>), as for
+   *          {@link OWLSpecies#conformingAxioms(Set, Map)}
+   * @param vocabulary If not <code>null</code>, only generate class and
+   *          property assertions for these entities (and their subclasses and
+   *          subproperties) when realising individuals
+   * @param realiseIndividuals
+   * @param classifyTaxonomy
+   * @throws OWLException
+   */
+  private static void generateWithExceptions(OWLOntologyManager manager, OWLOntology inferred, OWLReasoner reasoner,
+      OWLSpecies spp, Map<OWLAxiom, Boolean> checked, Set<OWLEntity> vocabulary, boolean realiseIndividuals,
+      boolean classifyTaxonomy) throws OWLException {
+    if(classifyTaxonomy && !reasoner.isClassified()) {
       reasoner.classify();
     }
 
-    if(realiseIndividuals) {
+    if(realiseIndividuals && !reasoner.isRealised()) {
       reasoner.realise();
     }
 
@@ -1830,19 +2017,126 @@ public class InferredOntologyCreator {
       gens.add(new InferredSubObjectPropertyAxiomGenerator());
     }
 
-    if(realiseIndividuals) {
+    if(realiseIndividuals && vocabulary != null) {
+      gens.add(new TargetedClassAssertionAxiomGenerator(vocabulary));
+      gens.add(new TargetedPropertyAssertionGenerator(vocabulary));
+    }
+    else if(realiseIndividuals) {
       gens.add(new InferredClassAssertionAxiomGenerator());
       gens.add(new InferredPropertyAssertionGenerator());
     }
 
-    // Now get the inferred ontology generator to generate some inferred axioms
-    // for us (into our fresh ontology). We specify the reasoner that we want
-    // to use and the inferred axiom generators that we want to use.
-    InferredOntologyGenerator iog = new InferredOntologyGenerator(reasoner, gens);
+    // Now get the inferred axiom generators to generate some inferred axioms
+    // for us, as InferredOntologyGenerator would, but keeping them to one side
+    // so that only they need to be checked against the species
+    Profiler.Sample sample = Profiler.start();
+    boolean fresh = inferred.getAxioms().isEmpty();
+    Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+    for(InferredAxiomGenerator<? extends OWLAxiom> gen: gens) {
+      axioms.addAll(gen.createAxioms(manager, reasoner));
+    }
+    sample = Profiler.lap(sample, Profiler.Category.MSB, "reasoner fill ontology");
+
+    if(spp != null) {
+      if(!fresh) spp.cleanOntology(inferred, manager);
+      axioms = spp.conformingAxioms(axioms, checked);
+    }
+    manager.addAxioms(inferred, axioms);
+    Profiler.stop(sample, Profiler.Category.MSB, "clean ontology");
+  }
+
+  /**
+   * <!-- setConsistencyCheck -->
+   * 
+   * Set how often instances check the consistency of the input ontologies
+   * 
+   * @param every The number of inferences between checks (so 1 checks every
+   *          time), {@link #CHECK_OFF} or {@link #CHECK_AT_END}
+   */
+  public static synchronized void setConsistencyCheck(int every) {
+    consistencyCheck = every < CHECK_AT_END ? CHECK_AT_END : every;
+    nInferences = 0L;
+  }
+
+  /**
+   * <!-- setConsistencyCheck -->
+   * 
+   * Set how often instances check the consistency of the input ontologies from
+   * a string, as given on the command line
+   * 
+   * @param schedule "every", "end", "off", or a number of inferences between
+   *          checks
+   * @throws NumberFormatException if the string is not recognised
+   */
+  public static void setConsistencyCheck(String schedule) throws NumberFormatException {
+    if(schedule.equalsIgnoreCase("every")) setConsistencyCheck(CHECK_EVERY);
+    else if(schedule.equalsIgnoreCase("end")) setConsistencyCheck(CHECK_AT_END);
+    else if(schedule.equalsIgnoreCase("off")) setConsistencyCheck(CHECK_OFF);
+    else {
+      int every = Integer.parseInt(schedule);
+      if(every <= 0) throw new NumberFormatException("Number of inferences between consistency checks must be positive");
+      setConsistencyCheck(every);
+    }
+  }
+
+  /**
+   * <!-- consistencyCheckDue -->
+   * 
+   * Count an inference and say whether the consistency should be checked
+   * before it
+   * 
+   * @return <code>true</code> if the consistency should be checked
+   */
+  static synchronized boolean consistencyCheckDue() {
+    long n = nInferences++;
+    return consistencyCheck > 0 && n % consistencyCheck == 0;
+  }
 
-    iog.fillOntology(manager, inferred);
+  /**
+   * <!-- consistencyCheckAtEnd -->
+   * 
+   * @return <code>true</code> if the schedule is {@link #CHECK_AT_END}
+   */
+  static synchronized boolean consistencyCheckAtEnd() {
+    return consistencyCheck == CHECK_AT_END;
+  }
 
-    if(spp != null) spp.cleanOntology(inferred, manager);
+  /**
+   * <!-- checkConsistency -->
+   * 
+   * Check the consistency of a set of ontologies using a reasoner session,
+   * warning about any inconsistent ontologies or unsatisfiable classes found.
+   * Callers use {@link #consistencyCheckDue()} and
+   * {@link #consistencyCheckAtEnd()} to decide when to do this.
+   * 
+   * @param session The reasoner session
+   * @param ontologies The ontologies to check
+   * @return <code>true</code> if no inconsistencies were found
+   */
+  static boolean checkConsistency(ReasonerSession session, Set<OWLOntology> ontologies) {
+    boolean consistent = true;
+    try {
+      OWLReasoner reasoner = session.synchronise(ontologies);
+      for(OWLOntology ontology: ontologies) {
+        if(!reasoner.isConsistent(ontology)) {
+          ErrorHandler.warn("Ontology " + ontology.getURI() + " is inconsistent", "checking consistency",
+              "inferences from it will not be meaningful");
+          consistent = false;
+        }
+      }
+      Set<OWLClass> inconsistent = reasoner.getInconsistentClasses();
+      if(inconsistent.size() > 0) {
+        ErrorHandler.warn("Classes " + inconsistent + " are unsatisfiable", "checking consistency of ontologies "
+          + ontologies, "no individual can be a member of them");
+        consistent = false;
+      }
+    }
+    catch(OWLReasonerException e) {
+      ErrorHandler.fatal(e, "checking consistency of ontologies " + ontologies + " using reasoner class "
+        + session.getReasoner().getClass().getName());
+      throw new Panic();
+    }
+    return consistent;
   }
 
   /**
@@ -1850,19 +2144,33 @@ public class InferredOntologyCreator {
    * 
    * Check the consistency of the input ontologies using the reasoner, and
    * populate sets of inconsistent ontologies and classes to record any
-   * inconsistencies found. The method is also used to fill the set of original
-   * axioms.
+   * inconsistencies found. This is done when an instance is created if a check
+   * is due, but can be called at other times, e.g. at the end of a run when
+   * the schedule is {@link #CHECK_AT_END}.
    * 
    * @throws OWLReasonerException
    */
-  private void checkConsistency() throws OWLReasonerException {
+  public void checkConsistency() throws OWLReasonerException {
+    inconsistentOntologies.clear();
+    inconsistentClasses.clear();
     for(OWLOntology ontology: ontologies) {
       if(!reasoner.isConsistent(ontology)) {
         inconsistentOntologies.add(ontology);
       }
-      originalAxioms.addAll(ontology.getAxioms());
     }
     inconsistentClasses.addAll(reasoner.getInconsistentClasses());
+    consistencyChecked = true;
+  }
+
+  /**
+   * <!-- isConsistencyChecked -->
+   * 
+   * @return <code>true</code> if the consistency of the ontologies has been
+   *         checked, and so the sets of inconsistent classes and ontologies
+   *         mean something
+   */
+  public boolean isConsistencyChecked() {
+    return consistencyChecked;
   }
 
   /**
@@ -1878,6 +2186,7 @@ public class InferredOntologyCreator {
    * <!-- getInconsistentClasses -->
    * 
    * @return the set of inconsistent classes found during the reasoning process
+   *         (empty if the consistency has not been checked)
    */
   public Set<OWLClass> getInconsistentClasses() {
     return inconsistentClasses;
@@ -1887,7 +2196,7 @@ public class InferredOntologyCreator {
    * <!-- getInconsistentOntologies -->
    * 
    * @return the set of inconsistent ontologies found during the reasoning
-   *         process
+   *         process (empty if the consistency has not been checked)
    */
   public Set<OWLOntology> getInconsistentOntologies() {
     return inconsistentOntologies;
@@ -1896,12 +2205,26 @@ public class InferredOntologyCreator {
   /**
    * <!-- getInferredAxioms -->
    * 
+   * Work out the axioms in the inferred ontology that are not in any of the
+   * original ontologies, the first time they are asked for
+   * 
    * @return the set of axioms inferred by the reasoning process
    */
   public Set<OWLAxiom> getInferredAxioms() {
-    Set<OWLAxiom> axioms = new HashSet<OWLAxiom>(inferredAxioms);
-    axioms.removeAll(originalAxioms);
-    return axioms;
+    if(inferredAxioms == null) {
+      inferredAxioms = new HashSet<OWLAxiom>();
+      for(OWLAxiom axiom: inferred.getAxioms()) {
+        boolean original = false;
+        for(OWLOntology ontology: ontologies) {
+          if(ontology.containsAxiom(axiom)) {
+            original = true;
+            break;
+          }
+        }
+        if(!original) inferredAxioms.add(axiom);
+      }
+    }
+    return new HashSet<OWLAxiom>(inferredAxioms);
   }
 
   /**
@@ -1910,7 +2233,8 @@ public class InferredOntologyCreator {
    * @return the number of axioms inferred by the reasoning process
    */
   public int getNInferredAxioms() {
-    return getInferredAxioms().size();
+    if(inferredAxioms == null) getInferredAxioms();
+    return inferredAxioms.size();
   }
 
   /**
@@ -1932,13 +2256,12 @@ public class InferredOntologyCreator {
    */
   private void inferMeasured() throws OWLException {
     long startTime = System.currentTimeMillis();
-    originalAxioms = new HashSet<OWLAxiom>();
-    inferredAxioms = new HashSet<OWLAxiom>();
+    inferredAxioms = null;
     inconsistentClasses = new HashSet<OWLClass>();
     inconsistentOntologies = new HashSet<OWLOntology>();
-    checkConsistency();
+    consistencyChecked = false;
+    if(consistencyCheckDue()) checkConsistency();
     inferWithExceptions(manager, inferred, reasoner, ontologies, spp, realiseIndividuals, classifyTaxonomy);
-    inferredAxioms.addAll(inferred.getAxioms());
     long stopTime = System.currentTimeMillis();
     elapsedTime = (stopTime - startTime);
   }
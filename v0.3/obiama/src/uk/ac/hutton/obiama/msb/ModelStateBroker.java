@@ -25,6 +25,7 @@ package uk.ac.hutton.obiama.msb;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -82,6 +83,16 @@ public interface ModelStateBroker {
 
   public Exception saveState(String directory);
 
+  /**
+   * <!-- dispose -->
+   * 
+   * Free the resources (such as reasoners and threads) the MSB keeps between
+   * updates, at the end of a run, first checking the consistency of the state
+   * if the consistency check is scheduled for the end. The resources are built
+   * again if the MSB is used afterwards, e.g. after {@link #reset()}.
+   */
+  public void dispose();
+
   /**
    * <!-- createState -->
    * 
@@ -92,4 +103,76 @@ public interface ModelStateBroker {
   public void createState();
 
   public Set<ObiamaSchedule> getCreators();
+
+  /**
+   * <!-- getNeighbours -->
+   * 
+   * Get the individuals reachable from an individual by following an object
+   * property up to a given number of times. The result reflects the state as
+   * at the last update.
+   * 
+   * @param individual The individual to start from
+   * @param property The object property to follow
+   * @param hops The maximum number of times to follow the property (negative
+   *          for no limit)
+   * @return The set of individuals reachable, in breadth-first order
+   * @throws IntegrationInconsistencyException
+   */
+  public Set<URI> getNeighbours(URI individual, Var property, int hops) throws IntegrationInconsistencyException;
+
+  /**
+   * <!-- getDegree -->
+   * 
+   * @param individual An individual
+   * @param property An object property
+   * @return The number of values the individual has for the property as at the
+   *         last update
+   * @throws IntegrationInconsistencyException
+   */
+  public int getDegree(URI individual, Var property) throws IntegrationInconsistencyException;
+
+  /**
+   * <!-- breadthFirst -->
+   * 
+   * Traverse the network formed by an object property breadth first.
+   * 
+   * @param individual The individual to start from
+   * @param property The object property to follow
+   * @param hops The maximum number of times to follow the property (negative
+   *          for no limit)
+   * @return The individuals in the order they were visited
+   * @throws IntegrationInconsistencyException
+   */
+  public List<URI> breadthFirst(URI individual, Var property, int hops) throws IntegrationInconsistencyException;
+
+  /**
+   * <!-- addStateChangeListener -->
+   * 
+   * Start telling a listener about the changes made to the state by each
+   * update. The listener is told about the current state straight away.
+   * 
+   * @param listener The listener
+   */
+  public void addStateChangeListener(StateChangeListener listener);
+
+  /**
+   * <!-- addStateChangeListener -->
+   * 
+   * Start telling a listener about the changes made by each update to the
+   * members of some classes and the values of some properties. The cost of
+   * finding the changes depends on how many individuals the classes and
+   * properties have, rather than the size of the state. With an empty
+   * vocabulary, the listener is only told when each update has been applied.
+   * 
+   * @param listener The listener
+   * @param vocabulary URIs of the classes and properties to report changes to
+   */
+  public void addStateChangeListener(StateChangeListener listener, Set<URI> vocabulary);
+
+  /**
+   * <!-- removeStateChangeListener -->
+   * 
+   * @param listener A listener to stop telling about changes
+   */
+  public void removeStateChangeListener(StateChangeListener listener);
 }
@@ -33,6 +33,7 @@ import java.net.URISyntaxException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -42,6 +43,7 @@ import java.util.Set;
 import org.semanticweb.owl.apibinding.OWLManager;
 import org.semanticweb.owl.io.RDFXMLOntologyFormat;
 import org.semanticweb.owl.model.AddAxiom;
+import org.semanticweb.owl.model.AxiomType;
 import org.semanticweb.owl.model.OWLAnnotation;
 import org.semanticweb.owl.model.OWLAnnotationAxiom;
 import org.semanticweb.owl.model.OWLAxiom;
@@ -117,6 +119,7 @@ import uk.ac.hutton.obiama.model.Model;
 import uk.ac.hutton.obiama.model.ObiamaOntology;
 import uk.ac.hutton.obiama.model.ObiamaSchedule;
 import uk.ac.hutton.obiama.model.OntologyQuery;
+import uk.ac.hutton.obiama.model.Profiler;
 import uk.ac.hutton.obiama.model.ScheduleOntologyInstance;
 import uk.ac.hutton.util.Reflection;
 import uk.ac.hutton.util.URIComparator;
@@ -161,6 +164,42 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
    */
   private OWLOntology inferredState;
 
+  /**
+   * Reasoner used to infer the state, kept for the life of the MSB so that
+   * ontologies that do not change (such as the model) are not reloaded
+   */
+  private ReasonerSession reasonerSession;
+
+  /**
+   * Classes and properties asked for by processes, to which inference of the
+   * state is limited if the --targeted-inference option is given
+   * (<code>null</code> otherwise)
+   */
+  private Set<OWLEntity> targetVocabulary;
+
+  /**
+   * Number of threads on which to realise connected components of the state
+   */
+  private int realisationThreads;
+
+  /**
+   * Realiser for connected components of the state (<code>null</code> until
+   * needed, or if the state is realised all at once)
+   */
+  private PartitionedRealiser partitionedRealiser;
+
+  /**
+   * Whether to try materialising the state with rules compiled from the model
+   * (the --rule-inference option)
+   */
+  private boolean ruleInference;
+
+  /**
+   * Materialiser of the state using rules compiled from the model
+   * (<code>null</code> until needed, or if rules are not being used)
+   */
+  private RuleMaterialiser ruleMaterialiser;
+
   /**
    * Ontologies containing assertions about the model structure
    */
@@ -285,6 +324,23 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
 
   private Provenance provenance;
 
+  /**
+   * Native RCC8 engine used to derive spatial relations (<code>null</code>
+   * unless requested and the model uses an RCC vocabulary)
+   */
+  private RCC8Network rcc8;
+
+  /**
+   * Index of object property networks (<code>null</code> unless requested)
+   */
+  private AdjacencyIndex adjacency;
+
+  /**
+   * Listeners to tell about changes to the inferred state, and the classes and
+   * properties each is to be told about (<code>null</code> for all of them)
+   */
+  private Map<StateChangeListener, Set<URI>> stateChangeListeners;
+
   /**
    * Constructor for an MSB
    */
@@ -317,6 +373,15 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
     subEntities = new HashMap<URI, Set<URI>>();
     queries = new HashMap<URI, Set<OntologyQuery>>();
     provenance = ProvenanceFactory.getProvenance();
+    rcc8 = null;
+    adjacency = null;
+    stateChangeListeners = new LinkedHashMap<StateChangeListener, Set<URI>>();
+    reasonerSession = null;
+    targetVocabulary = ObiamaSetUp.getTargetedInference() ? new HashSet<OWLEntity>() : null;
+    realisationThreads = ObiamaSetUp.getRealisationThreads();
+    partitionedRealiser = null;
+    ruleInference = ObiamaSetUp.getRuleInference();
+    ruleMaterialiser = null;
   }
 
   /**
@@ -339,21 +404,19 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
     // Load the model ontologies
 
     helper.configure(manager);
-    for(URI uri: modelOntologies) {
-      try {
-        assertedModel.add(helper.loadOntologyClosure(uri, manager, modelClosure));
-      }
-      catch(OWLOntologyCreationException e) {
-        ErrorHandler.fatal(e, "loading ontology " + uri.toString());
-        throw new Panic();
-      }
+    try {
+      assertedModel.addAll(helper.loadOntologyClosures(modelOntologies, manager, modelClosure));
+    }
+    catch(OWLOntologyCreationException e) {
+      ErrorHandler.fatal(e, "loading ontologies " + modelOntologies);
+      throw new Panic();
     }
     modelSearch.addAll(modelClosure);
 
     // Create the inferred model
     try {
       inferredModel = manager.createOntology(AnonymousURI.createAnonymousURI());
-      InferredOntologyCreator.infer(manager, inferredModel);
+      InferredOntologyCreator.inferModel(manager, inferredModel);
     }
     catch(OWLOntologyCreationException e) {
       ErrorHandler.fatal(e, "creating inferred model ontology");
@@ -377,6 +440,10 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
 
     buildCreatorsAndQueries();
 
+    if(ObiamaSetUp.getRCC8()) buildRCC8Network();
+
+    if(ObiamaSetUp.getAdjacencyIndexProperties() != null) buildAdjacencyIndex();
+
     // Create an empty ontology with the inferred state
     try {
       inferredState = manager.createOntology(AnonymousURI.createAnonymousURI());
@@ -387,6 +454,68 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
     }
   }
 
+  /**
+   * <!-- buildRCC8Network -->
+   * 
+   * Create the RCC8 engine if any RCC properties are used by the model
+   */
+  private void buildRCC8Network() {
+    Set<URI> vocabulary = new HashSet<URI>();
+    for(URI property: RCC8Network.getRCCProperties()) {
+      if(isObjectProperty(property)) vocabulary.add(property);
+    }
+    if(vocabulary.size() == 0) {
+      ErrorHandler.note("--rcc8 requested, but the model does not use an RCC vocabulary");
+    }
+    else {
+      rcc8 = new RCC8Network(vocabulary);
+    }
+  }
+
+  /**
+   * <!-- buildAdjacencyIndex -->
+   * 
+   * Create the adjacency index for the object properties requested on the
+   * command line. Only simple properties are indexed, as the index does not
+   * reason about sub-properties or transitivity; queries on other properties
+   * use the inferred state.
+   */
+  private void buildAdjacencyIndex() {
+    Set<String> requested = ObiamaSetUp.getAdjacencyIndexProperties();
+    Set<OWLObjectProperty> properties = new HashSet<OWLObjectProperty>();
+    if(requested.contains(ObiamaSetUp.ALL_PROPERTIES)) {
+      for(OWLOntology ontology: modelSearch) {
+        for(OWLObjectProperty property: ontology.getReferencedObjectProperties()) {
+          if(AdjacencyIndex.isSimple(property, modelSearch)) properties.add(property);
+        }
+      }
+    }
+    else {
+      for(String property: requested) {
+        URI propertyURI;
+        try {
+          propertyURI = new URI(property);
+        }
+        catch(URISyntaxException e) {
+          ErrorHandler.warn(e, "building adjacency index", "property " + property + " will not be indexed");
+          continue;
+        }
+        if(!isObjectProperty(propertyURI)) {
+          ErrorHandler.warn("no such object property in the model: " + property, "building adjacency index",
+              "it will not be indexed");
+        }
+        else if(!AdjacencyIndex.isSimple(factory.getOWLObjectProperty(propertyURI), modelSearch)) {
+          ErrorHandler.warn("object property " + property + " is transitive or has sub-properties or equivalents",
+              "building adjacency index", "it will not be indexed, and queries on it will use the inferred state");
+        }
+        else {
+          properties.add(factory.getOWLObjectProperty(propertyURI));
+        }
+      }
+    }
+    adjacency = new AdjacencyIndex(properties, modelSearch);
+  }
+
   /**
    * <!-- buildCreatorsAndQueries -->
    * 
@@ -609,8 +738,18 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
     }
 
     assertedState.addAll(closure);
+    if(rcc8 != null || adjacency != null) {
+      for(OWLOntology inClosure: closure) {
+        for(OWLObjectPropertyAssertionAxiom axiom: inClosure.getAxioms(AxiomType.OBJECT_PROPERTY_ASSERTION)) {
+          if(rcc8 != null) rcc8.assertAxiom(axiom);
+          if(adjacency != null) adjacency.assertAxiom(axiom);
+        }
+      }
+      if(adjacency != null) adjacency.commit();
+    }
     closure.add(inferredModel);
     InferredOntologyCreator.infer(manager, inferredState, closure);
+    if(rcc8 != null) rcc8.fillOntology(manager, inferredState);
   }
 
   public void createState() {
@@ -1176,7 +1315,7 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
       throw new NonClassAccessedAsClassException(modelName, action);
     }
 
-    OWLClass owlClass = factory.getOWLClass(modelName);
+    OWLClass owlClass = target(factory.getOWLClass(modelName));
 
     MSBConcept concept;
 
@@ -1304,16 +1443,16 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
     URI modelName = modelEntities.containsKey(name) ? modelEntities.get(name) : name;
     if(isDataProperty(modelName)) {
       if(XSDVocabulary.ALL_DATATYPES.contains(range)) {
-        return VariableNameFactory.getVariableName(factory.getOWLDataProperty(modelName), factory.getOWLClass(domain),
-            XSDHelper.xsdTypes.get(range), action, this);
+        return VariableNameFactory.getVariableName(target(factory.getOWLDataProperty(modelName)),
+            factory.getOWLClass(domain), XSDHelper.xsdTypes.get(range), action, this);
       }
       else {
         throw new NoSuchDataTypeException(action, range);
       }
     }
     else if(isObjectProperty(modelName)) {
-      return VariableNameFactory.getVariableName(factory.getOWLObjectProperty(modelName), factory.getOWLClass(domain),
-          factory.getOWLClass(range), action, this);
+      return VariableNameFactory.getVariableName(target(factory.getOWLObjectProperty(modelName)),
+          factory.getOWLClass(domain), factory.getOWLClass(range), action, this);
     }
     else {
       throw new NoSuchPropertyException(action, modelName);
@@ -1326,7 +1465,7 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
 
     if(isDataProperty(modelName)) {
       if(XSDVocabulary.ALL_DATATYPES.contains(range)) {
-        return VariableNameFactory.getVariableName(factory.getOWLDataProperty(modelName),
+        return VariableNameFactory.getVariableName(target(factory.getOWLDataProperty(modelName)),
             XSDHelper.xsdTypes.get(range), action, this);
       }
       else {
@@ -1334,8 +1473,8 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
       }
     }
     else if(isObjectProperty(modelName)) {
-      return VariableNameFactory.getVariableName(factory.getOWLObjectProperty(modelName), factory.getOWLClass(range),
-          action, this);
+      return VariableNameFactory.getVariableName(target(factory.getOWLObjectProperty(modelName)),
+          factory.getOWLClass(range), action, this);
     }
     else {
       throw new NoSuchPropertyException(action, modelName);
@@ -1352,10 +1491,10 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
     URI modelName = modelEntities.containsKey(name) ? modelEntities.get(name) : name;
 
     if(isDataProperty(modelName)) {
-      return VariableNameFactory.getVariableName(factory.getOWLDataProperty(modelName), process, this);
+      return VariableNameFactory.getVariableName(target(factory.getOWLDataProperty(modelName)), process, this);
     }
     else if(isObjectProperty(modelName)) {
-      return VariableNameFactory.getVariableName(factory.getOWLObjectProperty(modelName), process, this);
+      return VariableNameFactory.getVariableName(target(factory.getOWLObjectProperty(modelName)), process, this);
     }
     else {
       throw new NoSuchPropertyException(process, modelName);
@@ -1375,8 +1514,8 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
     URI modelName = modelEntities.containsKey(name) ? modelEntities.get(name) : name;
 
     if(isDataProperty(modelName)) {
-      return VariableNameFactory.getVariableName(factory.getOWLDataProperty(modelName), factory.getOWLClass(domain),
-          range, action, this);
+      return VariableNameFactory.getVariableName(target(factory.getOWLDataProperty(modelName)),
+          factory.getOWLClass(domain), range, action, this);
     }
     else {
       throw new NoSuchPropertyException(action, modelName);
@@ -1388,13 +1527,27 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
     URI modelName = modelEntities.containsKey(name) ? modelEntities.get(name) : name;
 
     if(isDataProperty(modelName)) {
-      return VariableNameFactory.getVariableName(factory.getOWLDataProperty(modelName), range, action, this);
+      return VariableNameFactory.getVariableName(target(factory.getOWLDataProperty(modelName)), range, action, this);
     }
     else {
       throw new NoSuchPropertyException(action, modelName);
     }
   }
 
+  /**
+   * <!-- target -->
+   * 
+   * Note that an entity has been asked for by a process, so that the state
+   * inferred includes assertions about it when inference is targeted
+   * 
+   * @param entity The entity
+   * @return The entity
+   */
+  private <E extends OWLEntity> E target(E entity) {
+    if(targetVocabulary != null) targetVocabulary.add(entity);
+    return entity;
+  }
+
   @Override
   OWLIndividual getIndividual(Process action, URI individual) throws NoSuchIndividualException {
     if(inferredState.containsIndividualReference(individual)) {
@@ -1707,6 +1860,21 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
     return value;
   }
 
+  /**
+   * <!-- getLockedValue -->
+   * 
+   * @see uk.ac.hutton.obiama.msb.AbstractModelStateBroker#getLockedValue(java.net.URI, java.net.URI)
+   * @param propertyURI A property
+   * @param individualURI An individual
+   * @return The value registered for the property of the individual since the
+   *         last update, or <code>null</code> if there isn't one
+   */
+  @Override
+  AbstractValue<?> getLockedValue(URI propertyURI, URI individualURI) {
+    Map<URI, AbstractValue<?>> locked = lockedValues.get(propertyURI);
+    return locked == null ? null : locked.get(individualURI);
+  }
+
   @Override
   AbstractInstance registerInstance(AbstractInstance instance) {
     if(lockedInstances.containsKey(instance.getURI())) return lockedInstances.get(instance.getURI());
@@ -1725,6 +1893,7 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
   public void updateCreators() throws IntegrationInconsistencyException {
     // Get all the values belonging to Creators and call their update() methods
     // to get their axioms
+    Profiler.Sample sample = Profiler.start();
     Set<AbstractValue<?>> creatorValues = new HashSet<AbstractValue<?>>();
     for(AbstractValue<?> value: values) {
       if(value.getProcess() instanceof Creator) {
@@ -1733,6 +1902,7 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
       }
     }
     values.removeAll(creatorValues);
+    sample = Profiler.lap(sample, Profiler.Category.MSB, "update values");
 
     // Get all the instances belonging to this action and call their update()
     // methods to get their axioms
@@ -1744,12 +1914,18 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
       }
     }
     instances.removeAll(creatorInstances);
+    sample = Profiler.lap(sample, Profiler.Category.MSB, "update instances");
 
     // Update the axioms
     int nRemoved = removeAxioms();
+    sample = Profiler.lap(sample, Profiler.Category.MSB, "remove axioms");
     int nAdded = addAxioms();
+    if(adjacency != null) adjacency.commit();
+    sample = Profiler.lap(sample, Profiler.Category.MSB, "add axioms");
     inferState();
+    sample = Profiler.lap(sample, Profiler.Category.MSB, "infer state");
     saveState();
+    Profiler.stop(sample, Profiler.Category.MSB, "save state");
 
     // Manage locked values and instances
     for(AbstractValue<?> value: creatorValues) {
@@ -1775,22 +1951,30 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
     // TODO Decide whether axioms to add should be edited for deleted and killed
     // individuals and if so, edit them.
     // Call the registered values to get property assertion axiom changes
+    Profiler.Sample sample = Profiler.start();
     for(AbstractValue<?> value: values) {
       value.update(this);
     }
     values.clear();
+    sample = Profiler.lap(sample, Profiler.Category.MSB, "update values");
 
     // Call the registered instances to get class assertion axiom changes
     for(AbstractInstance instance: instances) {
       instance.update(this);
     }
     instances.clear();
+    sample = Profiler.lap(sample, Profiler.Category.MSB, "update instances");
 
     // Update the axioms
     int nRemoved = removeAxioms();
+    sample = Profiler.lap(sample, Profiler.Category.MSB, "remove axioms");
     int nAdded = addAxioms();
+    if(adjacency != null) adjacency.commit();
+    sample = Profiler.lap(sample, Profiler.Category.MSB, "add axioms");
     inferState();
+    sample = Profiler.lap(sample, Profiler.Category.MSB, "infer state");
     saveState();
+    Profiler.stop(sample, Profiler.Category.MSB, "save state");
 
     // Manage locked values and instances
     lockedValues = new HashMap<URI, Map<URI, AbstractValue<?>>>();
@@ -1823,6 +2007,7 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
     // Do the inference
     Set<OWLOntology> inferFrom = new HashSet<OWLOntology>(assertedModel);
     inferFrom.addAll(assertedState);
+    OWLOntology previousState = inferredState;
     manager.removeOntology(inferredState.getURI());
     URI inferredStateURI = getInferredStateURI();
     try {
@@ -1831,7 +2016,51 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
     catch(OWLOntologyCreationException e1) {
       ErrorHandler.fatal(e1, "creating inferred ontology " + inferredStateURI);
     }
-    InferredOntologyCreator.inferIndividuals(manager, inferredState, inferFrom);
+    if(InferredOntologyCreator.consistencyCheckDue()) checkConsistency(inferFrom);
+    if(ruleMaterialiser == null && ruleInference) {
+      ruleMaterialiser = new RuleMaterialiser(manager, assertedModel, assertedState);
+      if(ruleMaterialiser.getUnsupportedAxiom() != null) {
+        ErrorHandler.note("--rule-inference requested, but the model has an axiom rules cannot be compiled from ("
+          + ruleMaterialiser.getUnsupportedAxiom() + "); the state will be realised by the reasoner");
+        ruleMaterialiser.dispose();
+        ruleMaterialiser = null;
+        ruleInference = false;
+      }
+    }
+    if(ruleMaterialiser == null || !ruleMaterialiser.materialise(inferredState, targetVocabulary)) {
+      if(partitionedRealiser == null && realisationThreads > 1) {
+        partitionedRealiser = new PartitionedRealiser(manager, assertedModel, realisationThreads);
+      }
+      if(partitionedRealiser == null
+        || !partitionedRealiser.realise(assertedState, inferredState, targetVocabulary)) {
+        if(reasonerSession == null) {
+          reasonerSession = new ReasonerSession(manager, ReasonerFactory.getReasonerOrDie(manager));
+        }
+        if(targetVocabulary == null) {
+          InferredOntologyCreator.inferIndividuals(inferredState, reasonerSession, inferFrom);
+        }
+        else {
+          InferredOntologyCreator.inferIndividuals(inferredState, reasonerSession, inferFrom, targetVocabulary);
+        }
+      }
+    }
+    if(rcc8 != null) rcc8.fillOntology(manager, inferredState);
+    notifyStateChanges(previousState, inferredState);
+  }
+
+  /**
+   * <!-- checkConsistency -->
+   * 
+   * Check the consistency of the asserted model and state with the MSB's
+   * reasoner session, which is kept for later use.
+   * 
+   * @param ontologies The asserted model and state ontologies
+   */
+  private void checkConsistency(Set<OWLOntology> ontologies) {
+    if(reasonerSession == null) {
+      reasonerSession = new ReasonerSession(manager, ReasonerFactory.getReasonerOrDie(manager));
+    }
+    InferredOntologyCreator.checkConsistency(reasonerSession, ontologies);
   }
 
   /**
@@ -1959,7 +2188,12 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
           }
         }
 
-        Log.addedAxiom(axiom.toString(), ch.getOntology().getURI());
+        if(axiom instanceof OWLObjectPropertyAssertionAxiom) {
+          if(rcc8 != null) rcc8.assertAxiom((OWLObjectPropertyAssertionAxiom)axiom);
+          if(adjacency != null) adjacency.assertAxiom((OWLObjectPropertyAssertionAxiom)axiom);
+        }
+
+        if(Log.isEnabled(Log.Messages.ADD_AXIOM)) Log.addedAxiom(axiom.toString(), ch.getOntology().getURI());
       }
       addAxioms.clear();
       return list.size();
@@ -2037,7 +2271,14 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
           }
         }
 
-        Log.removedAxiom(axiom.toString(), ch.getOntology().getURI());
+        if(axiom instanceof OWLObjectPropertyAssertionAxiom) {
+          if(rcc8 != null) rcc8.retractAxiom((OWLObjectPropertyAssertionAxiom)axiom);
+          if(adjacency != null) adjacency.retractAxiom((OWLObjectPropertyAssertionAxiom)axiom);
+        }
+
+        if(Log.isEnabled(Log.Messages.REMOVE_AXIOM)) {
+          Log.removedAxiom(axiom.toString(), ch.getOntology().getURI());
+        }
       }
       removeAxioms.clear();
       return list.size();
@@ -2223,6 +2464,7 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
       manager.removeOntology(state.getURI());
     }
     assertedState.clear();
+    OWLOntology previousState = inferredState;
     manager.removeOntology(inferredState.getURI());
     try {
       inferredState = manager.createOntology(AnonymousURI.createAnonymousURI());
@@ -2230,6 +2472,7 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
     catch(OWLOntologyCreationException e) {
       throw new Bug();
     }
+    notifyStateChanges(previousState, inferredState);
     removeAxioms.clear();
     addAxioms.clear();
     values.clear();
@@ -2238,11 +2481,349 @@ public class OWLAPIInferredMSB extends AbstractModelStateBroker {
     actionsRemovingAxioms.clear();
     lockedValues.clear();
     lockedInstances.clear();
+    if(rcc8 != null) rcc8.clear();
+    if(adjacency != null) adjacency.clear();
     provenance = ProvenanceFactory.getProvenance();
     RunID.reset();
     Log.reset(RunID.getRunID());
   }
 
+  /**
+   * <!-- dispose -->
+   * 
+   * @see uk.ac.hutton.obiama.msb.ModelStateBroker#dispose()
+   */
+  public void dispose() {
+    if(InferredOntologyCreator.consistencyCheckAtEnd()) {
+      Set<OWLOntology> ontologies = new HashSet<OWLOntology>(assertedModel);
+      ontologies.addAll(assertedState);
+      checkConsistency(ontologies);
+    }
+    if(partitionedRealiser != null) {
+      partitionedRealiser.dispose();
+      partitionedRealiser = null;
+    }
+    if(reasonerSession != null) {
+      reasonerSession.dispose();
+      reasonerSession = null;
+    }
+  }
+
+  /**
+   * <!-- getNeighbours -->
+   * 
+   * @see uk.ac.hutton.obiama.msb.ModelStateBroker#getNeighbours(java.net.URI,
+   *      uk.ac.hutton.obiama.msb.Var, int)
+   */
+  public Set<URI> getNeighbours(URI individual, Var property, int hops) throws IntegrationInconsistencyException {
+    return new LinkedHashSet<URI>(breadthFirst(individual, property, hops));
+  }
+
+  /**
+   * <!-- getDegree -->
+   * 
+   * @see uk.ac.hutton.obiama.msb.ModelStateBroker#getDegree(java.net.URI,
+   *      uk.ac.hutton.obiama.msb.Var)
+   */
+  public int getDegree(URI individual, Var property) throws IntegrationInconsistencyException {
+    OWLObjectProperty owlProperty = getIndexableProperty(property);
+    if(adjacency != null && adjacency.isIndexed(owlProperty.getURI())) {
+      return adjacency.getDegree(individual, owlProperty.getURI());
+    }
+    Set<OWLIndividual> values = getObjectPropertyValues(factory.getOWLIndividual(individual), owlProperty);
+    return values == null ? 0 : values.size();
+  }
+
+  /**
+   * <!-- breadthFirst -->
+   * 
+   * Use the adjacency index if the property has been indexed, otherwise
+   * traverse the inferred state.
+   * 
+   * @see uk.ac.hutton.obiama.msb.ModelStateBroker#breadthFirst(java.net.URI,
+   *      uk.ac.hutton.obiama.msb.Var, int)
+   */
+  public List<URI> breadthFirst(URI individual, Var property, int hops) throws IntegrationInconsistencyException {
+    OWLObjectProperty owlProperty = getIndexableProperty(property);
+    if(adjacency != null && adjacency.isIndexed(owlProperty.getURI())) {
+      return adjacency.breadthFirst(individual, owlProperty.getURI(), hops);
+    }
+    List<URI> visited = new LinkedList<URI>();
+    Set<OWLIndividual> seen = new HashSet<OWLIndividual>();
+    List<OWLIndividual> frontier = new LinkedList<OWLIndividual>();
+    frontier.add(factory.getOWLIndividual(individual));
+    for(int hop = 0; frontier.size() > 0 && (hops < 0 || hop < hops); hop++) {
+      List<OWLIndividual> next = new LinkedList<OWLIndividual>();
+      for(OWLIndividual from: frontier) {
+        Set<OWLIndividual> values = getObjectPropertyValues(from, owlProperty);
+        if(values == null) continue;
+        for(OWLIndividual to: values) {
+          if(seen.add(to)) {
+            visited.add(to.getURI());
+            next.add(to);
+          }
+        }
+      }
+      frontier = next;
+    }
+    return visited;
+  }
+
+  /**
+   * <!-- addStateChangeListener -->
+   * 
+   * @see uk.ac.hutton.obiama.msb.ModelStateBroker#addStateChangeListener(uk.ac.hutton.obiama.msb.StateChangeListener)
+   * @param listener
+   */
+  public void addStateChangeListener(StateChangeListener listener) {
+    addListener(listener, null);
+  }
+
+  /**
+   * <!-- addStateChangeListener -->
+   * 
+   * @see uk.ac.hutton.obiama.msb.ModelStateBroker#addStateChangeListener(uk.ac.hutton.obiama.msb.StateChangeListener,
+   *      java.util.Set)
+   * @param listener
+   * @param vocabulary
+   */
+  public void addStateChangeListener(StateChangeListener listener, Set<URI> vocabulary) {
+    addListener(listener, new HashSet<URI>(vocabulary));
+  }
+
+  /**
+   * <!-- addListener -->
+   * 
+   * Add a listener and tell it about the current state
+   * 
+   * @param listener The listener
+   * @param vocabulary The classes and properties it is to be told about
+   *          (<code>null</code> for all of them)
+   */
+  private void addListener(StateChangeListener listener, Set<URI> vocabulary) {
+    if(stateChangeListeners.containsKey(listener)) return;
+    stateChangeListeners.put(listener, vocabulary);
+    if(inferredState != null) {
+      List<OWLIndividualAxiom> added = new LinkedList<OWLIndividualAxiom>();
+      diffState(null, inferredState, vocabulary, null, added);
+      notifyStateChanges(listener, new LinkedList<OWLIndividualAxiom>(), added);
+    }
+  }
+
+  /**
+   * <!-- removeStateChangeListener -->
+   * 
+   * @see uk.ac.hutton.obiama.msb.ModelStateBroker#removeStateChangeListener(uk.ac.hutton.obiama.msb.StateChangeListener)
+   * @param listener
+   */
+  public void removeStateChangeListener(StateChangeListener listener) {
+    stateChangeListeners.remove(listener);
+  }
+
+  /**
+   * <!-- notifyStateChanges -->
+   * 
+   * Tell the listeners about the class and property assertions that differ
+   * between the inferred state before and after an update, whatever the
+   * reasoner inferred them from. Each listener's changes are found by
+   * comparing only the assertions of the classes and properties it asked to
+   * be told about, so the cost depends on how many individuals those have
+   * rather than the size of the state. Listeners for the whole vocabulary are
+   * given the difference between all the assertions. Nothing is done if there
+   * are no listeners.
+   * 
+   * @param before The inferred state before the update (may be
+   *          <code>null</code>)
+   * @param after The inferred state after the update
+   */
+  private void notifyStateChanges(OWLOntology before, OWLOntology after) {
+    if(stateChangeListeners.size() == 0) return;
+    List<OWLIndividualAxiom> removedAll = null;
+    List<OWLIndividualAxiom> addedAll = null;
+    for(Map.Entry<StateChangeListener, Set<URI>> entry: stateChangeListeners.entrySet()) {
+      List<OWLIndividualAxiom> removed;
+      List<OWLIndividualAxiom> added;
+      if(entry.getValue() == null) {
+        if(removedAll == null) {
+          removedAll = new LinkedList<OWLIndividualAxiom>();
+          addedAll = new LinkedList<OWLIndividualAxiom>();
+          diffState(before, after, null, removedAll, addedAll);
+        }
+        removed = removedAll;
+        added = addedAll;
+      }
+      else {
+        removed = new LinkedList<OWLIndividualAxiom>();
+        added = new LinkedList<OWLIndividualAxiom>();
+        diffState(before, after, entry.getValue(), removed, added);
+      }
+      notifyStateChanges(entry.getKey(), removed, added);
+    }
+  }
+
+  /**
+   * <!-- diffState -->
+   * 
+   * @param before The inferred state before an update (<code>null</code> if
+   *          none)
+   * @param after The inferred state after the update
+   * @param vocabulary Classes and properties to compare the assertions of
+   *          (<code>null</code> for all of them)
+   * @param removed List to add assertions in before but not after to (may be
+   *          <code>null</code> if before is)
+   * @param added List to add assertions in after but not before to
+   */
+  private void diffState(OWLOntology before, OWLOntology after, Set<URI> vocabulary,
+      List<OWLIndividualAxiom> removed, List<OWLIndividualAxiom> added) {
+    if(vocabulary == null) {
+      diffAssertions(before == null ? null : before.getAxioms(AxiomType.CLASS_ASSERTION), after
+          .getAxioms(AxiomType.CLASS_ASSERTION), removed, added);
+      diffAssertions(before == null ? null : before.getAxioms(AxiomType.DATA_PROPERTY_ASSERTION), after
+          .getAxioms(AxiomType.DATA_PROPERTY_ASSERTION), removed, added);
+      diffAssertions(before == null ? null : before.getAxioms(AxiomType.OBJECT_PROPERTY_ASSERTION), after
+          .getAxioms(AxiomType.OBJECT_PROPERTY_ASSERTION), removed, added);
+      return;
+    }
+    for(URI term: vocabulary) {
+      diffAssertions(before == null ? null : getAssertions(before, term), getAssertions(after, term), removed,
+          added);
+    }
+  }
+
+  /**
+   * <!-- getAssertions -->
+   * 
+   * @param ontology An ontology
+   * @param term The URI of a class or property
+   * @return The class or property assertions of the term in the ontology
+   */
+  private Set<OWLIndividualAxiom> getAssertions(OWLOntology ontology, URI term) {
+    Set<OWLIndividualAxiom> assertions = new HashSet<OWLIndividualAxiom>();
+    OWLClass concept = factory.getOWLClass(term);
+    for(OWLAxiom axiom: ontology.getReferencingAxioms(concept)) {
+      if(axiom instanceof OWLClassAssertionAxiom
+        && concept.equals(((OWLClassAssertionAxiom)axiom).getDescription())) {
+        assertions.add((OWLClassAssertionAxiom)axiom);
+      }
+    }
+    OWLDataProperty dataProperty = factory.getOWLDataProperty(term);
+    for(OWLAxiom axiom: ontology.getReferencingAxioms(dataProperty)) {
+      if(axiom instanceof OWLDataPropertyAssertionAxiom
+        && dataProperty.equals(((OWLDataPropertyAssertionAxiom)axiom).getProperty())) {
+        assertions.add((OWLDataPropertyAssertionAxiom)axiom);
+      }
+    }
+    OWLObjectProperty objectProperty = factory.getOWLObjectProperty(term);
+    for(OWLAxiom axiom: ontology.getReferencingAxioms(objectProperty)) {
+      if(axiom instanceof OWLObjectPropertyAssertionAxiom
+        && objectProperty.equals(((OWLObjectPropertyAssertionAxiom)axiom).getProperty())) {
+        assertions.add((OWLObjectPropertyAssertionAxiom)axiom);
+      }
+    }
+    return assertions;
+  }
+
+  /**
+   * <!-- diffAssertions -->
+   * 
+   * @param <T> The type of axiom
+   * @param before Axioms before an update (<code>null</code> if none)
+   * @param after Axioms after the update
+   * @param removed List to add axioms in before but not after to (may be
+   *          <code>null</code> if before is)
+   * @param added List to add axioms in after but not before to
+   */
+  private static <T extends OWLIndividualAxiom> void diffAssertions(Set<T> before, Set<T> after,
+      List<OWLIndividualAxiom> removed, List<OWLIndividualAxiom> added) {
+    if(before != null) {
+      for(T axiom: before) {
+        if(!after.contains(axiom)) removed.add(axiom);
+      }
+    }
+    for(T axiom: after) {
+      if(before == null || !before.contains(axiom)) added.add(axiom);
+    }
+  }
+
+  /**
+   * <!-- notifyStateChanges -->
+   * 
+   * Tell a listener about assertions removed and added. Class assertions with
+   * anonymous class expressions are not reported.
+   * 
+   * @param listener The listener
+   * @param removed Class and property assertions removed
+   * @param added Class and property assertions added
+   */
+  private void notifyStateChanges(StateChangeListener listener, List<OWLIndividualAxiom> removed,
+      List<OWLIndividualAxiom> added) {
+    for(OWLIndividualAxiom axiom: removed) {
+      if(axiom instanceof OWLClassAssertionAxiom) {
+        OWLClassAssertionAxiom ca = (OWLClassAssertionAxiom)axiom;
+        if(ca.getDescription().isAnonymous()) continue;
+        listener.memberRemoved(ca.getDescription().asOWLClass().getURI(), ca.getIndividual().getURI());
+      }
+      else if(axiom instanceof OWLDataPropertyAssertionAxiom) {
+        OWLDataPropertyAssertionAxiom dpa = (OWLDataPropertyAssertionAxiom)axiom;
+        if(dpa.getProperty().isAnonymous()) continue;
+        listener.dataValueRemoved(dpa.getSubject().getURI(), dpa.getProperty().asOWLDataProperty().getURI(),
+            getConstantValue(dpa.getObject()));
+      }
+      else if(axiom instanceof OWLObjectPropertyAssertionAxiom) {
+        OWLObjectPropertyAssertionAxiom opa = (OWLObjectPropertyAssertionAxiom)axiom;
+        if(opa.getProperty().isAnonymous()) continue;
+        listener.objectValueRemoved(opa.getSubject().getURI(), opa.getProperty().asOWLObjectProperty().getURI(), opa
+            .getObject().getURI());
+      }
+    }
+    for(OWLIndividualAxiom axiom: added) {
+      if(axiom instanceof OWLClassAssertionAxiom) {
+        OWLClassAssertionAxiom ca = (OWLClassAssertionAxiom)axiom;
+        if(ca.getDescription().isAnonymous()) continue;
+        listener.memberAdded(ca.getDescription().asOWLClass().getURI(), ca.getIndividual().getURI());
+      }
+      else if(axiom instanceof OWLDataPropertyAssertionAxiom) {
+        OWLDataPropertyAssertionAxiom dpa = (OWLDataPropertyAssertionAxiom)axiom;
+        if(dpa.getProperty().isAnonymous()) continue;
+        listener.dataValueAdded(dpa.getSubject().getURI(), dpa.getProperty().asOWLDataProperty().getURI(),
+            getConstantValue(dpa.getObject()));
+      }
+      else if(axiom instanceof OWLObjectPropertyAssertionAxiom) {
+        OWLObjectPropertyAssertionAxiom opa = (OWLObjectPropertyAssertionAxiom)axiom;
+        if(opa.getProperty().isAnonymous()) continue;
+        listener.objectValueAdded(opa.getSubject().getURI(), opa.getProperty().asOWLObjectProperty().getURI(), opa
+            .getObject().getURI());
+      }
+    }
+    listener.changesApplied();
+  }
+
+  /**
+   * <!-- getConstantValue -->
+   * 
+   * @param constant A constant in a data property assertion
+   * @return The value of the constant as the Java class recommended for its
+   *         type, or the literal if it is untyped
+   */
+  private static Object getConstantValue(OWLConstant constant) {
+    if(!constant.isTyped()) return constant.getLiteral();
+    return XSDHelper.instantiate(constant.asOWLTypedConstant().getDataType(), constant.getLiteral());
+  }
+
+  /**
+   * <!-- getIndexableProperty -->
+   * 
+   * @param property A Var
+   * @return The object property the Var refers to
+   * @throws NeedObjectGotDataPropertyException
+   */
+  private OWLObjectProperty getIndexableProperty(Var property) throws NeedObjectGotDataPropertyException {
+    if(!property.isObjectVar()) {
+      throw new NeedObjectGotDataPropertyException(((AbstractVar)property).process, property.getURI());
+    }
+    return factory.getOWLObjectProperty(property.getURI());
+  }
+
   private Set<RemoveAxiom> removeAxiomsEquivalentTo(OWLAxiom axiom) {
     if(axiom instanceof OWLDataPropertyAssertionAxiom) {
       return removeAxiomsEquivalentTo((OWLDataPropertyAssertionAxiom)axiom);
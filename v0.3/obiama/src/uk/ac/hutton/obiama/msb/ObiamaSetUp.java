@@ -35,6 +35,7 @@ import java.util.Set;
 import org.semanticweb.owl.inference.OWLReasoner;
 import org.semanticweb.owl.inference.OWLReasonerFactory;
 
+import uk.ac.hutton.obiama.action.ProcessFactory;
 import uk.ac.hutton.obiama.exception.Bug;
 import uk.ac.hutton.obiama.exception.ErrorHandler;
 import uk.ac.hutton.obiama.exception.FileFormatException;
@@ -44,6 +45,7 @@ import uk.ac.hutton.obiama.model.CommandLineArgument;
 import uk.ac.hutton.obiama.model.FCmpOntology;
 import uk.ac.hutton.obiama.model.Log;
 import uk.ac.hutton.obiama.model.FCmpOntology.FloatingPointComparisonOntologyException;
+import uk.ac.hutton.obiama.model.Profiler;
 import uk.ac.hutton.obiama.random.RNGFactory;
 import uk.ac.hutton.util.CSVException;
 import uk.ac.hutton.util.CSVReader;
@@ -73,6 +75,8 @@ public class ObiamaSetUp {
     new CommandLineArgument("--ontology", "-O", "ontology URI", "Model structure (logical) ontology URI"),
     new CommandLineArgument("--ontology-search-path", "-P", "path list",
         "Colon-separated list of directories to search for physical ontology URIs"),
+    new CommandLineArgument("--ontology-cache", "-K", "directory",
+        "Directory in which to cache parsed ontologies to speed up loading"),
     new CommandLineArgument("--ontology-uri-map", "-M", "map URI",
         "File containing map of logical to physical ontology URIs"),
     new CommandLineArgument("--reasoner-class", "-C", "reasoner class", "Class to use for reasoner"),
@@ -92,17 +96,40 @@ public class ObiamaSetUp {
     new CommandLineArgument("--save-last", "-d", "directory", "Directory to save the last state to"),
     new CommandLineArgument("--save-dir", "-D", "directory", "Directory to save all states to"),
     new CommandLineArgument("--save-inferred", "-I", null, "Save inferred ontology when saving states"),
+    new CommandLineArgument("--observation-dir", "-o", "directory", "Directory to save observers' data to"),
+    new CommandLineArgument("--classification-cache", "-k", "directory",
+        "Directory in which to cache inferences from the model structure between runs"),
+    new CommandLineArgument("--consistency-check", "-c", "every|end|off|N",
+        "How often to check the consistency of the state when updating it (default off)"),
+    new CommandLineArgument("--targeted-inference", "-g", null,
+        "Only infer class and property assertions for the classes and properties the schedule uses"),
+    new CommandLineArgument("--realisation-threads", "-n", "threads",
+        "Realise unconnected parts of the state in parallel on up to this many threads"),
+    new CommandLineArgument("--rule-inference", "-u", null,
+        "Where the model allows, materialise the state with rules compiled from it rather than the reasoner"),
+    new CommandLineArgument("--rcc8", "-r", null, "Derive RCC spatial relations using a native RCC8 engine"),
+    new CommandLineArgument("--adjacency-index", "-a", "property list",
+        "Comma-separated list of object property URIs (or \"all\") to index for neighbourhood queries"),
     new CommandLineArgument("--fcmp", "-F", "FCMP class", "Class to use for floating point comparisons"),
     new CommandLineArgument("--fcmp-args", "-f", "FCMP class args", "Arguments for floating point comparison class "
       + "(as comma-separated list of arg=value pairs)"),
     new CommandLineArgument("--log", "-L", "Log file", "Log file to use for this run"),
     new CommandLineArgument("--log-messages", "-l", "Message list", "Messages to include in the log file"),
+    new CommandLineArgument("--log-async", "-b", "buffer size",
+        "Write the log file on a separate thread, buffering up to the given number of messages"),
+    new CommandLineArgument("--profile", "-t", "profile file",
+        "CSV file to write timings of schedule actions, queries and state updates to"),
     new CommandLineArgument("--separate-run-dirs", "-z", null,
         "Save states from different runs to different subdirectories of the --save-dir argument"),
     new CommandLineArgument("--run-dir-prefix", "-Z", "prefix",
         "Prefix to apply to run subdirectories (implies --separate-run-dirs)"),
     new CommandLineArgument("--background", "-B", null, "Stipulate non-GUI mode") };
 
+  /**
+   * Argument to --adjacency-index requesting all object properties be indexed
+   */
+  public static final String ALL_PROPERTIES = "all";
+
   /**
    * Private singleton instance
    */
@@ -212,6 +239,7 @@ public class ObiamaSetUp {
     ontologySearchPath = null;
     ontologyURIMap = null;
     fcmp = null;
+    ProcessFactory.reset();
   }
 
   /**
@@ -413,6 +441,7 @@ public class ObiamaSetUp {
   public static Map<String, String> getObiamaOptions(String cmd, String[] args) throws UsageException {
     command = cmd;
     obiamaArgs = CommandLineArgument.parseArgs(cmd, i.argMap.values(), args);
+    ProcessFactory.reset();
     if(obiamaArgs.containsKey("fcmp")) {
       try {
         fcmp = FCmpOntology.getFloatingPointComparison(getFCmpClassName(), getFCmpArgs());
@@ -435,6 +464,14 @@ public class ObiamaSetUp {
           logFile = obiamaArgs.get("save.dir") + File.separator + logFile;
         }
       }
+      if(obiamaArgs.containsKey("log.async")) {
+        try {
+          Log.asynchronous(Integer.parseInt(obiamaArgs.get("log.async")));
+        }
+        catch(NumberFormatException e) {
+          ErrorHandler.warn(e, "parsing buffer size for --log-async", "the log will be written synchronously");
+        }
+      }
       if(obiamaArgs.containsKey("log.messages")) {
         Log.open(logFile, Log.Messages.parseMessageList(obiamaArgs.get("log.messages")));
       }
@@ -448,6 +485,39 @@ public class ObiamaSetUp {
       ErrorHandler.warn(e, "attempting to create log file " + Log.logfile(),
           "logging messages will be sent to the standard error stream");
     }
+    if(obiamaArgs.containsKey("profile")) {
+      String profileFile = obiamaArgs.get("profile");
+      if(!profileFile.startsWith(File.separator)) {
+        if(obiamaArgs.containsKey("save.last")) {
+          profileFile = obiamaArgs.get("save.last") + File.separator + profileFile;
+        }
+        else if(obiamaArgs.containsKey("save.dir")) {
+          profileFile = obiamaArgs.get("save.dir") + File.separator + profileFile;
+        }
+      }
+      try {
+        Profiler.enable(profileFile);
+        ErrorHandler.note("Profiling to file " + profileFile);
+      }
+      catch(IOException e) {
+        ErrorHandler.warn(e, "attempting to create profile file " + profileFile, "the run will not be profiled");
+      }
+    }
+    if(obiamaArgs.containsKey("classification.cache")) {
+      ClassificationCache.setDirectory(obiamaArgs.get("classification.cache"));
+    }
+    if(obiamaArgs.containsKey("consistency.check")) {
+      try {
+        InferredOntologyCreator.setConsistencyCheck(obiamaArgs.get("consistency.check"));
+      }
+      catch(NumberFormatException e) {
+        ErrorHandler.warn(e, "parsing schedule for --consistency-check", "consistency will not be checked");
+        InferredOntologyCreator.setConsistencyCheck(InferredOntologyCreator.CHECK_OFF);
+      }
+    }
+    else {
+      InferredOntologyCreator.setConsistencyCheck(InferredOntologyCreator.CHECK_OFF);
+    }
     Log.commandLineArguments(obiamaArgs);
     if(obiamaArgs.containsKey("rng.param")) {
       rngArgs = RNGFactory.parseRNGParams(obiamaArgs.get("rng.param"));
@@ -724,6 +794,90 @@ public class ObiamaSetUp {
     return obiamaArgs.containsKey("save.inferred");
   }
 
+  /**
+   * <!-- getObservationDir -->
+   * 
+   * @return The directory specified by the --observation-dir,
+   *         --separate-run-dirs and --run-dir-prefix options, or
+   *         <code>null</code> if --observation-dir was not given
+   */
+  public static String getObservationDir() {
+    String dir = obiamaArgs.get("observation.dir");
+    return dir == null ? null : getRunSubDir(dir);
+  }
+
+  /**
+   * <!-- getOntologyCacheDir -->
+   * 
+   * @return The directory given as argument to --ontology-cache, or
+   *         <code>null</code> if the option was not given
+   */
+  public static String getOntologyCacheDir() {
+    return obiamaArgs.get("ontology.cache");
+  }
+
+  /**
+   * <!-- getTargetedInference -->
+   * 
+   * @return Whether the --targeted-inference option was given
+   */
+  public static boolean getTargetedInference() {
+    return obiamaArgs.containsKey("targeted.inference");
+  }
+
+  /**
+   * <!-- getRealisationThreads -->
+   * 
+   * @return The number of threads given to the --realisation-threads option,
+   *         or 1 if it was not given or could not be parsed
+   */
+  public static int getRealisationThreads() {
+    if(!obiamaArgs.containsKey("realisation.threads")) return 1;
+    try {
+      return Math.max(1, Integer.parseInt(obiamaArgs.get("realisation.threads")));
+    }
+    catch(NumberFormatException e) {
+      ErrorHandler.warn(e, "parsing number of threads for --realisation-threads",
+          "the state will be realised on one thread");
+      return 1;
+    }
+  }
+
+  /**
+   * <!-- getRuleInference -->
+   * 
+   * @return Whether the --rule-inference option was given
+   */
+  public static boolean getRuleInference() {
+    return obiamaArgs.containsKey("rule.inference");
+  }
+
+  /**
+   * <!-- getRCC8 -->
+   * 
+   * @return Whether the --rcc8 option was given
+   */
+  public static boolean getRCC8() {
+    return obiamaArgs.containsKey("rcc8");
+  }
+
+  /**
+   * <!-- getAdjacencyIndexProperties -->
+   * 
+   * @return The set of property URIs given as argument to the
+   *         --adjacency-index option, or <code>null</code> if the option was
+   *         not given. The set will contain {@link #ALL_PROPERTIES} if all
+   *         object properties are to be indexed.
+   */
+  public static Set<String> getAdjacencyIndexProperties() {
+    if(!obiamaArgs.containsKey("adjacency.index")) return null;
+    Set<String> properties = new HashSet<String>();
+    for(String property: obiamaArgs.get("adjacency.index").split(",")) {
+      properties.add(property.trim());
+    }
+    return properties;
+  }
+
   /**
    * <!-- getNonGUIMode -->
    * 
@@ -0,0 +1,565 @@
+/*
+ * uk.ac.hutton.obiama.msb: OntologyCache.java 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.msb;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.semanticweb.owl.apibinding.OWLManager;
+import org.semanticweb.owl.io.OWLFunctionalSyntaxOntologyFormat;
+import org.semanticweb.owl.model.OWLAxiom;
+import org.semanticweb.owl.model.OWLOntology;
+import org.semanticweb.owl.model.OWLOntologyChangeException;
+import org.semanticweb.owl.model.OWLOntologyCreationException;
+import org.semanticweb.owl.model.OWLOntologyManager;
+import org.semanticweb.owl.model.OWLOntologyStorageException;
+import org.semanticweb.owl.model.OWLOntologyURIMapper;
+import org.semanticweb.owl.model.UnknownOWLOntologyException;
+
+import uk.ac.hutton.obiama.exception.Bug;
+import uk.ac.hutton.obiama.exception.ErrorHandler;
+import uk.ac.hutton.obiama.exception.Panic;
+
+/**
+ * OntologyCache
+ * 
+ * A local on-disk cache of parsed ontologies. When an ontology is loaded from a
+ * file, it and every ontology in its imports closure are saved to the cache
+ * directory in a binary format (see {@link AxiomSerialiser}) from which the
+ * axioms are built directly, without parsing. Ontologies with axioms the binary
+ * format does not cover are saved in OWL functional syntax instead, which is
+ * still much quicker to parse than RDF/XML. An index file for the ontology records the hash of each physical
+ * document in the closure, where each was found, and the hash of each cached
+ * file. The next time the ontology is loaded, if all the documents still have
+ * the same hash, the imports are still found in the same places, and the
+ * cached files are intact, the closure is loaded from the cache instead,
+ * imported ontologies first, so that the cached versions of these are used
+ * when the importing ontology is loaded. Files are written to a temporary file
+ * and renamed into place, so an interrupted run cannot leave a partly written
+ * file in the cache; any cached file found to be damaged is deleted so it will
+ * be written again.
+ * 
+ * The cache may be used by several threads at once. Only reading the index is
+ * done holding the lock. While ontologies are being loaded in parallel (between
+ * {@link #startSharing()} and {@link #stopSharing()}), the axioms parsed from
+ * each cached file are kept, so that an ontology imported by more than one of
+ * those being loaded is only parsed once.
+ * 
+ * @author Gary Polhill
+ */
+class OntologyCache {
+  /**
+   * Algorithm used to hash documents
+   */
+  public static final String HASH_ALGORITHM = "SHA-1";
+
+  /**
+   * Suffix for index files
+   */
+  public static final String INDEX_SUFFIX = ".idx";
+
+  /**
+   * Suffix for ontologies cached in the binary format
+   */
+  public static final String BINARY_SUFFIX = ".axb";
+
+  /**
+   * Suffix for ontologies cached in OWL functional syntax
+   */
+  public static final String CACHE_SUFFIX = ".ofn";
+
+  /**
+   * Property in the index file giving the number of ontologies in the closure
+   */
+  private static final String N_ENTRIES = "entries";
+
+  /**
+   * Prefixes for properties in the index file describing each ontology
+   */
+  private static final String LOGICAL = "logical.";
+  private static final String PHYSICAL = "physical.";
+  private static final String HASH = "hash.";
+  private static final String CACHED = "cached.";
+  private static final String CHECK = "check.";
+
+  /**
+   * Directory containing the cache
+   */
+  private final File dir;
+
+  /**
+   * Axioms parsed from cached files, by file name, while sharing
+   * (<code>null</code> otherwise)
+   */
+  private Map<String, FutureTask<Set<OWLAxiom>>> parsed;
+
+  /**
+   * Constructor
+   * 
+   * @param dir The cache directory, which will be created if need be
+   */
+  OntologyCache(File dir) {
+    this.dir = dir;
+    parsed = null;
+  }
+
+  /**
+   * <!-- startSharing -->
+   * 
+   * Start keeping the axioms parsed from cached files
+   */
+  synchronized void startSharing() {
+    if(parsed == null) parsed = new HashMap<String, FutureTask<Set<OWLAxiom>>>();
+  }
+
+  /**
+   * <!-- stopSharing -->
+   * 
+   * Forget the axioms parsed from cached files
+   */
+  synchronized void stopSharing() {
+    parsed = null;
+  }
+
+  /**
+   * <!-- load -->
+   * 
+   * Load an ontology and its imports closure from the cache
+   * 
+   * @param logicalURI The logical URI of the ontology
+   * @param physicalURI The physical URI of the ontology
+   * @param manager The manager to load the ontology into
+   * @param mappers The mappers used to find the physical URIs of ontologies
+   * @return The ontology, or <code>null</code> if the cache doesn't have an up
+   *         to date copy of it
+   */
+  OWLOntology load(URI logicalURI, URI physicalURI, OWLOntologyManager manager, Set<OWLOntologyURIMapper> mappers) {
+    if(!isCacheable(physicalURI)) return null;
+    File indexFile = getIndexFile(logicalURI, physicalURI);
+    if(!indexFile.canRead()) return null;
+
+    Properties index = new Properties();
+    try {
+      synchronized(this) {
+        InputStream in = new FileInputStream(indexFile);
+        try {
+          index.load(in);
+        }
+        finally {
+          in.close();
+        }
+      }
+
+      // Check all the documents are unchanged and still found in the same
+      // place, and the cached copies intact, before loading any of them
+
+      int n = Integer.parseInt(index.getProperty(N_ENTRIES, "0"));
+      if(n == 0) return null;
+      boolean intact = true;
+      for(int i = 0; i < n; i++) {
+        URI docURI = URI.create(index.getProperty(PHYSICAL + i));
+        if(!isCacheable(docURI)) return null;
+        if(i < n - 1 && !docURI.equals(resolve(URI.create(index.getProperty(LOGICAL + i)), mappers))) return null;
+        File cached = new File(dir, index.getProperty(CACHED + i));
+        if(!cached.canRead()) return null;
+        if(!hash(docURI).equals(index.getProperty(HASH + i))) return null;
+        if(!hash(cached.toURI()).equals(index.getProperty(CHECK + i))) {
+          ErrorHandler.warn("cached copy " + cached + " of " + docURI + " is damaged or out of date",
+              "loading ontology " + logicalURI + " from cache " + dir, "the cached copy will be replaced");
+          cached.delete();
+          intact = false;
+        }
+      }
+      if(!intact) return null;
+
+      // Load the closure, imported ontologies first; the last entry is the
+      // ontology itself
+
+      OWLOntology ontology = null;
+      for(int i = 0; i < n; i++) {
+        URI entryURI = URI.create(index.getProperty(LOGICAL + i));
+        if(manager.contains(entryURI)) {
+          ontology = manager.getOntology(entryURI);
+        }
+        else {
+          // Imported ontologies are already in the manager, so the axioms
+          // can simply be added to a new ontology
+          ontology = manager.createOntology(entryURI);
+          manager.addAxioms(ontology, parse(index, i));
+
+          // Make the ontology look as if it came from the original document,
+          // so it is hashed correctly if cached again as part of another
+          // ontology's closure
+          manager.setPhysicalURIForOntology(ontology, URI.create(index.getProperty(PHYSICAL + i)));
+        }
+      }
+      return ontology;
+    }
+    catch(IOException e) {
+      ErrorHandler.warn(e, "loading ontology " + logicalURI + " from cache " + dir,
+          "the ontology will be parsed from " + physicalURI);
+    }
+    catch(NumberFormatException e) {
+      ErrorHandler.warn(e, "reading cache index " + indexFile, "the ontology will be parsed from " + physicalURI);
+    }
+    catch(IllegalArgumentException e) {
+      ErrorHandler.warn(e, "reading cache index " + indexFile, "the ontology will be parsed from " + physicalURI);
+    }
+    catch(OWLOntologyCreationException e) {
+      ErrorHandler.warn(e, "loading ontology " + logicalURI + " from cache " + dir,
+          "the ontology will be parsed from " + physicalURI);
+    }
+    catch(OWLOntologyChangeException e) {
+      ErrorHandler.warn(e, "loading ontology " + logicalURI + " from cache " + dir,
+          "the ontology will be parsed from " + physicalURI);
+    }
+    return null;
+  }
+
+  /**
+   * <!-- parse -->
+   * 
+   * Get the axioms of an ontology in a cached closure, parsing the cached file
+   * unless another thread has already done so (or is doing so) while sharing.
+   * If the file cannot be parsed, it is deleted.
+   * 
+   * @param index The index of the closure
+   * @param entry The entry in the index for the ontology
+   * @return The axioms in the ontology (not including those it imports)
+   * @throws OWLOntologyCreationException
+   * @throws IOException
+   */
+  private Set<OWLAxiom> parse(final Properties index, final int entry) throws OWLOntologyCreationException,
+      IOException {
+    String cachedName = index.getProperty(CACHED + entry);
+    FutureTask<Set<OWLAxiom>> task = new FutureTask<Set<OWLAxiom>>(new Callable<Set<OWLAxiom>>() {
+      public Set<OWLAxiom> call() throws OWLOntologyCreationException, IOException {
+        return read(index, entry);
+      }
+    });
+    boolean mine = true;
+    synchronized(this) {
+      if(parsed != null) {
+        if(parsed.containsKey(cachedName)) {
+          task = parsed.get(cachedName);
+          mine = false;
+        }
+        else {
+          parsed.put(cachedName, task);
+        }
+      }
+    }
+    if(mine) task.run();
+    try {
+      return task.get();
+    }
+    catch(ExecutionException e) {
+      synchronized(this) {
+        if(parsed != null) parsed.remove(cachedName);
+      }
+      new File(dir, cachedName).delete();
+      Throwable cause = e.getCause();
+      if(cause instanceof OWLOntologyCreationException) throw (OWLOntologyCreationException)cause;
+      if(cause instanceof IOException) throw (IOException)cause;
+      if(cause instanceof RuntimeException) throw (RuntimeException)cause;
+      if(cause instanceof Error) throw (Error)cause;
+      throw new Bug();
+    }
+    catch(InterruptedException e) {
+      ErrorHandler.fatal(e, "loading cached ontology " + cachedName);
+      throw new Panic();
+    }
+  }
+
+  /**
+   * <!-- read -->
+   * 
+   * Read the cached file of an ontology in a closure into a manager of its
+   * own. Binary files are decoded directly. Functional syntax files are parsed
+   * with the other ontologies in the closure created empty in the manager
+   * first, and any other import mapped to a file that does not exist, so that
+   * no imported ontology is parsed.
+   * 
+   * @param index The index of the closure
+   * @param entry The entry in the index for the ontology
+   * @return The axioms in the ontology (not including those it imports)
+   * @throws OWLOntologyCreationException
+   * @throws IOException
+   */
+  private Set<OWLAxiom> read(Properties index, int entry) throws OWLOntologyCreationException, IOException {
+    OWLOntologyManager reader = OWLManager.createOWLOntologyManager();
+    File cached = new File(dir, index.getProperty(CACHED + entry));
+    if(cached.getName().endsWith(BINARY_SUFFIX)) {
+      OWLOntology subject = reader.createOntology(URI.create(index.getProperty(LOGICAL + entry)));
+      return AxiomSerialiser.read(cached, reader.getOWLDataFactory(), subject);
+    }
+
+    reader.setSilentMissingImportsHandling(true);
+    final URI missing = new File(dir, "missing" + INDEX_SUFFIX + CACHE_SUFFIX).toURI();
+    reader.addURIMapper(new OWLOntologyURIMapper() {
+      public URI getPhysicalURI(URI ontologyURI) {
+        return missing;
+      }
+    });
+    int n = Integer.parseInt(index.getProperty(N_ENTRIES));
+    for(int i = 0; i < n; i++) {
+      if(i != entry) reader.createOntology(URI.create(index.getProperty(LOGICAL + i)));
+    }
+    return reader.loadOntologyFromPhysicalURI(cached.toURI()).getAxioms();
+  }
+
+  /**
+   * <!-- store -->
+   * 
+   * Save an ontology and its imports closure to the cache, if all the ontologies
+   * in the closure were loaded from files. No lock is needed, as each file is
+   * renamed into place when complete, and files with the same name have the
+   * same contents.
+   * 
+   * @param logicalURI The logical URI the ontology was requested with
+   * @param physicalURI The physical URI the ontology was loaded from
+   * @param ontology The ontology
+   * @param manager The manager the ontology was loaded into
+   */
+  void store(URI logicalURI, URI physicalURI, OWLOntology ontology, OWLOntologyManager manager) {
+    if(!isCacheable(physicalURI)) return;
+    if(!dir.isDirectory() && !dir.mkdirs()) {
+      ErrorHandler.warn("cannot create directory " + dir, "caching ontology " + logicalURI,
+          "the ontology will not be cached");
+      return;
+    }
+
+    List<OWLOntology> closure = new LinkedList<OWLOntology>();
+    order(ontology, manager, new LinkedHashSet<OWLOntology>(), closure);
+
+    Properties index = new Properties();
+    index.setProperty(N_ENTRIES, Integer.toString(closure.size()));
+    try {
+      int i = 0;
+      for(OWLOntology inClosure: closure) {
+        URI docURI = manager.getPhysicalURIForOntology(inClosure);
+        if(!isCacheable(docURI)) return;
+        String docHash = hash(docURI);
+        File cached = new File(dir, docHash + BINARY_SUFFIX);
+        if(!cached.exists()) {
+          File syntax = new File(dir, docHash + CACHE_SUFFIX);
+          if(syntax.exists()) {
+            cached = syntax;
+          }
+          else {
+            File tmp = File.createTempFile(docHash, BINARY_SUFFIX, dir);
+            try {
+              if(!AxiomSerialiser.write(inClosure.getAxioms(), tmp)) {
+                // Axioms not covered by the binary format
+                manager.saveOntology(inClosure, new OWLFunctionalSyntaxOntologyFormat(), tmp.toURI());
+                cached = syntax;
+              }
+              replace(tmp, cached);
+            }
+            finally {
+              tmp.delete();
+            }
+          }
+        }
+        String cachedName = cached.getName();
+        index.setProperty(LOGICAL + i, inClosure.getURI().toString());
+        index.setProperty(PHYSICAL + i, docURI.toString());
+        index.setProperty(HASH + i, docHash);
+        index.setProperty(CACHED + i, cachedName);
+        index.setProperty(CHECK + i, hash(cached.toURI()));
+        i++;
+      }
+
+      File indexFile = getIndexFile(logicalURI, physicalURI);
+      File tmp = File.createTempFile(indexFile.getName(), INDEX_SUFFIX, dir);
+      try {
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+          index.store(out, "Ontology cache index for " + logicalURI);
+        }
+        finally {
+          out.close();
+        }
+        replace(tmp, indexFile);
+      }
+      finally {
+        tmp.delete();
+      }
+    }
+    catch(IOException e) {
+      ErrorHandler.warn(e, "caching ontology " + logicalURI + " in " + dir, "the ontology will not be cached");
+    }
+    catch(OWLOntologyStorageException e) {
+      ErrorHandler.warn(e, "caching ontology " + logicalURI + " in " + dir, "the ontology will not be cached");
+    }
+    catch(UnknownOWLOntologyException e) {
+      throw new Bug();
+    }
+  }
+
+  /**
+   * <!-- order -->
+   * 
+   * Put the imports closure of an ontology in an order in which each ontology
+   * comes after all the ontologies it imports.
+   * 
+   * @param ontology The ontology
+   * @param manager The manager
+   * @param visited Ontologies already visited
+   * @param ordered The ordered list to add ontologies to
+   */
+  private static void order(OWLOntology ontology, OWLOntologyManager manager, Set<OWLOntology> visited,
+      List<OWLOntology> ordered) {
+    if(!visited.add(ontology)) return;
+    for(OWLOntology imported: ontology.getImports(manager)) {
+      order(imported, manager, visited, ordered);
+    }
+    ordered.add(ontology);
+  }
+
+  /**
+   * <!-- replace -->
+   * 
+   * Move a newly written file into place
+   * 
+   * @param tmp The newly written file
+   * @param file The file it is to replace
+   * @return <code>true</code> if the file was replaced
+   */
+  private static boolean replace(File tmp, File file) {
+    if(tmp.renameTo(file)) return true;
+
+    // On some platforms, renaming will not overwrite an existing file
+
+    file.delete();
+    return tmp.renameTo(file);
+  }
+
+  /**
+   * <!-- resolve -->
+   * 
+   * @param logicalURI The logical URI of an ontology
+   * @param mappers The mappers used to find the physical URIs of ontologies
+   * @return The physical URI the ontology would be loaded from
+   */
+  static URI resolve(URI logicalURI, Set<OWLOntologyURIMapper> mappers) {
+    for(OWLOntologyURIMapper mapper: mappers) {
+      URI mapped = mapper.getPhysicalURI(logicalURI);
+      if(mapped != null) return mapped;
+    }
+    return logicalURI;
+  }
+
+  /**
+   * <!-- isCacheable -->
+   * 
+   * @param physicalURI A physical URI
+   * @return <code>true</code> if the document is a local file that can be
+   *         hashed
+   */
+  private static boolean isCacheable(URI physicalURI) {
+    return physicalURI != null && "file".equals(physicalURI.getScheme()) && new File(physicalURI).canRead();
+  }
+
+  /**
+   * <!-- getIndexFile -->
+   * 
+   * @param logicalURI Logical URI of an ontology
+   * @param physicalURI Physical URI it is loaded from
+   * @return The index file for the ontology
+   */
+  private File getIndexFile(URI logicalURI, URI physicalURI) {
+    return new File(dir, hex(digest().digest((logicalURI + " " + physicalURI).getBytes())) + INDEX_SUFFIX);
+  }
+
+  /**
+   * <!-- hash -->
+   * 
+   * @param physicalURI The physical URI of a document (which must be a file)
+   * @return The hash of the contents of the document as a hex string
+   * @throws IOException
+   */
+  private static String hash(URI physicalURI) throws IOException {
+    MessageDigest digest = digest();
+    InputStream in = new BufferedInputStream(new FileInputStream(new File(physicalURI)));
+    try {
+      byte buffer[] = new byte[8192];
+      int n;
+      while((n = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, n);
+      }
+    }
+    finally {
+      in.close();
+    }
+    return hex(digest.digest());
+  }
+
+  /**
+   * <!-- digest -->
+   * 
+   * @return A new message digest
+   */
+  private static MessageDigest digest() {
+    try {
+      return MessageDigest.getInstance(HASH_ALGORITHM);
+    }
+    catch(NoSuchAlgorithmException e) {
+      // All Java platforms are required to support SHA-1
+      throw new Bug();
+    }
+  }
+
+  /**
+   * <!-- hex -->
+   * 
+   * @param bytes An array of bytes
+   * @return The bytes as a hexadecimal string
+   */
+  private static String hex(byte bytes[]) {
+    StringBuffer buff = new StringBuffer();
+    for(byte b: bytes) {
+      buff.append(Character.forDigit((b >> 4) & 0xF, 16));
+      buff.append(Character.forDigit(b & 0xF, 16));
+    }
+    return buff.toString();
+  }
+}
@@ -24,15 +24,32 @@
 package uk.ac.hutton.obiama.msb;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.semanticweb.owl.apibinding.OWLManager;
 import org.semanticweb.owl.model.MissingImportEvent;
 import org.semanticweb.owl.model.MissingImportListener;
+import org.semanticweb.owl.model.OWLImportsDeclaration;
 import org.semanticweb.owl.model.OWLOntology;
+import org.semanticweb.owl.model.OWLOntologyChangeException;
 import org.semanticweb.owl.model.OWLOntologyCreationException;
 import org.semanticweb.owl.model.OWLOntologyLoaderListener;
 import org.semanticweb.owl.model.OWLOntologyManager;
@@ -40,7 +57,9 @@ import org.semanticweb.owl.model.OWLOntologyURIMapper;
 import org.semanticweb.owl.util.AutoURIMapper;
 import org.semanticweb.owl.util.SimpleURIMapper;
 
+import uk.ac.hutton.obiama.exception.Bug;
 import uk.ac.hutton.obiama.exception.ErrorHandler;
+import uk.ac.hutton.obiama.exception.Panic;
 import uk.ac.hutton.obiama.model.Log;
 
 /**
@@ -79,12 +98,30 @@ public class OntologyIOHelper {
    */
   private Set<OWLOntologyURIMapper> mappers;
 
+  /**
+   * Cache of parsed ontologies (<code>null</code> if not in use)
+   */
+  private OntologyCache cache;
+
   /**
    * Initialise the set of ignorable imports.
    */
   public OntologyIOHelper() {
     ignoreFailedImports = new HashSet<String>();
-    mappers = new HashSet<OWLOntologyURIMapper>();
+    mappers = new LinkedHashSet<OWLOntologyURIMapper>();
+    cache = null;
+  }
+
+  /**
+   * Constructor for a helper used to load ontologies on another thread. The
+   * mappers, ignored imports and cache are shared with the parent.
+   * 
+   * @param parent The helper creating this one
+   */
+  private OntologyIOHelper(OntologyIOHelper parent) {
+    ignoreFailedImports = parent.ignoreFailedImports;
+    mappers = parent.mappers;
+    cache = parent.cache;
   }
 
   /**
@@ -98,6 +135,8 @@ public class OntologyIOHelper {
    * @param manager
    */
   public void configure(OWLOntologyManager manager) {
+    String cacheDir = ObiamaSetUp.getOntologyCacheDir();
+    if(cacheDir != null && cache == null) cache = new OntologyCache(new File(cacheDir));
     if(configuredManagers.contains(manager)) return;
     Map<String, String> logPhysMap = ObiamaSetUp.getOntologyURIMap();
     if(logPhysMap.size() == 0) {
@@ -111,10 +150,34 @@ public class OntologyIOHelper {
         ErrorHandler.redo(e, "Initialising logical to physical ontology URI map");
       }
     }
+    addListeners(manager);
+    configuredManagers.add(manager);
+  }
+
+  /**
+   * <!-- configureWorker -->
+   * 
+   * Configure a manager used to load ontologies on another thread with the
+   * mappers this helper has already been configured with.
+   * 
+   * @param manager The worker's manager
+   */
+  private void configureWorker(OWLOntologyManager manager) {
+    for(OWLOntologyURIMapper mapper: mappers) {
+      manager.addURIMapper(mapper);
+    }
+    addListeners(manager);
+  }
+
+  /**
+   * <!-- addListeners -->
+   * 
+   * @param manager A manager to add this helper's listeners to
+   */
+  private void addListeners(OWLOntologyManager manager) {
     manager.setSilentMissingImportsHandling(true);
     manager.addMissingImportListener(this.new AllowFailIgnoreListener());
     manager.addOntologyLoaderListener(this.new OntologyLoaderListener());
-    configuredManagers.add(manager);
   }
 
   /**
@@ -199,8 +262,10 @@ public class OntologyIOHelper {
       for(String dirStr: dirs) {
         File dir = new File(dirStr);
         if(dir.isDirectory() && dir.canRead()) {
-          // Do not search recursively
-          OWLOntologyURIMapper mapper = new AutoURIMapper(dir, false);
+          // Do not search recursively. AutoURIMapper builds its map the
+          // first time it is used, so it needs protecting from concurrent
+          // access when ontologies are loaded in parallel.
+          OWLOntologyURIMapper mapper = new SynchronizedURIMapper(new AutoURIMapper(dir, false));
           manager.addURIMapper(mapper);
           mappers.add(mapper);
         }
@@ -214,7 +279,8 @@ public class OntologyIOHelper {
   /**
    * <!-- loadOntology -->
    * 
-   * Load an ontology
+   * Load an ontology, using the cache if one has been configured and it has an
+   * up to date copy of the ontology and its imports closure.
    * 
    * @param uri Logical URI of ontology to load
    * @param manager OWLOntologyManager into which to load the ontology
@@ -222,6 +288,28 @@ public class OntologyIOHelper {
    * @throws OWLOntologyCreationException
    */
   public OWLOntology loadOntology(final URI uri, OWLOntologyManager manager) throws OWLOntologyCreationException {
+    if(cache == null || manager.contains(uri)) return parseOntology(uri, manager);
+
+    URI physicalURI = OntologyCache.resolve(uri, mappers);
+    OWLOntology ontology = cache.load(uri, physicalURI, manager, mappers);
+    if(ontology == null) {
+      ontology = parseOntology(uri, manager);
+      cache.store(uri, physicalURI, ontology, manager);
+    }
+    return ontology;
+  }
+
+  /**
+   * <!-- parseOntology -->
+   * 
+   * Load an ontology from its physical URI
+   * 
+   * @param uri Logical URI of ontology to load
+   * @param manager OWLOntologyManager into which to load the ontology
+   * @return The loaded ontology
+   * @throws OWLOntologyCreationException
+   */
+  private OWLOntology parseOntology(final URI uri, OWLOntologyManager manager) throws OWLOntologyCreationException {
     try {
       currentURI = uri;
       for(OWLOntologyURIMapper mapper: mappers) {
@@ -302,6 +390,297 @@ public class OntologyIOHelper {
     return helper.loadOntologyClosure(uri, manager, closure, known);
   }
 
+  /**
+   * <!-- loadOntologyClosures -->
+   * 
+   * Load several ontologies and their closures. Those the ontology cache (if in
+   * use) has up to date copies of are loaded from it. The other documents in
+   * the closures are parsed in parallel: each document is parsed on its own
+   * into a private manager, with its imports mapped to a file that does not
+   * exist (as {@link OntologyCache} does when reading), so that no document
+   * waits for those it imports. The imports each document declares are
+   * submitted for parsing as soon as it has been parsed. When every document
+   * has been parsed, the results are merged into the manager given as argument
+   * in a deterministic order: the ontologies are taken in order of their URIs,
+   * and each is merged after the ontologies it imports. Ontologies already in
+   * the manager are not parsed or merged again.
+   * <p>
+   * Since each document is parsed without its imports, an RDF/XML document
+   * must declare the type of each property it uses (as ontology editors do)
+   * for the parser to tell object properties from data properties.
+   * 
+   * @param uris Logical URIs of the ontologies to load
+   * @param manager OWLOntologyManager
+   * @param closure Set in which to put the closures of the loaded ontologies
+   * @return The loaded ontologies, in order of their URIs
+   * @throws OWLOntologyCreationException
+   */
+  public List<OWLOntology> loadOntologyClosures(Collection<URI> uris, OWLOntologyManager manager,
+      Set<OWLOntology> closure) throws OWLOntologyCreationException {
+    List<URI> ordered = new ArrayList<URI>(uris);
+    Collections.sort(ordered);
+    List<OWLOntology> loaded = new LinkedList<OWLOntology>();
+
+    int nThreads = Runtime.getRuntime().availableProcessors();
+    File missing = null;
+    if(nThreads > 1) {
+      try {
+        missing = File.createTempFile("missing", ".owl");
+        missing.delete();
+      }
+      catch(IOException e) {
+        ErrorHandler.warn(e, "creating a temporary file name", "ontologies will be parsed one at a time");
+      }
+    }
+    if(missing == null) {
+      for(URI uri: ordered) {
+        loaded.add(loadOntologyClosure(uri, manager, closure));
+      }
+      return loaded;
+    }
+
+    // Load what can be loaded from the cache, or is already loaded
+
+    Map<URI, OWLOntology> found = new HashMap<URI, OWLOntology>();
+    Map<URI, URI> physicalURIs = new HashMap<URI, URI>();
+    for(URI uri: ordered) {
+      OWLOntology ontology = null;
+      if(manager.contains(uri)) {
+        ontology = manager.getOntology(uri);
+      }
+      else if(cache != null) {
+        URI physicalURI = OntologyCache.resolve(uri, mappers);
+        physicalURIs.put(uri, physicalURI);
+        ontology = cache.load(uri, physicalURI, manager, mappers);
+      }
+      if(ontology != null) found.put(uri, ontology);
+    }
+
+    // Parse the rest of the closures, a document at a time
+
+    Map<URI, ParsedDocument> parsed = new HashMap<URI, ParsedDocument>();
+    Set<URI> submitted = new HashSet<URI>();
+    ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+    CompletionService<ParsedDocument> parsing = new ExecutorCompletionService<ParsedDocument>(pool);
+    int outstanding = 0;
+    try {
+      for(URI uri: ordered) {
+        if(!found.containsKey(uri) && submitted.add(uri)) {
+          parsing.submit(new DocumentParser(uri, false, missing.toURI()));
+          outstanding++;
+        }
+      }
+      while(outstanding > 0) {
+        ParsedDocument doc = parsing.take().get();
+        outstanding--;
+        if(doc.ontology == null) continue;
+        parsed.put(doc.uri, doc);
+        for(URI imported: doc.imports) {
+          if(!manager.contains(imported) && submitted.add(imported)) {
+            parsing.submit(new DocumentParser(imported, true, missing.toURI()));
+            outstanding++;
+          }
+        }
+      }
+    }
+    catch(ExecutionException e) {
+      Throwable cause = e.getCause();
+      if(cause instanceof OWLOntologyCreationException) throw (OWLOntologyCreationException)cause;
+      if(cause instanceof RuntimeException) throw (RuntimeException)cause;
+      if(cause instanceof Error) throw (Error)cause;
+      throw new Bug();
+    }
+    catch(InterruptedException e) {
+      ErrorHandler.fatal(e, "loading ontologies " + ordered);
+      throw new Panic();
+    }
+    finally {
+      pool.shutdownNow();
+    }
+
+    // Merge the parsed documents in order
+
+    Set<URI> visited = new HashSet<URI>();
+    for(URI uri: ordered) {
+      OWLOntology ontology = found.get(uri);
+      if(ontology == null) {
+        ontology = merge(uri, parsed, manager, visited);
+        if(cache != null) cache.store(uri, physicalURIs.get(uri), ontology, manager);
+      }
+      closure.addAll(manager.getImportsClosure(ontology));
+      loaded.add(ontology);
+    }
+    return loaded;
+  }
+
+  /**
+   * <!-- merge -->
+   * 
+   * Copy a parsed document, and the documents it imports, into a manager.
+   * Imported documents are merged first, in order of their URIs.
+   * 
+   * @param uri The URI the document was requested with
+   * @param parsed The parsed documents, by the URI they were requested with
+   * @param manager The manager to copy the document to
+   * @param visited URIs of documents already merged
+   * @return The ontology in the manager
+   */
+  private static OWLOntology merge(URI uri, Map<URI, ParsedDocument> parsed, OWLOntologyManager manager,
+      Set<URI> visited) {
+    ParsedDocument doc = parsed.get(uri);
+    if(doc == null) return manager.contains(uri) ? manager.getOntology(uri) : null;
+    if(visited.add(uri)) {
+      List<URI> imports = new ArrayList<URI>(doc.imports);
+      Collections.sort(imports);
+      for(URI imported: imports) {
+        merge(imported, parsed, manager, visited);
+      }
+    }
+
+    URI ontologyURI = doc.ontology.getURI();
+    if(manager.contains(ontologyURI)) return manager.getOntology(ontologyURI);
+    try {
+      OWLOntology copy = manager.createOntology(ontologyURI);
+      manager.addAxioms(copy, doc.ontology.getAxioms());
+      manager.setPhysicalURIForOntology(copy, doc.physicalURI);
+      return copy;
+    }
+    catch(OWLOntologyCreationException e) {
+      ErrorHandler.fatal(e, "merging ontology " + ontologyURI + " parsed in parallel");
+      throw new Panic();
+    }
+    catch(OWLOntologyChangeException e) {
+      ErrorHandler.fatal(e, "merging ontology " + ontologyURI + " parsed in parallel");
+      throw new Panic();
+    }
+  }
+
+  /**
+   * <!-- getPhysicalURI -->
+   * 
+   * @param uri Logical URI of an ontology
+   * @return The physical URI the first mapper to know of the ontology maps it
+   *         to, or the logical URI if no mapper does
+   */
+  private URI getPhysicalURI(URI uri) {
+    for(OWLOntologyURIMapper mapper: mappers) {
+      URI physicalURI = mapper.getPhysicalURI(uri);
+      if(physicalURI != null) return physicalURI;
+    }
+    return uri;
+  }
+
+  /**
+   * DocumentParser
+   * 
+   * Parses one document into a manager of its own on a worker thread, without
+   * parsing the documents it imports.
+   * 
+   * @author Gary Polhill
+   */
+  private class DocumentParser implements Callable<ParsedDocument> {
+    private final URI uri;
+    private final boolean imported;
+
+    /**
+     * Physical URI of a file that does not exist, to which imports are mapped
+     */
+    private final URI missing;
+
+    DocumentParser(URI uri, boolean imported, URI missing) {
+      this.uri = uri;
+      this.imported = imported;
+      this.missing = missing;
+    }
+
+    /**
+     * <!-- call -->
+     * 
+     * @see java.util.concurrent.Callable#call()
+     * @return The parsed document, with a <code>null</code> ontology if the
+     *         document is an import that failed to load and can be ignored
+     * @throws OWLOntologyCreationException
+     */
+    public ParsedDocument call() throws OWLOntologyCreationException {
+      URI physicalURI = getPhysicalURI(uri);
+      OWLOntologyManager reader = OWLManager.createOWLOntologyManager();
+      reader.setSilentMissingImportsHandling(true);
+      reader.addURIMapper(new OWLOntologyURIMapper() {
+        public URI getPhysicalURI(URI ontologyURI) {
+          return missing;
+        }
+      });
+      try {
+        OWLOntology ontology = reader.loadOntologyFromPhysicalURI(physicalURI);
+        Log.loadOntologySuccessfully(ontology.getURI(), physicalURI, imported);
+        return new ParsedDocument(uri, physicalURI, ontology);
+      }
+      catch(OWLOntologyCreationException e) {
+        Log.loadOntologyFail(uri, physicalURI, imported, e);
+        if(imported && ignoreFailedImports.contains(uri.toString())) {
+          Log.loadOntologyIgnore(uri, e);
+          return new ParsedDocument(uri, physicalURI, null);
+        }
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * ParsedDocument
+   * 
+   * The result of parsing a document on a worker thread.
+   * 
+   * @author Gary Polhill
+   */
+  private static class ParsedDocument {
+    final URI uri;
+    final URI physicalURI;
+    final OWLOntology ontology;
+
+    /**
+     * Logical URIs of the ontologies the document imports
+     */
+    final Set<URI> imports;
+
+    ParsedDocument(URI uri, URI physicalURI, OWLOntology ontology) {
+      this.uri = uri;
+      this.physicalURI = physicalURI;
+      this.ontology = ontology;
+      imports = new HashSet<URI>();
+      if(ontology != null) {
+        for(OWLImportsDeclaration declaration: ontology.getImportsDeclarations()) {
+          imports.add(declaration.getImportedOntologyURI());
+        }
+      }
+    }
+  }
+
+  /**
+   * SynchronizedURIMapper
+   * 
+   * Wrapper allowing a mapper to be shared safely among threads loading
+   * ontologies.
+   * 
+   * @author Gary Polhill
+   */
+  private static class SynchronizedURIMapper implements OWLOntologyURIMapper {
+    private final OWLOntologyURIMapper mapper;
+
+    SynchronizedURIMapper(OWLOntologyURIMapper mapper) {
+      this.mapper = mapper;
+    }
+
+    /**
+     * <!-- getPhysicalURI -->
+     * 
+     * @see org.semanticweb.owl.model.OWLOntologyURIMapper#getPhysicalURI(java.net.URI)
+     */
+    public synchronized URI getPhysicalURI(URI ontologyURI) {
+      return mapper.getPhysicalURI(ontologyURI);
+    }
+  }
+
   public class OntologyLoaderListener implements OWLOntologyLoaderListener {
 
     /**
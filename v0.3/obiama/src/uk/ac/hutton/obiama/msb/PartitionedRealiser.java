@@ -0,0 +1,431 @@
+/*
+ * uk.ac.hutton.obiama.msb: PartitionedRealiser.java 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.msb;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.semanticweb.owl.apibinding.OWLManager;
+import org.semanticweb.owl.model.OWLAxiom;
+import org.semanticweb.owl.model.OWLEntity;
+import org.semanticweb.owl.model.OWLException;
+import org.semanticweb.owl.model.OWLIndividual;
+import org.semanticweb.owl.model.OWLIndividualAxiom;
+import org.semanticweb.owl.model.OWLLogicalAxiom;
+import org.semanticweb.owl.model.OWLOntology;
+import org.semanticweb.owl.model.OWLOntologyChangeException;
+import org.semanticweb.owl.model.OWLOntologyManager;
+
+import uk.ac.hutton.obiama.exception.Bug;
+import uk.ac.hutton.obiama.exception.ErrorHandler;
+import uk.ac.hutton.obiama.exception.Panic;
+
+/**
+ * <!-- PartitionedRealiser -->
+ * 
+ * Realise the individuals in the state in parallel. The individuals are split
+ * into connected components, two individuals being connected if any axiom
+ * (in the state, or about individuals in the model) mentions both of them. No
+ * inference about an individual can then depend on an individual in another
+ * component, so each component can be realised separately, with the model, by
+ * a different reasoner, and the union of the results is the same as realising
+ * the whole state at once.
+ * 
+ * That is not so if the model has T-box axioms that mention individuals
+ * (nominals), which can connect any individuals, so in that case the realiser
+ * declines to partition the state. It also declines if there is only one
+ * component. Inconsistency in one component does not show up in the others,
+ * as it would when realising the whole state at once.
+ * 
+ * Each worker has its own ontology manager, holding a copy of the model, and
+ * a {@link ReasonerSession} that keeps the copy loaded (and classified)
+ * between steps, so that only the worker's partition of the state is loaded
+ * each time. The OWL API does not allow reasoners or managers to be shared
+ * between threads. The partitions are realised by a pool of threads kept for
+ * the life of the realiser; {@link #dispose()} stops them.
+ * 
+ * @author Gary Polhill
+ */
+class PartitionedRealiser {
+  /**
+   * <!-- Worker -->
+   * 
+   * A manager, a copy of the model and a reasoner session for realising one
+   * partition at a time
+   * 
+   * @author Gary Polhill
+   */
+  private static class Worker {
+    final OWLOntologyManager manager;
+    final OWLOntology model;
+    final ReasonerSession session;
+    final URI partitionURI;
+    final URI inferredURI;
+
+    Worker(Set<OWLOntology> model) throws OWLException {
+      manager = OWLManager.createOWLOntologyManager();
+      this.model = manager.createOntology(AnonymousURI.createAnonymousURI());
+      for(OWLOntology ontology: model) {
+        manager.addAxioms(this.model, ontology.getAxioms());
+      }
+      session = new ReasonerSession(manager, ReasonerFactory.getReasonerOrDie(manager));
+      partitionURI = AnonymousURI.createAnonymousURI();
+      inferredURI = AnonymousURI.createAnonymousURI();
+    }
+
+    /**
+     * <!-- realise -->
+     * 
+     * @param axioms The axioms in the partition of the state
+     * @param vocabulary Entities to limit the inference to, or
+     *          <code>null</code>
+     * @return Axioms inferred from the partition and the model
+     * @throws OWLException
+     */
+    Set<OWLAxiom> realise(Set<OWLAxiom> axioms, Set<OWLEntity> vocabulary) throws OWLException {
+      if(manager.contains(partitionURI)) manager.removeOntology(partitionURI);
+      OWLOntology partition = manager.createOntology(partitionURI);
+      manager.addAxioms(partition, axioms);
+      OWLOntology inferred = manager.createOntology(inferredURI);
+      try {
+        Set<OWLOntology> ontologies = new HashSet<OWLOntology>();
+        ontologies.add(model);
+        ontologies.add(partition);
+        InferredOntologyCreator.inferIndividuals(inferred, session, ontologies, vocabulary);
+        return new HashSet<OWLAxiom>(inferred.getAxioms());
+      }
+      finally {
+        manager.removeOntology(inferredURI);
+      }
+    }
+  }
+
+  /**
+   * The manager of the state and inferred ontologies
+   */
+  private final OWLOntologyManager manager;
+
+  /**
+   * The model ontologies
+   */
+  private final Set<OWLOntology> model;
+
+  /**
+   * Maximum number of partitions to realise in parallel
+   */
+  private final int nWorkers;
+
+  /**
+   * Workers, created when first needed
+   */
+  private final List<Worker> workers;
+
+  /**
+   * Threads realising the partitions, created when first needed
+   */
+  private ExecutorService pool;
+
+  /**
+   * Whether the model allows the state to be partitioned
+   */
+  private final boolean partitionable;
+
+  /**
+   * Axioms about individuals in the model, which connect individuals in the
+   * state
+   */
+  private final Set<OWLAxiom> modelIndividualAxioms;
+
+  /**
+   * Constructor
+   * 
+   * @param manager The manager of the state and inferred ontologies
+   * @param model The model ontologies
+   * @param nWorkers The number of partitions to realise in parallel
+   */
+  PartitionedRealiser(OWLOntologyManager manager, Set<OWLOntology> model, int nWorkers) {
+    this.manager = manager;
+    this.model = new HashSet<OWLOntology>(model);
+    this.nWorkers = nWorkers;
+    workers = new ArrayList<Worker>(nWorkers);
+    modelIndividualAxioms = new HashSet<OWLAxiom>();
+    boolean nominals = false;
+    for(OWLOntology ontology: model) {
+      for(OWLAxiom axiom: ontology.getAxioms()) {
+        if(axiom instanceof OWLIndividualAxiom) {
+          modelIndividualAxioms.add(axiom);
+        }
+        else if(axiom instanceof OWLLogicalAxiom && individualsIn(axiom).size() > 0) {
+          nominals = true;
+        }
+      }
+    }
+    partitionable = !nominals && nWorkers > 1;
+    if(nominals) {
+      ErrorHandler.note("The model has T-box axioms mentioning individuals, so the state will not be "
+        + "partitioned for realisation");
+    }
+  }
+
+  /**
+   * <!-- realise -->
+   * 
+   * Realise the state in partitions, putting the inferred axioms in the
+   * inferred ontology
+   * 
+   * @param state The state ontologies
+   * @param inferred The ontology to put the inferred axioms in
+   * @param vocabulary Entities to limit the inference to, or <code>null</code>
+   * @return <code>false</code> if the state was not partitioned, in which case
+   *         the caller should realise it all at once
+   */
+  boolean realise(Set<OWLOntology> state, OWLOntology inferred, Set<OWLEntity> vocabulary) {
+    if(!partitionable) return false;
+
+    List<Set<OWLAxiom>> partitions = partition(state);
+    if(partitions == null) return false;
+
+    Set<OWLAxiom> inferredAxioms = new HashSet<OWLAxiom>();
+    if(pool == null) {
+      pool = Executors.newFixedThreadPool(nWorkers, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "Partition realiser");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    List<Future<Set<OWLAxiom>>> results = new LinkedList<Future<Set<OWLAxiom>>>();
+    try {
+      for(int i = 0; i < partitions.size(); i++) {
+        final Worker worker = getWorker(i);
+        final Set<OWLAxiom> axioms = partitions.get(i);
+        final Set<OWLEntity> entities = vocabulary;
+        results.add(pool.submit(new Callable<Set<OWLAxiom>>() {
+          public Set<OWLAxiom> call() throws OWLException {
+            return worker.realise(axioms, entities);
+          }
+        }));
+      }
+      for(Future<Set<OWLAxiom>> result: results) {
+        inferredAxioms.addAll(result.get());
+      }
+    }
+    catch(ExecutionException e) {
+      Throwable cause = e.getCause();
+      if(cause instanceof OWLException) {
+        ErrorHandler.fatal((OWLException)cause, "realising partitions of the state");
+        throw new Panic();
+      }
+      if(cause instanceof RuntimeException) throw (RuntimeException)cause;
+      if(cause instanceof Error) throw (Error)cause;
+      throw new Bug();
+    }
+    catch(InterruptedException e) {
+      ErrorHandler.fatal(e, "realising partitions of the state");
+      throw new Panic();
+    }
+    finally {
+      // Only does anything if a partition failed: stop realising the rest
+      for(Future<Set<OWLAxiom>> result: results) {
+        result.cancel(true);
+      }
+    }
+
+    try {
+      manager.addAxioms(inferred, inferredAxioms);
+    }
+    catch(OWLOntologyChangeException e) {
+      ErrorHandler.fatal(e, "adding axioms inferred from partitions of the state to " + inferred.getURI());
+      throw new Panic();
+    }
+    return true;
+  }
+
+  /**
+   * <!-- partition -->
+   * 
+   * Split the axioms in the state into connected components, and share the
+   * components out among the workers, biggest first, each going to the worker
+   * with the fewest axioms so far
+   * 
+   * @param state The state ontologies
+   * @return The axioms for each worker, or <code>null</code> if there is only
+   *         one component
+   */
+  private List<Set<OWLAxiom>> partition(Set<OWLOntology> state) {
+    Map<OWLIndividual, OWLIndividual> parents = new HashMap<OWLIndividual, OWLIndividual>();
+    Set<OWLAxiom> shared = new HashSet<OWLAxiom>();
+    List<OWLAxiom> stateAxioms = new LinkedList<OWLAxiom>();
+    for(OWLOntology ontology: state) {
+      stateAxioms.addAll(ontology.getAxioms());
+    }
+    for(OWLAxiom axiom: modelIndividualAxioms) {
+      connect(parents, individualsIn(axiom));
+    }
+    for(OWLAxiom axiom: stateAxioms) {
+      Set<OWLIndividual> individuals = individualsIn(axiom);
+      if(individuals.size() == 0) shared.add(axiom);
+      else
+        connect(parents, individuals);
+    }
+
+    Map<OWLIndividual, Set<OWLAxiom>> components = new HashMap<OWLIndividual, Set<OWLAxiom>>();
+    for(OWLAxiom axiom: stateAxioms) {
+      Set<OWLIndividual> individuals = individualsIn(axiom);
+      if(individuals.size() == 0) continue;
+      OWLIndividual root = find(parents, individuals.iterator().next());
+      Set<OWLAxiom> component = components.get(root);
+      if(component == null) {
+        component = new HashSet<OWLAxiom>();
+        components.put(root, component);
+      }
+      component.add(axiom);
+    }
+    if(components.size() <= 1) return null;
+
+    List<Set<OWLAxiom>> ordered = new ArrayList<Set<OWLAxiom>>(components.values());
+    Collections.sort(ordered, new Comparator<Set<OWLAxiom>>() {
+      public int compare(Set<OWLAxiom> o1, Set<OWLAxiom> o2) {
+        return o2.size() - o1.size();
+      }
+    });
+    int nPartitions = Math.min(nWorkers, ordered.size());
+    List<Set<OWLAxiom>> partitions = new ArrayList<Set<OWLAxiom>>(nPartitions);
+    for(int i = 0; i < nPartitions; i++) {
+      partitions.add(new HashSet<OWLAxiom>(shared));
+    }
+    int sizes[] = new int[nPartitions];
+    for(Set<OWLAxiom> component: ordered) {
+      int smallest = 0;
+      for(int i = 1; i < nPartitions; i++) {
+        if(sizes[i] < sizes[smallest]) smallest = i;
+      }
+      partitions.get(smallest).addAll(component);
+      sizes[smallest] += component.size();
+    }
+    return partitions;
+  }
+
+  /**
+   * <!-- getWorker -->
+   * 
+   * @param i The number of a worker
+   * @return The worker, created if need be
+   */
+  private Worker getWorker(int i) {
+    while(workers.size() <= i) {
+      try {
+        workers.add(new Worker(model));
+      }
+      catch(OWLException e) {
+        ErrorHandler.fatal(e, "copying the model for realising partitions of the state");
+        throw new Panic();
+      }
+    }
+    return workers.get(i);
+  }
+
+  /**
+   * <!-- individualsIn -->
+   * 
+   * @param axiom An axiom
+   * @return The individuals the axiom mentions
+   */
+  private static Set<OWLIndividual> individualsIn(OWLAxiom axiom) {
+    Set<OWLIndividual> individuals = new HashSet<OWLIndividual>();
+    for(OWLEntity entity: axiom.getReferencedEntities()) {
+      if(entity instanceof OWLIndividual) individuals.add((OWLIndividual)entity);
+    }
+    return individuals;
+  }
+
+  /**
+   * <!-- connect -->
+   * 
+   * Put individuals in the same component
+   * 
+   * @param parents Union-find forest of individuals
+   * @param individuals The individuals to connect
+   */
+  private static void connect(Map<OWLIndividual, OWLIndividual> parents, Set<OWLIndividual> individuals) {
+    OWLIndividual root = null;
+    for(OWLIndividual individual: individuals) {
+      OWLIndividual other = find(parents, individual);
+      if(root == null) root = other;
+      else if(!other.equals(root)) parents.put(other, root);
+    }
+  }
+
+  /**
+   * <!-- find -->
+   * 
+   * @param parents Union-find forest of individuals
+   * @param individual An individual
+   * @return The root of the individual's component (compressing the path to
+   *         it)
+   */
+  private static OWLIndividual find(Map<OWLIndividual, OWLIndividual> parents, OWLIndividual individual) {
+    OWLIndividual root = individual;
+    OWLIndividual parent;
+    while((parent = parents.get(root)) != null) {
+      root = parent;
+    }
+    while(!individual.equals(root)) {
+      OWLIndividual next = parents.get(individual);
+      parents.put(individual, root);
+      individual = next;
+    }
+    return root;
+  }
+
+  /**
+   * <!-- dispose -->
+   * 
+   * Stop the threads and dispose of the workers' reasoners
+   */
+  void dispose() {
+    if(pool != null) {
+      pool.shutdownNow();
+      pool = null;
+    }
+    for(Worker worker: workers) {
+      worker.session.dispose();
+    }
+    workers.clear();
+  }
+}
@@ -0,0 +1,514 @@
+/*
+ * uk.ac.hutton.obiama.msb: RCC8Network.java 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.msb;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.owl.model.AddAxiom;
+import org.semanticweb.owl.model.OWLDataFactory;
+import org.semanticweb.owl.model.OWLIndividual;
+import org.semanticweb.owl.model.OWLObjectPropertyAssertionAxiom;
+import org.semanticweb.owl.model.OWLObjectPropertyExpression;
+import org.semanticweb.owl.model.OWLOntology;
+import org.semanticweb.owl.model.OWLOntologyChangeException;
+import org.semanticweb.owl.model.OWLOntologyManager;
+
+import uk.ac.hutton.obiama.exception.ErrorHandler;
+import uk.ac.hutton.obiama.model.PelletSpatialOntology;
+import uk.ac.hutton.obiama.model.RCCOntology;
+
+/**
+ * RCC8Network
+ * 
+ * A constraint network for the eight base relations of the Region Connection
+ * Calculus, used to derive spatial relations between regions without asking
+ * the DL reasoner to do so (which it is not very good at). Regions are interned
+ * as integers, and the relation between each pair of regions is stored as a
+ * bit mask of the base relations it could be. Only pairs with a relation more
+ * specific than the universal relation are stored, so the memory used, the
+ * cost of propagation and the cost of filling the inferred state depend on the
+ * number of constrained pairs rather than the square of the number of regions.
+ * Asserted object property
+ * assertions using the RCC vocabulary (either that of {@link RCCOntology} or
+ * that of {@link PelletSpatialOntology}) restrict the relations, and path
+ * consistency propagates the restrictions through the composition table.
+ * Assertions can be added incrementally; removals cause the network to be
+ * rebuilt from the remaining assertions the next time it is used.
+ * 
+ * @author Gary Polhill
+ */
+class RCC8Network {
+  /**
+   * Base relation bits
+   */
+  static final int DC = 1 << 0;
+  static final int EC = 1 << 1;
+  static final int PO = 1 << 2;
+  static final int EQ = 1 << 3;
+  static final int TPP = 1 << 4;
+  static final int NTPP = 1 << 5;
+  static final int TPPI = 1 << 6;
+  static final int NTPPI = 1 << 7;
+
+  /**
+   * The universal relation (no information)
+   */
+  static final int ALL = 0xFF;
+
+  /**
+   * Number of base relations
+   */
+  private static final int N_BASE = 8;
+
+  /**
+   * Composition table for the base relations: if a R b and b S c then a T c,
+   * where T = BASE_COMPOSITION[R][S] (R and S being bit indices)
+   */
+  private static final int BASE_COMPOSITION[][] = {
+    // DC o ...
+    { ALL, DC | EC | PO | TPP | NTPP, DC | EC | PO | TPP | NTPP, DC, DC | EC | PO | TPP | NTPP,
+      DC | EC | PO | TPP | NTPP, DC, DC },
+    // EC o ...
+    { DC | EC | PO | TPPI | NTPPI, DC | EC | PO | TPP | TPPI | EQ, DC | EC | PO | TPP | NTPP, EC,
+      EC | PO | TPP | NTPP, PO | TPP | NTPP, DC | EC, DC },
+    // PO o ...
+    { DC | EC | PO | TPPI | NTPPI, DC | EC | PO | TPPI | NTPPI, ALL, PO, PO | TPP | NTPP, PO | TPP | NTPP,
+      DC | EC | PO | TPPI | NTPPI, DC | EC | PO | TPPI | NTPPI },
+    // EQ o ...
+    { DC, EC, PO, EQ, TPP, NTPP, TPPI, NTPPI },
+    // TPP o ...
+    { DC, DC | EC, DC | EC | PO | TPP | NTPP, TPP, TPP | NTPP, NTPP, DC | EC | PO | TPP | TPPI | EQ,
+      DC | EC | PO | TPPI | NTPPI },
+    // NTPP o ...
+    { DC, DC, DC | EC | PO | TPP | NTPP, NTPP, NTPP, NTPP, DC | EC | PO | TPP | NTPP, ALL },
+    // TPPi o ...
+    { DC | EC | PO | TPPI | NTPPI, EC | PO | TPPI | NTPPI, PO | TPPI | NTPPI, TPPI, PO | EQ | TPP | TPPI,
+      PO | TPP | NTPP, TPPI | NTPPI, NTPPI },
+    // NTPPi o ...
+    { DC | EC | PO | TPPI | NTPPI, PO | TPPI | NTPPI, PO | TPPI | NTPPI, NTPPI, PO | TPPI | NTPPI,
+      PO | TPP | NTPP | TPPI | NTPPI | EQ, NTPPI, NTPPI } };
+
+  /**
+   * Composition table for all disjunctions of base relations, computed from
+   * the base composition table
+   */
+  private static final byte COMPOSITION[] = new byte[(ALL + 1) * (ALL + 1)];
+
+  /**
+   * Converse of each disjunction of base relations
+   */
+  private static final byte CONVERSE[] = new byte[ALL + 1];
+
+  /**
+   * Map of RCC object properties to the disjunction of base relations each
+   * means
+   */
+  private static final Map<URI, Integer> PROPERTY_RELATIONS = new LinkedHashMap<URI, Integer>();
+
+  static {
+    for(int r = 0; r <= ALL; r++) {
+      int conv = r & (DC | EC | PO | EQ);
+      if((r & TPP) != 0) conv |= TPPI;
+      if((r & NTPP) != 0) conv |= NTPPI;
+      if((r & TPPI) != 0) conv |= TPP;
+      if((r & NTPPI) != 0) conv |= NTPP;
+      CONVERSE[r] = (byte)conv;
+
+      for(int s = 0; s <= ALL; s++) {
+        int t = 0;
+        for(int i = 0; i < N_BASE && t != ALL; i++) {
+          if((r & (1 << i)) == 0) continue;
+          for(int j = 0; j < N_BASE && t != ALL; j++) {
+            if((s & (1 << j)) != 0) t |= BASE_COMPOSITION[i][j];
+          }
+        }
+        COMPOSITION[(r << 8) | s] = (byte)t;
+      }
+    }
+
+    PROPERTY_RELATIONS.put(RCCOntology.SPATIALLY_RELATED_URI, ALL);
+    PROPERTY_RELATIONS.put(RCCOntology.CONNECTS_WITH_URI, ALL & ~DC);
+    PROPERTY_RELATIONS.put(RCCOntology.DISCRETE_FROM_URI, DC | EC);
+    PROPERTY_RELATIONS.put(RCCOntology.OVERLAPS_URI, PO | EQ | TPP | NTPP | TPPI | NTPPI);
+    PROPERTY_RELATIONS.put(RCCOntology.OVERLAPS_NOT_EQUAL_URI, PO | TPP | NTPP | TPPI | NTPPI);
+    PROPERTY_RELATIONS.put(RCCOntology.PART_OF_URI, EQ | TPP | NTPP);
+    PROPERTY_RELATIONS.put(RCCOntology.PROPER_PART_OF_URI, TPP | NTPP);
+    PROPERTY_RELATIONS.put(RCCOntology.INVERSE_PROPER_PART_OF_URI, TPPI | NTPPI);
+    PROPERTY_RELATIONS.put(RCCOntology.DISCONNECTED_FROM_URI, DC);
+    PROPERTY_RELATIONS.put(RCCOntology.EXTERNALLY_CONNECTED_TO_URI, EC);
+    PROPERTY_RELATIONS.put(RCCOntology.PARTIALLY_OVERLAPS_URI, PO);
+    PROPERTY_RELATIONS.put(RCCOntology.EQUAL_TO_URI, EQ);
+    PROPERTY_RELATIONS.put(RCCOntology.TANGENTIAL_PROPER_PART_OF_URI, TPP);
+    PROPERTY_RELATIONS.put(RCCOntology.NON_TANGENTIAL_PROPER_PART_OF_URI, NTPP);
+    PROPERTY_RELATIONS.put(RCCOntology.INVERSE_TANGENTIAL_PROPER_PART_OF_URI, TPPI);
+    PROPERTY_RELATIONS.put(RCCOntology.INVERSE_NON_TANGENTIAL_PROPER_PART_OF_URI, NTPPI);
+
+    PROPERTY_RELATIONS.put(PelletSpatialOntology.DISCONNECTED_FROM_URI, DC);
+    PROPERTY_RELATIONS.put(PelletSpatialOntology.EXTERNALLY_CONNECTED_TO_URI, EC);
+    PROPERTY_RELATIONS.put(PelletSpatialOntology.PARTIALLY_OVERLAPS_URI, PO);
+    PROPERTY_RELATIONS.put(PelletSpatialOntology.EQUALS_TO_URI, EQ);
+    PROPERTY_RELATIONS.put(PelletSpatialOntology.TANGENTIAL_PROPER_PART_OF_URI, TPP);
+    PROPERTY_RELATIONS.put(PelletSpatialOntology.NON_TANGENTIAL_PROPER_PART_OF_URI, NTPP);
+    PROPERTY_RELATIONS.put(PelletSpatialOntology.HAS_TANGENTIAL_PROPER_PART_URI, TPPI);
+    PROPERTY_RELATIONS.put(PelletSpatialOntology.HAS_NON_TANGENTIAL_PROPER_PART_URI, NTPPI);
+  }
+
+  /**
+   * The RCC properties used by the model, which will be used to report derived
+   * relations
+   */
+  private final Set<URI> vocabulary;
+
+  /**
+   * Map of region URI to interned region ID
+   */
+  private final Map<URI, Integer> regionIDs;
+
+  /**
+   * Region URIs indexed by ID
+   */
+  private final List<URI> regions;
+
+  /**
+   * Asserted RCC properties, keyed by subject then object region ID
+   */
+  private final Map<Integer, Map<Integer, List<URI>>> asserted;
+
+  /**
+   * The relations: relations.get(i).get(j) is the disjunction of base
+   * relations that region i could have with region j. Pairs with the universal
+   * relation, and each region's relation with itself (always EQ), are not
+   * stored.
+   */
+  private final List<Map<Integer, Integer>> relations;
+
+  /**
+   * The properties in the vocabulary entailed by each disjunction of base
+   * relations
+   */
+  private final URI entailed[][];
+
+  /**
+   * Queue of region pairs whose relation has changed since the last
+   * propagation
+   */
+  private final LinkedList<int[]> queue;
+
+  /**
+   * Whether an assertion has been removed since the network was last built
+   */
+  private boolean dirty;
+
+  /**
+   * Whether the network has been found to be inconsistent
+   */
+  private boolean inconsistent;
+
+  /**
+   * Constructor
+   * 
+   * @param vocabulary The RCC properties referred to by the model
+   */
+  RCC8Network(Set<URI> vocabulary) {
+    this.vocabulary = new HashSet<URI>(vocabulary);
+    regionIDs = new HashMap<URI, Integer>();
+    regions = new ArrayList<URI>();
+    asserted = new HashMap<Integer, Map<Integer, List<URI>>>();
+    relations = new ArrayList<Map<Integer, Integer>>();
+    queue = new LinkedList<int[]>();
+    dirty = false;
+    inconsistent = false;
+
+    entailed = new URI[ALL + 1][];
+    for(int r = 0; r <= ALL; r++) {
+      List<URI> properties = new LinkedList<URI>();
+      for(URI property: this.vocabulary) {
+        if(r != 0 && isRCCProperty(property) && (r & ~PROPERTY_RELATIONS.get(property)) == 0) {
+          properties.add(property);
+        }
+      }
+      entailed[r] = properties.toArray(new URI[0]);
+    }
+  }
+
+  /**
+   * <!-- getRCCProperties -->
+   * 
+   * @return All the object properties the network understands
+   */
+  static Set<URI> getRCCProperties() {
+    return Collections.unmodifiableSet(PROPERTY_RELATIONS.keySet());
+  }
+
+  /**
+   * <!-- isRCCProperty -->
+   * 
+   * @param property An object property
+   * @return <code>true</code> if the property is part of an RCC vocabulary
+   */
+  static boolean isRCCProperty(URI property) {
+    return PROPERTY_RELATIONS.containsKey(property);
+  }
+
+  /**
+   * <!-- assertAxiom -->
+   * 
+   * Add a constraint to the network from an object property assertion. The
+   * assertion is ignored if it doesn't use an RCC property.
+   * 
+   * @param axiom The asserted axiom
+   */
+  void assertAxiom(OWLObjectPropertyAssertionAxiom axiom) {
+    OWLObjectPropertyExpression property = axiom.getProperty();
+    if(property.isAnonymous()) return;
+    URI propertyURI = property.asOWLObjectProperty().getURI();
+    if(!isRCCProperty(propertyURI)) return;
+    int subject = intern(axiom.getSubject().getURI());
+    int object = intern(axiom.getObject().getURI());
+
+    if(!asserted.containsKey(subject)) asserted.put(subject, new HashMap<Integer, List<URI>>());
+    if(!asserted.get(subject).containsKey(object)) asserted.get(subject).put(object, new LinkedList<URI>());
+    asserted.get(subject).get(object).add(propertyURI);
+
+    if(!dirty) constrain(subject, object, PROPERTY_RELATIONS.get(propertyURI));
+  }
+
+  /**
+   * <!-- retractAxiom -->
+   * 
+   * Remove a constraint from the network. Since path consistency cannot
+   * retract derived constraints, the network is marked for rebuilding.
+   * 
+   * @param axiom The retracted axiom
+   */
+  void retractAxiom(OWLObjectPropertyAssertionAxiom axiom) {
+    OWLObjectPropertyExpression property = axiom.getProperty();
+    if(property.isAnonymous()) return;
+    URI propertyURI = property.asOWLObjectProperty().getURI();
+    if(!isRCCProperty(propertyURI)) return;
+    Integer subject = regionIDs.get(axiom.getSubject().getURI());
+    Integer object = regionIDs.get(axiom.getObject().getURI());
+    if(subject == null || object == null) return;
+    if(!asserted.containsKey(subject) || !asserted.get(subject).containsKey(object)) return;
+    List<URI> properties = asserted.get(subject).get(object);
+    if(properties.remove(propertyURI)) {
+      if(properties.size() == 0) asserted.get(subject).remove(object);
+      dirty = true;
+    }
+  }
+
+  /**
+   * <!-- clear -->
+   * 
+   * Remove all regions and constraints from the network
+   */
+  void clear() {
+    regionIDs.clear();
+    regions.clear();
+    asserted.clear();
+    relations.clear();
+    queue.clear();
+    dirty = false;
+    inconsistent = false;
+  }
+
+  /**
+   * <!-- propagate -->
+   * 
+   * Bring the network up to date, rebuilding it if any assertions have been
+   * removed, and enforcing path consistency on any pending changes. Since the
+   * composition of any relation with the universal relation is the universal
+   * relation, only the regions with a stored relation to one of the pair can
+   * be constrained by a change to it.
+   * 
+   * @return <code>false</code> if the network is inconsistent
+   */
+  boolean propagate() {
+    if(dirty) rebuild();
+    while(!inconsistent && queue.size() > 0) {
+      int pair[] = queue.removeFirst();
+      int i = pair[0];
+      int j = pair[1];
+      int rij = relation(i, j);
+
+      // i -> j -> k
+      for(int k: new ArrayList<Integer>(relations.get(j).keySet())) {
+        if(inconsistent) break;
+        if(k == i) continue;
+        constrain(i, k, COMPOSITION[(rij << 8) | relation(j, k)] & ALL);
+      }
+
+      // k -> i -> j
+      for(int k: new ArrayList<Integer>(relations.get(i).keySet())) {
+        if(inconsistent) break;
+        if(k == j) continue;
+        constrain(k, j, COMPOSITION[(relation(k, i) << 8) | rij] & ALL);
+      }
+    }
+    return !inconsistent;
+  }
+
+  /**
+   * <!-- fillOntology -->
+   * 
+   * Add object property assertions for the relations in the network to an
+   * ontology. An assertion is made for each property in the model's RCC
+   * vocabulary that the relation between two distinct regions entails. Only
+   * the stored relations are visited, and reflexive assertions are not made.
+   * 
+   * @param manager The ontology manager
+   * @param ontology The ontology to add the assertions to
+   * @return The number of assertions made
+   */
+  int fillOntology(OWLOntologyManager manager, OWLOntology ontology) {
+    if(!propagate()) {
+      ErrorHandler.warn("the asserted RCC relations are inconsistent", "deriving spatial relations",
+          "no spatial relations will be added to the inferred state");
+      return 0;
+    }
+    OWLDataFactory factory = manager.getOWLDataFactory();
+    List<AddAxiom> changes = new LinkedList<AddAxiom>();
+    int n = regions.size();
+    for(int i = 0; i < n; i++) {
+      OWLIndividual subject = null;
+      for(Map.Entry<Integer, Integer> entry: relations.get(i).entrySet()) {
+        URI properties[] = entailed[entry.getValue()];
+        if(properties.length == 0) continue;
+        if(subject == null) subject = factory.getOWLIndividual(regions.get(i));
+        OWLIndividual object = factory.getOWLIndividual(regions.get(entry.getKey()));
+        for(URI property: properties) {
+          changes.add(new AddAxiom(ontology, factory.getOWLObjectPropertyAssertionAxiom(subject, factory
+              .getOWLObjectProperty(property), object)));
+        }
+      }
+    }
+    try {
+      manager.applyChanges(changes);
+    }
+    catch(OWLOntologyChangeException e) {
+      ErrorHandler.warn(e, "adding derived spatial relations to the inferred state",
+          "some spatial relations may not have been added");
+    }
+    return changes.size();
+  }
+
+  /**
+   * <!-- getRelation -->
+   * 
+   * @param subject A region
+   * @param object Another region
+   * @return The disjunction of base relations the subject could have with the
+   *         object
+   */
+  int getRelation(URI subject, URI object) {
+    propagate();
+    Integer i = regionIDs.get(subject);
+    Integer j = regionIDs.get(object);
+    if(i == null || j == null) return subject.equals(object) ? EQ : ALL;
+    return relation(i, j);
+  }
+
+  /**
+   * <!-- rebuild -->
+   * 
+   * Reset the relations and re-apply all the asserted constraints
+   */
+  private void rebuild() {
+    for(Map<Integer, Integer> related: relations) {
+      related.clear();
+    }
+    queue.clear();
+    inconsistent = false;
+    dirty = false;
+    for(Integer subject: asserted.keySet()) {
+      Map<Integer, List<URI>> objects = asserted.get(subject);
+      for(Integer object: objects.keySet()) {
+        for(URI property: objects.get(object)) {
+          constrain(subject, object, PROPERTY_RELATIONS.get(property));
+        }
+      }
+    }
+  }
+
+  /**
+   * <!-- constrain -->
+   * 
+   * Intersect the relation between two regions with a constraint, keeping the
+   * converse relation up to date, and queuing the pair if it has changed.
+   * 
+   * @param i Subject region ID
+   * @param j Object region ID
+   * @param constraint Disjunction of base relations allowed
+   */
+  private void constrain(int i, int j, int constraint) {
+    int old = relation(i, j);
+    int rij = old & constraint;
+    if(rij == old) return;
+    if(rij == 0) {
+      inconsistent = true;
+      return;
+    }
+    relations.get(i).put(j, rij);
+    relations.get(j).put(i, CONVERSE[rij] & ALL);
+    queue.addLast(new int[] { i, j });
+  }
+
+  /**
+   * <!-- relation -->
+   * 
+   * @param i Subject region ID
+   * @param j Object region ID
+   * @return The relation between them
+   */
+  private int relation(int i, int j) {
+    if(i == j) return EQ;
+    Integer rij = relations.get(i).get(j);
+    return rij == null ? ALL : rij;
+  }
+
+  /**
+   * <!-- intern -->
+   * 
+   * @param region A region URI
+   * @return The ID of the region, allocating a new one if the region hasn't
+   *         been seen before
+   */
+  private int intern(URI region) {
+    Integer id = regionIDs.get(region);
+    if(id != null) return id;
+    int n = regions.size();
+    relations.add(new HashMap<Integer, Integer>());
+    regions.add(region);
+    regionIDs.put(region, n);
+    return n;
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * uk.ac.hutton.obiama.msb: ReasonerSession.java 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.msb;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.owl.inference.OWLReasoner;
+import org.semanticweb.owl.inference.OWLReasonerException;
+import org.semanticweb.owl.model.OWLAxiom;
+import org.semanticweb.owl.model.OWLOntology;
+import org.semanticweb.owl.model.OWLOntologyChange;
+import org.semanticweb.owl.model.OWLOntologyChangeListener;
+import org.semanticweb.owl.model.OWLOntologyManager;
+
+import uk.ac.hutton.obiama.exception.ErrorHandler;
+import uk.ac.hutton.obiama.model.OWLSpecies;
+
+/**
+ * <!-- ReasonerSession -->
+ * 
+ * A reasoner kept alive between inferences. Rather than clearing the reasoner
+ * and loading all the ontologies again each time, the session keeps track of
+ * which ontologies the reasoner has loaded, and which of them have been
+ * changed (by listening to the manager), and only unloads and reloads those
+ * that need it. Ontologies that have not changed, such as the model ontologies,
+ * stay loaded, so a reasoner that can keep its classification of them will
+ * not have to repeat it.
+ * 
+ * A session belongs to whatever built it (the model state broker, or a worker
+ * of a {@link PartitionedRealiser}), which should {@link #dispose()} of it
+ * when it is no longer needed. A session should only be used by one thread at
+ * a time.
+ * 
+ * @author Gary Polhill
+ */
+class ReasonerSession implements OWLOntologyChangeListener {
+  /**
+   * The manager of the ontologies the reasoner loads
+   */
+  private final OWLOntologyManager manager;
+
+  /**
+   * The reasoner
+   */
+  private final OWLReasoner reasoner;
+
+  /**
+   * Ontologies currently loaded in the reasoner
+   */
+  private final Set<OWLOntology> loaded;
+
+  /**
+   * Ontologies changed since they were last loaded
+   */
+  private final Set<OWLOntology> changed;
+
+  /**
+   * Whether axioms other than assertions inferred in this session conform to
+   * each species the inferred ontologies are cleaned to. These are the same
+   * from one inference to the next, so they only need checking once.
+   */
+  private final Map<OWLSpecies, Map<OWLAxiom, Boolean>> checkedAxioms;
+
+  /**
+   * Constructor
+   * 
+   * @param manager The ontology manager
+   * @param reasoner A reasoner built for the manager
+   */
+  ReasonerSession(OWLOntologyManager manager, OWLReasoner reasoner) {
+    this.manager = manager;
+    this.reasoner = reasoner;
+    loaded = new HashSet<OWLOntology>();
+    changed = new HashSet<OWLOntology>();
+    checkedAxioms = new HashMap<OWLSpecies, Map<OWLAxiom, Boolean>>();
+    manager.addOntologyChangeListener(this);
+  }
+
+  /**
+   * <!-- getManager -->
+   * 
+   * @return The manager of the ontologies the reasoner loads
+   */
+  OWLOntologyManager getManager() {
+    return manager;
+  }
+
+  /**
+   * <!-- getReasoner -->
+   * 
+   * @return The reasoner
+   */
+  OWLReasoner getReasoner() {
+    return reasoner;
+  }
+
+  /**
+   * <!-- getCheckedAxioms -->
+   * 
+   * @param spp An OWL species
+   * @return Decisions about whether axioms inferred in this session conform to
+   *         the species, for {@link OWLSpecies#conformingAxioms(Set, Map)}
+   */
+  Map<OWLAxiom, Boolean> getCheckedAxioms(OWLSpecies spp) {
+    Map<OWLAxiom, Boolean> checked = checkedAxioms.get(spp);
+    if(checked == null) {
+      checked = new HashMap<OWLAxiom, Boolean>();
+      checkedAxioms.put(spp, checked);
+    }
+    return checked;
+  }
+
+  /**
+   * <!-- synchronise -->
+   * 
+   * Make the ontologies loaded in the reasoner the ones given, unloading any
+   * not wanted, loading any not yet loaded, and reloading any that have
+   * changed since they were loaded.
+   * 
+   * @param ontologies The ontologies to reason with
+   * @return The reasoner, with the ontologies loaded
+   * @throws OWLReasonerException
+   */
+  OWLReasoner synchronise(Set<OWLOntology> ontologies) throws OWLReasonerException {
+    Set<OWLOntology> unload = new HashSet<OWLOntology>(loaded);
+    unload.removeAll(ontologies);
+    Set<OWLOntology> load = new HashSet<OWLOntology>(ontologies);
+    load.removeAll(loaded);
+    synchronized(changed) {
+      for(OWLOntology ontology: changed) {
+        if(loaded.contains(ontology) && ontologies.contains(ontology)) {
+          unload.add(ontology);
+          load.add(ontology);
+        }
+      }
+      changed.clear();
+    }
+
+    if(unload.size() > 0) {
+      reasoner.unloadOntologies(unload);
+      loaded.removeAll(unload);
+    }
+    if(load.size() > 0) {
+      reasoner.loadOntologies(load);
+      loaded.addAll(load);
+    }
+    return reasoner;
+  }
+
+  /**
+   * <!-- ontologiesChanged -->
+   * 
+   * Note which loaded ontologies have changed
+   * 
+   * @see org.semanticweb.owl.model.OWLOntologyChangeListener#ontologiesChanged(java.util.List)
+   * @param changes Changes made to ontologies in the manager
+   */
+  public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+    synchronized(changed) {
+      for(OWLOntologyChange change: changes) {
+        changed.add(change.getOntology());
+      }
+    }
+  }
+
+  /**
+   * <!-- dispose -->
+   * 
+   * Stop listening to the manager and free the reasoner's resources. The
+   * session cannot be used afterwards.
+   */
+  void dispose() {
+    manager.removeOntologyChangeListener(this);
+    try {
+      reasoner.dispose();
+    }
+    catch(OWLReasonerException e) {
+      ErrorHandler.warn(e, "disposing of reasoner " + reasoner.getClass().getName(), "its resources may not be freed");
+    }
+    loaded.clear();
+    checkedAxioms.clear();
+  }
+}
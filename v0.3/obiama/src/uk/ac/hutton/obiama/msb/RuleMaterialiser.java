@@ -0,0 +1,1680 @@
+/*
+ * uk.ac.hutton.obiama.msb: RuleMaterialiser.java 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.msb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.owl.model.AddAxiom;
+import org.semanticweb.owl.model.OWLAntiSymmetricObjectPropertyAxiom;
+import org.semanticweb.owl.model.OWLAxiom;
+import org.semanticweb.owl.model.OWLClass;
+import org.semanticweb.owl.model.OWLClassAssertionAxiom;
+import org.semanticweb.owl.model.OWLConstant;
+import org.semanticweb.owl.model.OWLDataFactory;
+import org.semanticweb.owl.model.OWLDataProperty;
+import org.semanticweb.owl.model.OWLDataPropertyAssertionAxiom;
+import org.semanticweb.owl.model.OWLDataPropertyDomainAxiom;
+import org.semanticweb.owl.model.OWLDataPropertyExpression;
+import org.semanticweb.owl.model.OWLDataPropertyRangeAxiom;
+import org.semanticweb.owl.model.OWLDataRange;
+import org.semanticweb.owl.model.OWLDataSomeRestriction;
+import org.semanticweb.owl.model.OWLDataSubPropertyAxiom;
+import org.semanticweb.owl.model.OWLDataType;
+import org.semanticweb.owl.model.OWLDataValueRestriction;
+import org.semanticweb.owl.model.OWLDescription;
+import org.semanticweb.owl.model.OWLDifferentIndividualsAxiom;
+import org.semanticweb.owl.model.OWLDisjointClassesAxiom;
+import org.semanticweb.owl.model.OWLDisjointDataPropertiesAxiom;
+import org.semanticweb.owl.model.OWLDisjointObjectPropertiesAxiom;
+import org.semanticweb.owl.model.OWLEntity;
+import org.semanticweb.owl.model.OWLEquivalentClassesAxiom;
+import org.semanticweb.owl.model.OWLEquivalentDataPropertiesAxiom;
+import org.semanticweb.owl.model.OWLEquivalentObjectPropertiesAxiom;
+import org.semanticweb.owl.model.OWLFunctionalDataPropertyAxiom;
+import org.semanticweb.owl.model.OWLFunctionalObjectPropertyAxiom;
+import org.semanticweb.owl.model.OWLIndividual;
+import org.semanticweb.owl.model.OWLInverseFunctionalObjectPropertyAxiom;
+import org.semanticweb.owl.model.OWLInverseObjectPropertiesAxiom;
+import org.semanticweb.owl.model.OWLIrreflexiveObjectPropertyAxiom;
+import org.semanticweb.owl.model.OWLLogicalAxiom;
+import org.semanticweb.owl.model.OWLObject;
+import org.semanticweb.owl.model.OWLObjectAllRestriction;
+import org.semanticweb.owl.model.OWLObjectComplementOf;
+import org.semanticweb.owl.model.OWLObjectIntersectionOf;
+import org.semanticweb.owl.model.OWLObjectProperty;
+import org.semanticweb.owl.model.OWLObjectPropertyAssertionAxiom;
+import org.semanticweb.owl.model.OWLObjectPropertyChainSubPropertyAxiom;
+import org.semanticweb.owl.model.OWLObjectPropertyDomainAxiom;
+import org.semanticweb.owl.model.OWLObjectPropertyExpression;
+import org.semanticweb.owl.model.OWLObjectPropertyInverse;
+import org.semanticweb.owl.model.OWLObjectPropertyRangeAxiom;
+import org.semanticweb.owl.model.OWLObjectSomeRestriction;
+import org.semanticweb.owl.model.OWLObjectSubPropertyAxiom;
+import org.semanticweb.owl.model.OWLObjectUnionOf;
+import org.semanticweb.owl.model.OWLObjectValueRestriction;
+import org.semanticweb.owl.model.OWLOntology;
+import org.semanticweb.owl.model.OWLOntologyChange;
+import org.semanticweb.owl.model.OWLOntologyChangeException;
+import org.semanticweb.owl.model.OWLOntologyChangeListener;
+import org.semanticweb.owl.model.OWLOntologyManager;
+import org.semanticweb.owl.model.OWLSubClassAxiom;
+import org.semanticweb.owl.model.OWLSymmetricObjectPropertyAxiom;
+import org.semanticweb.owl.model.OWLTransitiveObjectPropertyAxiom;
+import org.semanticweb.owl.model.OWLTypedConstant;
+import org.semanticweb.owl.model.RemoveAxiom;
+import org.semanticweb.owl.vocab.OWLRDFVocabulary;
+
+import uk.ac.hutton.obiama.exception.ErrorHandler;
+import uk.ac.hutton.obiama.exception.Panic;
+
+/**
+ * <!-- RuleMaterialiser -->
+ * 
+ * Materialises the class and property assertions entailed by the model and
+ * state with forward-chaining rules, as an alternative to realising the state
+ * with a DL reasoner. The model's axioms are compiled into rules once, when the
+ * materialiser is built. Complex class descriptions are broken down using
+ * auxiliary classes, in the way OWL 2 RL does, so each rule has at most two
+ * premises (or a chain of property premises). If the model has an axiom that
+ * cannot be compiled (a universal restriction on the left of a subclass axiom,
+ * for example), the materialiser cannot be used, and
+ * {@link #getUnsupportedAxiom()} says which axiom it was.
+ * 
+ * Rules cannot create the anonymous individuals an existential restriction on
+ * the right of an axiom implies, so each such restriction is compiled into a
+ * constraint instead, which holds while every individual the restriction
+ * applies to already has a suitable value. The facts are then a model of the
+ * axiom, and nothing more follows from it; when they are not, the state is
+ * realised by the DL reasoner for that step.
+ * 
+ * The materialiser listens to the manager for assertions added to and removed
+ * from the state ontologies. Additions are materialised semi-naively, each new
+ * fact only being joined with facts already derived; removals use
+ * delete/rederive, deleting everything derived from the removed facts and then
+ * rederiving any of those facts that still follow from what remains.
+ * 
+ * Axioms that could make the state inconsistent or entail that individuals are
+ * the same (disjointness and functional properties, for example) are compiled
+ * into constraints. If a constraint is violated, or the state has assertions
+ * the rules cannot handle, {@link #materialise(OWLOntology, Set)} declines, and
+ * the state should be realised by the DL reasoner for that step.
+ * 
+ * The class is public so that its results can be tested against those of the
+ * reasoner.
+ * 
+ * @author Gary Polhill
+ */
+public class RuleMaterialiser implements OWLOntologyChangeListener {
+  /**
+   * <!-- Fact -->
+   * 
+   * A class assertion (with no object), object property assertion or data
+   * property assertion
+   * 
+   * @author Gary Polhill
+   */
+  private static final class Fact {
+    final OWLIndividual subject;
+    final OWLObject predicate;
+    final OWLObject object;
+
+    Fact(OWLIndividual subject, OWLObject predicate, OWLObject object) {
+      this.subject = subject;
+      this.predicate = predicate;
+      this.object = object;
+    }
+
+    public boolean equals(Object obj) {
+      if(!(obj instanceof Fact)) return false;
+      Fact other = (Fact)obj;
+      return subject.equals(other.subject) && predicate.equals(other.predicate)
+        && (object == null ? other.object == null : object.equals(other.object));
+    }
+
+    public int hashCode() {
+      return (subject.hashCode() * 31 + predicate.hashCode()) * 31 + (object == null ? 0 : object.hashCode());
+    }
+  }
+
+  /**
+   * <!-- Step -->
+   * 
+   * A named object property, or its inverse
+   * 
+   * @author Gary Polhill
+   */
+  private static final class Step {
+    final OWLObjectProperty property;
+    final boolean inverse;
+
+    Step(OWLObjectProperty property, boolean inverse) {
+      this.property = property;
+      this.inverse = inverse;
+    }
+
+    Step inverse() {
+      return new Step(property, !inverse);
+    }
+  }
+
+  /**
+   * <!-- Rule -->
+   * 
+   * A rule compiled from the model. Rules are indexed by the predicates of the
+   * facts that trigger them and the predicate of the facts they derive.
+   * 
+   * @author Gary Polhill
+   */
+  private abstract class Rule {
+    /**
+     * <!-- fire -->
+     * 
+     * @param fact A fact with a predicate triggering the rule
+     * @param derived List to add facts derived from it to
+     */
+    abstract void fire(Fact fact, List<Fact> derived);
+
+    /**
+     * <!-- derives -->
+     * 
+     * @param fact A fact with the predicate the rule derives
+     * @return <code>true</code> if the rule derives the fact in one step from
+     *         the facts currently held
+     */
+    abstract boolean derives(Fact fact);
+
+    void trigger(OWLObject predicate) {
+      indexList(triggers, predicate).add(this);
+    }
+
+    void head(OWLObject predicate) {
+      indexList(heads, predicate).add(this);
+    }
+  }
+
+  /**
+   * Members of all of a set of classes are members of another
+   */
+  private final class ClassRule extends Rule {
+    final Set<OWLClass> body;
+    final OWLClass head;
+
+    ClassRule(Set<OWLClass> body, OWLClass head) {
+      this.body = body;
+      this.head = head;
+      for(OWLClass premise: body) {
+        trigger(premise);
+      }
+      head(head);
+      if(body.size() == 1 && !auxiliary.contains(head)) {
+        for(OWLClass premise: body) {
+          if(!auxiliary.contains(premise)) put(subsumees, head, premise);
+        }
+      }
+    }
+
+    void fire(Fact fact, List<Fact> derived) {
+      if(derives(fact)) derived.add(new Fact(fact.subject, head, null));
+    }
+
+    boolean derives(Fact fact) {
+      return get(types, fact.subject).containsAll(body);
+    }
+  }
+
+  /**
+   * Individuals with a property (with a value in a class) are members of a
+   * class: domains, ranges and existential restrictions
+   */
+  private final class ExistsRule extends Rule {
+    final Step step;
+    final OWLClass filler;
+    final OWLClass head;
+
+    ExistsRule(Step step, OWLClass filler, OWLClass head) {
+      this.step = step;
+      this.filler = filler;
+      this.head = head;
+      trigger(step.property);
+      if(filler != null) trigger(filler);
+      head(head);
+    }
+
+    void fire(Fact fact, List<Fact> derived) {
+      if(fact.object == null) {
+        for(OWLIndividual x: predecessors(fact.subject, step)) {
+          derived.add(new Fact(x, head, null));
+        }
+      }
+      else {
+        OWLIndividual x = step.inverse ? (OWLIndividual)fact.object : fact.subject;
+        OWLIndividual y = step.inverse ? fact.subject : (OWLIndividual)fact.object;
+        if(filler == null || get(types, y).contains(filler)) derived.add(new Fact(x, head, null));
+      }
+    }
+
+    boolean derives(Fact fact) {
+      for(OWLIndividual y: successors(fact.subject, step)) {
+        if(filler == null || get(types, y).contains(filler)) return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Values of a property of members of a class are members of a class:
+   * universal restrictions
+   */
+  private final class AllRule extends Rule {
+    final OWLClass body;
+    final Step step;
+    final OWLClass head;
+
+    AllRule(OWLClass body, Step step, OWLClass head) {
+      this.body = body;
+      this.step = step;
+      this.head = head;
+      trigger(body);
+      trigger(step.property);
+      head(head);
+    }
+
+    void fire(Fact fact, List<Fact> derived) {
+      if(fact.object == null) {
+        for(OWLIndividual y: successors(fact.subject, step)) {
+          derived.add(new Fact(y, head, null));
+        }
+      }
+      else {
+        OWLIndividual x = step.inverse ? (OWLIndividual)fact.object : fact.subject;
+        OWLIndividual y = step.inverse ? fact.subject : (OWLIndividual)fact.object;
+        if(get(types, x).contains(body)) derived.add(new Fact(y, head, null));
+      }
+    }
+
+    boolean derives(Fact fact) {
+      for(OWLIndividual x: predecessors(fact.subject, step)) {
+        if(get(types, x).contains(body)) return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * A chain of properties implies a property: subproperties, inverses,
+   * symmetric and transitive properties, and property chains
+   */
+  private final class ChainRule extends Rule {
+    final Step chain[];
+    final Step head;
+
+    ChainRule(Step chain[], Step head) {
+      this.chain = chain;
+      this.head = head;
+      // fire() looks for the fact's property all along the chain, so a
+      // property appearing more than once (transitivity) triggers it once
+      Set<OWLObjectProperty> properties = new HashSet<OWLObjectProperty>();
+      for(Step link: chain) {
+        if(properties.add(link.property)) trigger(link.property);
+      }
+      head(head.property);
+      if(chain.length == 1 && !chain[0].inverse && !head.inverse) put(subsumees, head.property, chain[0].property);
+    }
+
+    void fire(Fact fact, List<Fact> derived) {
+      for(int i = 0; i < chain.length; i++) {
+        if(!chain[i].property.equals(fact.predicate)) continue;
+        Set<OWLIndividual> lefts =
+          Collections.singleton(chain[i].inverse ? (OWLIndividual)fact.object : fact.subject);
+        for(int j = i - 1; j >= 0 && lefts.size() > 0; j--) {
+          Set<OWLIndividual> next = new HashSet<OWLIndividual>();
+          for(OWLIndividual y: lefts) {
+            next.addAll(predecessors(y, chain[j]));
+          }
+          lefts = next;
+        }
+        Set<OWLIndividual> rights =
+          Collections.singleton(chain[i].inverse ? fact.subject : (OWLIndividual)fact.object);
+        for(int j = i + 1; j < chain.length && rights.size() > 0; j++) {
+          rights = walk(rights, chain[j]);
+        }
+        for(OWLIndividual x: lefts) {
+          for(OWLIndividual y: rights) {
+            derived.add(edge(x, head, y));
+          }
+        }
+      }
+    }
+
+    boolean derives(Fact fact) {
+      Set<OWLIndividual> reached = Collections.singleton(head.inverse ? (OWLIndividual)fact.object : fact.subject);
+      for(int j = 0; j < chain.length && reached.size() > 0; j++) {
+        reached = walk(reached, chain[j]);
+      }
+      return reached.contains(head.inverse ? fact.subject : fact.object);
+    }
+  }
+
+  /**
+   * Individuals with a particular value of a property are members of a class:
+   * value restrictions on the left of a subclass axiom
+   */
+  private final class ValueRule extends Rule {
+    final Step step;
+    final OWLIndividual value;
+    final OWLClass head;
+
+    ValueRule(Step step, OWLIndividual value, OWLClass head) {
+      this.step = step;
+      this.value = value;
+      this.head = head;
+      trigger(step.property);
+      head(head);
+    }
+
+    void fire(Fact fact, List<Fact> derived) {
+      OWLIndividual x = step.inverse ? (OWLIndividual)fact.object : fact.subject;
+      OWLIndividual y = step.inverse ? fact.subject : (OWLIndividual)fact.object;
+      if(y.equals(value)) derived.add(new Fact(x, head, null));
+    }
+
+    boolean derives(Fact fact) {
+      return successors(fact.subject, step).contains(value);
+    }
+  }
+
+  /**
+   * Members of a class have a particular value of a property: value
+   * restrictions on the right of a subclass axiom
+   */
+  private final class FillRule extends Rule {
+    final OWLClass body;
+    final Step step;
+    final OWLIndividual value;
+
+    FillRule(OWLClass body, Step step, OWLIndividual value) {
+      this.body = body;
+      this.step = step;
+      this.value = value;
+      trigger(body);
+      head(step.property);
+    }
+
+    void fire(Fact fact, List<Fact> derived) {
+      derived.add(edge(fact.subject, step, value));
+    }
+
+    boolean derives(Fact fact) {
+      OWLIndividual x = step.inverse ? (OWLIndividual)fact.object : fact.subject;
+      OWLIndividual y = step.inverse ? fact.subject : (OWLIndividual)fact.object;
+      return y.equals(value) && get(types, x).contains(body);
+    }
+  }
+
+  /**
+   * Individuals with (a particular) value of a data property are members of a
+   * class: data property domains and restrictions
+   */
+  private final class DataRule extends Rule {
+    final OWLDataProperty property;
+    final OWLConstant value;
+    final OWLClass head;
+
+    DataRule(OWLDataProperty property, OWLConstant value, OWLClass head) {
+      this.property = property;
+      this.value = value;
+      this.head = head;
+      trigger(property);
+      head(head);
+    }
+
+    void fire(Fact fact, List<Fact> derived) {
+      if(value == null || value.equals(fact.object)) derived.add(new Fact(fact.subject, head, null));
+    }
+
+    boolean derives(Fact fact) {
+      Set<OWLConstant> values = get(getMap(data, property), fact.subject);
+      return value == null ? values.size() > 0 : values.contains(value);
+    }
+  }
+
+  /**
+   * Members of a class have a particular value of a data property
+   */
+  private final class DataFillRule extends Rule {
+    final OWLClass body;
+    final OWLDataProperty property;
+    final OWLConstant value;
+
+    DataFillRule(OWLClass body, OWLDataProperty property, OWLConstant value) {
+      this.body = body;
+      this.property = property;
+      this.value = value;
+      trigger(body);
+      head(property);
+    }
+
+    void fire(Fact fact, List<Fact> derived) {
+      derived.add(new Fact(fact.subject, property, value));
+    }
+
+    boolean derives(Fact fact) {
+      return value.equals(fact.object) && get(types, fact.subject).contains(body);
+    }
+  }
+
+  /**
+   * Values of a data property are values of another
+   */
+  private final class DataSubRule extends Rule {
+    final OWLDataProperty sub;
+    final OWLDataProperty sup;
+
+    DataSubRule(OWLDataProperty sub, OWLDataProperty sup) {
+      this.sub = sub;
+      this.sup = sup;
+      trigger(sub);
+      head(sup);
+      put(subsumees, sup, sub);
+    }
+
+    void fire(Fact fact, List<Fact> derived) {
+      derived.add(new Fact(fact.subject, sup, fact.object));
+    }
+
+    boolean derives(Fact fact) {
+      return get(getMap(data, sub), fact.subject).contains(fact.object);
+    }
+  }
+
+  /**
+   * <!-- Constraint -->
+   * 
+   * Something that must hold of the facts for the rules to be used
+   * 
+   * @author Gary Polhill
+   */
+  private abstract class Constraint {
+    /**
+     * <!-- holds -->
+     * 
+     * @return <code>false</code> if the facts currently held violate the
+     *         constraint
+     */
+    abstract boolean holds();
+  }
+
+  /**
+   * No individual is a member of both classes (or of the first class, if the
+   * second is <code>null</code>)
+   */
+  private final class DisjointConstraint extends Constraint {
+    final OWLClass first;
+    final OWLClass second;
+
+    DisjointConstraint(OWLClass first, OWLClass second) {
+      this.first = first;
+      this.second = second;
+    }
+
+    boolean holds() {
+      if(second == null) return get(members, first).size() == 0;
+      for(OWLIndividual x: get(members, first)) {
+        if(get(types, x).contains(second)) return false;
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Every member of a class has a value of an object property in a class (any
+   * value, if the class is <code>null</code>), or a value of a data property:
+   * existential restrictions on the right of an axiom
+   */
+  private final class ExistsConstraint extends Constraint {
+    final OWLClass body;
+    final Step step;
+    final OWLClass filler;
+    final OWLDataProperty property;
+
+    ExistsConstraint(OWLClass body, Step step, OWLClass filler) {
+      this.body = body;
+      this.step = step;
+      this.filler = filler;
+      property = null;
+    }
+
+    ExistsConstraint(OWLClass body, OWLDataProperty property) {
+      this.body = body;
+      step = null;
+      filler = null;
+      this.property = property;
+    }
+
+    boolean holds() {
+      for(OWLIndividual x: get(members, body)) {
+        if(!hasValue(x)) return false;
+      }
+      return true;
+    }
+
+    boolean hasValue(OWLIndividual x) {
+      if(step == null) return get(getMap(data, property), x).size() > 0;
+      for(OWLIndividual y: successors(x, step)) {
+        if(filler == null || get(types, y).contains(filler)) return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * An object property has at most one value for each individual, or is
+   * irreflexive, or asymmetric, or disjoint with another. Violations of
+   * functionality entail that individuals are the same, which the rules do
+   * not handle.
+   */
+  private final class PropertyConstraint extends Constraint {
+    final Step step;
+    final Step disjoint;
+    final boolean functional;
+    final boolean irreflexive;
+    final boolean asymmetric;
+
+    PropertyConstraint(Step step, Step disjoint, boolean functional, boolean irreflexive, boolean asymmetric) {
+      this.step = step;
+      this.disjoint = disjoint;
+      this.functional = functional;
+      this.irreflexive = irreflexive;
+      this.asymmetric = asymmetric;
+    }
+
+    boolean holds() {
+      Map<OWLIndividual, Set<OWLIndividual>> edges = getMap(step.inverse ? in : out, step.property);
+      for(Map.Entry<OWLIndividual, Set<OWLIndividual>> entry: edges.entrySet()) {
+        OWLIndividual x = entry.getKey();
+        if(functional && entry.getValue().size() > 1) return false;
+        for(OWLIndividual y: entry.getValue()) {
+          if(irreflexive && x.equals(y)) return false;
+          if(asymmetric && successors(y, step).contains(x)) return false;
+          if(disjoint != null && successors(x, disjoint).contains(y)) return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * A data property has at most one value for each individual, or only values
+   * of a given datatype, or never the same value as another data property
+   */
+  private final class DataConstraint extends Constraint {
+    final OWLDataProperty property;
+    final OWLDataProperty disjoint;
+    final OWLDataType range;
+    final boolean functional;
+
+    DataConstraint(OWLDataProperty property, OWLDataProperty disjoint, OWLDataType range, boolean functional) {
+      this.property = property;
+      this.disjoint = disjoint;
+      this.range = range;
+      this.functional = functional;
+    }
+
+    boolean holds() {
+      for(Map.Entry<OWLIndividual, Set<OWLConstant>> entry: getMap(data, property).entrySet()) {
+        if(functional && entry.getValue().size() > 1) return false;
+        for(OWLConstant value: entry.getValue()) {
+          // Values of a datatype derived from the range are left to the
+          // reasoner to judge
+          if(range != null
+            && !(value.isTyped() && ((OWLTypedConstant)value).getDataType().equals(range))) return false;
+          if(disjoint != null && get(getMap(data, disjoint), entry.getKey()).contains(value)) return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * The manager of the model and state ontologies
+   */
+  private final OWLOntologyManager manager;
+
+  /**
+   * Factory for axioms
+   */
+  private final OWLDataFactory factory;
+
+  /**
+   * The state ontologies (the set used by the caller, so additions to it are
+   * noticed)
+   */
+  private final Set<OWLOntology> state;
+
+  /**
+   * State ontologies whose assertions have been loaded
+   */
+  private final Set<OWLOntology> loaded;
+
+  /**
+   * Rules indexed by the predicates of facts triggering them
+   */
+  private final Map<OWLObject, List<Rule>> triggers;
+
+  /**
+   * Rules indexed by the predicate of the facts they derive
+   */
+  private final Map<OWLObject, List<Rule>> heads;
+
+  /**
+   * Constraints to check before the materialised facts are used
+   */
+  private final List<Constraint> constraints;
+
+  /**
+   * Auxiliary classes standing for complex class descriptions
+   */
+  private final Set<OWLClass> auxiliary;
+
+  /**
+   * Auxiliary classes for descriptions appearing on the left of axioms
+   */
+  private final Map<OWLDescription, OWLClass> bodies;
+
+  /**
+   * Named classes and properties told to be subsumed by each named class or
+   * property
+   */
+  private final Map<OWLObject, Set<OWLObject>> subsumees;
+
+  /**
+   * Facts asserted in the model
+   */
+  private final Set<Fact> modelFacts;
+
+  /**
+   * Number of times each fact is asserted in the model and state ontologies
+   */
+  private final Map<Fact, Integer> asserted;
+
+  /**
+   * Changes in the number of times facts are asserted in the state since the
+   * last materialisation
+   */
+  private final Map<Fact, Integer> delta;
+
+  /**
+   * Number of assertions in the state the rules cannot handle
+   */
+  private int nUnsupported;
+
+  /**
+   * The first model axiom that could not be compiled
+   */
+  private OWLAxiom unsupportedAxiom;
+
+  /**
+   * Classes of each individual
+   */
+  private final Map<OWLIndividual, Set<OWLClass>> types;
+
+  /**
+   * Members of each class
+   */
+  private final Map<OWLClass, Set<OWLIndividual>> members;
+
+  /**
+   * Values of each object property for each subject
+   */
+  private final Map<OWLObjectProperty, Map<OWLIndividual, Set<OWLIndividual>>> out;
+
+  /**
+   * Subjects of each object property for each value
+   */
+  private final Map<OWLObjectProperty, Map<OWLIndividual, Set<OWLIndividual>>> in;
+
+  /**
+   * Values of each data property for each subject
+   */
+  private final Map<OWLDataProperty, Map<OWLIndividual, Set<OWLConstant>>> data;
+
+  /**
+   * Constructor. Compiles the rules from the model, and starts listening to
+   * the manager for changes to the state.
+   * 
+   * @param manager The manager of the model and state ontologies
+   * @param model The model ontologies (the closure)
+   * @param state The state ontologies
+   */
+  public RuleMaterialiser(OWLOntologyManager manager, Set<OWLOntology> model, Set<OWLOntology> state) {
+    this.manager = manager;
+    factory = manager.getOWLDataFactory();
+    this.state = state;
+    loaded = new HashSet<OWLOntology>();
+    triggers = new HashMap<OWLObject, List<Rule>>();
+    heads = new HashMap<OWLObject, List<Rule>>();
+    constraints = new LinkedList<Constraint>();
+    auxiliary = new HashSet<OWLClass>();
+    bodies = new HashMap<OWLDescription, OWLClass>();
+    subsumees = new HashMap<OWLObject, Set<OWLObject>>();
+    modelFacts = new HashSet<Fact>();
+    asserted = new HashMap<Fact, Integer>();
+    delta = new HashMap<Fact, Integer>();
+    nUnsupported = 0;
+    unsupportedAxiom = null;
+    types = new HashMap<OWLIndividual, Set<OWLClass>>();
+    members = new HashMap<OWLClass, Set<OWLIndividual>>();
+    out = new HashMap<OWLObjectProperty, Map<OWLIndividual, Set<OWLIndividual>>>();
+    in = new HashMap<OWLObjectProperty, Map<OWLIndividual, Set<OWLIndividual>>>();
+    data = new HashMap<OWLDataProperty, Map<OWLIndividual, Set<OWLConstant>>>();
+
+    for(OWLOntology ontology: model) {
+      for(OWLAxiom axiom: ontology.getAxioms()) {
+        if(!compile(axiom)) {
+          unsupportedAxiom = axiom;
+          return;
+        }
+      }
+    }
+    manager.addOntologyChangeListener(this);
+  }
+
+  /**
+   * <!-- getUnsupportedAxiom -->
+   * 
+   * @return An axiom in the model that could not be compiled into rules, or
+   *         <code>null</code> if the whole model was compiled
+   */
+  public OWLAxiom getUnsupportedAxiom() {
+    return unsupportedAxiom;
+  }
+
+  /**
+   * <!-- materialise -->
+   * 
+   * Bring the materialised facts up to date with the changes to the state, and
+   * add the class and property assertions to the inferred ontology
+   * 
+   * @param inferred The ontology to add the assertions to
+   * @param vocabulary If not <code>null</code>, only add assertions for these
+   *          classes and properties and those told to be subsumed by them
+   * @return <code>false</code> if the state could not be materialised by the
+   *         rules, in which case nothing is added to the inferred ontology
+   */
+  public boolean materialise(OWLOntology inferred, Set<OWLEntity> vocabulary) {
+    if(unsupportedAxiom != null) return false;
+    Map<Fact, Integer> changes;
+    synchronized(delta) {
+      if(!loaded.equals(state)) {
+        load();
+        changes = new HashMap<Fact, Integer>();
+      }
+      else {
+        changes = new HashMap<Fact, Integer>(delta);
+      }
+      delta.clear();
+    }
+
+    Set<Fact> removed = new HashSet<Fact>();
+    Set<Fact> added = new HashSet<Fact>();
+    for(Map.Entry<Fact, Integer> change: changes.entrySet()) {
+      int before = count(asserted, change.getKey());
+      int after = before + change.getValue();
+      if(after <= 0) asserted.remove(change.getKey());
+      else
+        asserted.put(change.getKey(), after);
+      if(before > 0 && after <= 0) removed.add(change.getKey());
+      else if(before <= 0 && after > 0) added.add(change.getKey());
+    }
+    retract(removed);
+    insert(added);
+
+    if(nUnsupported > 0) return false;
+    for(Constraint constraint: constraints) {
+      if(!constraint.holds()) return false;
+    }
+
+    try {
+      manager.addAxioms(inferred, assertions(vocabulary));
+    }
+    catch(OWLOntologyChangeException e) {
+      ErrorHandler.fatal(e, "adding materialised assertions to " + inferred.getURI());
+      throw new Panic();
+    }
+    return true;
+  }
+
+  /**
+   * <!-- load -->
+   * 
+   * Forget all facts, and derive them again from the model and all the
+   * assertions in the state ontologies
+   */
+  private void load() {
+    types.clear();
+    members.clear();
+    out.clear();
+    in.clear();
+    data.clear();
+    asserted.clear();
+    nUnsupported = 0;
+    for(Fact fact: modelFacts) {
+      asserted.put(fact, 1);
+    }
+    for(OWLOntology ontology: state) {
+      for(OWLAxiom axiom: ontology.getAxioms()) {
+        if(!(axiom instanceof OWLLogicalAxiom)) continue;
+        Fact fact = fact(axiom);
+        if(fact == null) nUnsupported++;
+        else
+          asserted.put(fact, count(asserted, fact) + 1);
+      }
+    }
+    loaded.clear();
+    loaded.addAll(state);
+    insert(asserted.keySet());
+  }
+
+  /**
+   * <!-- insert -->
+   * 
+   * Add facts, and all the facts they allow to be derived. Each fact taken from
+   * the agenda is only joined with facts already held, so each combination of
+   * premises is considered once.
+   * 
+   * @param facts The facts to add
+   */
+  private void insert(Set<Fact> facts) {
+    LinkedList<Fact> agenda = new LinkedList<Fact>();
+    for(Fact fact: facts) {
+      if(add(fact)) agenda.add(fact);
+    }
+    List<Fact> derived = new ArrayList<Fact>();
+    while(!agenda.isEmpty()) {
+      Fact fact = agenda.removeFirst();
+      for(Rule rule: getList(triggers, fact.predicate)) {
+        rule.fire(fact, derived);
+      }
+      for(Fact newFact: derived) {
+        if(add(newFact)) agenda.add(newFact);
+      }
+      derived.clear();
+    }
+  }
+
+  /**
+   * <!-- retract -->
+   * 
+   * Remove facts no longer asserted, using delete/rederive. Everything that
+   * could have been derived using the facts is deleted, then those of the
+   * deleted facts that are still asserted, or that can be derived in one step
+   * from what remains, are put back, with everything they allow to be derived.
+   * 
+   * @param facts The facts no longer asserted
+   */
+  private void retract(Set<Fact> facts) {
+    if(facts.size() == 0) return;
+    Set<Fact> deleted = new HashSet<Fact>();
+    LinkedList<Fact> agenda = new LinkedList<Fact>();
+    for(Fact fact: facts) {
+      if(contains(fact) && deleted.add(fact)) agenda.add(fact);
+    }
+    List<Fact> derived = new ArrayList<Fact>();
+    while(!agenda.isEmpty()) {
+      Fact fact = agenda.removeFirst();
+      for(Rule rule: getList(triggers, fact.predicate)) {
+        rule.fire(fact, derived);
+      }
+      for(Fact oldFact: derived) {
+        if(contains(oldFact) && deleted.add(oldFact)) agenda.add(oldFact);
+      }
+      derived.clear();
+    }
+    for(Fact fact: deleted) {
+      remove(fact);
+    }
+
+    Set<Fact> rederived = new HashSet<Fact>();
+    for(Fact fact: deleted) {
+      if(asserted.containsKey(fact)) {
+        rederived.add(fact);
+        continue;
+      }
+      for(Rule rule: getList(heads, fact.predicate)) {
+        if(rule.derives(fact)) {
+          rederived.add(fact);
+          break;
+        }
+      }
+    }
+    insert(rederived);
+  }
+
+  /**
+   * <!-- assertions -->
+   * 
+   * @param vocabulary The classes and properties to get assertions for (all,
+   *          if <code>null</code>)
+   * @return Axioms for the facts held, and membership of
+   *         <code>owl:Thing</code> for every individual in them
+   */
+  private Set<OWLAxiom> assertions(Set<OWLEntity> vocabulary) {
+    Set<OWLObject> wanted = null;
+    if(vocabulary != null) {
+      wanted = new HashSet<OWLObject>(vocabulary);
+      LinkedList<OWLObject> queue = new LinkedList<OWLObject>(vocabulary);
+      while(!queue.isEmpty()) {
+        for(OWLObject sub: get(subsumees, queue.removeFirst())) {
+          if(wanted.add(sub)) queue.add(sub);
+        }
+      }
+    }
+    Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+    Set<OWLIndividual> individuals = new HashSet<OWLIndividual>(types.keySet());
+    for(Map.Entry<OWLIndividual, Set<OWLClass>> entry: types.entrySet()) {
+      for(OWLClass type: entry.getValue()) {
+        if(auxiliary.contains(type) || (wanted != null && !wanted.contains(type))) continue;
+        axioms.add(factory.getOWLClassAssertionAxiom(entry.getKey(), type));
+      }
+    }
+    for(Map.Entry<OWLObjectProperty, Map<OWLIndividual, Set<OWLIndividual>>> entry: out.entrySet()) {
+      boolean want = wanted == null || wanted.contains(entry.getKey());
+      for(Map.Entry<OWLIndividual, Set<OWLIndividual>> edges: entry.getValue().entrySet()) {
+        individuals.add(edges.getKey());
+        individuals.addAll(edges.getValue());
+        if(!want) continue;
+        for(OWLIndividual value: edges.getValue()) {
+          axioms.add(factory.getOWLObjectPropertyAssertionAxiom(edges.getKey(), entry.getKey(), value));
+        }
+      }
+    }
+    for(Map.Entry<OWLDataProperty, Map<OWLIndividual, Set<OWLConstant>>> entry: data.entrySet()) {
+      boolean want = wanted == null || wanted.contains(entry.getKey());
+      for(Map.Entry<OWLIndividual, Set<OWLConstant>> values: entry.getValue().entrySet()) {
+        individuals.add(values.getKey());
+        if(!want) continue;
+        for(OWLConstant value: values.getValue()) {
+          axioms.add(factory.getOWLDataPropertyAssertionAxiom(values.getKey(), entry.getKey(), value));
+        }
+      }
+    }
+    OWLClass thing = factory.getOWLThing();
+    if(wanted == null || wanted.contains(thing)) {
+      for(OWLIndividual individual: individuals) {
+        axioms.add(factory.getOWLClassAssertionAxiom(individual, thing));
+      }
+    }
+    return axioms;
+  }
+
+  /**
+   * <!-- ontologiesChanged -->
+   * 
+   * Note assertions added to or removed from the state ontologies
+   * 
+   * @see org.semanticweb.owl.model.OWLOntologyChangeListener#ontologiesChanged(java.util.List)
+   * @param changes Changes made to ontologies in the manager
+   */
+  public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+    synchronized(delta) {
+      for(OWLOntologyChange change: changes) {
+        if(!loaded.contains(change.getOntology())) continue;
+        if(!(change instanceof AddAxiom || change instanceof RemoveAxiom)) continue;
+        OWLAxiom axiom = change.getAxiom();
+        if(!(axiom instanceof OWLLogicalAxiom)) continue;
+        int n = change instanceof AddAxiom ? 1 : -1;
+        Fact fact = fact(axiom);
+        if(fact == null) nUnsupported += n;
+        else
+          delta.put(fact, count(delta, fact) + n);
+      }
+    }
+  }
+
+  /**
+   * <!-- dispose -->
+   * 
+   * Stop listening to the manager and forget all facts
+   */
+  public void dispose() {
+    manager.removeOntologyChangeListener(this);
+    types.clear();
+    members.clear();
+    out.clear();
+    in.clear();
+    data.clear();
+    loaded.clear();
+  }
+
+  /**
+   * <!-- compile -->
+   * 
+   * @param axiom An axiom from the model
+   * @return <code>false</code> if the axiom could not be compiled
+   */
+  private boolean compile(OWLAxiom axiom) {
+    if(!(axiom instanceof OWLLogicalAxiom)) return true;
+    if(axiom instanceof OWLSubClassAxiom) {
+      OWLSubClassAxiom sub = (OWLSubClassAxiom)axiom;
+      if(sub.getSuperClass().isOWLThing()) return true;
+      OWLClass body = body(sub.getSubClass());
+      return body != null && head(sub.getSuperClass(), body);
+    }
+    if(axiom instanceof OWLEquivalentClassesAxiom) {
+      List<OWLDescription> descriptions =
+        new ArrayList<OWLDescription>(((OWLEquivalentClassesAxiom)axiom).getDescriptions());
+      for(OWLDescription description: descriptions) {
+        OWLClass body = body(description);
+        if(body == null) return false;
+        for(OWLDescription other: descriptions) {
+          if(other != description && !head(other, body)) return false;
+        }
+      }
+      return true;
+    }
+    if(axiom instanceof OWLDisjointClassesAxiom) {
+      List<OWLClass> disjoint = new ArrayList<OWLClass>();
+      for(OWLDescription description: ((OWLDisjointClassesAxiom)axiom).getDescriptions()) {
+        OWLClass body = body(description);
+        if(body == null) return false;
+        for(OWLClass other: disjoint) {
+          constraints.add(new DisjointConstraint(other, body));
+        }
+        disjoint.add(body);
+      }
+      return true;
+    }
+    if(axiom instanceof OWLObjectPropertyDomainAxiom) {
+      OWLObjectPropertyDomainAxiom domain = (OWLObjectPropertyDomainAxiom)axiom;
+      if(domain.getDomain().isOWLThing()) return true;
+      OWLClass head = conclude(domain.getDomain());
+      if(head != null) new ExistsRule(step(domain.getProperty()), null, head);
+      return head != null;
+    }
+    if(axiom instanceof OWLObjectPropertyRangeAxiom) {
+      OWLObjectPropertyRangeAxiom range = (OWLObjectPropertyRangeAxiom)axiom;
+      if(range.getRange().isOWLThing()) return true;
+      OWLClass head = conclude(range.getRange());
+      if(head != null) new ExistsRule(step(range.getProperty()).inverse(), null, head);
+      return head != null;
+    }
+    if(axiom instanceof OWLDataPropertyDomainAxiom) {
+      OWLDataPropertyDomainAxiom domain = (OWLDataPropertyDomainAxiom)axiom;
+      if(domain.getDomain().isOWLThing()) return true;
+      OWLClass head = conclude(domain.getDomain());
+      if(head != null) new DataRule(domain.getProperty().asOWLDataProperty(), null, head);
+      return head != null;
+    }
+    if(axiom instanceof OWLDataPropertyRangeAxiom) {
+      OWLDataPropertyRangeAxiom range = (OWLDataPropertyRangeAxiom)axiom;
+      if(!(range.getRange() instanceof OWLDataType)) return false;
+      if(isLiteral(range.getRange())) return true;
+      constraints.add(new DataConstraint(range.getProperty().asOWLDataProperty(), null,
+          (OWLDataType)range.getRange(), false));
+      return true;
+    }
+    if(axiom instanceof OWLObjectSubPropertyAxiom) {
+      OWLObjectSubPropertyAxiom sub = (OWLObjectSubPropertyAxiom)axiom;
+      new ChainRule(new Step[] { step(sub.getSubProperty()) }, step(sub.getSuperProperty()));
+      return true;
+    }
+    if(axiom instanceof OWLObjectPropertyChainSubPropertyAxiom) {
+      OWLObjectPropertyChainSubPropertyAxiom sub = (OWLObjectPropertyChainSubPropertyAxiom)axiom;
+      List<Step> chain = new ArrayList<Step>();
+      for(OWLObjectPropertyExpression property: sub.getPropertyChain()) {
+        chain.add(step(property));
+      }
+      new ChainRule(chain.toArray(new Step[0]), step(sub.getSuperProperty()));
+      return true;
+    }
+    if(axiom instanceof OWLEquivalentObjectPropertiesAxiom) {
+      for(OWLObjectPropertyExpression property: ((OWLEquivalentObjectPropertiesAxiom)axiom).getProperties()) {
+        for(OWLObjectPropertyExpression other: ((OWLEquivalentObjectPropertiesAxiom)axiom).getProperties()) {
+          if(!other.equals(property)) new ChainRule(new Step[] { step(property) }, step(other));
+        }
+      }
+      return true;
+    }
+    if(axiom instanceof OWLInverseObjectPropertiesAxiom) {
+      Step first = step(((OWLInverseObjectPropertiesAxiom)axiom).getFirstProperty());
+      Step second = step(((OWLInverseObjectPropertiesAxiom)axiom).getSecondProperty());
+      new ChainRule(new Step[] { first }, second.inverse());
+      new ChainRule(new Step[] { second }, first.inverse());
+      return true;
+    }
+    if(axiom instanceof OWLSymmetricObjectPropertyAxiom) {
+      Step step = step(((OWLSymmetricObjectPropertyAxiom)axiom).getProperty());
+      new ChainRule(new Step[] { step }, step.inverse());
+      return true;
+    }
+    if(axiom instanceof OWLTransitiveObjectPropertyAxiom) {
+      Step step = step(((OWLTransitiveObjectPropertyAxiom)axiom).getProperty());
+      new ChainRule(new Step[] { step, step }, step);
+      return true;
+    }
+    if(axiom instanceof OWLFunctionalObjectPropertyAxiom) {
+      Step step = step(((OWLFunctionalObjectPropertyAxiom)axiom).getProperty());
+      constraints.add(new PropertyConstraint(step, null, true, false, false));
+      return true;
+    }
+    if(axiom instanceof OWLInverseFunctionalObjectPropertyAxiom) {
+      Step step = step(((OWLInverseFunctionalObjectPropertyAxiom)axiom).getProperty());
+      constraints.add(new PropertyConstraint(step.inverse(), null, true, false, false));
+      return true;
+    }
+    if(axiom instanceof OWLIrreflexiveObjectPropertyAxiom) {
+      Step step = step(((OWLIrreflexiveObjectPropertyAxiom)axiom).getProperty());
+      constraints.add(new PropertyConstraint(step, null, false, true, false));
+      return true;
+    }
+    if(axiom instanceof OWLAntiSymmetricObjectPropertyAxiom) {
+      Step step = step(((OWLAntiSymmetricObjectPropertyAxiom)axiom).getProperty());
+      constraints.add(new PropertyConstraint(step, null, false, false, true));
+      return true;
+    }
+    if(axiom instanceof OWLDisjointObjectPropertiesAxiom) {
+      List<Step> disjoint = new ArrayList<Step>();
+      for(OWLObjectPropertyExpression property: ((OWLDisjointObjectPropertiesAxiom)axiom).getProperties()) {
+        Step step = step(property);
+        for(Step other: disjoint) {
+          constraints.add(new PropertyConstraint(other, step, false, false, false));
+        }
+        disjoint.add(step);
+      }
+      return true;
+    }
+    if(axiom instanceof OWLDataSubPropertyAxiom) {
+      OWLDataSubPropertyAxiom sub = (OWLDataSubPropertyAxiom)axiom;
+      new DataSubRule(sub.getSubProperty().asOWLDataProperty(), sub.getSuperProperty().asOWLDataProperty());
+      return true;
+    }
+    if(axiom instanceof OWLEquivalentDataPropertiesAxiom) {
+      for(OWLDataPropertyExpression property: ((OWLEquivalentDataPropertiesAxiom)axiom).getProperties()) {
+        for(OWLDataPropertyExpression other: ((OWLEquivalentDataPropertiesAxiom)axiom).getProperties()) {
+          if(!other.equals(property)) new DataSubRule(property.asOWLDataProperty(), other.asOWLDataProperty());
+        }
+      }
+      return true;
+    }
+    if(axiom instanceof OWLFunctionalDataPropertyAxiom) {
+      OWLDataPropertyExpression property = ((OWLFunctionalDataPropertyAxiom)axiom).getProperty();
+      constraints.add(new DataConstraint(property.asOWLDataProperty(), null, null, true));
+      return true;
+    }
+    if(axiom instanceof OWLDisjointDataPropertiesAxiom) {
+      List<OWLDataProperty> disjoint = new ArrayList<OWLDataProperty>();
+      for(OWLDataPropertyExpression property: ((OWLDisjointDataPropertiesAxiom)axiom).getProperties()) {
+        for(OWLDataProperty other: disjoint) {
+          constraints.add(new DataConstraint(other, property.asOWLDataProperty(), null, false));
+        }
+        disjoint.add(property.asOWLDataProperty());
+      }
+      return true;
+    }
+    if(axiom instanceof OWLDifferentIndividualsAxiom) {
+      // The rules never entail that individuals are the same
+      return true;
+    }
+    if(axiom instanceof OWLClassAssertionAxiom) {
+      OWLClassAssertionAxiom assertion = (OWLClassAssertionAxiom)axiom;
+      OWLClass type =
+        assertion.getDescription().isOWLThing() ? factory.getOWLThing() : conclude(assertion.getDescription());
+      if(type != null) modelFacts.add(new Fact(assertion.getIndividual(), type, null));
+      return type != null;
+    }
+    Fact fact = fact(axiom);
+    if(fact != null) modelFacts.add(fact);
+    return fact != null;
+  }
+
+  /**
+   * <!-- body -->
+   * 
+   * @param description A description on the left of an axiom
+   * @return A class whose members are derived to be all the individuals
+   *         described, or <code>null</code> if the description cannot be
+   *         compiled
+   */
+  private OWLClass body(OWLDescription description) {
+    if(description instanceof OWLClass) {
+      return description.isOWLThing() ? null : (OWLClass)description;
+    }
+    if(bodies.containsKey(description)) return bodies.get(description);
+    OWLClass body = null;
+    if(description instanceof OWLObjectIntersectionOf) {
+      Set<OWLClass> conjuncts = new HashSet<OWLClass>();
+      for(OWLDescription operand: ((OWLObjectIntersectionOf)description).getOperands()) {
+        if(operand.isOWLThing()) continue;
+        OWLClass conjunct = body(operand);
+        if(conjunct == null) return null;
+        conjuncts.add(conjunct);
+      }
+      if(conjuncts.size() == 0) return null;
+      body = auxiliary();
+      new ClassRule(conjuncts, body);
+    }
+    else if(description instanceof OWLObjectUnionOf) {
+      body = auxiliary();
+      for(OWLDescription operand: ((OWLObjectUnionOf)description).getOperands()) {
+        OWLClass disjunct = body(operand);
+        if(disjunct == null) return null;
+        new ClassRule(Collections.singleton(disjunct), body);
+      }
+    }
+    else if(description instanceof OWLObjectSomeRestriction) {
+      OWLObjectSomeRestriction some = (OWLObjectSomeRestriction)description;
+      OWLClass filler = some.getFiller().isOWLThing() ? null : body(some.getFiller());
+      if(filler == null && !some.getFiller().isOWLThing()) return null;
+      body = auxiliary();
+      new ExistsRule(step(some.getProperty()), filler, body);
+    }
+    else if(description instanceof OWLObjectValueRestriction) {
+      OWLObjectValueRestriction value = (OWLObjectValueRestriction)description;
+      body = auxiliary();
+      new ValueRule(step(value.getProperty()), value.getValue(), body);
+    }
+    else if(description instanceof OWLDataSomeRestriction) {
+      OWLDataSomeRestriction some = (OWLDataSomeRestriction)description;
+      if(!isLiteral(some.getFiller())) return null;
+      body = auxiliary();
+      new DataRule(some.getProperty().asOWLDataProperty(), null, body);
+    }
+    else if(description instanceof OWLDataValueRestriction) {
+      OWLDataValueRestriction value = (OWLDataValueRestriction)description;
+      body = auxiliary();
+      new DataRule(value.getProperty().asOWLDataProperty(), value.getValue(), body);
+    }
+    if(body != null) bodies.put(description, body);
+    return body;
+  }
+
+  /**
+   * <!-- head -->
+   * 
+   * Compile rules deriving that members of a class are described by a
+   * description on the right of an axiom
+   * 
+   * @param description The description
+   * @param body The class
+   * @return <code>false</code> if the description cannot be compiled
+   */
+  private boolean head(OWLDescription description, OWLClass body) {
+    if(description.isOWLThing()) return true;
+    if(description.isOWLNothing()) {
+      constraints.add(new DisjointConstraint(body, null));
+      return true;
+    }
+    if(description instanceof OWLClass) {
+      if(!description.equals(body)) new ClassRule(Collections.singleton(body), (OWLClass)description);
+      return true;
+    }
+    if(description instanceof OWLObjectIntersectionOf) {
+      for(OWLDescription operand: ((OWLObjectIntersectionOf)description).getOperands()) {
+        if(!head(operand, body)) return false;
+      }
+      return true;
+    }
+    if(description instanceof OWLObjectAllRestriction) {
+      OWLObjectAllRestriction all = (OWLObjectAllRestriction)description;
+      if(all.getFiller().isOWLThing()) return true;
+      OWLClass filler = conclude(all.getFiller());
+      if(filler != null) new AllRule(body, step(all.getProperty()), filler);
+      return filler != null;
+    }
+    if(description instanceof OWLObjectValueRestriction) {
+      OWLObjectValueRestriction value = (OWLObjectValueRestriction)description;
+      new FillRule(body, step(value.getProperty()), value.getValue());
+      return true;
+    }
+    if(description instanceof OWLDataValueRestriction) {
+      OWLDataValueRestriction value = (OWLDataValueRestriction)description;
+      new DataFillRule(body, value.getProperty().asOWLDataProperty(), value.getValue());
+      return true;
+    }
+    if(description instanceof OWLObjectSomeRestriction) {
+      OWLObjectSomeRestriction some = (OWLObjectSomeRestriction)description;
+      OWLClass filler = some.getFiller().isOWLThing() ? null : body(some.getFiller());
+      if(filler == null && !some.getFiller().isOWLThing()) {
+        // No way to tell if a value is in the filler: any member of the body
+        // means the reasoner is needed
+        constraints.add(new DisjointConstraint(body, null));
+      }
+      else {
+        constraints.add(new ExistsConstraint(body, step(some.getProperty()), filler));
+      }
+      return true;
+    }
+    if(description instanceof OWLDataSomeRestriction) {
+      OWLDataSomeRestriction some = (OWLDataSomeRestriction)description;
+      if(isLiteral(some.getFiller())) {
+        constraints.add(new ExistsConstraint(body, some.getProperty().asOWLDataProperty()));
+      }
+      else {
+        constraints.add(new DisjointConstraint(body, null));
+      }
+      return true;
+    }
+    if(description instanceof OWLObjectComplementOf) {
+      OWLClass complement = body(((OWLObjectComplementOf)description).getOperand());
+      if(complement != null) constraints.add(new DisjointConstraint(body, complement));
+      return complement != null;
+    }
+    return false;
+  }
+
+  /**
+   * <!-- conclude -->
+   * 
+   * @param description A description on the right of an axiom
+   * @return A class whose members are derived to be described by it, or
+   *         <code>null</code> if it cannot be compiled
+   */
+  private OWLClass conclude(OWLDescription description) {
+    if(description instanceof OWLClass && !description.isOWLThing() && !description.isOWLNothing()) {
+      return (OWLClass)description;
+    }
+    OWLClass head = auxiliary();
+    return head(description, head) ? head : null;
+  }
+
+  /**
+   * <!-- auxiliary -->
+   * 
+   * @return A new auxiliary class
+   */
+  private OWLClass auxiliary() {
+    OWLClass aux = factory.getOWLClass(AnonymousURI.createAnonymousURI());
+    auxiliary.add(aux);
+    return aux;
+  }
+
+  /**
+   * <!-- fact -->
+   * 
+   * @param axiom An assertion
+   * @return The fact asserted, or <code>null</code> if the axiom is not a
+   *         class assertion with a named class or a property assertion
+   */
+  private Fact fact(OWLAxiom axiom) {
+    if(axiom instanceof OWLClassAssertionAxiom) {
+      OWLClassAssertionAxiom assertion = (OWLClassAssertionAxiom)axiom;
+      if(assertion.getDescription().isAnonymous()) return null;
+      return new Fact(assertion.getIndividual(), assertion.getDescription().asOWLClass(), null);
+    }
+    if(axiom instanceof OWLObjectPropertyAssertionAxiom) {
+      OWLObjectPropertyAssertionAxiom assertion = (OWLObjectPropertyAssertionAxiom)axiom;
+      return edge(assertion.getSubject(), step(assertion.getProperty()), assertion.getObject());
+    }
+    if(axiom instanceof OWLDataPropertyAssertionAxiom) {
+      OWLDataPropertyAssertionAxiom assertion = (OWLDataPropertyAssertionAxiom)axiom;
+      return new Fact(assertion.getSubject(), assertion.getProperty().asOWLDataProperty(), assertion.getObject());
+    }
+    return null;
+  }
+
+  /**
+   * <!-- step -->
+   * 
+   * @param property An object property expression
+   * @return The named property it is, or is an inverse of
+   */
+  private static Step step(OWLObjectPropertyExpression property) {
+    boolean inverse = false;
+    while(property instanceof OWLObjectPropertyInverse) {
+      inverse = !inverse;
+      property = ((OWLObjectPropertyInverse)property).getInverse();
+    }
+    return new Step(property.asOWLObjectProperty(), inverse);
+  }
+
+  /**
+   * <!-- edge -->
+   * 
+   * @param x An individual
+   * @param step A property or its inverse
+   * @param y An individual
+   * @return The fact that x has y as value of the step
+   */
+  private static Fact edge(OWLIndividual x, Step step, OWLIndividual y) {
+    return step.inverse ? new Fact(y, step.property, x) : new Fact(x, step.property, y);
+  }
+
+  /**
+   * <!-- isLiteral -->
+   * 
+   * @param range A data range
+   * @return <code>true</code> if the range is <code>rdfs:Literal</code>
+   */
+  private static boolean isLiteral(OWLDataRange range) {
+    return range instanceof OWLDataType
+      && ((OWLDataType)range).getURI().equals(OWLRDFVocabulary.RDFS_LITERAL.getURI());
+  }
+
+  /**
+   * <!-- successors -->
+   * 
+   * @param x An individual
+   * @param step A property or its inverse
+   * @return The values of the step for x
+   */
+  private Set<OWLIndividual> successors(OWLIndividual x, Step step) {
+    return get(getMap(step.inverse ? in : out, step.property), x);
+  }
+
+  /**
+   * <!-- predecessors -->
+   * 
+   * @param y An individual
+   * @param step A property or its inverse
+   * @return The individuals having y as value of the step
+   */
+  private Set<OWLIndividual> predecessors(OWLIndividual y, Step step) {
+    return get(getMap(step.inverse ? out : in, step.property), y);
+  }
+
+  /**
+   * <!-- walk -->
+   * 
+   * @param from Some individuals
+   * @param step A property or its inverse
+   * @return The values of the step for any of the individuals
+   */
+  private Set<OWLIndividual> walk(Set<OWLIndividual> from, Step step) {
+    Set<OWLIndividual> to = new HashSet<OWLIndividual>();
+    for(OWLIndividual x: from) {
+      to.addAll(successors(x, step));
+    }
+    return to;
+  }
+
+  /**
+   * <!-- contains -->
+   * 
+   * @param fact A fact
+   * @return <code>true</code> if the fact is held
+   */
+  private boolean contains(Fact fact) {
+    if(fact.predicate instanceof OWLClass) return get(types, fact.subject).contains(fact.predicate);
+    if(fact.predicate instanceof OWLObjectProperty) {
+      return get(getMap(out, (OWLObjectProperty)fact.predicate), fact.subject).contains(fact.object);
+    }
+    return get(getMap(data, (OWLDataProperty)fact.predicate), fact.subject).contains(fact.object);
+  }
+
+  /**
+   * <!-- add -->
+   * 
+   * @param fact A fact
+   * @return <code>true</code> if the fact was not already held
+   */
+  private boolean add(Fact fact) {
+    if(fact.predicate instanceof OWLClass) {
+      put(members, (OWLClass)fact.predicate, fact.subject);
+      return put(types, fact.subject, (OWLClass)fact.predicate);
+    }
+    if(fact.predicate instanceof OWLObjectProperty) {
+      OWLObjectProperty property = (OWLObjectProperty)fact.predicate;
+      put(indexMap(in, property), (OWLIndividual)fact.object, fact.subject);
+      return put(indexMap(out, property), fact.subject, (OWLIndividual)fact.object);
+    }
+    return put(indexMap(data, (OWLDataProperty)fact.predicate), fact.subject, (OWLConstant)fact.object);
+  }
+
+  /**
+   * <!-- remove -->
+   * 
+   * @param fact A fact no longer held
+   */
+  private void remove(Fact fact) {
+    if(fact.predicate instanceof OWLClass) {
+      delete(members, (OWLClass)fact.predicate, fact.subject);
+      delete(types, fact.subject, (OWLClass)fact.predicate);
+    }
+    else if(fact.predicate instanceof OWLObjectProperty) {
+      OWLObjectProperty property = (OWLObjectProperty)fact.predicate;
+      delete(getMap(in, property), (OWLIndividual)fact.object, fact.subject);
+      delete(getMap(out, property), fact.subject, (OWLIndividual)fact.object);
+    }
+    else {
+      delete(getMap(data, (OWLDataProperty)fact.predicate), fact.subject, (OWLConstant)fact.object);
+    }
+  }
+
+  /**
+   * <!-- count -->
+   * 
+   * @param counts Counts of facts
+   * @param fact A fact
+   * @return The count for the fact (0 if it has none)
+   */
+  private static int count(Map<Fact, Integer> counts, Fact fact) {
+    Integer n = counts.get(fact);
+    return n == null ? 0 : n;
+  }
+
+  /**
+   * <!-- get -->
+   * 
+   * @param map A map to sets
+   * @param key A key
+   * @return The set for the key (empty if there isn't one)
+   */
+  private static <K, V> Set<V> get(Map<K, Set<V>> map, K key) {
+    Set<V> values = map.get(key);
+    return values == null ? Collections.<V> emptySet() : values;
+  }
+
+  /**
+   * <!-- getList -->
+   * 
+   * @param map A map to lists
+   * @param key A key
+   * @return The list for the key (empty if there isn't one)
+   */
+  private static <K, V> List<V> getList(Map<K, List<V>> map, K key) {
+    List<V> values = map.get(key);
+    return values == null ? Collections.<V> emptyList() : values;
+  }
+
+  /**
+   * <!-- getMap -->
+   * 
+   * @param map A map to maps
+   * @param key A key
+   * @return The map for the key (empty if there isn't one)
+   */
+  private static <K1, K2, V> Map<K2, Set<V>> getMap(Map<K1, Map<K2, Set<V>>> map, K1 key) {
+    Map<K2, Set<V>> values = map.get(key);
+    return values == null ? Collections.<K2, Set<V>> emptyMap() : values;
+  }
+
+  /**
+   * <!-- indexList -->
+   * 
+   * @param map A map to lists
+   * @param key A key
+   * @return The list for the key, created if need be
+   */
+  private static <K, V> List<V> indexList(Map<K, List<V>> map, K key) {
+    List<V> values = map.get(key);
+    if(values == null) {
+      values = new ArrayList<V>();
+      map.put(key, values);
+    }
+    return values;
+  }
+
+  /**
+   * <!-- indexMap -->
+   * 
+   * @param map A map to maps
+   * @param key A key
+   * @return The map for the key, created if need be
+   */
+  private static <K1, K2, V> Map<K2, Set<V>> indexMap(Map<K1, Map<K2, Set<V>>> map, K1 key) {
+    Map<K2, Set<V>> values = map.get(key);
+    if(values == null) {
+      values = new HashMap<K2, Set<V>>();
+      map.put(key, values);
+    }
+    return values;
+  }
+
+  /**
+   * <!-- put -->
+   * 
+   * @param map A map to sets
+   * @param key A key
+   * @param value A value to add to the set for the key
+   * @return <code>true</code> if the value was not already in the set
+   */
+  private static <K, V> boolean put(Map<K, Set<V>> map, K key, V value) {
+    Set<V> values = map.get(key);
+    if(values == null) {
+      values = new HashSet<V>();
+      map.put(key, values);
+    }
+    return values.add(value);
+  }
+
+  /**
+   * <!-- delete -->
+   * 
+   * @param map A map to sets
+   * @param key A key
+   * @param value A value to remove from the set for the key
+   */
+  private static <K, V> void delete(Map<K, Set<V>> map, K key, V value) {
+    Set<V> values = map.get(key);
+    if(values == null) return;
+    values.remove(value);
+    if(values.size() == 0) map.remove(key);
+  }
+}
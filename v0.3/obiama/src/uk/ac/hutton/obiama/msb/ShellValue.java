@@ -324,6 +324,35 @@ public class ShellValue<T> extends AbstractValue<T> implements Value<T> {
     throw new ModificationOfLockedValueException(process, individual.getURI(), var.getURI());
   }
 
+  /**
+   * <!-- setDouble -->
+   * 
+   * Attempt to modify locked value
+   * 
+   * @see uk.ac.hutton.obiama.msb.Value#setDouble(double)
+   * @param value
+   * @return
+   * @throws IntegrationInconsistencyException
+   */
+  public double setDouble(double value) throws IntegrationInconsistencyException {
+    throw new ModificationOfLockedValueException(process, individual.getURI(), var.getURI());
+  }
+
+  /**
+   * <!-- addDouble -->
+   * 
+   * Attempt to modify locked value
+   * 
+   * @see uk.ac.hutton.obiama.msb.Value#addDouble(double)
+   * @param amount
+   * @return
+   * @throws IntegrationInconsistencyException
+   */
+  @Override
+  public double addDouble(double amount) throws IntegrationInconsistencyException {
+    throw new ModificationOfLockedValueException(process, individual.getURI(), var.getURI());
+  }
+
   /**
    * <!-- unset -->
    * 
@@ -369,6 +398,20 @@ public class ShellValue<T> extends AbstractValue<T> implements Value<T> {
     return shadowValue.compareToString(arg);
   }
 
+  /**
+   * <!-- getDouble -->
+   * 
+   * Forward to shadowed value
+   * 
+   * @see uk.ac.hutton.obiama.msb.AbstractValue#getDouble()
+   * @return
+   * @throws IntegrationInconsistencyException
+   */
+  @Override
+  public double getDouble() throws IntegrationInconsistencyException {
+    return shadowValue.getDouble();
+  }
+
   /**
    * <!-- readOnly -->
    * 
@@ -0,0 +1,108 @@
+/*
+ * uk.ac.hutton.obiama.msb: StateChangeListener.java
+ * 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.msb;
+
+import java.net.URI;
+
+/**
+ * <!-- StateChangeListener -->
+ * 
+ * Something told about the changes to the (inferred) state of the model each
+ * time the {@link ModelStateBroker} is updated, so that it can keep track of
+ * the state without having to query the whole of it each time step. When a
+ * listener is added, it is told about the current state as if every
+ * class membership and property value in it had just been added.
+ * Individuals created appear as new class memberships; individuals killed or
+ * deleted appear as class memberships (and property values) removed. The
+ * changes are found by comparing the inferred state before and after each
+ * update, so they include everything the reasoner infers, however far it is
+ * from the assertions the update made. A listener added with a vocabulary is
+ * only told about the classes and properties in it, and only those are
+ * compared.
+ * 
+ * @author Gary Polhill
+ */
+public interface StateChangeListener {
+  /**
+   * <!-- memberAdded -->
+   * 
+   * @param concept A class
+   * @param individual An individual that is now a member of the class
+   */
+  public void memberAdded(URI concept, URI individual);
+
+  /**
+   * <!-- memberRemoved -->
+   * 
+   * @param concept A class
+   * @param individual An individual that is no longer a member of the class
+   */
+  public void memberRemoved(URI concept, URI individual);
+
+  /**
+   * <!-- dataValueAdded -->
+   * 
+   * @param individual An individual
+   * @param property A data property
+   * @param value A value the individual now has for the property (an instance
+   *          of the Java class recommended for its XSD type, or a
+   *          {@link String} if it is untyped)
+   */
+  public void dataValueAdded(URI individual, URI property, Object value);
+
+  /**
+   * <!-- dataValueRemoved -->
+   * 
+   * @param individual An individual
+   * @param property A data property
+   * @param value A value the individual no longer has for the property
+   */
+  public void dataValueRemoved(URI individual, URI property, Object value);
+
+  /**
+   * <!-- objectValueAdded -->
+   * 
+   * @param subject An individual
+   * @param property An object property
+   * @param object An individual the subject is now related to by the property
+   */
+  public void objectValueAdded(URI subject, URI property, URI object);
+
+  /**
+   * <!-- objectValueRemoved -->
+   * 
+   * @param subject An individual
+   * @param property An object property
+   * @param object An individual the subject is no longer related to by the
+   *          property
+   */
+  public void objectValueRemoved(URI subject, URI property, URI object);
+
+  /**
+   * <!-- changesApplied -->
+   * 
+   * Called after all the changes from an update have been reported
+   */
+  public void changesApplied();
+}
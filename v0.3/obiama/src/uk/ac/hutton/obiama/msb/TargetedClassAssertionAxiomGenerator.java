@@ -0,0 +1,109 @@
+/*
+ * uk.ac.hutton.obiama.msb: TargetedClassAssertionAxiomGenerator.java 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.msb;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.semanticweb.owl.inference.OWLReasoner;
+import org.semanticweb.owl.inference.OWLReasonerException;
+import org.semanticweb.owl.model.OWLClass;
+import org.semanticweb.owl.model.OWLClassAssertionAxiom;
+import org.semanticweb.owl.model.OWLDataFactory;
+import org.semanticweb.owl.model.OWLEntity;
+import org.semanticweb.owl.model.OWLIndividual;
+import org.semanticweb.owl.model.OWLOntologyManager;
+import org.semanticweb.owl.util.InferredAxiomGenerator;
+
+/**
+ * <!-- TargetedClassAssertionAxiomGenerator -->
+ * 
+ * Generate inferred class assertion axioms only for the classes in a given
+ * vocabulary and their subclasses, rather than (as
+ * {@link org.semanticweb.owl.util.InferredClassAssertionAxiomGenerator} does)
+ * for every type of every individual. The vocabulary is that used by the
+ * processes in the schedule, so class memberships nothing asks about are not
+ * materialised.
+ * 
+ * @author Gary Polhill
+ */
+class TargetedClassAssertionAxiomGenerator implements InferredAxiomGenerator<OWLClassAssertionAxiom> {
+  /**
+   * The vocabulary to generate axioms for (entities other than classes are
+   * ignored)
+   */
+  private final Set<OWLEntity> vocabulary;
+
+  /**
+   * Constructor
+   * 
+   * @param vocabulary Entities to generate axioms for
+   */
+  TargetedClassAssertionAxiomGenerator(Set<OWLEntity> vocabulary) {
+    this.vocabulary = vocabulary;
+  }
+
+  /**
+   * <!-- createAxioms -->
+   * 
+   * @see org.semanticweb.owl.util.InferredAxiomGenerator#createAxioms(org.semanticweb.owl.model.OWLOntologyManager,
+   *      org.semanticweb.owl.inference.OWLReasoner)
+   * @param manager The ontology manager
+   * @param reasoner A reasoner with the ontologies to infer from loaded
+   * @return Class assertion axioms for members of classes in the vocabulary
+   * @throws OWLReasonerException
+   */
+  public Set<OWLClassAssertionAxiom> createAxioms(OWLOntologyManager manager, OWLReasoner reasoner)
+      throws OWLReasonerException {
+    OWLDataFactory factory = manager.getOWLDataFactory();
+    Set<OWLClass> classes = new HashSet<OWLClass>();
+    for(OWLEntity entity: vocabulary) {
+      if(entity instanceof OWLClass) {
+        OWLClass owlClass = (OWLClass)entity;
+        classes.add(owlClass);
+        for(Set<OWLClass> subClasses: reasoner.getDescendantClasses(owlClass)) {
+          classes.addAll(subClasses);
+        }
+      }
+    }
+    classes.remove(factory.getOWLNothing());
+
+    Set<OWLClassAssertionAxiom> axioms = new HashSet<OWLClassAssertionAxiom>();
+    for(OWLClass owlClass: classes) {
+      for(OWLIndividual individual: reasoner.getIndividuals(owlClass, false)) {
+        axioms.add(factory.getOWLClassAssertionAxiom(individual, owlClass));
+      }
+    }
+    return axioms;
+  }
+
+  /**
+   * <!-- getLabel -->
+   * 
+   * @see org.semanticweb.owl.util.InferredAxiomGenerator#getLabel()
+   * @return A label for the generator
+   */
+  public String getLabel() {
+    return "Targeted class assertions";
+  }
+}
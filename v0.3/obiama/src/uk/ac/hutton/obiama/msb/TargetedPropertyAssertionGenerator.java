@@ -0,0 +1,131 @@
+/*
+ * uk.ac.hutton.obiama.msb: TargetedPropertyAssertionGenerator.java 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.msb;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.semanticweb.owl.inference.OWLReasoner;
+import org.semanticweb.owl.inference.OWLReasonerException;
+import org.semanticweb.owl.model.OWLConstant;
+import org.semanticweb.owl.model.OWLDataFactory;
+import org.semanticweb.owl.model.OWLDataProperty;
+import org.semanticweb.owl.model.OWLEntity;
+import org.semanticweb.owl.model.OWLIndividual;
+import org.semanticweb.owl.model.OWLObjectProperty;
+import org.semanticweb.owl.model.OWLOntology;
+import org.semanticweb.owl.model.OWLOntologyManager;
+import org.semanticweb.owl.model.OWLPropertyAssertionAxiom;
+import org.semanticweb.owl.util.InferredAxiomGenerator;
+
+/**
+ * <!-- TargetedPropertyAssertionGenerator -->
+ * 
+ * Generate inferred property assertion axioms only for the properties in a
+ * given vocabulary and their subproperties, rather than (as
+ * {@link org.semanticweb.owl.util.InferredPropertyAssertionGenerator} does)
+ * for every property of every individual.
+ * 
+ * @author Gary Polhill
+ */
+class TargetedPropertyAssertionGenerator implements InferredAxiomGenerator<OWLPropertyAssertionAxiom<?, ?>> {
+  /**
+   * The vocabulary to generate axioms for (entities other than properties are
+   * ignored)
+   */
+  private final Set<OWLEntity> vocabulary;
+
+  /**
+   * Constructor
+   * 
+   * @param vocabulary Entities to generate axioms for
+   */
+  TargetedPropertyAssertionGenerator(Set<OWLEntity> vocabulary) {
+    this.vocabulary = vocabulary;
+  }
+
+  /**
+   * <!-- createAxioms -->
+   * 
+   * @see org.semanticweb.owl.util.InferredAxiomGenerator#createAxioms(org.semanticweb.owl.model.OWLOntologyManager,
+   *      org.semanticweb.owl.inference.OWLReasoner)
+   * @param manager The ontology manager
+   * @param reasoner A reasoner with the ontologies to infer from loaded
+   * @return Property assertion axioms for properties in the vocabulary
+   * @throws OWLReasonerException
+   */
+  public Set<OWLPropertyAssertionAxiom<?, ?>> createAxioms(OWLOntologyManager manager, OWLReasoner reasoner)
+      throws OWLReasonerException {
+    OWLDataFactory factory = manager.getOWLDataFactory();
+    Set<OWLObjectProperty> objectProperties = new HashSet<OWLObjectProperty>();
+    Set<OWLDataProperty> dataProperties = new HashSet<OWLDataProperty>();
+    for(OWLEntity entity: vocabulary) {
+      if(entity instanceof OWLObjectProperty) {
+        OWLObjectProperty property = (OWLObjectProperty)entity;
+        objectProperties.add(property);
+        for(Set<OWLObjectProperty> subProperties: reasoner.getDescendantProperties(property)) {
+          objectProperties.addAll(subProperties);
+        }
+      }
+      else if(entity instanceof OWLDataProperty) {
+        OWLDataProperty property = (OWLDataProperty)entity;
+        dataProperties.add(property);
+        for(Set<OWLDataProperty> subProperties: reasoner.getDescendantProperties(property)) {
+          dataProperties.addAll(subProperties);
+        }
+      }
+    }
+
+    Set<OWLPropertyAssertionAxiom<?, ?>> axioms = new HashSet<OWLPropertyAssertionAxiom<?, ?>>();
+    if(objectProperties.size() == 0 && dataProperties.size() == 0) return axioms;
+
+    Set<OWLIndividual> individuals = new HashSet<OWLIndividual>();
+    for(OWLOntology ontology: reasoner.getLoadedOntologies()) {
+      individuals.addAll(ontology.getReferencedIndividuals());
+    }
+
+    for(OWLIndividual individual: individuals) {
+      for(OWLObjectProperty property: objectProperties) {
+        for(OWLIndividual object: reasoner.getRelatedIndividuals(individual, property)) {
+          axioms.add(factory.getOWLObjectPropertyAssertionAxiom(individual, property, object));
+        }
+      }
+      for(OWLDataProperty property: dataProperties) {
+        for(OWLConstant value: reasoner.getRelatedValues(individual, property)) {
+          axioms.add(factory.getOWLDataPropertyAssertionAxiom(individual, property, value));
+        }
+      }
+    }
+    return axioms;
+  }
+
+  /**
+   * <!-- getLabel -->
+   * 
+   * @see org.semanticweb.owl.util.InferredAxiomGenerator#getLabel()
+   * @return A label for the generator
+   */
+  public String getLabel() {
+    return "Targeted property assertions";
+  }
+}
@@ -157,6 +157,46 @@ public interface Value<T> extends Iterable<T>, Comparable<T> {
    */
   public int compareToString(String value) throws IntegrationInconsistencyException;
 
+  /**
+   * <!-- getDouble -->
+   * 
+   * For <i>functional</i> data properties with a numeric range, return the
+   * value as a primitive. This avoids boxing the value where the
+   * implementation stores it as a primitive.
+   * 
+   * @return The value of the (functional) property
+   * @throws IntegrationInconsistencyException if the property is not
+   *           functional, does not have a numeric range, or has no value
+   */
+  public double getDouble() throws IntegrationInconsistencyException;
+
+  /**
+   * <!-- setDouble -->
+   * 
+   * Set the value of a <i>functional</i> data property with a numeric range
+   * from a primitive. For integer ranges, the value must be a whole number
+   * that the range can hold.
+   * 
+   * @param value The value to set it to
+   * @return The previous value, or <code>NaN</code> if there wasn't one
+   * @throws IntegrationInconsistencyException
+   */
+  public double setDouble(double value) throws IntegrationInconsistencyException;
+
+  /**
+   * <!-- addDouble -->
+   * 
+   * Add an amount to the value of a <i>functional</i> data property with a
+   * numeric range. (Not to be confused with {@link #add(Object)}, which adds
+   * a value to a non-functional property.)
+   * 
+   * @param amount The amount to add
+   * @return The new value
+   * @throws IntegrationInconsistencyException if the property has no value,
+   *           or as for {@link #setDouble(double)}
+   */
+  public double addDouble(double amount) throws IntegrationInconsistencyException;
+
   /**
    * <!-- getVar -->
    * 
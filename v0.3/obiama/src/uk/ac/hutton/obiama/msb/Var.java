@@ -78,6 +78,35 @@ public interface Var extends Comparator<Instance> {
    */
   public <T> Value<T> getNewValueFor(URI individual) throws IntegrationInconsistencyException;
 
+  /**
+   * <!-- getValuesFor -->
+   * 
+   * Get the values of a functional numeric data variable for all the members
+   * of a concept at once, as a primitive array. The value for each member is
+   * registered and locked as it would be by {@link #getValueFor(URI)}.
+   * 
+   * @param concept The concept
+   * @return A column of the values, one for each member
+   * @throws IntegrationInconsistencyException if the variable is not a
+   *           functional data variable with a numeric range
+   */
+  public Column getValuesFor(Concept concept) throws IntegrationInconsistencyException;
+
+  /**
+   * <!-- setValuesFor -->
+   * 
+   * Write back the values in a column that have changed, to the values
+   * registered when the column was obtained. The changes are made in the
+   * ontology together when the model state broker next updates, as for
+   * changes made to {@link Value}s.
+   * 
+   * @param concept The concept the column was obtained for
+   * @param column A column obtained from {@link #getValuesFor(Concept)} on
+   *          this variable
+   * @throws IntegrationInconsistencyException
+   */
+  public void setValuesFor(Concept concept, Column column) throws IntegrationInconsistencyException;
+
   /**
    * <!-- hasValueFor -->
    * 
@@ -23,13 +23,13 @@
  */
 package uk.ac.hutton.obiama.msb;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -37,6 +37,8 @@ import java.util.regex.Pattern;
 
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.namespace.QName;
 
 import org.semanticweb.owl.model.OWLConstant;
 import org.semanticweb.owl.model.OWLDataComplementOf;
@@ -621,6 +623,181 @@ public class XSDHelper {
 
   }
 
+  /**
+   * <!-- Parser -->
+   * 
+   * Converts a literal to an instance of the recommended class for an XSD type
+   * 
+   * @author Gary Polhill
+   */
+  private static abstract class Parser {
+    /**
+     * <!-- parse -->
+     * 
+     * @param value The literal
+     * @return The instance
+     * @throws IllegalArgumentException if the literal cannot be converted
+     */
+    abstract Object parse(String value);
+  }
+
+  /**
+   * Parsers for each XSD type that has a recommended class, so the class and
+   * means of converting to it are only worked out once
+   */
+  private static final Map<XSDVocabulary, Parser> parsers = new EnumMap<XSDVocabulary, Parser>(XSDVocabulary.class);
+  static {
+    for(XSDVocabulary type: XSDVocabulary.values()) {
+      Class<?> c;
+      try {
+        c = recommendedClassFor(type);
+      }
+      catch(IllegalArgumentException e) {
+        continue;
+      }
+      parsers.put(type, parserFor(c));
+    }
+  }
+
+  /**
+   * Factory for dates, times and durations, shared by all conversions to them
+   * (<code>null</code> until first needed)
+   */
+  private static DatatypeFactory datatypeFactory = null;
+
+  /**
+   * <!-- parserFor -->
+   * 
+   * @param c A class returned by {@link #recommendedClassFor(XSDVocabulary)}
+   * @return A parser converting literals to instances of the class
+   */
+  private static Parser parserFor(final Class<?> c) {
+    if(c == String.class) {
+      return new Parser() {
+        Object parse(String value) {
+          return value;
+        }
+      };
+    }
+    else if(c == URI.class) {
+      return new Parser() {
+        Object parse(String value) {
+          try {
+            return new URI(value);
+          }
+          catch(URISyntaxException e) {
+            throw new IllegalArgumentException(value, e);
+          }
+        }
+      };
+    }
+    else if(c == Boolean.class) {
+      return new Parser() {
+        Object parse(String value) {
+          return Boolean.valueOf(value);
+        }
+      };
+    }
+    else if(c == Byte.class) {
+      return new Parser() {
+        Object parse(String value) {
+          return Byte.valueOf(value);
+        }
+      };
+    }
+    else if(c == Short.class) {
+      return new Parser() {
+        Object parse(String value) {
+          return Short.valueOf(value);
+        }
+      };
+    }
+    else if(c == Integer.class) {
+      return new Parser() {
+        Object parse(String value) {
+          return Integer.valueOf(value);
+        }
+      };
+    }
+    else if(c == Long.class) {
+      return new Parser() {
+        Object parse(String value) {
+          return Long.valueOf(value);
+        }
+      };
+    }
+    else if(c == Float.class) {
+      return new Parser() {
+        Object parse(String value) {
+          return Float.valueOf(value);
+        }
+      };
+    }
+    else if(c == Double.class) {
+      return new Parser() {
+        Object parse(String value) {
+          return Double.valueOf(value);
+        }
+      };
+    }
+    else if(c == BigDecimal.class) {
+      return new Parser() {
+        Object parse(String value) {
+          return new BigDecimal(value);
+        }
+      };
+    }
+    else if(c == BigInteger.class) {
+      return new Parser() {
+        Object parse(String value) {
+          return new BigInteger(value);
+        }
+      };
+    }
+    else if(c == QName.class) {
+      return new Parser() {
+        Object parse(String value) {
+          return new QName(value);
+        }
+      };
+    }
+    else if(c == XMLGregorianCalendar.class) {
+      return new Parser() {
+        Object parse(String value) {
+          return getDatatypeFactory(value).newXMLGregorianCalendar(value);
+        }
+      };
+    }
+    else if(c == javax.xml.datatype.Duration.class) {
+      return new Parser() {
+        Object parse(String value) {
+          return getDatatypeFactory(value).newDuration(value);
+        }
+      };
+    }
+    // recommendedClassFor() must have returned a class not handled here
+    throw new Bug();
+  }
+
+  /**
+   * <!-- getDatatypeFactory -->
+   * 
+   * @param value The literal the factory is wanted for
+   * @return The shared factory for dates, times and durations
+   * @throws IllegalArgumentException if no factory is available
+   */
+  private static synchronized DatatypeFactory getDatatypeFactory(String value) {
+    if(datatypeFactory == null) {
+      try {
+        datatypeFactory = DatatypeFactory.newInstance();
+      }
+      catch(DatatypeConfigurationException e) {
+        throw new IllegalArgumentException(value, e);
+      }
+    }
+    return datatypeFactory;
+  }
+
   public static <T> T instantiate(final OWLDataType type, final String value) {
     return instantiate(type.getURI(), value);
   }
@@ -639,49 +816,79 @@ public class XSDHelper {
    *          instance
    * @param value an initial value for the instance
    * @return the instance
+   * @throws IllegalArgumentException if the type is not recognised, or the
+   *           value cannot be converted to it
    */
   @SuppressWarnings("unchecked")
   public static <T> T instantiate(final XSDVocabulary type, final String value) {
-    Class<T> c = recommendedClassFor(type);
-    // Handle classes returned from recommendedClassFor() without a String
-    // constructor
-    if(c == javax.xml.datatype.XMLGregorianCalendar.class || c == javax.xml.datatype.Duration.class) {
-      try {
-        DatatypeFactory factory = DatatypeFactory.newInstance();
-        return (T)(c == javax.xml.datatype.XMLGregorianCalendar.class ? factory.newXMLGregorianCalendar(value)
-                                                                     : factory.newDuration(value));
-      }
-      catch(DatatypeConfigurationException e) {
-        throw new IllegalArgumentException(value, e);
-      }
-    }
-    // Handle classes with a String constructor
-    try {
-      Constructor<T> cons = c.getConstructor(String.class);
-      return cons.newInstance(value);
-    }
-    // Exceptions throwing a Bug are because the bestClassFor() method must have
-    // returned an invalid class, unless otherwise stated
-    catch(SecurityException e) {
+    Parser parser = parsers.get(type);
+    if(parser == null) {
+      // Throws an IllegalArgumentException for the unrecognised type
+      recommendedClassFor(type);
       throw new Bug();
     }
-    catch(NoSuchMethodException e) {
-      // The class being created doesn't have a constructor with a String
-      // argument
-      throw new Bug();
+    try {
+      return (T)parser.parse(value);
     }
     catch(IllegalArgumentException e) {
       throw new IllegalArgumentException(value, e);
     }
-    catch(InstantiationException e) {
-      throw new Bug();
-    }
-    catch(IllegalAccessException e) {
-      throw new Bug();
-    }
-    catch(InvocationTargetException e) {
-      throw new Bug();
-    }
+  }
+
+  /**
+   * <!-- isImmutable -->
+   * 
+   * @param value An instance returned by
+   *          {@link #instantiate(XSDVocabulary, String)}
+   * @return <code>true</code> if the instance cannot be changed, and so can be
+   *         shared rather than instantiated again from the same literal
+   */
+  public static boolean isImmutable(final Object value) {
+    return !(value instanceof XMLGregorianCalendar);
+  }
+
+  /**
+   * <!-- holdsDouble -->
+   * 
+   * @param type A class returned by {@link #recommendedClassFor(XSDVocabulary)}
+   * @param value A primitive value
+   * @return <code>true</code> if an instance of the class can hold the value:
+   *         any value for floating point classes, any finite value for
+   *         decimals, and any whole number in range for integer classes
+   */
+  public static boolean holdsDouble(final Class<?> type, final double value) {
+    if(type == Double.class || type == Float.class) return true;
+    if(Double.isNaN(value) || Double.isInfinite(value)) return false;
+    if(type == BigDecimal.class) return true;
+    if(value != Math.rint(value)) return false;
+    if(type == BigInteger.class) return true;
+    // The upper bounds are compared as one more than the largest value, since
+    // Long.MAX_VALUE as a double is rounded up to 2^63
+    if(type == Long.class) return value >= Long.MIN_VALUE && value < -(double)Long.MIN_VALUE;
+    if(type == Integer.class) return value >= Integer.MIN_VALUE && value < -(double)Integer.MIN_VALUE;
+    if(type == Short.class) return value >= Short.MIN_VALUE && value < -(double)Short.MIN_VALUE;
+    if(type == Byte.class) return value >= Byte.MIN_VALUE && value < -(double)Byte.MIN_VALUE;
+    return false;
+  }
+
+  /**
+   * <!-- fromDouble -->
+   * 
+   * @param type A class returned by {@link #recommendedClassFor(XSDVocabulary)}
+   * @param value A primitive value
+   * @return An instance of the class holding the value
+   * @throws IllegalArgumentException if the class cannot hold the value
+   */
+  public static Object fromDouble(final Class<?> type, final double value) {
+    if(!holdsDouble(type, value)) throw new IllegalArgumentException(Double.toString(value));
+    if(type == Double.class) return Double.valueOf(value);
+    if(type == Float.class) return Float.valueOf((float)value);
+    if(type == BigDecimal.class) return BigDecimal.valueOf(value);
+    if(type == BigInteger.class) return BigDecimal.valueOf(value).toBigInteger();
+    if(type == Long.class) return Long.valueOf((long)value);
+    if(type == Integer.class) return Integer.valueOf((int)value);
+    if(type == Short.class) return Short.valueOf((short)value);
+    return Byte.valueOf((byte)value);
   }
 
   /**
@@ -23,20 +23,40 @@
  */
 package uk.ac.hutton.obiama.observer;
 
+import java.io.File;
 import java.util.HashSet;
 import java.util.Set;
 
 import uk.ac.hutton.obiama.action.AbstractProcess;
 import uk.ac.hutton.obiama.exception.IntegrationInconsistencyException;
+import uk.ac.hutton.obiama.msb.ObiamaSetUp;
 
 /**
  * <!-- AbstractObserver -->
  * 
+ * Observers that return a record of the data gathered each step from
+ * {@link #getRecord(long)} have the record saved and visualised on other
+ * threads by an {@link ObservationPipeline}, so that neither holds up the
+ * simulation. Otherwise, each visualiser is given the data and stepped
+ * straight after the data are gathered. If the --observation-dir option is
+ * given, each observer's records are saved to a file in that directory named
+ * after the observer. The model calls {@link #closeAll()} when it stops.
+ * 
  * @author Gary Polhill
  */
 public abstract class AbstractObserver extends AbstractProcess implements Observer {
   Set<Visualiser> visualisers;
 
+  /**
+   * Pipeline saving and visualising records (created when first needed)
+   */
+  ObservationPipeline pipeline;
+
+  /**
+   * Number of steps taken so far
+   */
+  long nSteps;
+
   /**
    * <!-- initialiseLocal -->
    * 
@@ -46,7 +66,15 @@ public abstract class AbstractObserver extends AbstractProcess implements Observ
   @Override
   public void initialiseLocal() throws IntegrationInconsistencyException {
     visualisers = new HashSet<Visualiser>();
+    pipeline = null;
+    nSteps = 0L;
     initialise();
+    String dir = ObiamaSetUp.getObservationDir();
+    if(dir != null) {
+      new File(dir).mkdirs();
+      String name = getURI().getFragment() == null ? Integer.toHexString(getURI().hashCode()) : getURI().getFragment();
+      saveData(dir + File.separator + name + ".obs");
+    }
   }
 
   /**
@@ -65,18 +93,90 @@ public abstract class AbstractObserver extends AbstractProcess implements Observ
   @Override
   public void addVisualiser(Visualiser visualiser) {
     visualisers.add(visualiser);
+    if(pipeline != null && visualiser instanceof RecordVisualiser) {
+      pipeline.addVisualiser((RecordVisualiser)visualiser);
+    }
   }
   
   @Override
   public void step() throws IntegrationInconsistencyException {
     gatherData();
+    ObservationRecord record = getRecord(nSteps++);
+    if(record != null) {
+      getPipeline().publish(record);
+    }
     for(Visualiser visualiser: visualisers) {
-      getDataFor(visualiser);
-      visualiser.step();
+      if(record == null || !(visualiser instanceof RecordVisualiser)) {
+        getDataFor(visualiser);
+        visualiser.step();
+      }
     }
   }
+
+  /**
+   * <!-- saveData -->
+   * 
+   * Save the records gathered so far, and as the simulation proceeds, to the
+   * destination file. This does not wait for the data to be written.
+   * 
+   * @see uk.ac.hutton.obiama.observer.Observer#saveData(java.lang.String)
+   * @param destination
+   */
+  @Override
+  public void saveData(String destination) {
+    getPipeline().saveTo(destination);
+  }
+
+  /**
+   * <!-- closeData -->
+   * 
+   * Wait for all the records gathered to be saved, then close the destination
+   * and stop the threads saving and visualising them.
+   */
+  public void closeData() {
+    if(pipeline != null) pipeline.close();
+  }
+
+  /**
+   * <!-- closeAll -->
+   * 
+   * Wait for the records gathered by all the observers to be saved, then close
+   * their destinations. This is called when the model stops.
+   */
+  public static void closeAll() {
+    ObservationPipeline.closeAll();
+  }
+
+  /**
+   * <!-- getPipeline -->
+   * 
+   * @return The pipeline saving and visualising records
+   */
+  private ObservationPipeline getPipeline() {
+    if(pipeline == null) {
+      pipeline = new ObservationPipeline(getURI(), ObservationPipeline.DEFAULT_CAPACITY);
+      for(Visualiser visualiser: visualisers) {
+        if(visualiser instanceof RecordVisualiser) pipeline.addVisualiser((RecordVisualiser)visualiser);
+      }
+    }
+    return pipeline;
+  }
   
   protected abstract void gatherData() throws IntegrationInconsistencyException;
+
+  /**
+   * <!-- getRecord -->
+   * 
+   * Subclasses able to do so should return a record of the data gathered in
+   * the step just taken.
+   * 
+   * @param step The number of the step (0 first)
+   * @return A record of the data, or <code>null</code> if the visualisers are
+   *         to be given the data with {@link #getDataFor(Visualiser)} instead
+   */
+  protected ObservationRecord getRecord(long step) {
+    return null;
+  }
   
   protected abstract void getDataFor(Visualiser visualiser);
 }
@@ -26,25 +26,34 @@
 package uk.ac.hutton.obiama.observer;
 
 import java.net.URI;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Collections;
 import java.util.Set;
 
 import uk.ac.hutton.obiama.exception.IntegrationInconsistencyException;
 import uk.ac.hutton.obiama.msb.Concept;
-import uk.ac.hutton.obiama.msb.Instance;
 
 /**
  * <!-- ClassCounter -->
  *
+ * Count the members of a class each step. The count is kept up to date from
+ * the changes in membership of the class, rather than by getting all the
+ * instances of the class. The count is not kept by the observer from one step to the
+ * next: each step's is passed on as an {@link ObservationRecord} to be saved
+ * and visualised.
+ *
  * @author Gary Polhill
  */
-public class ClassCounter extends AbstractObserver {  
+public class ClassCounter extends IncrementalObserver {  
   public static final URI COUNTED_THING = URI.create(Observer.ONTOLOGY_URI + "#CountedThing");
-  List<Integer> data;
+  private static final String[] COLUMNS = new String[] { "count" };
   
   Concept countedConcept;
 
+  /**
+   * Number of members the class currently has
+   */
+  int count;
+
   /**
    * <!-- initialise -->
    *
@@ -54,7 +63,42 @@ public class ClassCounter extends AbstractObserver {
   @Override
   public void initialise() throws IntegrationInconsistencyException {
     countedConcept = getConcept(COUNTED_THING);
-    data = new LinkedList<Integer>();
+    count = 0;
+  }
+
+  /**
+   * <!-- getVocabulary -->
+   *
+   * @see uk.ac.hutton.obiama.observer.IncrementalObserver#getVocabulary()
+   * @return The counted class
+   */
+  @Override
+  protected Set<URI> getVocabulary() {
+    return Collections.singleton(countedConcept.getURI());
+  }
+
+  /**
+   * <!-- memberAdded -->
+   *
+   * @see uk.ac.hutton.obiama.observer.IncrementalObserver#memberAdded(java.net.URI, java.net.URI)
+   * @param concept
+   * @param individual
+   */
+  @Override
+  public void memberAdded(URI concept, URI individual) {
+    if(concept.equals(countedConcept.getURI())) count++;
+  }
+
+  /**
+   * <!-- memberRemoved -->
+   *
+   * @see uk.ac.hutton.obiama.observer.IncrementalObserver#memberRemoved(java.net.URI, java.net.URI)
+   * @param concept
+   * @param individual
+   */
+  @Override
+  public void memberRemoved(URI concept, URI individual) {
+    if(concept.equals(countedConcept.getURI())) count--;
   }
 
   /**
@@ -65,21 +109,20 @@ public class ClassCounter extends AbstractObserver {
    */
   @Override
   public void gatherData() throws IntegrationInconsistencyException {
-    Set<Instance> instances = countedConcept.getInstances();
-    data.add(instances == null ? null : instances.size());
+    // Nothing to do: the count is kept up to date as changes are reported
   }
 
 
   /**
-   * <!-- saveData -->
+   * <!-- getRecord -->
    *
-   * @see uk.ac.hutton.obiama.observer.Observer#saveData(java.lang.String)
-   * @param destination
+   * @see uk.ac.hutton.obiama.observer.AbstractObserver#getRecord(long)
+   * @param step
+   * @return The count
    */
   @Override
-  public void saveData(String destination) {
-    // TODO Auto-generated method stub
-    
+  protected ObservationRecord getRecord(long step) {
+    return new ObservationRecord(getURI(), step, COLUMNS, new double[] { count });
   }
 
   /**
@@ -90,7 +133,8 @@ public class ClassCounter extends AbstractObserver {
    */
   @Override
   protected void getDataFor(Visualiser visualiser) {
-    // TODO Auto-generated method stub
-    
+    if(visualiser instanceof RecordVisualiser) {
+      ((RecordVisualiser)visualiser).show(getRecord(nSteps > 0L ? nSteps - 1L : 0L));
+    }
   }
 }
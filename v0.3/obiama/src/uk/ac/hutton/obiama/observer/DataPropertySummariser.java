@@ -0,0 +1,261 @@
+/*
+ * uk.ac.hutton.obiama.observer: DataPropertySummariser.java
+ * 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.observer;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.semanticweb.owl.vocab.XSDVocabulary;
+
+import uk.ac.hutton.obiama.action.ActionParameter;
+import uk.ac.hutton.obiama.exception.IntegrationInconsistencyException;
+import uk.ac.hutton.obiama.msb.Concept;
+import uk.ac.hutton.obiama.msb.Var;
+
+/**
+ * <!-- DataPropertySummariser -->
+ * 
+ * Summarise the values of a numeric data property over the members of a class
+ * each step: the number of values, their sum, and a histogram. The summary is
+ * kept up to date from the changes to class membership and property values,
+ * so the work done each step depends on how many individuals changed rather
+ * than how many there are. Values outside the range of the histogram are
+ * counted in its first or last bin. The totals are not kept by the observer
+ * from one step to the next: each step's are passed on as an
+ * {@link ObservationRecord} to be saved and visualised.
+ * 
+ * @author Gary Polhill
+ */
+public class DataPropertySummariser extends IncrementalObserver {
+  public static final URI SUMMARISED_THING = URI.create(Observer.ONTOLOGY_URI + "#SummarisedThing");
+  public static final URI SUMMARISED_PROPERTY = URI.create(Observer.ONTOLOGY_URI + "#summarisedProperty");
+
+  ActionParameter min;
+  ActionParameter max;
+  ActionParameter bins;
+
+  Concept summarisedConcept;
+
+  Var summarisedProperty;
+
+  /**
+   * Current members of the class
+   */
+  Set<URI> members;
+
+  /**
+   * Current values of the property for each individual that has any (whether
+   * or not they are members of the class)
+   */
+  Map<URI, List<Double>> values;
+
+  /**
+   * Number of values of members of the class
+   */
+  long n;
+
+  /**
+   * Sum of values of members of the class
+   */
+  double sum;
+
+  /**
+   * Number of values of members in each bin of the histogram
+   */
+  long histogram[];
+
+  double binMin;
+
+  double binWidth;
+
+  /**
+   * Names of the columns of the records
+   */
+  String columns[];
+
+  public DataPropertySummariser() {
+    min = new ActionParameter("min", double.class, "0.0", "lower bound of the first bin of the histogram");
+    max = new ActionParameter("max", double.class, "1.0", "upper bound of the last bin of the histogram");
+    bins = new ActionParameter("bins", int.class, "10", "number of bins in the histogram");
+  }
+
+  /**
+   * <!-- initialise -->
+   * 
+   * @see uk.ac.hutton.obiama.observer.AbstractObserver#initialise()
+   * @throws IntegrationInconsistencyException
+   */
+  @Override
+  protected void initialise() throws IntegrationInconsistencyException {
+    summarisedProperty = getVar(SUMMARISED_PROPERTY, XSDVocabulary.DOUBLE);
+    summarisedConcept = getConcept(SUMMARISED_THING);
+    members = new HashSet<URI>();
+    values = new HashMap<URI, List<Double>>();
+    n = 0L;
+    sum = 0.0;
+    histogram = new long[Math.max(1, bins.getIntParameter())];
+    binMin = min.getDoubleParameter();
+    binWidth = (max.getDoubleParameter() - binMin) / histogram.length;
+    columns = new String[histogram.length + 2];
+    columns[0] = "n";
+    columns[1] = "sum";
+    for(int i = 0; i < histogram.length; i++) {
+      columns[i + 2] = "bin" + (binMin + i * binWidth);
+    }
+  }
+
+  /**
+   * <!-- getVocabulary -->
+   * 
+   * @see uk.ac.hutton.obiama.observer.IncrementalObserver#getVocabulary()
+   * @return The summarised class and property
+   */
+  @Override
+  protected Set<URI> getVocabulary() {
+    Set<URI> vocabulary = new HashSet<URI>();
+    vocabulary.add(summarisedConcept.getURI());
+    vocabulary.add(summarisedProperty.getURI());
+    return vocabulary;
+  }
+
+  /**
+   * <!-- bin -->
+   * 
+   * @param value A value
+   * @return The bin of the histogram the value belongs in
+   */
+  private int bin(double value) {
+    int bin = binWidth > 0.0 ? (int)Math.floor((value - binMin) / binWidth) : 0;
+    return bin < 0 ? 0 : (bin >= histogram.length ? histogram.length - 1 : bin);
+  }
+
+  /**
+   * <!-- include -->
+   * 
+   * @param value A value to add to (sign 1) or remove from (sign -1) the
+   *          summary
+   * @param sign 1 or -1
+   */
+  private void include(double value, int sign) {
+    n += sign;
+    sum += sign * value;
+    histogram[bin(value)] += sign;
+  }
+
+  @Override
+  public void memberAdded(URI concept, URI individual) {
+    if(!concept.equals(summarisedConcept.getURI()) || !members.add(individual)) return;
+    List<Double> individualValues = values.get(individual);
+    if(individualValues != null) {
+      for(double value: individualValues) {
+        include(value, 1);
+      }
+    }
+  }
+
+  @Override
+  public void memberRemoved(URI concept, URI individual) {
+    if(!concept.equals(summarisedConcept.getURI()) || !members.remove(individual)) return;
+    List<Double> individualValues = values.get(individual);
+    if(individualValues != null) {
+      for(double value: individualValues) {
+        include(value, -1);
+      }
+    }
+  }
+
+  @Override
+  public void dataValueAdded(URI individual, URI property, Object value) {
+    if(!property.equals(summarisedProperty.getURI()) || !(value instanceof Number)) return;
+    double x = ((Number)value).doubleValue();
+    List<Double> individualValues = values.get(individual);
+    if(individualValues == null) {
+      individualValues = new LinkedList<Double>();
+      values.put(individual, individualValues);
+    }
+    individualValues.add(x);
+    if(members.contains(individual)) include(x, 1);
+  }
+
+  @Override
+  public void dataValueRemoved(URI individual, URI property, Object value) {
+    if(!property.equals(summarisedProperty.getURI()) || !(value instanceof Number)) return;
+    double x = ((Number)value).doubleValue();
+    List<Double> individualValues = values.get(individual);
+    if(individualValues == null || !individualValues.remove(x)) return;
+    if(individualValues.size() == 0) values.remove(individual);
+    if(members.contains(individual)) include(x, -1);
+  }
+
+  /**
+   * <!-- gatherData -->
+   * 
+   * Nothing to do: the summary is kept up to date as changes are reported
+   * 
+   * @see uk.ac.hutton.obiama.observer.AbstractObserver#gatherData()
+   * @throws IntegrationInconsistencyException
+   */
+  @Override
+  protected void gatherData() throws IntegrationInconsistencyException {
+    // Nothing to do
+  }
+
+  /**
+   * <!-- getRecord -->
+   * 
+   * @see uk.ac.hutton.obiama.observer.AbstractObserver#getRecord(long)
+   * @param step
+   * @return The number of values, their sum and the histogram
+   */
+  @Override
+  protected ObservationRecord getRecord(long step) {
+    double record[] = new double[columns.length];
+    record[0] = n;
+    record[1] = sum;
+    for(int i = 0; i < histogram.length; i++) {
+      record[i + 2] = histogram[i];
+    }
+    return new ObservationRecord(getURI(), step, columns, record);
+  }
+
+  /**
+   * <!-- getDataFor -->
+   * 
+   * Show the visualiser a record of the current summary
+   * 
+   * @see uk.ac.hutton.obiama.observer.AbstractObserver#getDataFor(uk.ac.hutton.obiama.observer.Visualiser)
+   * @param visualiser
+   */
+  @Override
+  protected void getDataFor(Visualiser visualiser) {
+    if(visualiser instanceof RecordVisualiser) {
+      ((RecordVisualiser)visualiser).show(getRecord(nSteps > 0L ? nSteps - 1L : 0L));
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * uk.ac.hutton.obiama.observer: IncrementalObserver.java
+ * 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.observer;
+
+import java.net.URI;
+import java.util.Set;
+
+import uk.ac.hutton.obiama.exception.IntegrationInconsistencyException;
+import uk.ac.hutton.obiama.msb.StateChangeListener;
+
+/**
+ * <!-- IncrementalObserver -->
+ * 
+ * An observer that keeps its data up to date from the changes the
+ * {@link uk.ac.hutton.obiama.msb.ModelStateBroker} makes at each update,
+ * rather than querying the state afresh each time it steps. The work done per
+ * step is then proportional to the number of changes rather than the size of
+ * the population. Subclasses override the methods for the changes they are
+ * interested in (by default, changes are ignored), and
+ * {@link #getVocabulary()} to name the classes and properties whose changes
+ * they need, which are the only ones the model state broker compares for
+ * them.
+ * 
+ * @author Gary Polhill
+ */
+public abstract class IncrementalObserver extends AbstractObserver implements StateChangeListener {
+
+  /**
+   * <!-- initialiseLocal -->
+   * 
+   * Initialise the observer and then start listening to the changes (which
+   * tells the observer about the current state)
+   * 
+   * @see uk.ac.hutton.obiama.observer.AbstractObserver#initialiseLocal()
+   * @throws IntegrationInconsistencyException
+   */
+  @Override
+  public void initialiseLocal() throws IntegrationInconsistencyException {
+    super.initialiseLocal();
+    msb.addStateChangeListener(this, getVocabulary());
+  }
+
+  /**
+   * <!-- getVocabulary -->
+   * 
+   * Called once the observer has been initialised
+   * 
+   * @return URIs of the classes and properties the observer is to be told
+   *         about changes to
+   */
+  protected abstract Set<URI> getVocabulary();
+
+  public void memberAdded(URI concept, URI individual) {
+    // Ignored by default
+  }
+
+  public void memberRemoved(URI concept, URI individual) {
+    // Ignored by default
+  }
+
+  public void dataValueAdded(URI individual, URI property, Object value) {
+    // Ignored by default
+  }
+
+  public void dataValueRemoved(URI individual, URI property, Object value) {
+    // Ignored by default
+  }
+
+  public void objectValueAdded(URI subject, URI property, URI object) {
+    // Ignored by default
+  }
+
+  public void objectValueRemoved(URI subject, URI property, URI object) {
+    // Ignored by default
+  }
+
+  public void changesApplied() {
+    // Ignored by default
+  }
+}
@@ -0,0 +1,616 @@
+/*
+ * uk.ac.hutton.obiama.observer: ObservationPipeline.java
+ * 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.observer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+import uk.ac.hutton.obiama.exception.ErrorHandler;
+
+/**
+ * <!-- ObservationPipeline -->
+ * 
+ * <p>
+ * Takes the records an observer publishes each step and saves them on a
+ * separate thread, so that writing the data does not hold up the simulation.
+ * Records from all the pipelines are put in one bounded queue, which a single
+ * writer thread drains in batches. Until a destination has been given with
+ * {@link #saveTo(String)}, the writer keeps the most recent records in memory,
+ * up to the capacity the pipeline was created with; thereafter, they are
+ * written to the destination as they arrive. If the queue is full, the
+ * simulation waits for the writer, so no data are lost once a destination has
+ * been given. Each record is also offered to the visualisers, which run on
+ * threads of their own and only ever see the latest record (see
+ * {@link VisualiserFeed}). Pipelines not closed when the simulation stops are
+ * closed when the JVM shuts down.
+ * </p>
+ * 
+ * <p>
+ * The file format is binary: a magic number and version, followed by a header
+ * block giving the observer and the names of the columns, then a row block for
+ * each record, containing the step number and the values as doubles. A new
+ * header block is written if the columns change. Use
+ * {@link #exportCSV(String, String)} to convert the file to CSV.
+ * </p>
+ * 
+ * @author Gary Polhill
+ */
+public class ObservationPipeline {
+  /**
+   * Default number of records to keep while there is no destination
+   */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  /**
+   * Number of items the queue shared by all the pipelines can hold
+   */
+  public static final int QUEUE_CAPACITY = 1024;
+
+  /**
+   * Magic number at the start of the file
+   */
+  static final int MAGIC = 0x4F425356;
+
+  /**
+   * Version of the file format
+   */
+  static final int VERSION = 1;
+
+  /**
+   * Tag for a header block
+   */
+  static final byte HEADER = 1;
+
+  /**
+   * Tag for a row block
+   */
+  static final byte ROW = 2;
+
+  /**
+   * Item put in the queue to close a pipeline's destination
+   */
+  private static final Object CLOSE = new Object();
+
+  /**
+   * Item put in the queue to change the destination
+   */
+  private static final class Destination {
+    final String file;
+
+    Destination(String file) {
+      this.file = file;
+    }
+  }
+
+  /**
+   * <!-- Item -->
+   * 
+   * Something in the queue for a pipeline: a record, a destination, a latch or
+   * {@link ObservationPipeline#CLOSE}
+   */
+  private static final class Item {
+    final ObservationPipeline pipeline;
+    final Object content;
+
+    Item(ObservationPipeline pipeline, Object content) {
+      this.pipeline = pipeline;
+      this.content = content;
+    }
+  }
+
+  /**
+   * <!-- Writer -->
+   * 
+   * Drains the queue, for as long as the JVM runs. An error handling one
+   * pipeline's item stops that pipeline saving data, but not the others.
+   */
+  private static final class Writer implements Runnable {
+    public void run() {
+      List<Item> batch = new ArrayList<Item>();
+      Set<ObservationPipeline> written = new HashSet<ObservationPipeline>();
+      while(true) {
+        try {
+          batch.add(queue.take());
+        }
+        catch(InterruptedException e) {
+          continue;
+        }
+        queue.drainTo(batch);
+        for(Item item: batch) {
+          try {
+            item.pipeline.handle(item.content);
+          }
+          catch(RuntimeException e) {
+            item.pipeline.failed(e);
+            if(item.content instanceof CountDownLatch) ((CountDownLatch)item.content).countDown();
+          }
+          written.add(item.pipeline);
+        }
+        batch.clear();
+        for(ObservationPipeline pipeline: written) {
+          try {
+            pipeline.flushDestination();
+          }
+          catch(RuntimeException e) {
+            pipeline.failed(e);
+          }
+        }
+        written.clear();
+      }
+    }
+  }
+
+  /**
+   * Queue of items for all the pipelines
+   */
+  private static final BlockingQueue<Item> queue = new ArrayBlockingQueue<Item>(QUEUE_CAPACITY);
+
+  /**
+   * The writer thread (started when the first pipeline is created)
+   */
+  private static Thread writer = null;
+
+  /**
+   * Pipelines not yet closed
+   */
+  private static final Set<ObservationPipeline> open = new LinkedHashSet<ObservationPipeline>();
+
+  /**
+   * The observer
+   */
+  private final URI observer;
+
+  /**
+   * Feeds to the visualisers
+   */
+  private final List<VisualiserFeed> feeds;
+
+  /**
+   * Whether {@link #close()} has been called
+   */
+  private volatile boolean closed;
+
+  /**
+   * Number of records to keep while there is no destination
+   */
+  private final int capacity;
+
+  /**
+   * Most recent records received before there was a destination (used by the
+   * writer only)
+   */
+  private final LinkedList<ObservationRecord> unsaved;
+
+  /**
+   * Number of records discarded because there was no destination (used by the
+   * writer only)
+   */
+  private long discarded;
+
+  /**
+   * The destination being written to (used by the writer only)
+   */
+  private String destination;
+
+  /**
+   * Stream to the destination (used by the writer only)
+   */
+  private DataOutputStream out;
+
+  /**
+   * Record whose columns were last written in a header (used by the writer
+   * only)
+   */
+  private ObservationRecord header;
+
+  /**
+   * Constructor. Starts the writer thread if it is not already running.
+   * 
+   * @param observer The observer publishing records
+   * @param capacity The number of records to keep while there is no
+   *          destination
+   */
+  ObservationPipeline(URI observer, int capacity) {
+    this.observer = observer;
+    this.capacity = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+    feeds = new LinkedList<VisualiserFeed>();
+    closed = false;
+    unsaved = new LinkedList<ObservationRecord>();
+    discarded = 0L;
+    destination = null;
+    out = null;
+    header = null;
+    synchronized(ObservationPipeline.class) {
+      open.add(this);
+      if(writer == null) {
+        writer = new Thread(new Writer(), "Observation writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+          public void run() {
+            closeAll();
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * <!-- closeAll -->
+   * 
+   * Close all the pipelines not yet closed
+   */
+  static void closeAll() {
+    List<ObservationPipeline> pipelines;
+    synchronized(ObservationPipeline.class) {
+      pipelines = new ArrayList<ObservationPipeline>(open);
+    }
+    for(ObservationPipeline pipeline: pipelines) {
+      pipeline.close();
+    }
+  }
+
+  /**
+   * <!-- addVisualiser -->
+   * 
+   * @param visualiser A visualiser to offer records to
+   */
+  void addVisualiser(RecordVisualiser visualiser) {
+    for(VisualiserFeed feed: feeds) {
+      if(feed.getVisualiser() == visualiser) return;
+    }
+    feeds.add(new VisualiserFeed(visualiser, "Visualiser for " + observer));
+  }
+
+  /**
+   * <!-- publish -->
+   * 
+   * Queue a record to be saved, and offer it to the visualisers
+   * 
+   * @param record The record
+   */
+  void publish(ObservationRecord record) {
+    put(record);
+    for(VisualiserFeed feed: feeds) {
+      feed.offer(record);
+    }
+  }
+
+  /**
+   * <!-- saveTo -->
+   * 
+   * Save the records published so far (or as many as have been kept), and
+   * those published hereafter, to a file. If the records were being saved to
+   * another file, that file is closed and only later records are saved to the
+   * new one.
+   * 
+   * @param destination The file to save to
+   */
+  void saveTo(String destination) {
+    put(new Destination(destination));
+  }
+
+  /**
+   * <!-- flush -->
+   * 
+   * Wait until all the records published so far have been written
+   */
+  void flush() {
+    CountDownLatch done = new CountDownLatch(1);
+    put(done);
+    boolean interrupted = false;
+    while(true) {
+      try {
+        done.await();
+        break;
+      }
+      catch(InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if(interrupted) Thread.currentThread().interrupt();
+  }
+
+  /**
+   * <!-- close -->
+   * 
+   * Write all outstanding records, close the destination and stop the
+   * visualiser threads. The writer thread carries on for other pipelines.
+   */
+  void close() {
+    if(closed) return;
+    closed = true;
+    for(VisualiserFeed feed: feeds) {
+      feed.close();
+    }
+    put(CLOSE);
+    flush();
+    synchronized(ObservationPipeline.class) {
+      open.remove(this);
+    }
+  }
+
+  /**
+   * <!-- getDroppedFrames -->
+   * 
+   * @return The number of records the visualisers have not been shown because
+   *         they were busy
+   */
+  long getDroppedFrames() {
+    long dropped = 0L;
+    for(VisualiserFeed feed: feeds) {
+      dropped += feed.getDropped();
+    }
+    return dropped;
+  }
+
+  /**
+   * <!-- put -->
+   * 
+   * Put an item for this pipeline in the queue, waiting for space if need be
+   * 
+   * @param content The item
+   */
+  private void put(Object content) {
+    Item item = new Item(this, content);
+    boolean interrupted = false;
+    while(true) {
+      try {
+        queue.put(item);
+        break;
+      }
+      catch(InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if(interrupted) Thread.currentThread().interrupt();
+  }
+
+  /**
+   * <!-- handle -->
+   * 
+   * Deal with an item taken from the queue for this pipeline (called by the
+   * writer only)
+   * 
+   * @param item The item
+   */
+  private void handle(Object item) {
+    if(item instanceof ObservationRecord) {
+      if(out != null) {
+        write((ObservationRecord)item);
+      }
+      else if(destination == null) {
+        unsaved.add((ObservationRecord)item);
+        if(unsaved.size() > capacity) {
+          unsaved.removeFirst();
+          discarded++;
+        }
+      }
+    }
+    else if(item instanceof Destination) {
+      closeDestination();
+      open(((Destination)item).file);
+    }
+    else if(item instanceof CountDownLatch) {
+      flushDestination();
+      ((CountDownLatch)item).countDown();
+    }
+    else if(item == CLOSE) {
+      closeDestination();
+      if(destination == null && unsaved.size() > 0) {
+        ErrorHandler.warn("No destination was given to save data from observer " + observer,
+            "closing observation pipeline", "the data will not be saved");
+      }
+      unsaved.clear();
+    }
+  }
+
+  /**
+   * <!-- open -->
+   * 
+   * Start writing to a destination, beginning with any records not yet saved
+   * 
+   * @param file The destination
+   */
+  private void open(String file) {
+    destination = file;
+    header = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+    }
+    catch(IOException e) {
+      failed(e);
+      return;
+    }
+    if(discarded > 0L) {
+      ErrorHandler.warn(discarded + " record(s) from observer " + observer
+        + " were discarded because they were published before a destination was given", "saving data to " + file,
+          "only the last " + capacity + " record(s) published before then will be saved");
+      discarded = 0L;
+    }
+    for(ObservationRecord record: unsaved) {
+      write(record);
+    }
+    unsaved.clear();
+  }
+
+  /**
+   * <!-- write -->
+   * 
+   * @param record A record to write to the destination
+   */
+  private void write(ObservationRecord record) {
+    if(out == null) return;
+    try {
+      if(header == null || !header.sameColumns(record)) {
+        out.writeByte(HEADER);
+        out.writeUTF(observer.toString());
+        out.writeInt(record.size());
+        for(int i = 0; i < record.size(); i++) {
+          out.writeUTF(record.getColumn(i));
+        }
+        header = record;
+      }
+      out.writeByte(ROW);
+      out.writeLong(record.getStep());
+      for(int i = 0; i < record.size(); i++) {
+        out.writeDouble(record.getValue(i));
+      }
+    }
+    catch(IOException e) {
+      failed(e);
+    }
+  }
+
+  /**
+   * <!-- flushDestination -->
+   */
+  private void flushDestination() {
+    if(out == null) return;
+    try {
+      out.flush();
+    }
+    catch(IOException e) {
+      failed(e);
+    }
+  }
+
+  /**
+   * <!-- closeDestination -->
+   */
+  private void closeDestination() {
+    if(out == null) return;
+    DataOutputStream stream = out;
+    out = null;
+    try {
+      stream.close();
+    }
+    catch(IOException e) {
+      failed(e);
+    }
+  }
+
+  /**
+   * <!-- failed -->
+   * 
+   * Give up writing to the destination after an error, closing it if it is
+   * still open. Later records are discarded.
+   * 
+   * @param e The error
+   */
+  private void failed(Exception e) {
+    ErrorHandler.warn(e, "saving data from observer " + observer + " to " + destination,
+        "the rest of the data will not be saved");
+    if(out != null) {
+      DataOutputStream stream = out;
+      out = null;
+      try {
+        stream.close();
+      }
+      catch(IOException e2) {
+        // The error has already been reported
+      }
+    }
+    unsaved.clear();
+  }
+
+  /**
+   * <!-- exportCSV -->
+   * 
+   * Convert a file saved by an observation pipeline to CSV. Each header block
+   * in the file starts a new table, with a row of column headings beginning
+   * with "step".
+   * 
+   * @param binary The file saved by the pipeline
+   * @param csv The CSV file to write
+   * @throws IOException
+   */
+  public static void exportCSV(String binary, String csv) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(binary)));
+    PrintWriter fp = new PrintWriter(new FileWriter(csv));
+    try {
+      if(in.readInt() != MAGIC) throw new IOException("File " + binary + " is not an observation file");
+      int version = in.readInt();
+      if(version != VERSION) {
+        throw new IOException("File " + binary + " has observation file format version " + version
+          + " (expecting " + VERSION + ")");
+      }
+      int nColumns = -1;
+      while(true) {
+        byte tag;
+        try {
+          tag = in.readByte();
+        }
+        catch(EOFException e) {
+          break;
+        }
+        if(tag == HEADER) {
+          in.readUTF();
+          nColumns = in.readInt();
+          fp.print("step");
+          for(int i = 0; i < nColumns; i++) {
+            fp.print(",");
+            fp.print(in.readUTF());
+          }
+          fp.println();
+        }
+        else if(tag == ROW && nColumns >= 0) {
+          fp.print(in.readLong());
+          for(int i = 0; i < nColumns; i++) {
+            fp.print(",");
+            fp.print(in.readDouble());
+          }
+          fp.println();
+        }
+        else {
+          throw new IOException("File " + binary + " is corrupt");
+        }
+      }
+    }
+    finally {
+      in.close();
+      fp.close();
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * uk.ac.hutton.obiama.observer: ObservationRecord.java
+ * 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.observer;
+
+import java.net.URI;
+
+/**
+ * <!-- ObservationRecord -->
+ * 
+ * The data an observer gathered at one step, as a row of numbers in named
+ * columns. Records cannot be changed once made, so they can be passed to other
+ * threads to be saved or visualised while the simulation carries on.
+ * 
+ * @author Gary Polhill
+ */
+public final class ObservationRecord {
+  /**
+   * The observer the data are from
+   */
+  private final URI observer;
+
+  /**
+   * The number of the step the data were gathered at (0 first)
+   */
+  private final long step;
+
+  /**
+   * Names of the columns
+   */
+  private final String[] columns;
+
+  /**
+   * The data
+   */
+  private final double[] values;
+
+  /**
+   * Constructor
+   * 
+   * @param observer The observer the data are from
+   * @param step The number of the step the data were gathered at
+   * @param columns Names of the columns (which are copied)
+   * @param values The data (which are copied)
+   */
+  public ObservationRecord(URI observer, long step, String[] columns, double[] values) {
+    if(columns.length != values.length) {
+      throw new IllegalArgumentException("Observation record has " + columns.length + " columns but "
+        + values.length + " values");
+    }
+    this.observer = observer;
+    this.step = step;
+    this.columns = columns.clone();
+    this.values = values.clone();
+  }
+
+  /**
+   * <!-- getObserver -->
+   * 
+   * @return The observer the data are from
+   */
+  public URI getObserver() {
+    return observer;
+  }
+
+  /**
+   * <!-- getStep -->
+   * 
+   * @return The number of the step the data were gathered at
+   */
+  public long getStep() {
+    return step;
+  }
+
+  /**
+   * <!-- size -->
+   * 
+   * @return The number of columns
+   */
+  public int size() {
+    return values.length;
+  }
+
+  /**
+   * <!-- getColumn -->
+   * 
+   * @param i A column number (0 first)
+   * @return The name of the column
+   */
+  public String getColumn(int i) {
+    return columns[i];
+  }
+
+  /**
+   * <!-- getValue -->
+   * 
+   * @param i A column number (0 first)
+   * @return The value in the column
+   */
+  public double getValue(int i) {
+    return values[i];
+  }
+
+  /**
+   * <!-- sameColumns -->
+   * 
+   * @param record Another record
+   * @return <code>true</code> if the other record has the same columns
+   */
+  boolean sameColumns(ObservationRecord record) {
+    if(record.columns == columns) return true;
+    if(record.columns.length != columns.length) return false;
+    for(int i = 0; i < columns.length; i++) {
+      if(!record.columns[i].equals(columns[i])) return false;
+    }
+    return true;
+  }
+}
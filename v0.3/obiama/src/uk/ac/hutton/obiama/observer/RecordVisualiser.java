@@ -0,0 +1,47 @@
+/*
+ * uk.ac.hutton.obiama.observer: RecordVisualiser.java
+ * 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.observer;
+
+/**
+ * <!-- RecordVisualiser -->
+ * 
+ * A visualiser that is given the records an observer publishes each step,
+ * rather than being asked for its data with {@link Visualiser#step()}.
+ * Observers that do not publish records treat it as any other visualiser.
+ * 
+ * @author Gary Polhill
+ */
+public interface RecordVisualiser extends Visualiser {
+  /**
+   * <!-- show -->
+   * 
+   * Show a record of the data an observer gathered. This is called on a
+   * thread other than the one running the simulation, with the latest record
+   * available; records published while the visualiser is busy are dropped
+   * except the most recent.
+   * 
+   * @param record The record
+   */
+  public void show(ObservationRecord record);
+}
@@ -0,0 +1,164 @@
+/*
+ * uk.ac.hutton.obiama.observer: VisualiserFeed.java
+ * 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.observer;
+
+import uk.ac.hutton.obiama.exception.ErrorHandler;
+
+/**
+ * <!-- VisualiserFeed -->
+ * 
+ * Passes records to a visualiser on a thread of its own. Only the latest
+ * record not yet shown is kept: if the visualiser is still busy with one
+ * record when the next two arrive, the first of these is dropped. Offering a
+ * record never waits, so a slow visualiser cannot hold up the simulation.
+ * 
+ * @author Gary Polhill
+ */
+class VisualiserFeed implements Runnable {
+  /**
+   * The visualiser
+   */
+  private final RecordVisualiser visualiser;
+
+  /**
+   * The next record to show, if any
+   */
+  private ObservationRecord next;
+
+  /**
+   * Whether the feed has been closed
+   */
+  private boolean stopped;
+
+  /**
+   * Number of records shown
+   */
+  private long shown;
+
+  /**
+   * Number of records dropped
+   */
+  private long dropped;
+
+  /**
+   * Constructor. Starts the thread.
+   * 
+   * @param visualiser The visualiser
+   * @param name Name for the thread
+   */
+  VisualiserFeed(RecordVisualiser visualiser, String name) {
+    this.visualiser = visualiser;
+    next = null;
+    stopped = false;
+    shown = 0L;
+    dropped = 0L;
+    Thread thread = new Thread(this, name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * <!-- getVisualiser -->
+   * 
+   * @return The visualiser
+   */
+  RecordVisualiser getVisualiser() {
+    return visualiser;
+  }
+
+  /**
+   * <!-- offer -->
+   * 
+   * @param record The latest record, replacing any not yet shown
+   */
+  synchronized void offer(ObservationRecord record) {
+    if(next != null) dropped++;
+    next = record;
+    notifyAll();
+  }
+
+  /**
+   * <!-- run -->
+   * 
+   * Show records as they arrive until closed
+   * 
+   * @see java.lang.Runnable#run()
+   */
+  public void run() {
+    while(true) {
+      ObservationRecord record;
+      synchronized(this) {
+        while(next == null && !stopped) {
+          try {
+            wait();
+          }
+          catch(InterruptedException e) {
+            return;
+          }
+        }
+        if(stopped) return;
+        record = next;
+        next = null;
+      }
+      try {
+        visualiser.show(record);
+      }
+      catch(RuntimeException e) {
+        ErrorHandler.warn(e, "visualising data from observer " + record.getObserver() + " at step "
+          + record.getStep(), "the record will not be shown");
+      }
+      synchronized(this) {
+        shown++;
+      }
+    }
+  }
+
+  /**
+   * <!-- getShown -->
+   * 
+   * @return The number of records shown
+   */
+  synchronized long getShown() {
+    return shown;
+  }
+
+  /**
+   * <!-- getDropped -->
+   * 
+   * @return The number of records dropped because the visualiser was busy
+   */
+  synchronized long getDropped() {
+    return dropped;
+  }
+
+  /**
+   * <!-- close -->
+   * 
+   * Stop the thread once any record being shown has been shown
+   */
+  synchronized void close() {
+    stopped = true;
+    notifyAll();
+  }
+}
@@ -23,12 +23,14 @@
  */
 package uk.ac.hutton.obiama.random;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.io.Serializable;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
+import java.util.RandomAccess;
 
 import cern.jet.random.AbstractDistribution;
 import cern.jet.random.Beta;
@@ -55,7 +57,20 @@ import cern.jet.random.engine.RandomEngine;
  * <!-- AbstractRNG -->
  * 
  * An abstract RNG for other classes to subclass from, implementing the
- * distribution sampling methods.
+ * distribution sampling methods. Distributions sampled from are cached,
+ * keyed by their parameters, and looking one up allocates nothing. Callers
+ * repeatedly sampling from a distribution with the same parameters should use
+ * a handle (e.g. from {@link #normal(double, double)}), which keeps its own
+ * reference to the distribution and so does not need to look it up.
+ * Distributions given to handles are kept for as long as the RNG is, so that
+ * handles and sampling methods with the same parameters share their state.
+ * Distributions only used by the sampling methods (e.g.
+ * {@link #sampleNormal(double, double)}) are kept in a cache of at most
+ * {@link #MAX_DISTRIBUTIONS}, the least recently used being discarded when it
+ * is full. A discarded distribution is recreated if it is sampled from again,
+ * losing any state it had (such as the second of a pair of normal deviates),
+ * which changes the samples that follow in the same (reproducible) way on
+ * every run with the same seed and calls.
  * 
  * @author Gary Polhill
  */
@@ -65,22 +80,193 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    */
   private static final long serialVersionUID = -3125305359852305392L;
 
+  /**
+   * <!-- Kind -->
+   * 
+   * The distributions that can be sampled from
+   */
+  private static enum Kind {
+    BETA, BINOMIAL, BREIT_WIGNER, BREIT_WIGNER_MEAN_SQUARE, CHI_SQUARED, EXPONENTIAL, EXPONENTIAL_POWER, GAMMA,
+    HYPER_GEOMETRIC, HYPERBOLIC, LOGARITHMIC, NEGATIVE_BINOMIAL, NORMAL, POISSON, STUDENT_T, DOUBLE_UNIFORM,
+    INT_UNIFORM, LONG_UNIFORM, VON_MISES, ZETA;
+  }
+
+  /**
+   * <!-- Key -->
+   * 
+   * Key for a cached distribution: the kind of distribution and up to three
+   * parameters, compared by their bits. One key is kept as a probe and reset
+   * for each lookup, so looking up a cached distribution allocates nothing;
+   * keys stored in the cache are not changed.
+   */
+  private static final class Key implements Serializable {
+    private static final long serialVersionUID = 2893564079219528714L;
+
+    private Kind kind;
+    private long a;
+    private long b;
+    private long c;
+
+    Key set(Kind kind, double a, double b, double c) {
+      this.kind = kind;
+      this.a = Double.doubleToLongBits(a);
+      this.b = Double.doubleToLongBits(b);
+      this.c = Double.doubleToLongBits(c);
+      return this;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if(!(obj instanceof Key)) return false;
+      Key key = (Key)obj;
+      return kind == key.kind && a == key.a && b == key.b && c == key.c;
+    }
+
+    @Override
+    public int hashCode() {
+      long bits = a ^ (31 * b) ^ (961 * c);
+      return kind.ordinal() ^ (int)(bits ^ (bits >>> 32));
+    }
+  }
+
+  /**
+   * <!-- DistributionCache -->
+   * 
+   * Map of distributions only used by sampling methods, in order of use, which
+   * discards the least recently used when it has more than
+   * {@link AbstractRNG#MAX_DISTRIBUTIONS}
+   */
+  private static final class DistributionCache extends LinkedHashMap<Key, AbstractDistribution> {
+    private static final long serialVersionUID = -6402846227129580873L;
+
+    DistributionCache() {
+      super(16, 0.75f, true);
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, AbstractDistribution> eldest) {
+      return size() > MAX_DISTRIBUTIONS;
+    }
+  }
+
+  /**
+   * <!-- DoubleDistributionSampler -->
+   * 
+   * Handle on a floating point distribution
+   */
+  private static class DoubleDistributionSampler implements DoubleSampler {
+    private final AbstractDistribution dist;
+
+    DoubleDistributionSampler(AbstractDistribution dist) {
+      this.dist = dist;
+    }
+
+    public double sample() {
+      return dist.nextDouble();
+    }
+
+    public void fill(double[] values) {
+      fill(values, 0, values.length);
+    }
+
+    public void fill(double[] values, int from, int to) {
+      for(int i = from; i < to; i++) {
+        values[i] = dist.nextDouble();
+      }
+    }
+  }
+
+  /**
+   * <!-- IntDistributionSampler -->
+   * 
+   * Handle on an integer distribution
+   */
+  private static class IntDistributionSampler implements IntSampler {
+    private final AbstractDistribution dist;
+
+    IntDistributionSampler(AbstractDistribution dist) {
+      this.dist = dist;
+    }
+
+    public int sample() {
+      return dist.nextInt();
+    }
+
+    public void fill(int[] values) {
+      fill(values, 0, values.length);
+    }
+
+    public void fill(int[] values, int from, int to) {
+      for(int i = from; i < to; i++) {
+        values[i] = dist.nextInt();
+      }
+    }
+  }
+
+  /**
+   * <!-- IntUniformSampler -->
+   * 
+   * Handle on an integer uniform distribution, sampled in the same way as
+   * {@link AbstractRNG#sampleUniform(int, int)}
+   */
+  private static class IntUniformSampler implements IntSampler {
+    private final Uniform dist;
+    private final int min;
+    private final int max;
+
+    IntUniformSampler(Uniform dist, int min, int max) {
+      this.dist = dist;
+      this.min = min;
+      this.max = max;
+    }
+
+    public int sample() {
+      return dist.nextIntFromTo(min, max);
+    }
+
+    public void fill(int[] values) {
+      fill(values, 0, values.length);
+    }
+
+    public void fill(int[] values, int from, int to) {
+      for(int i = from; i < to; i++) {
+        values[i] = dist.nextIntFromTo(min, max);
+      }
+    }
+  }
+
   /**
    * Private copy of the seed
    */
   private long seed;
 
   /**
-   * Map of distributions already sampled from (see
-   * {@link #makeKey(String,double[])})
+   * Maximum number of distributions only used by sampling methods to keep
    */
-  private Map<String, AbstractDistribution> distributions;
+  public static final int MAX_DISTRIBUTIONS = 1024;
+
+  /**
+   * Distributions only used by sampling methods
+   */
+  private DistributionCache distributions;
+
+  /**
+   * Distributions given to handles, which are never discarded
+   */
+  private Map<Key, AbstractDistribution> handled;
+
+  /**
+   * Key used to look up {@link #distributions} and {@link #handled}
+   */
+  private Key probe;
 
   /**
    * Constructor for generators without a seed
    */
   public AbstractRNG() {
-    distributions = new HashMap<String, AbstractDistribution>();
+    distributions = new DistributionCache();
+    handled = new HashMap<Key, AbstractDistribution>();
+    probe = new Key();
   }
 
   /**
@@ -143,6 +329,18 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    */
   protected abstract boolean setRNGSeed(long seed);
 
+  /**
+   * <!-- flush -->
+   * 
+   * By default, generators do not record anything, so there is nothing to
+   * flush.
+   * 
+   * @see uk.ac.hutton.obiama.random.RNG#flush()
+   */
+  public void flush() {
+    // Nothing to do
+  }
+
   /**
    * <!-- withProbability -->
    * 
@@ -176,26 +374,6 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
     return arr;
   }
 
-  /**
-   * <!-- makeKey -->
-   * 
-   * The statistical distributions sampled from are stored in
-   * {@link #distributions}. This method computes a key to use to allow
-   * distributions to be retrieved
-   * 
-   * @param dist An identifier for the distribution
-   * @param params Parameters the distribution takes
-   * @return A key to use in the {@link distributions} map
-   */
-  private String makeKey(String dist, double... params) {
-    StringBuffer buff = new StringBuffer(dist);
-    for(int i = 0; i < params.length; i++) {
-      buff.append(":");
-      buff.append(Double.toHexString(params[i]));
-    }
-    return buff.toString();
-  }
-
   /**
    * <!-- sampleBeta -->
    * 
@@ -205,11 +383,9 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from a beta distribution
    */
   public double sampleBeta(double alpha, double beta) {
-    String key = makeKey("Beta", alpha, beta);
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new Beta(alpha, beta, this));
-    }
-    return distributions.get(key).nextDouble();
+    AbstractDistribution dist = distribution(Kind.BETA, alpha, beta, 0.0);
+    if(dist == null) dist = cache(Kind.BETA, alpha, beta, 0.0, new Beta(alpha, beta, this));
+    return dist.nextDouble();
   }
 
   /**
@@ -221,11 +397,9 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from a binomial distribution
    */
   public int sampleBinomial(int n, double p) {
-    String key = makeKey("Binomial", (double)n, p);
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new Binomial(n, p, this));
-    }
-    return distributions.get(key).nextInt();
+    AbstractDistribution dist = distribution(Kind.BINOMIAL, n, p, 0.0);
+    if(dist == null) dist = cache(Kind.BINOMIAL, n, p, 0.0, new Binomial(n, p, this));
+    return dist.nextInt();
   }
 
   /**
@@ -239,11 +413,9 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from a Breit Wigner distribution
    */
   public double sampleBreitWigner(double mean, double gamma, double cut) {
-    String key = makeKey("BreitWigner", mean, gamma, cut);
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new BreitWigner(mean, gamma, cut, this));
-    }
-    return distributions.get(key).nextDouble();
+    AbstractDistribution dist = distribution(Kind.BREIT_WIGNER, mean, gamma, cut);
+    if(dist == null) dist = cache(Kind.BREIT_WIGNER, mean, gamma, cut, new BreitWigner(mean, gamma, cut, this));
+    return dist.nextDouble();
   }
 
   /**
@@ -257,11 +429,11 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from a Breit Wigner mean square distribution
    */
   public double sampleBreitWignerMeanSquare(double mean, double gamma, double cut) {
-    String key = makeKey("BreitWignerMeanSquare", mean, gamma, cut);
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new BreitWignerMeanSquare(mean, gamma, cut, this));
+    AbstractDistribution dist = distribution(Kind.BREIT_WIGNER_MEAN_SQUARE, mean, gamma, cut);
+    if(dist == null) {
+      dist = cache(Kind.BREIT_WIGNER_MEAN_SQUARE, mean, gamma, cut, new BreitWignerMeanSquare(mean, gamma, cut, this));
     }
-    return distributions.get(key).nextDouble();
+    return dist.nextDouble();
   }
 
   /**
@@ -272,11 +444,9 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from a Chi squared distribution
    */
   public double sampleChiSquared(double freedom) {
-    String key = makeKey("ChiSquared", freedom);
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new ChiSquare(freedom, this));
-    }
-    return distributions.get(key).nextDouble();
+    AbstractDistribution dist = distribution(Kind.CHI_SQUARED, freedom, 0.0, 0.0);
+    if(dist == null) dist = cache(Kind.CHI_SQUARED, freedom, 0.0, 0.0, new ChiSquare(freedom, this));
+    return dist.nextDouble();
   }
 
   /**
@@ -287,11 +457,9 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from an exponential disribution
    */
   public double sampleExponential(double lambda) {
-    String key = makeKey("Exponential", lambda);
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new Exponential(lambda, this));
-    }
-    return distributions.get(key).nextDouble();
+    AbstractDistribution dist = distribution(Kind.EXPONENTIAL, lambda, 0.0, 0.0);
+    if(dist == null) dist = cache(Kind.EXPONENTIAL, lambda, 0.0, 0.0, new Exponential(lambda, this));
+    return dist.nextDouble();
   }
 
   /**
@@ -302,11 +470,9 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from an exponential power distribution
    */
   public double sampleExponentialPower(double tau) {
-    String key = makeKey("ExponentialPower", tau);
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new ExponentialPower(tau, this));
-    }
-    return distributions.get(key).nextDouble();
+    AbstractDistribution dist = distribution(Kind.EXPONENTIAL_POWER, tau, 0.0, 0.0);
+    if(dist == null) dist = cache(Kind.EXPONENTIAL_POWER, tau, 0.0, 0.0, new ExponentialPower(tau, this));
+    return dist.nextDouble();
   }
 
   /**
@@ -318,11 +484,9 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from a gamma distribution
    */
   public double sampleGamma(double alpha, double lambda) {
-    String key = makeKey("Gamma", alpha, lambda);
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new Gamma(alpha, lambda, this));
-    }
-    return distributions.get(key).nextDouble();
+    AbstractDistribution dist = distribution(Kind.GAMMA, alpha, lambda, 0.0);
+    if(dist == null) dist = cache(Kind.GAMMA, alpha, lambda, 0.0, new Gamma(alpha, lambda, this));
+    return dist.nextDouble();
   }
 
   /**
@@ -336,11 +500,9 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from a hypergeometric distribution
    */
   public int sampleHyperGeometric(int N, int s, int n) {
-    String key = makeKey("HyperGeometric", N, s, n);
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new HyperGeometric(N, s, n, this));
-    }
-    return distributions.get(key).nextInt();
+    AbstractDistribution dist = distribution(Kind.HYPER_GEOMETRIC, N, s, n);
+    if(dist == null) dist = cache(Kind.HYPER_GEOMETRIC, N, s, n, new HyperGeometric(N, s, n, this));
+    return dist.nextInt();
   }
 
   /**
@@ -352,11 +514,9 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from a hyperbolic distribution
    */
   public double sampleHyperbolic(double alpha, double beta) {
-    String key = makeKey("Hyperbolic", alpha, beta);
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new Hyperbolic(alpha, beta, this));
-    }
-    return distributions.get(key).nextDouble();
+    AbstractDistribution dist = distribution(Kind.HYPERBOLIC, alpha, beta, 0.0);
+    if(dist == null) dist = cache(Kind.HYPERBOLIC, alpha, beta, 0.0, new Hyperbolic(alpha, beta, this));
+    return dist.nextDouble();
   }
 
   /**
@@ -367,11 +527,9 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from a logarithmic distribution
    */
   public double sampleLogarithmic(double p) {
-    String key = makeKey("Logarithmic", p);
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new Logarithmic(p, this));
-    }
-    return distributions.get(key).nextDouble();
+    AbstractDistribution dist = distribution(Kind.LOGARITHMIC, p, 0.0, 0.0);
+    if(dist == null) dist = cache(Kind.LOGARITHMIC, p, 0.0, 0.0, new Logarithmic(p, this));
+    return dist.nextDouble();
   }
 
   /**
@@ -384,11 +542,9 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from a negative binomial distribution
    */
   public int sampleNegativeBinomial(int n, double p) {
-    String key = makeKey("NegativeBinomial", n, p);
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new NegativeBinomial(n, p, this));
-    }
-    return distributions.get(key).nextInt();
+    AbstractDistribution dist = distribution(Kind.NEGATIVE_BINOMIAL, n, p, 0.0);
+    if(dist == null) dist = cache(Kind.NEGATIVE_BINOMIAL, n, p, 0.0, new NegativeBinomial(n, p, this));
+    return dist.nextInt();
   }
 
   /**
@@ -400,11 +556,9 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from a normal distribution
    */
   public double sampleNormal(double mean, double var) {
-    String key = makeKey("Normal", mean, var);
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new Normal(mean, var, this));
-    }
-    return distributions.get(key).nextDouble();
+    AbstractDistribution dist = distribution(Kind.NORMAL, mean, var, 0.0);
+    if(dist == null) dist = cache(Kind.NORMAL, mean, var, 0.0, new Normal(mean, var, this));
+    return dist.nextDouble();
   }
 
   /**
@@ -415,11 +569,9 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from a Poisson distribution
    */
   public int samplePoisson(double mean) {
-    String key = makeKey("Poisson", mean);
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new Poisson(mean, this));
-    }
-    return distributions.get(key).nextInt();
+    AbstractDistribution dist = distribution(Kind.POISSON, mean, 0.0, 0.0);
+    if(dist == null) dist = cache(Kind.POISSON, mean, 0.0, 0.0, new Poisson(mean, this));
+    return dist.nextInt();
   }
 
   /**
@@ -430,11 +582,9 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from a T distribution
    */
   public double sampleStudentT(double freedom) {
-    String key = makeKey("StudentT", freedom);
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new StudentT(freedom, this));
-    }
-    return distributions.get(key).nextDouble();
+    AbstractDistribution dist = distribution(Kind.STUDENT_T, freedom, 0.0, 0.0);
+    if(dist == null) dist = cache(Kind.STUDENT_T, freedom, 0.0, 0.0, new StudentT(freedom, this));
+    return dist.nextDouble();
   }
 
   /**
@@ -446,11 +596,9 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from a uniform (double) distribution
    */
   public double sampleUniform(double min, double max) {
-    String key = makeKey("DoubleUniform", min, max);
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new Uniform(min, max, this));
-    }
-    return distributions.get(key).nextDouble();
+    AbstractDistribution dist = distribution(Kind.DOUBLE_UNIFORM, min, max, 0.0);
+    if(dist == null) dist = cache(Kind.DOUBLE_UNIFORM, min, max, 0.0, new Uniform(min, max, this));
+    return dist.nextDouble();
   }
 
   /**
@@ -462,11 +610,9 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from a uniform (int) distribution
    */
   public int sampleUniform(int min, int max) {
-    String key = makeKey("IntUniform");
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new Uniform(this));
-    }
-    return ((Uniform)distributions.get(key)).nextIntFromTo(min, max);
+    AbstractDistribution dist = distribution(Kind.INT_UNIFORM, 0.0, 0.0, 0.0);
+    if(dist == null) dist = cache(Kind.INT_UNIFORM, 0.0, 0.0, 0.0, new Uniform(this));
+    return ((Uniform)dist).nextIntFromTo(min, max);
   }
 
   /**
@@ -478,11 +624,9 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from a uniform (long) distribution
    */
   public long sampleUniform(long min, long max) {
-    String key = makeKey("LongUniform");
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new Uniform(this));
-    }
-    return ((Uniform)distributions.get(key)).nextLongFromTo(min, max);
+    AbstractDistribution dist = distribution(Kind.LONG_UNIFORM, 0.0, 0.0, 0.0);
+    if(dist == null) dist = cache(Kind.LONG_UNIFORM, 0.0, 0.0, 0.0, new Uniform(this));
+    return ((Uniform)dist).nextLongFromTo(min, max);
   }
 
   /**
@@ -493,11 +637,9 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from a uniform von Mises distribution
    */
   public double sampleVonMises(double freedom) {
-    String key = makeKey("VonMises", freedom);
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new VonMises(freedom, this));
-    }
-    return distributions.get(key).nextDouble();
+    AbstractDistribution dist = distribution(Kind.VON_MISES, freedom, 0.0, 0.0);
+    if(dist == null) dist = cache(Kind.VON_MISES, freedom, 0.0, 0.0, new VonMises(freedom, this));
+    return dist.nextDouble();
   }
 
   /**
@@ -509,43 +651,284 @@ abstract class AbstractRNG extends RandomEngine implements RNG {
    * @return A sample from a zeta distribution
    */
   public int sampleZeta(double ro, double pk) {
-    String key = makeKey("Zeta", ro, pk);
-    if(!distributions.containsKey(key)) {
-      distributions.put(key, new Zeta(ro, pk, this));
+    AbstractDistribution dist = distribution(Kind.ZETA, ro, pk, 0.0);
+    if(dist == null) dist = cache(Kind.ZETA, ro, pk, 0.0, new Zeta(ro, pk, this));
+    return dist.nextInt();
+  }
+
+  /**
+   * <!-- fill -->
+   * 
+   * @see uk.ac.hutton.obiama.random.RNG#fill(double[])
+   * @param values
+   */
+  public void fill(double[] values) {
+    for(int i = 0; i < values.length; i++) {
+      values[i] = nextDouble();
     }
-    return distributions.get(key).nextInt();
+  }
+
+  /**
+   * <!-- distribution -->
+   * 
+   * @param kind The kind of distribution
+   * @param a First parameter (0.0 if unused)
+   * @param b Second parameter (0.0 if unused)
+   * @param c Third parameter (0.0 if unused)
+   * @return The cached distribution with those parameters, or
+   *         <code>null</code>
+   */
+  private AbstractDistribution distribution(Kind kind, double a, double b, double c) {
+    AbstractDistribution dist = handled.get(probe.set(kind, a, b, c));
+    return dist == null ? distributions.get(probe) : dist;
+  }
+
+  /**
+   * <!-- cache -->
+   * 
+   * @param kind The kind of distribution
+   * @param a First parameter (0.0 if unused)
+   * @param b Second parameter (0.0 if unused)
+   * @param c Third parameter (0.0 if unused)
+   * @param dist The distribution
+   * @return The distribution, now cached with the parameters
+   */
+  private AbstractDistribution cache(Kind kind, double a, double b, double c, AbstractDistribution dist) {
+    distributions.put(new Key().set(kind, a, b, c), dist);
+    return dist;
+  }
+
+  /**
+   * <!-- pinned -->
+   * 
+   * Get a distribution for a handle, moving it out of the cache of
+   * distributions used by sampling methods if it is there, so that it is
+   * never discarded
+   * 
+   * @param kind The kind of distribution
+   * @param a First parameter (0.0 if unused)
+   * @param b Second parameter (0.0 if unused)
+   * @param c Third parameter (0.0 if unused)
+   * @return The distribution with those parameters, or <code>null</code> if
+   *         there is none
+   */
+  private AbstractDistribution pinned(Kind kind, double a, double b, double c) {
+    AbstractDistribution dist = handled.get(probe.set(kind, a, b, c));
+    if(dist == null) {
+      dist = distributions.remove(probe);
+      if(dist != null) handled.put(new Key().set(kind, a, b, c), dist);
+    }
+    return dist;
+  }
+
+  /**
+   * <!-- pin -->
+   * 
+   * @param kind The kind of distribution
+   * @param a First parameter (0.0 if unused)
+   * @param b Second parameter (0.0 if unused)
+   * @param c Third parameter (0.0 if unused)
+   * @param dist A new distribution for a handle
+   * @return The distribution, now kept with the parameters
+   */
+  private AbstractDistribution pin(Kind kind, double a, double b, double c, AbstractDistribution dist) {
+    handled.put(new Key().set(kind, a, b, c), dist);
+    return dist;
+  }
+
+  /**
+   * <!-- beta -->
+   * 
+   * @see uk.ac.hutton.obiama.random.RNG#beta(double, double)
+   * @param alpha
+   * @param beta
+   * @return A handle on a beta distribution
+   */
+  public DoubleSampler beta(double alpha, double beta) {
+    AbstractDistribution dist = pinned(Kind.BETA, alpha, beta, 0.0);
+    if(dist == null) dist = pin(Kind.BETA, alpha, beta, 0.0, new Beta(alpha, beta, this));
+    return new DoubleDistributionSampler(dist);
+  }
+
+  /**
+   * <!-- chiSquared -->
+   * 
+   * @see uk.ac.hutton.obiama.random.RNG#chiSquared(double)
+   * @param freedom
+   * @return A handle on a Chi squared distribution
+   */
+  public DoubleSampler chiSquared(double freedom) {
+    AbstractDistribution dist = pinned(Kind.CHI_SQUARED, freedom, 0.0, 0.0);
+    if(dist == null) dist = pin(Kind.CHI_SQUARED, freedom, 0.0, 0.0, new ChiSquare(freedom, this));
+    return new DoubleDistributionSampler(dist);
+  }
+
+  /**
+   * <!-- exponential -->
+   * 
+   * @see uk.ac.hutton.obiama.random.RNG#exponential(double)
+   * @param lambda
+   * @return A handle on an exponential distribution
+   */
+  public DoubleSampler exponential(double lambda) {
+    AbstractDistribution dist = pinned(Kind.EXPONENTIAL, lambda, 0.0, 0.0);
+    if(dist == null) dist = pin(Kind.EXPONENTIAL, lambda, 0.0, 0.0, new Exponential(lambda, this));
+    return new DoubleDistributionSampler(dist);
+  }
+
+  /**
+   * <!-- gamma -->
+   * 
+   * @see uk.ac.hutton.obiama.random.RNG#gamma(double, double)
+   * @param alpha
+   * @param lambda
+   * @return A handle on a gamma distribution
+   */
+  public DoubleSampler gamma(double alpha, double lambda) {
+    AbstractDistribution dist = pinned(Kind.GAMMA, alpha, lambda, 0.0);
+    if(dist == null) dist = pin(Kind.GAMMA, alpha, lambda, 0.0, new Gamma(alpha, lambda, this));
+    return new DoubleDistributionSampler(dist);
+  }
+
+  /**
+   * <!-- normal -->
+   * 
+   * @see uk.ac.hutton.obiama.random.RNG#normal(double, double)
+   * @param mean
+   * @param sd
+   * @return A handle on a normal distribution
+   */
+  public DoubleSampler normal(double mean, double sd) {
+    AbstractDistribution dist = pinned(Kind.NORMAL, mean, sd, 0.0);
+    if(dist == null) dist = pin(Kind.NORMAL, mean, sd, 0.0, new Normal(mean, sd, this));
+    return new DoubleDistributionSampler(dist);
+  }
+
+  /**
+   * <!-- studentT -->
+   * 
+   * @see uk.ac.hutton.obiama.random.RNG#studentT(double)
+   * @param freedom
+   * @return A handle on a T distribution
+   */
+  public DoubleSampler studentT(double freedom) {
+    AbstractDistribution dist = pinned(Kind.STUDENT_T, freedom, 0.0, 0.0);
+    if(dist == null) dist = pin(Kind.STUDENT_T, freedom, 0.0, 0.0, new StudentT(freedom, this));
+    return new DoubleDistributionSampler(dist);
+  }
+
+  /**
+   * <!-- uniform -->
+   * 
+   * @see uk.ac.hutton.obiama.random.RNG#uniform(double, double)
+   * @param min
+   * @param max
+   * @return A handle on a (floating point) uniform distribution
+   */
+  public DoubleSampler uniform(double min, double max) {
+    AbstractDistribution dist = pinned(Kind.DOUBLE_UNIFORM, min, max, 0.0);
+    if(dist == null) dist = pin(Kind.DOUBLE_UNIFORM, min, max, 0.0, new Uniform(min, max, this));
+    return new DoubleDistributionSampler(dist);
+  }
+
+  /**
+   * <!-- binomial -->
+   * 
+   * @see uk.ac.hutton.obiama.random.RNG#binomial(int, double)
+   * @param n
+   * @param p
+   * @return A handle on a binomial distribution
+   */
+  public IntSampler binomial(int n, double p) {
+    AbstractDistribution dist = pinned(Kind.BINOMIAL, n, p, 0.0);
+    if(dist == null) dist = pin(Kind.BINOMIAL, n, p, 0.0, new Binomial(n, p, this));
+    return new IntDistributionSampler(dist);
+  }
+
+  /**
+   * <!-- poisson -->
+   * 
+   * @see uk.ac.hutton.obiama.random.RNG#poisson(double)
+   * @param mean
+   * @return A handle on a Poisson distribution
+   */
+  public IntSampler poisson(double mean) {
+    AbstractDistribution dist = pinned(Kind.POISSON, mean, 0.0, 0.0);
+    if(dist == null) dist = pin(Kind.POISSON, mean, 0.0, 0.0, new Poisson(mean, this));
+    return new IntDistributionSampler(dist);
+  }
+
+  /**
+   * <!-- uniform -->
+   * 
+   * @see uk.ac.hutton.obiama.random.RNG#uniform(int, int)
+   * @param min
+   * @param max
+   * @return A handle on an (int) uniform distribution
+   */
+  public IntSampler uniform(int min, int max) {
+    AbstractDistribution dist = pinned(Kind.INT_UNIFORM, 0.0, 0.0, 0.0);
+    if(dist == null) dist = pin(Kind.INT_UNIFORM, 0.0, 0.0, 0.0, new Uniform(this));
+    return new IntUniformSampler((Uniform)dist, min, max);
+  }
+
+  /**
+   * <!-- nextIndex -->
+   * 
+   * @param from The lowest index
+   * @param to The index after the highest
+   * @return An index drawn uniformly from <code>from</code> (inclusive) to
+   *         <code>to</code> (exclusive)
+   */
+  int nextIndex(int from, int to) {
+    return from + (int)((to - from) * nextDouble());
   }
 
   /**
    * <!-- shuffle -->
    * 
-   * Implement a shuffle algorithm. This is achieved by allocating a random
-   * number to each element in the list, then sorting in order of the random
-   * number, which allows the possibility that the list contains duplicates.
+   * Shuffle a list in place using the Fisher-Yates algorithm: each position
+   * in turn from the start of the list is swapped with a position drawn at
+   * random from the positions not yet filled. Lists without random access are
+   * shuffled in an array and then copied back.
    * 
    * @see uk.ac.hutton.obiama.random.RNG#shuffle(java.util.List)
    * @param list
    */
+  @SuppressWarnings("unchecked")
   public <T> void shuffle(List<T> list) {
-    ArrayList<Integer> arr = new ArrayList<Integer>();
-    final double[] rnd = new double[list.size()];
-    Map<Integer, T> randomMap = new HashMap<Integer, T>();
-
-    for(int i = 0; list.size() > 0; i++) {
-      arr.add(i);
-      rnd[i] = nextDouble();
-      randomMap.put(i, list.remove(0));
+    int n = list.size();
+    if(list instanceof RandomAccess) {
+      for(int i = 0; i < n - 1; i++) {
+        int j = nextIndex(i, n);
+        if(j != i) list.set(i, list.set(j, list.get(i)));
+      }
     }
-
-    Collections.sort(arr, new Comparator<Integer>() {
-      public int compare(Integer arg0, Integer arg1) {
-        return Double.compare(rnd[arg0], rnd[arg1]);
+    else {
+      Object[] arr = list.toArray();
+      for(int i = 0; i < n - 1; i++) {
+        int j = nextIndex(i, n);
+        Object tmp = arr[i];
+        arr[i] = arr[j];
+        arr[j] = tmp;
+      }
+      ListIterator<T> it = list.listIterator();
+      for(int i = 0; i < n; i++) {
+        it.next();
+        it.set((T)arr[i]);
       }
-    });
-
-    for(int i = 0; i < arr.size(); i++) {
-      list.add(randomMap.get(arr.get(i)));
     }
   }
 
+  /**
+   * <!-- permutation -->
+   * 
+   * @see uk.ac.hutton.obiama.random.RNG#permutation(java.util.List)
+   * @param list
+   * @return An iterator over the list in a random order
+   */
+  public <T> Iterator<T> permutation(List<T> list) {
+    return new RandomPermutation<T>(list, this);
+  }
+
 }
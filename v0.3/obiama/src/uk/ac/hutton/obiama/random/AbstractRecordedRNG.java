@@ -23,11 +23,11 @@
  */
 package uk.ac.hutton.obiama.random;
 
-import java.io.BufferedOutputStream;
-import java.io.DataOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import uk.ac.hutton.obiama.exception.ErrorHandler;
 
@@ -35,7 +35,11 @@ import uk.ac.hutton.obiama.exception.ErrorHandler;
  * <!-- AbstractRecordedRNG -->
  * 
  * Superclass for classes generating random numbers that might need to be
- * recorded for run duplication purposes (i.e. because they have no seed)
+ * recorded for run duplication purposes (i.e. because they have no seed).
+ * Recorded integers are written as four bytes, most significant first, which
+ * is the format {@link FileRNG} reads. They are collected in a large buffer
+ * that is written to the file when it is full and whenever {@link #flush()} is
+ * called, which the model does at the end of each time step.
  * 
  * @author Gary Polhill
  */
@@ -49,13 +53,28 @@ public abstract class AbstractRecordedRNG extends AbstractRNG {
   /**
    * Stream to write the data to
    */
-  private DataOutputStream fp;
+  private FileOutputStream fp;
+
+  /**
+   * Channel of the stream
+   */
+  private FileChannel channel;
+
+  /**
+   * Integers generated but not yet written to the file
+   */
+  private ByteBuffer buffer;
 
   /**
    * Name of file to write the data to
    */
   private String file;
 
+  /**
+   * Default number of integers to collect before writing them to the file
+   */
+  public static int DEFAULT_BUFFER_INTS = 65536;
+
   /**
    * Constructor that doesn't write anything to a file 
    */
@@ -63,6 +82,8 @@ public abstract class AbstractRecordedRNG extends AbstractRNG {
     super();
     file = null;
     fp = null;
+    channel = null;
+    buffer = null;
   }
 
   /**
@@ -74,7 +95,9 @@ public abstract class AbstractRecordedRNG extends AbstractRNG {
   public AbstractRecordedRNG(String file) throws FileNotFoundException {
     this();
     this.file = file;
-    fp = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    fp = new FileOutputStream(file);
+    channel = fp.getChannel();
+    buffer = ByteBuffer.allocateDirect(DEFAULT_BUFFER_INTS * (Integer.SIZE / Byte.SIZE));
   }
 
   /**
@@ -86,7 +109,11 @@ public abstract class AbstractRecordedRNG extends AbstractRNG {
    * @throws Throwable
    */
   protected void finalize() throws Throwable {
-    fp.close();
+    if(fp != null) {
+      flush();
+      fp.close();
+    }
+    super.finalize();
   }
   
   /**
@@ -139,13 +166,33 @@ public abstract class AbstractRecordedRNG extends AbstractRNG {
    */
   public int nextInt() {
     int next = generateInt();
+    if(fp != null) {
+      if(!buffer.hasRemaining()) flush();
+      buffer.putInt(next);
+    }
+    return next;
+  }
+
+  /**
+   * <!-- flush -->
+   * 
+   * Write any recorded integers still in the buffer to the file
+   * 
+   * @see uk.ac.hutton.obiama.random.AbstractRNG#flush()
+   */
+  @Override
+  public void flush() {
+    if(fp == null || buffer.position() == 0) return;
+    buffer.flip();
     try {
-      if(fp != null) fp.write(next);
+      while(buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
     }
     catch(IOException e) {
       ErrorHandler.redo(e, "saving generated random numbers");
     }
-    return next;
+    buffer.clear();
   }
 
   /**
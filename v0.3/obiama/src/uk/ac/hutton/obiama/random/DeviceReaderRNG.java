@@ -50,6 +50,14 @@ import java.io.IOException;
  * of the constructors with a <code>length</code> argument.
  * </p>
  * 
+ * <p>
+ * Devices such as /dev/random can be slow to deliver. Calling
+ * {@link #prefetch(int)} starts a background thread keeping a pool of data
+ * read from the device, from which the numbers are then taken. The numbers
+ * recorded are those taken from the pool, so recordings can be played back as
+ * before.
+ * </p>
+ * 
  * @author Gary Polhill
  */
 public class DeviceReaderRNG extends AbstractRecordedRNG {
@@ -68,6 +76,12 @@ public class DeviceReaderRNG extends AbstractRecordedRNG {
    */
   private String device;
 
+  /**
+   * Pool of data read from the device in the background, or <code>null</code>
+   * if not prefetching
+   */
+  private EntropyPool pool = null;
+
   /**
    * Default constructor
    * 
@@ -199,16 +213,81 @@ public class DeviceReaderRNG extends AbstractRecordedRNG {
     stream.close();
   }
 
+  /**
+   * <!-- prefetch -->
+   * 
+   * Start reading data from the device in the background. Has no effect if
+   * already prefetching.
+   * 
+   * @param poolBytes The number of bytes of data to keep ready
+   */
+  public void prefetch(int poolBytes) {
+    if(pool == null) pool = new EntropyPool(rng, poolBytes, device);
+  }
+
+  /**
+   * <!-- prefetching -->
+   * 
+   * @return <code>true</code> if data are being read from the device in the
+   *         background
+   */
+  public boolean prefetching() {
+    return pool != null;
+  }
+
+  /**
+   * <!-- getPrefetchRequests -->
+   * 
+   * @return The number of integers taken from the prefetched data
+   */
+  public long getPrefetchRequests() {
+    return pool == null ? 0L : pool.getRequests();
+  }
+
+  /**
+   * <!-- getPrefetchWaits -->
+   * 
+   * @return The number of times an integer was needed when none had been
+   *         prefetched, so the simulation had to wait for the device
+   */
+  public long getPrefetchWaits() {
+    return pool == null ? 0L : pool.getWaits();
+  }
+
+  /**
+   * <!-- getPrefetchWaitMS -->
+   * 
+   * @return The total time the simulation has spent waiting for the device
+   *         while prefetching, in milliseconds
+   */
+  public double getPrefetchWaitMS() {
+    return pool == null ? 0.0 : pool.getWaitNanos() / 1.0e6;
+  }
+
+  /**
+   * <!-- finalize -->
+   * 
+   * Stop prefetching when the object is destroyed
+   * 
+   * @see uk.ac.hutton.obiama.random.AbstractRecordedRNG#finalize()
+   * @throws Throwable
+   */
+  protected void finalize() throws Throwable {
+    if(pool != null) pool.close();
+    super.finalize();
+  }
+
   /**
    * <!-- generateInt -->
    * 
-   * Use the {@link FileRNG} to get the next integer from /dev/random
+   * Use the {@link FileRNG} to get the next integer from /dev/random, or take
+   * it from the pool if prefetching
    * 
    * @see uk.ac.hutton.obiama.random.AbstractRecordedRNG#generateInt()
    * @return The next integer from /dev/random
    */
   protected int generateInt() {
-    return rng.nextInt();
+    return pool == null ? rng.nextInt() : pool.nextInt();
   }
 
 }
@@ -0,0 +1,232 @@
+/*
+ * uk.ac.hutton.obiama.random: EntropyPool.java
+ * 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.random;
+
+/**
+ * <!-- EntropyPool -->
+ * 
+ * A bounded pool of integers read from a {@link FileRNG} (typically reading a
+ * device such as /dev/random) by a background thread, so that the thread
+ * running the simulation need not wait for the device unless the pool is
+ * empty. The reader fills the pool a batch at a time and waits while there is
+ * not room for a batch. The pool counts how often integers were asked for, how
+ * often the pool was empty when they were, and how long was spent waiting for
+ * the reader in total.
+ * 
+ * @author Gary Polhill
+ */
+class EntropyPool implements Runnable {
+  /**
+   * Default size of the pool in bytes
+   */
+  public static final int DEFAULT_POOL_BYTES = 65536;
+
+  /**
+   * Maximum number of integers the reader puts in the pool at a time
+   */
+  private static final int MAX_BATCH = 1024;
+
+  /**
+   * Source of the integers
+   */
+  private final FileRNG source;
+
+  /**
+   * The pool, used as a ring buffer
+   */
+  private final int pool[];
+
+  /**
+   * Number of integers the reader puts in the pool at a time
+   */
+  private final int batch;
+
+  /**
+   * Position in the pool of the next integer to take
+   */
+  private int head;
+
+  /**
+   * Number of integers in the pool
+   */
+  private int count;
+
+  /**
+   * Number of integers taken from the pool
+   */
+  private long requests;
+
+  /**
+   * Number of times the pool was empty when an integer was asked for
+   */
+  private long waits;
+
+  /**
+   * Total time spent waiting for the reader (nanoseconds)
+   */
+  private long waitNanos;
+
+  /**
+   * Whether the reader has been asked to stop
+   */
+  private boolean stopped;
+
+  /**
+   * Constructor. Starts the reader thread.
+   * 
+   * @param source The generator to read integers from, which should not be
+   *          used by anything else once the pool has been created
+   * @param poolBytes Size of the pool in bytes
+   * @param device Name of the device being read (used to name the thread)
+   */
+  EntropyPool(FileRNG source, int poolBytes, String device) {
+    this.source = source;
+    pool = new int[Math.max(1, poolBytes / (Integer.SIZE / Byte.SIZE))];
+    batch = Math.min(MAX_BATCH, pool.length);
+    head = 0;
+    count = 0;
+    requests = 0L;
+    waits = 0L;
+    waitNanos = 0L;
+    stopped = false;
+    Thread reader = new Thread(this, "Entropy reader for " + device);
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  /**
+   * <!-- run -->
+   * 
+   * Read integers from the source a batch at a time and put them in the pool
+   * until stopped. The thread is not interrupted to stop it, as that would
+   * close the channel the source is reading from.
+   * 
+   * @see java.lang.Runnable#run()
+   */
+  public void run() {
+    int next[] = new int[batch];
+    while(true) {
+      for(int i = 0; i < batch; i++) {
+        next[i] = source.nextInt();
+      }
+      synchronized(this) {
+        while(!stopped && pool.length - count < batch) {
+          try {
+            wait();
+          }
+          catch(InterruptedException e) {
+            return;
+          }
+        }
+        if(stopped) return;
+        int tail = (head + count) % pool.length;
+        for(int i = 0; i < batch; i++) {
+          pool[tail] = next[i];
+          tail = (tail + 1) % pool.length;
+        }
+        if(count == 0) notifyAll();
+        count += batch;
+      }
+    }
+  }
+
+  /**
+   * <!-- nextInt -->
+   * 
+   * Take the next integer from the pool, waiting for the reader if the pool is
+   * empty
+   * 
+   * @return The next integer
+   */
+  synchronized int nextInt() {
+    requests++;
+    if(count == 0) {
+      waits++;
+      long start = System.nanoTime();
+      boolean interrupted = false;
+      while(count == 0) {
+        try {
+          wait();
+        }
+        catch(InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      waitNanos += System.nanoTime() - start;
+      if(interrupted) Thread.currentThread().interrupt();
+    }
+    int next = pool[head];
+    head = (head + 1) % pool.length;
+    count--;
+    if(pool.length - count == batch) notifyAll();
+    return next;
+  }
+
+  /**
+   * <!-- getRequests -->
+   * 
+   * @return The number of integers taken from the pool
+   */
+  synchronized long getRequests() {
+    return requests;
+  }
+
+  /**
+   * <!-- getWaits -->
+   * 
+   * @return The number of times an integer was asked for when the pool was
+   *         empty
+   */
+  synchronized long getWaits() {
+    return waits;
+  }
+
+  /**
+   * <!-- getWaitNanos -->
+   * 
+   * @return The total time spent waiting for the reader, in nanoseconds
+   */
+  synchronized long getWaitNanos() {
+    return waitNanos;
+  }
+
+  /**
+   * <!-- getPoolBytes -->
+   * 
+   * @return The size of the pool in bytes
+   */
+  int getPoolBytes() {
+    return pool.length * (Integer.SIZE / Byte.SIZE);
+  }
+
+  /**
+   * <!-- close -->
+   * 
+   * Stop the reader thread (once it has finished any read in progress)
+   */
+  synchronized void close() {
+    stopped = true;
+    notifyAll();
+  }
+}
@@ -23,12 +23,12 @@
  */
 package uk.ac.hutton.obiama.random;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
-import java.io.EOFException;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
 
 import uk.ac.hutton.obiama.exception.ErrorHandler;
 import uk.ac.hutton.util.Bug;
@@ -36,12 +36,24 @@ import uk.ac.hutton.util.Bug;
 /**
  * <!-- FileRNG -->
  * 
+ * <p>
  * A random number generator that reads in numbers from a file. This is useful
  * for 'playing back' a simulation done with one of the
  * {@link AbstractRecordedRNG}s. The file is expected to be a binary format
  * file, with no particular pre-amble. You should use one of the constructors
  * providing a <code>length</code> argument if you want to use a file that has
- * nonrandom data (e.g. metadata) before the random data.
+ * nonrandom data (e.g. metadata) before the random data. Integers are read as
+ * four bytes, most significant first, as written by
+ * {@link java.io.DataOutputStream#writeInt(int)}.
+ * </p>
+ * 
+ * <p>
+ * The file is read a large block at a time into a buffer, and the integers
+ * taken from the buffer, so reading a long recording does not need a call to
+ * the file for each integer. Reading uses the file's channel rather than
+ * mapping the file into memory so that devices, pipes and files still being
+ * written to can also be read.
+ * </p>
  * 
  * @author Gary Polhill
  */
@@ -54,7 +66,25 @@ public class FileRNG extends AbstractRNG {
   /**
    * Input stream
    */
-  private DataInputStream fp;
+  private FileInputStream fp;
+
+  /**
+   * Channel of the input stream, used to read blocks of data
+   */
+  private FileChannel channel;
+
+  /**
+   * Block of data read from the file. Between calls to {@link #fill()}, the
+   * position is at the start of the integers not yet taken from the block
+   * before {@link #ints} was last created.
+   */
+  private ByteBuffer bytes;
+
+  /**
+   * View of the integers in {@link #bytes} (which may end with some of the
+   * bytes of an integer whose remaining bytes have not yet been read)
+   */
+  private IntBuffer ints;
 
   /**
    * File name for input stream
@@ -81,14 +111,24 @@ public class FileRNG extends AbstractRNG {
    */
   public static int DEFAULT_RETRY_SLEEP_MS = 100;
 
+  /**
+   * Default number of integers to read from the file at a time
+   */
+  public static int DEFAULT_BUFFER_INTS = 65536;
+
+  /**
+   * Number of bytes in an integer
+   */
+  private static final int INT_BYTES = Integer.SIZE / Byte.SIZE;
+
   /**
    * @param file
    * @throws FileNotFoundException
    */
   public FileRNG(String file) throws FileNotFoundException {
     super();
-    fp = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
-    this.file = file;
+    bytes = ByteBuffer.allocateDirect(DEFAULT_BUFFER_INTS * INT_BYTES);
+    open(file);
     retryCount = DEFAULT_RETRY_COUNT;
     retrySleepMS = DEFAULT_RETRY_SLEEP_MS;
   }
@@ -183,8 +223,24 @@ public class FileRNG extends AbstractRNG {
    */
   public void setFile(String file) throws IOException {
     fp.close();
-    fp = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    open(file);
+  }
+
+  /**
+   * <!-- open -->
+   * 
+   * Open a file to read from, discarding any data buffered from the last one
+   * 
+   * @param file The file to read from
+   * @throws FileNotFoundException
+   */
+  private void open(String file) throws FileNotFoundException {
+    fp = new FileInputStream(file);
+    channel = fp.getChannel();
     this.file = file;
+    bytes.clear();
+    bytes.limit(0);
+    ints = bytes.asIntBuffer();
   }
 
   /**
@@ -197,34 +253,58 @@ public class FileRNG extends AbstractRNG {
    * @return The next integer from the file
    */
   public int nextInt() {
-    try {
-      int counter = 0;
-      while(fp.available() < Integer.SIZE / Byte.SIZE && counter < retryCount) {
+    if(!ints.hasRemaining()) {
+      try {
+        if(!fill()) {
+          ErrorHandler.warn(new IOException("End of file"), "reading from file: " + file, "random numbers will repeat");
+          setFile(file);
+          if(!fill()) throw new IOException("No data in file");
+        }
+      }
+      catch(IOException e) {
+        ErrorHandler.fatal(e, "reading from file: " + file);
+        throw new Bug();
+      }
+    }
+    return ints.get();
+  }
+
+  /**
+   * <!-- fill -->
+   * 
+   * Read the next block of data from the file, keeping any bytes of an integer
+   * only partly read last time. If there isn't a whole integer available, wait
+   * {@link #retrySleepMS} milliseconds for more data to be written, up to
+   * {@link #retryCount} times.
+   * 
+   * @return <code>false</code> if the end of the file was reached before a
+   *         whole integer could be read
+   * @throws IOException
+   */
+  private boolean fill() throws IOException {
+    bytes.position(bytes.position() + ints.position() * INT_BYTES);
+    bytes.compact();
+    int counter = 0;
+    while(bytes.position() < INT_BYTES) {
+      int n = channel.read(bytes);
+      if(n <= 0) {
+        if(counter >= retryCount) {
+          bytes.flip();
+          ints = bytes.asIntBuffer();
+          return false;
+        }
         try {
           Thread.sleep(retrySleepMS);
-          counter++;
         }
         catch(InterruptedException e) {
           // Ignore
         }
+        counter++;
       }
-      return fp.readInt();
-    }
-    catch(EOFException e) {
-      ErrorHandler.warn(e, "reading from file: " + file, "random numbers will repeat");
-      try {
-        setFile(file);
-        return fp.readInt();
-      }
-      catch(IOException ioe) {
-        ErrorHandler.fatal(ioe, "reading from file: " + file);
-        throw new Bug();
-      }
-    }
-    catch(IOException e) {
-      ErrorHandler.fatal(e, "reading from file: " + file);
-      throw new Bug();
     }
+    bytes.flip();
+    ints = bytes.asIntBuffer();
+    return true;
   }
 
 }
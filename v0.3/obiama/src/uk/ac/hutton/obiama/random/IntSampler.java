@@ -0,0 +1,61 @@
+/*
+ * uk.ac.hutton.obiama.random: IntSampler.java
+ * 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.random;
+
+/**
+ * <!-- IntSampler -->
+ * 
+ * A handle on an integer distribution with fixed parameters, obtained from one
+ * of the distribution methods of {@link RNG} such as {@link RNG#poisson(double)}.
+ * 
+ * @author Gary Polhill
+ */
+public interface IntSampler {
+  /**
+   * <!-- sample -->
+   * 
+   * @return A sample from the distribution
+   */
+  public int sample();
+
+  /**
+   * <!-- fill -->
+   * 
+   * Fill an array with samples from the distribution
+   * 
+   * @param values The array to fill
+   */
+  public void fill(int[] values);
+
+  /**
+   * <!-- fill -->
+   * 
+   * Fill part of an array with samples from the distribution
+   * 
+   * @param values The array to fill
+   * @param from The first index to fill
+   * @param to The index after the last to fill
+   */
+  public void fill(int[] values, int from, int to);
+}
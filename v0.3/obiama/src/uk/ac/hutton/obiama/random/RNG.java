@@ -23,6 +23,7 @@
  */
 package uk.ac.hutton.obiama.random;
 
+import java.util.Iterator;
 import java.util.List;
 
 import cern.jet.random.engine.RandomGenerator;
@@ -62,6 +63,14 @@ public interface RNG extends RandomGenerator {
    */
   public byte[] read(int length);
 
+  /**
+   * <!-- flush -->
+   * 
+   * Write any data the generator is recording that are still buffered in
+   * memory. Generators that do not record data need do nothing.
+   */
+  public void flush();
+
   /**
    * <!-- withProbability -->
    * 
@@ -269,6 +278,107 @@ public interface RNG extends RandomGenerator {
    */
   public int sampleZeta(double ro, double pk);
 
+  /**
+   * <!-- fill -->
+   * 
+   * Fill an array with samples from a uniform distribution between 0 and 1
+   * (exclusive)
+   * 
+   * @param values The array to fill
+   */
+  public void fill(double[] values);
+
+  /**
+   * <!-- beta -->
+   * 
+   * @param alpha
+   * @param beta
+   * @return A handle on a beta distribution with the specified parameters
+   */
+  public DoubleSampler beta(double alpha, double beta);
+
+  /**
+   * <!-- chiSquared -->
+   * 
+   * @param freedom
+   * @return A handle on a Chi squared distribution with the specified parameter
+   */
+  public DoubleSampler chiSquared(double freedom);
+
+  /**
+   * <!-- exponential -->
+   * 
+   * @param lambda
+   * @return A handle on an exponential distribution with the specified
+   *         parameter
+   */
+  public DoubleSampler exponential(double lambda);
+
+  /**
+   * <!-- gamma -->
+   * 
+   * @param alpha
+   * @param lambda
+   * @return A handle on a gamma distribution with the specified parameters
+   */
+  public DoubleSampler gamma(double alpha, double lambda);
+
+  /**
+   * <!-- normal -->
+   * 
+   * @param mean
+   * @param sd
+   * @return A handle on a normal distribution with the specified parameters
+   *         (the same distribution as {@link #sampleNormal(double, double)}
+   *         samples from given the same arguments)
+   */
+  public DoubleSampler normal(double mean, double sd);
+
+  /**
+   * <!-- studentT -->
+   * 
+   * @param freedom
+   * @return A handle on a T distribution with the specified parameter
+   */
+  public DoubleSampler studentT(double freedom);
+
+  /**
+   * <!-- uniform -->
+   * 
+   * @param min
+   * @param max
+   * @return A handle on a (floating point) uniform distribution with the
+   *         specified parameters
+   */
+  public DoubleSampler uniform(double min, double max);
+
+  /**
+   * <!-- binomial -->
+   * 
+   * @param n
+   * @param p
+   * @return A handle on a binomial distribution with the specified parameters
+   */
+  public IntSampler binomial(int n, double p);
+
+  /**
+   * <!-- poisson -->
+   * 
+   * @param mean
+   * @return A handle on a Poisson distribution with the specified parameter
+   */
+  public IntSampler poisson(double mean);
+
+  /**
+   * <!-- uniform -->
+   * 
+   * @param min
+   * @param max
+   * @return A handle on an (int) uniform distribution with the specified
+   *         parameters (inclusive)
+   */
+  public IntSampler uniform(int min, int max);
+
   /**
    * <!-- shuffle -->
    * 
@@ -277,4 +387,19 @@ public interface RNG extends RandomGenerator {
    * @param list List to be shuffled.
    */
   public <T> void shuffle(List<T> list);
+
+  /**
+   * <!-- permutation -->
+   * 
+   * Iterate over a list in a random order without shuffling it. Each element
+   * is chosen as it is needed, so only part of the list need be visited. The
+   * order is the same as {@link #shuffle(List)} would have put the list in only
+   * if nothing else draws from this generator during the iteration. Callers
+   * that can copy the list should shuffle the copy instead. The list must not
+   * be modified during the iteration.
+   * 
+   * @param list List to iterate over (which should allow random access)
+   * @return An iterator over the list in a random order
+   */
+  public <T> Iterator<T> permutation(List<T> list);
 }
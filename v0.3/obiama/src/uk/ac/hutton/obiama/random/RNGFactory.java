@@ -121,7 +121,9 @@ public class RNGFactory {
     try {
       Method method = RNGFactory.class.getDeclaredMethod(rngClass, Map.class);
       Log.rng(rngClass, params);
-      return (RNG)method.invoke(new RNGFactory(), params);
+      RNG rng = (RNG)method.invoke(new RNGFactory(), params);
+      if(params.containsKey("prefetch")) prefetch(rng, params.get("prefetch"));
+      return rng;
     }
     catch(SecurityException e) {
       ErrorHandler.fatal(e, "building random number generator");
@@ -142,6 +144,31 @@ public class RNGFactory {
     }
   }
 
+  /**
+   * <!-- prefetch -->
+   * 
+   * Start an RNG reading from a device in the background
+   * 
+   * @param rng The RNG
+   * @param poolBytes The <i>prefetch</i> parameter: the number of bytes to keep
+   *          ready
+   */
+  private static void prefetch(RNG rng, String poolBytes) {
+    if(!(rng instanceof DeviceReaderRNG)) {
+      ErrorHandler.warn(new Exception("RNG " + rng.getClass().getSimpleName() + " does not read from a device"),
+          "building random number generator", "the prefetch parameter will be ignored");
+      return;
+    }
+    try {
+      ((DeviceReaderRNG)rng).prefetch(Integer.parseInt(poolBytes));
+    }
+    catch(NumberFormatException e) {
+      ErrorHandler.redo(e, "initialising " + rng.getClass().getSimpleName() + " with prefetch = \"" + poolBytes
+        + "\"; this parameter needs to be a parseable integer");
+      throw new Panic();
+    }
+  }
+
   /**
    * <!-- DeviceReaderRNG -->
    * 
@@ -160,6 +187,9 @@ public class RNGFactory {
    * cannot supply numbers temporarily.</li>
    * <li><i>wait</i> (must be supplied if <i>retry</i> is): Number of
    * milliseconds to wait between retries.</li>
+   * <li><i>prefetch</i>: Read data from the device in a background thread,
+   * keeping a pool of this many bytes ready (see
+   * {@link DeviceReaderRNG#prefetch(int)}).</li>
    * </ul>
    * 
    * <p>
@@ -281,6 +311,9 @@ public class RNGFactory {
    * cannot supply numbers temporarily.</li>
    * <li><i>wait</i> (must be supplied if <i>retry</i> is): Number of
    * milliseconds to wait between retries.</li>
+   * <li><i>prefetch</i>: Read data from the device in a background thread,
+   * keeping a pool of this many bytes ready (see
+   * {@link DeviceReaderRNG#prefetch(int)}).</li>
    * </ul>
    * 
    * <p>
@@ -358,6 +391,9 @@ public class RNGFactory {
    * cannot supply numbers temporarily.</li>
    * <li><i>wait</i> (must be supplied if <i>retry</i> is): Number of
    * milliseconds to wait between retries.</li>
+   * <li><i>prefetch</i>: Read data from the device in a background thread,
+   * keeping a pool of this many bytes ready (see
+   * {@link DeviceReaderRNG#prefetch(int)}).</li>
    * </ul>
    * 
    * <p>
@@ -0,0 +1,128 @@
+/*
+ * uk.ac.hutton.obiama.random: RandomPermutation.java
+ * 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.random;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * <!-- RandomPermutation -->
+ * 
+ * Iterate over a list in a random order, drawing each position on demand
+ * rather than shuffling a copy of the list first. This is a Fisher-Yates
+ * shuffle of the positions in the list carried out one step at a time, with
+ * the displaced positions recorded in an array of <code>int</code>. The order
+ * is the same as that the list would be put in by
+ * {@link AbstractRNG#shuffle(List)} given the same state of the generator, but
+ * only if nothing else draws from the generator between calls to
+ * {@link #next()}. The list must not be modified during iteration, and should
+ * allow random access.
+ * 
+ * @author Gary Polhill
+ */
+class RandomPermutation<T> implements Iterator<T> {
+  /**
+   * The list being iterated over
+   */
+  private final List<T> list;
+
+  /**
+   * The generator
+   */
+  private final AbstractRNG rng;
+
+  /**
+   * For each position in the shuffled list, one more than the position in the
+   * original list of the element now there, or 0 if it has not been displaced
+   */
+  private final int[] displaced;
+
+  /**
+   * The next position in the shuffled list
+   */
+  private int next;
+
+  /**
+   * Constructor
+   * 
+   * @param list The list to iterate over
+   * @param rng The generator
+   */
+  RandomPermutation(List<T> list, AbstractRNG rng) {
+    this.list = list;
+    this.rng = rng;
+    displaced = new int[list.size()];
+    next = 0;
+  }
+
+  /**
+   * <!-- hasNext -->
+   * 
+   * @see java.util.Iterator#hasNext()
+   * @return <code>true</code> if there are elements not yet returned
+   */
+  public boolean hasNext() {
+    return next < list.size();
+  }
+
+  /**
+   * <!-- next -->
+   * 
+   * @see java.util.Iterator#next()
+   * @return The next element in the permutation
+   */
+  public T next() {
+    int n = list.size();
+    if(next >= n) throw new NoSuchElementException();
+    int i = next++;
+    int atI = position(i);
+    if(i == n - 1) return list.get(atI);
+    int j = rng.nextIndex(i, n);
+    if(j == i) return list.get(atI);
+    int atJ = position(j);
+    displaced[j] = atI + 1;
+    return list.get(atJ);
+  }
+
+  /**
+   * <!-- position -->
+   * 
+   * @param i A position in the shuffled list
+   * @return The position in the original list of the element now at i
+   */
+  private int position(int i) {
+    int at = displaced[i];
+    return at == 0 ? i : at - 1;
+  }
+
+  /**
+   * <!-- remove -->
+   * 
+   * @see java.util.Iterator#remove()
+   */
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+}
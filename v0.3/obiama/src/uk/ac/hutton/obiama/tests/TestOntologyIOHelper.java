@@ -30,11 +30,14 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -47,6 +50,7 @@ import org.semanticweb.owl.model.OWLEntity;
 import org.semanticweb.owl.model.OWLOntology;
 import org.semanticweb.owl.model.OWLOntologyCreationException;
 import org.semanticweb.owl.model.OWLOntologyManager;
+import org.semanticweb.owl.model.OWLOntologyStorageException;
 
 import uk.ac.hutton.obiama.exception.UsageException;
 import uk.ac.hutton.obiama.model.Log;
@@ -74,6 +78,8 @@ public class TestOntologyIOHelper extends TestCase {
   private static final String ontodir = "test";
   private static final String mapfile = "map.csv";
   private static final String logfile = tempdir + "/" + ontodir + "/OBIAMA.log";
+  private static final String cachedir = tempdir + "/" + ontodir + "-cache";
+  private static final String altdir = tempdir + "/" + ontodir + "-alt";
 
   /**
    * @param name
@@ -137,6 +143,33 @@ public class TestOntologyIOHelper extends TestCase {
     return helper;
   }
   
+  private final OWLOntology loadCached(OWLOntologyManager manager, Map<String, String> map, URI uri)
+      throws UsageException, URISyntaxException, OWLOntologyCreationException {
+    OntologyIOHelper helper = createIOHelper(manager, new String[] { "--ontology-cache", cachedir, "--log", logfile });
+    helper.ignoreFailedImport("http://www.obiama.org/ontology/obiama.owl");
+    helper.addSpecifiedMappers(manager, map);
+    OWLOntology ontology = helper.loadOntology(uri, manager);
+    ObiamaSetUp.reset();
+    return ontology;
+  }
+
+  private final List<File> cachedFiles() {
+    List<File> cached = new LinkedList<File>();
+    for(File file: new File(cachedir).listFiles()) {
+      if(file.getName().endsWith(".axb") || file.getName().endsWith(".ofn")) cached.add(file);
+    }
+    return cached;
+  }
+
+  private final void deleteDir(String dir) {
+    File temp = new File(dir);
+    if(!temp.isDirectory()) return;
+    for(File file: temp.listFiles()) {
+      file.delete();
+    }
+    temp.delete();
+  }
+  
   private final void printLog() throws IOException {
     File logfile = new File(Log.logfile());
     BufferedReader reader = new BufferedReader(new FileReader(logfile));
@@ -227,6 +260,83 @@ public class TestOntologyIOHelper extends TestCase {
     ObiamaSetUp.reset();
   }
 
+  /**
+   * Test method for
+   * {@link uk.ac.hutton.obiama.msb.OntologyIOHelper#loadOntology(java.net.URI, org.semanticweb.owl.model.OWLOntologyManager)}
+   * using an ontology cache. Checks that damaged cache files are not used, and
+   * are replaced, and that the cache is not used when an import is found in a
+   * different place.
+   * 
+   * @throws UsageException
+   * @throws URISyntaxException
+   * @throws OWLOntologyCreationException
+   * @throws IOException
+   * @throws OWLOntologyStorageException
+   */
+  public final void testLoadOntologyCache() throws UsageException, URISyntaxException, OWLOntologyCreationException,
+      IOException, OWLOntologyStorageException {
+    URI ontology1 = new URI(ontologyBase + ontologyNames[0]);
+    URI ontology2 = new URI(ontologyBase + ontologyNames[1]);
+    File temp = new File(tempdir + "/" + ontodir);
+    Map<String, String> map = new HashMap<String, String>();
+    map.put(ontology1.toString(), "file:" + temp.getAbsolutePath() + "/" + ontologyNames[0]);
+    map.put(ontology2.toString(), "file:" + temp.getAbsolutePath() + "/" + ontologyNames[1]);
+
+    try {
+      // The first load parses the ontologies and caches them
+
+      OWLOntology parsed = loadCached(OWLManager.createOWLOntologyManager(), map, ontology2);
+      List<File> cached = cachedFiles();
+      assertEquals("Number of ontologies cached", 2, cached.size());
+
+      // The second load reads the same axioms back from the cache
+
+      OWLOntology fromCache = loadCached(OWLManager.createOWLOntologyManager(), map, ontology2);
+      assertEquals("Axioms read from cache", parsed.getAxioms(), fromCache.getAxioms());
+
+      // Truncate the cached files, as though a run had been interrupted
+      // writing them: they should not be used, and should be replaced
+
+      Map<File, Long> lengths = new HashMap<File, Long>();
+      for(File file: cached) {
+        lengths.put(file, file.length());
+        RandomAccessFile truncate = new RandomAccessFile(file, "rw");
+        truncate.setLength(file.length() / 2);
+        truncate.close();
+      }
+      OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+      loadCached(manager, map, ontology2);
+      assertTrue("Imported ontology loaded after damage to cache", manager.contains(ontology1));
+      for(File file: cached) {
+        assertEquals("Length of replaced cache file " + file, lengths.get(file).longValue(), file.length());
+      }
+
+      // Find ontology 1 somewhere else: the cached copy of the original should
+      // not be used
+
+      File alt = new File(altdir);
+      alt.mkdir();
+      OWLOntologyManager altManager = OWLManager.createOWLOntologyManager();
+      OWLDataFactory factory = altManager.getOWLDataFactory();
+      OWLOntology altOntology = altManager.createOntology(ontology1);
+      URI altClass = new URI(ontologyBase + ontologyNames[0] + "#Class1_Alt");
+      altManager.addAxiom(altOntology, factory.getOWLDeclarationAxiom(factory.getOWLClass(altClass)));
+      URI altPhysical = new URI("file:" + alt.getAbsolutePath() + "/" + ontologyNames[0]);
+      altManager.saveOntology(altOntology, new RDFXMLOntologyFormat(), altPhysical);
+      map.put(ontology1.toString(), altPhysical.toString());
+
+      manager = OWLManager.createOWLOntologyManager();
+      loadCached(manager, map, ontology2);
+      assertTrue("Imported ontology found in new place", manager.getOntology(ontology1).containsClassReference(
+          altClass));
+    }
+    finally {
+      deleteDir(cachedir);
+      deleteDir(altdir);
+      ObiamaSetUp.reset();
+    }
+  }
+
   /**
    * Test method for
    * {@link uk.ac.hutton.obiama.msb.OntologyIOHelper#loadOntologyClosure(java.net.URI, org.semanticweb.owl.model.OWLOntologyManager, java.util.Set)}
@@ -295,4 +405,46 @@ public class TestOntologyIOHelper extends TestCase {
 
   }
 
+  /**
+   * Test method for
+   * {@link uk.ac.hutton.obiama.msb.OntologyIOHelper#loadOntologyClosures(java.util.Collection, org.semanticweb.owl.model.OWLOntologyManager, java.util.Set)}
+   * .
+   * 
+   * @throws UsageException
+   * @throws OWLOntologyCreationException
+   */
+  public final void testLoadOntologyClosures() throws UsageException, OWLOntologyCreationException {
+    String[] args = new String[] { "--ontology-search-path", tempdir + "/" + ontodir, "--log", logfile };
+    List<URI> uris = new LinkedList<URI>();
+    uris.add(URI.create(ontologyBase + ontologyNames[3]));
+    uris.add(URI.create(ontologyBase + ontologyNames[2]));
+
+    // Load the ontologies one at a time for comparison
+
+    OWLOntologyManager expectedManager = OWLManager.createOWLOntologyManager();
+    OntologyIOHelper helper = createIOHelper(expectedManager, args);
+    helper.ignoreFailedImport("http://www.obiama.org/ontology/obiama.owl");
+    Set<OWLOntology> expected = new HashSet<OWLOntology>();
+    for(URI uri: uris) {
+      helper.loadOntologyClosure(uri, expectedManager, expected);
+    }
+    ObiamaSetUp.reset();
+
+    OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    helper = createIOHelper(manager, args);
+    helper.ignoreFailedImport("http://www.obiama.org/ontology/obiama.owl");
+    Set<OWLOntology> closure = new HashSet<OWLOntology>();
+    List<OWLOntology> loaded = helper.loadOntologyClosures(uris, manager, closure);
+    ObiamaSetUp.reset();
+
+    assertEquals("Number of ontologies loaded", 2, loaded.size());
+    assertEquals("First ontology in order of URI", uris.get(1), loaded.get(0).getURI());
+    assertEquals("Number of ontologies in closures", expected.size(), closure.size());
+    for(OWLOntology ontology: expected) {
+      assertTrue("Closures contain " + ontology.getURI(), manager.contains(ontology.getURI()));
+      assertEquals("Axioms in " + ontology.getURI(), ontology.getAxioms(), manager.getOntology(ontology.getURI())
+          .getAxioms());
+    }
+  }
+
 }
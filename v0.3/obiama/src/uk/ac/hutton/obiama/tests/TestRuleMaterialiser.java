@@ -0,0 +1,269 @@
+/*
+ * uk.ac.hutton.obiama.tests: TestRuleMaterialiser.java
+ * 
+ * Copyright (C) 2013 The James Hutton Institute
+ * 
+ * This file is part of obiama-0.3.
+ * 
+ * obiama-0.3 is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * 
+ * obiama-0.3 is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with obiama-0.3. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Contact information: Gary Polhill, The James Hutton Institute, Craigiebuckler,
+ * Aberdeen. AB15 8QH. UK. gary.polhill@hutton.ac.uk
+ */
+package uk.ac.hutton.obiama.tests;
+
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.semanticweb.owl.apibinding.OWLManager;
+import org.semanticweb.owl.model.OWLAxiom;
+import org.semanticweb.owl.model.OWLClass;
+import org.semanticweb.owl.model.OWLClassAssertionAxiom;
+import org.semanticweb.owl.model.OWLDataFactory;
+import org.semanticweb.owl.model.OWLDataProperty;
+import org.semanticweb.owl.model.OWLDataPropertyAssertionAxiom;
+import org.semanticweb.owl.model.OWLIndividual;
+import org.semanticweb.owl.model.OWLObjectProperty;
+import org.semanticweb.owl.model.OWLObjectPropertyAssertionAxiom;
+import org.semanticweb.owl.model.OWLOntology;
+import org.semanticweb.owl.model.OWLOntologyManager;
+
+import uk.ac.hutton.obiama.msb.InferredOntologyCreator;
+import uk.ac.hutton.obiama.msb.ObiamaSetUp;
+import uk.ac.hutton.obiama.msb.RuleMaterialiser;
+
+import junit.framework.TestCase;
+
+/**
+ * <!-- TestRuleMaterialiser -->
+ * 
+ * Checks that the assertions the rule materialiser derives are those the
+ * reasoner realises, as the state is built up and taken down.
+ * 
+ * @author Gary Polhill
+ */
+public class TestRuleMaterialiser extends TestCase {
+  private static final String base = "http://www.obiama.org/test/rules.owl";
+
+  private OWLOntologyManager manager;
+  private OWLDataFactory factory;
+  private OWLOntology model;
+  private OWLOntology state;
+  private Set<OWLOntology> models;
+  private Set<OWLOntology> states;
+  private int nInferred;
+
+  /**
+   * @param name
+   */
+  public TestRuleMaterialiser(String name) {
+    super(name);
+  }
+
+  /**
+   * <!-- setUp -->
+   * 
+   * @see junit.framework.TestCase#setUp()
+   * @throws java.lang.Exception
+   */
+  protected void setUp() throws Exception {
+    super.setUp();
+    ObiamaSetUp.getObiamaOptions(this.getName(), new String[] { "--use-reasoner" });
+    manager = OWLManager.createOWLOntologyManager();
+    factory = manager.getOWLDataFactory();
+    model = manager.createOntology(new URI(base));
+    state = manager.createOntology(new URI(base + "-state"));
+    models = new HashSet<OWLOntology>();
+    models.add(model);
+    states = new HashSet<OWLOntology>();
+    states.add(state);
+    nInferred = 0;
+  }
+
+  /**
+   * <!-- tearDown -->
+   * 
+   * @see junit.framework.TestCase#tearDown()
+   * @throws java.lang.Exception
+   */
+  protected void tearDown() throws Exception {
+    super.tearDown();
+    ObiamaSetUp.reset();
+  }
+
+  private final OWLClass cls(String name) {
+    return factory.getOWLClass(URI.create(base + "#" + name));
+  }
+
+  private final OWLObjectProperty obj(String name) {
+    return factory.getOWLObjectProperty(URI.create(base + "#" + name));
+  }
+
+  private final OWLDataProperty data(String name) {
+    return factory.getOWLDataProperty(URI.create(base + "#" + name));
+  }
+
+  private final OWLIndividual ind(String name) {
+    return factory.getOWLIndividual(URI.create(base + "#" + name));
+  }
+
+  /**
+   * <!-- assertions -->
+   * 
+   * @param ontology An inferred ontology
+   * @return The class assertions (other than of <code>owl:Thing</code>) and
+   *         property assertions in it
+   */
+  private final Set<OWLAxiom> assertions(OWLOntology ontology) {
+    Set<OWLAxiom> assertions = new HashSet<OWLAxiom>();
+    for(OWLAxiom axiom: ontology.getAxioms()) {
+      if(axiom instanceof OWLClassAssertionAxiom) {
+        if(!((OWLClassAssertionAxiom)axiom).getDescription().isOWLThing()) assertions.add(axiom);
+      }
+      else if(axiom instanceof OWLObjectPropertyAssertionAxiom || axiom instanceof OWLDataPropertyAssertionAxiom) {
+        assertions.add(axiom);
+      }
+    }
+    return assertions;
+  }
+
+  /**
+   * <!-- assertSameAsReasoner -->
+   * 
+   * Materialise the state and check the materialiser does not decline, and
+   * gives the assertions the reasoner does
+   * 
+   * @param materialiser The materialiser
+   */
+  private final void assertSameAsReasoner(RuleMaterialiser materialiser) throws Exception {
+    OWLOntology materialised = manager.createOntology(new URI(base + "-materialised" + nInferred));
+    OWLOntology realised = manager.createOntology(new URI(base + "-realised" + nInferred));
+    nInferred++;
+    assertTrue(materialiser.materialise(materialised, null));
+    Set<OWLOntology> ontologies = new HashSet<OWLOntology>(models);
+    ontologies.addAll(states);
+    InferredOntologyCreator.inferIndividuals(manager, realised, ontologies);
+    assertEquals(assertions(realised), assertions(materialised));
+    manager.removeOntology(materialised.getURI());
+    manager.removeOntology(realised.getURI());
+  }
+
+  /**
+   * Test method for
+   * {@link uk.ac.hutton.obiama.msb.RuleMaterialiser#materialise(org.semanticweb.owl.model.OWLOntology, java.util.Set)}
+   * with subclasses, domains and ranges, subproperties, inverses and
+   * existentials on the left of an axiom.
+   */
+  public final void testMaterialise() throws Exception {
+    manager.addAxiom(model, factory.getOWLSubClassAxiom(cls("B"), cls("A")));
+    manager.addAxiom(model, factory.getOWLObjectPropertyDomainAxiom(obj("p"), cls("D")));
+    manager.addAxiom(model, factory.getOWLObjectPropertyRangeAxiom(obj("p"), cls("R")));
+    manager.addAxiom(model, factory.getOWLSubObjectPropertyAxiom(obj("p"), obj("q")));
+    manager.addAxiom(model, factory.getOWLInverseObjectPropertiesAxiom(obj("q"), obj("qInv")));
+    manager.addAxiom(model, factory.getOWLSubClassAxiom(factory.getOWLObjectIntersectionOf(cls("B"), factory
+        .getOWLObjectSomeRestriction(obj("p"), cls("C"))), cls("E")));
+    manager.addAxiom(model, factory.getOWLDataPropertyDomainAxiom(data("d"), cls("F")));
+
+    manager.addAxiom(state, factory.getOWLClassAssertionAxiom(ind("x"), cls("B")));
+    manager.addAxiom(state, factory.getOWLObjectPropertyAssertionAxiom(ind("x"), obj("p"), ind("y")));
+    manager.addAxiom(state, factory.getOWLClassAssertionAxiom(ind("y"), cls("C")));
+    manager.addAxiom(state, factory.getOWLDataPropertyAssertionAxiom(ind("y"), data("d"), factory
+        .getOWLTypedConstant(1)));
+
+    RuleMaterialiser materialiser = new RuleMaterialiser(manager, models, states);
+    assertNull(materialiser.getUnsupportedAxiom());
+    assertSameAsReasoner(materialiser);
+    materialiser.dispose();
+  }
+
+  /**
+   * Test method for
+   * {@link uk.ac.hutton.obiama.msb.RuleMaterialiser#materialise(org.semanticweb.owl.model.OWLOntology, java.util.Set)}
+   * as assertions are added to and removed from the state, checking that
+   * delete/rederive keeps facts that still follow another way and takes away
+   * those that do not.
+   */
+  public final void testRetraction() throws Exception {
+    manager.addAxiom(model, factory.getOWLSubClassAxiom(cls("B"), cls("A")));
+    manager.addAxiom(model, factory.getOWLSubClassAxiom(cls("F"), cls("A")));
+    manager.addAxiom(model, factory.getOWLTransitiveObjectPropertyAxiom(obj("t")));
+    manager.addAxiom(model, factory.getOWLSubClassAxiom(factory.getOWLObjectSomeRestriction(obj("t"), cls("C")),
+        cls("E")));
+
+    OWLAxiom xB = factory.getOWLClassAssertionAxiom(ind("x"), cls("B"));
+    OWLAxiom xF = factory.getOWLClassAssertionAxiom(ind("x"), cls("F"));
+    OWLAxiom ab = factory.getOWLObjectPropertyAssertionAxiom(ind("a"), obj("t"), ind("b"));
+    OWLAxiom bc = factory.getOWLObjectPropertyAssertionAxiom(ind("b"), obj("t"), ind("c"));
+    OWLAxiom cd = factory.getOWLObjectPropertyAssertionAxiom(ind("c"), obj("t"), ind("d"));
+    OWLAxiom dC = factory.getOWLClassAssertionAxiom(ind("d"), cls("C"));
+    manager.addAxiom(state, xB);
+    manager.addAxiom(state, xF);
+    manager.addAxiom(state, ab);
+    manager.addAxiom(state, bc);
+    manager.addAxiom(state, cd);
+    manager.addAxiom(state, dC);
+
+    RuleMaterialiser materialiser = new RuleMaterialiser(manager, models, states);
+    assertNull(materialiser.getUnsupportedAxiom());
+    assertSameAsReasoner(materialiser);
+
+    // x is still an A because it is an F
+    manager.removeAxiom(state, xB);
+    assertSameAsReasoner(materialiser);
+
+    // a and b no longer reach d, so are not E; c still is
+    manager.removeAxiom(state, bc);
+    assertSameAsReasoner(materialiser);
+
+    manager.removeAxiom(state, xF);
+    manager.addAxiom(state, bc);
+    assertSameAsReasoner(materialiser);
+
+    manager.removeAxiom(state, dC);
+    assertSameAsReasoner(materialiser);
+    materialiser.dispose();
+  }
+
+  /**
+   * Test method for
+   * {@link uk.ac.hutton.obiama.msb.RuleMaterialiser#materialise(org.semanticweb.owl.model.OWLOntology, java.util.Set)}
+   * with an existential on the right of an axiom, which does not stop the
+   * materialiser being used, but makes it decline when an individual does not
+   * have a value satisfying the existential.
+   */
+  public final void testExistentialHead() throws Exception {
+    manager.addAxiom(model, factory.getOWLEquivalentClassesAxiom(cls("A"), factory.getOWLObjectIntersectionOf(
+        cls("B"), factory.getOWLObjectSomeRestriction(obj("p"), cls("C")))));
+
+    manager.addAxiom(state, factory.getOWLClassAssertionAxiom(ind("x"), cls("B")));
+    manager.addAxiom(state, factory.getOWLObjectPropertyAssertionAxiom(ind("x"), obj("p"), ind("y")));
+    manager.addAxiom(state, factory.getOWLClassAssertionAxiom(ind("y"), cls("C")));
+
+    RuleMaterialiser materialiser = new RuleMaterialiser(manager, models, states);
+    assertNull(materialiser.getUnsupportedAxiom());
+    assertSameAsReasoner(materialiser);
+
+    OWLAxiom zA = factory.getOWLClassAssertionAxiom(ind("z"), cls("A"));
+    manager.addAxiom(state, zA);
+    OWLOntology inferred = manager.createOntology(new URI(base + "-declined"));
+    assertFalse(materialiser.materialise(inferred, null));
+    assertEquals(0, inferred.getAxioms().size());
+    manager.removeOntology(inferred.getURI());
+
+    manager.removeAxiom(state, zA);
+    assertSameAsReasoner(materialiser);
+    materialiser.dispose();
+  }
+}
@@ -24,6 +24,10 @@
 package uk.ac.hutton.obiama.tests;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+
+import javax.xml.datatype.XMLGregorianCalendar;
 
 import org.semanticweb.owl.apibinding.OWLManager;
 import org.semanticweb.owl.model.OWLDataComplementOf;
@@ -113,6 +117,135 @@ public class TestXSDHelper extends TestCase {
     }
   }
 
+  /**
+   * Test method for
+   * {@link uk.ac.hutton.obiama.msb.XSDHelper#instantiate(org.semanticweb.owl.vocab.XSDVocabulary, java.lang.String)}
+   * with literals that cannot be converted to the type.
+   */
+  public final void testInstantiateInvalid() {
+    XSDVocabulary[] types =
+      new XSDVocabulary[] { XSDVocabulary.INT, XSDVocabulary.INT, XSDVocabulary.INT, XSDVocabulary.BYTE,
+        XSDVocabulary.DOUBLE, XSDVocabulary.DECIMAL, XSDVocabulary.INTEGER, XSDVocabulary.ANY_URI,
+        XSDVocabulary.DATE_TIME, XSDVocabulary.DATE, XSDVocabulary.DURATION };
+    String[] literals =
+      new String[] { "2.4", "two", "3000000000", "128", "two", "1e", "2.0", "a uri with spaces", "yesterday",
+        "2013-13-45", "1 day" };
+    for(int i = 0; i < types.length; i++) {
+      try {
+        XSDHelper.instantiate(types[i], literals[i]);
+        fail("No exception instantiating " + types[i] + " from \"" + literals[i] + "\"");
+      }
+      catch(IllegalArgumentException e) {
+        assertEquals(literals[i], e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Test method for
+   * {@link uk.ac.hutton.obiama.msb.XSDHelper#isImmutable(java.lang.Object)}.
+   * FunctionalDataValue shares one instance as both the original and the
+   * stored value when it is immutable, and otherwise instantiates the literal
+   * twice; check that a mutable instance would change the original if shared.
+   */
+  public final void testIsImmutable() {
+    assertTrue(XSDHelper.isImmutable(XSDHelper.instantiate(XSDVocabulary.INT, "2")));
+    assertTrue(XSDHelper.isImmutable(XSDHelper.instantiate(XSDVocabulary.DOUBLE, "2.4")));
+    assertTrue(XSDHelper.isImmutable(XSDHelper.instantiate(XSDVocabulary.STRING, "2")));
+    assertTrue(XSDHelper.isImmutable(XSDHelper.instantiate(XSDVocabulary.BOOLEAN, "true")));
+    assertTrue(XSDHelper.isImmutable(XSDHelper.instantiate(XSDVocabulary.ANY_URI, "http://www.obiama.org/")));
+    assertTrue(XSDHelper.isImmutable(XSDHelper.instantiate(XSDVocabulary.DECIMAL, "2.4")));
+    assertTrue(XSDHelper.isImmutable(XSDHelper.instantiate(XSDVocabulary.INTEGER, "2")));
+    assertTrue(XSDHelper.isImmutable(XSDHelper.instantiate(XSDVocabulary.DURATION, "P1D")));
+    assertTrue(XSDHelper.instantiate(XSDVocabulary.ANY_URI, "http://www.obiama.org/") instanceof URI);
+    assertTrue(XSDHelper.instantiate(XSDVocabulary.INTEGER, "2") instanceof BigInteger);
+
+    String literal = "2013-06-01T12:00:00";
+    XMLGregorianCalendar stored = XSDHelper.instantiate(XSDVocabulary.DATE_TIME, literal);
+    assertFalse(XSDHelper.isImmutable(stored));
+    XMLGregorianCalendar original = XSDHelper.instantiate(XSDVocabulary.DATE_TIME, literal);
+    assertNotSame(stored, original);
+    assertEquals(stored, original);
+    stored.setYear(2014);
+    assertFalse(stored.equals(original));
+    assertEquals(2013, original.getYear());
+  }
+
+  /**
+   * Test method for
+   * {@link uk.ac.hutton.obiama.msb.XSDHelper#holdsDouble(java.lang.Class, double)}
+   * , which FunctionalDataValue.setDouble() uses to check the value is in the
+   * range of the variable.
+   */
+  public final void testHoldsDouble() {
+    assertTrue(XSDHelper.holdsDouble(Double.class, Double.NaN));
+    assertTrue(XSDHelper.holdsDouble(Float.class, Double.POSITIVE_INFINITY));
+    assertTrue(XSDHelper.holdsDouble(Integer.class, Integer.MAX_VALUE));
+    assertTrue(XSDHelper.holdsDouble(Integer.class, Integer.MIN_VALUE));
+    assertFalse(XSDHelper.holdsDouble(Integer.class, (double)Integer.MAX_VALUE + 1.0));
+    assertFalse(XSDHelper.holdsDouble(Integer.class, (double)Integer.MIN_VALUE - 1.0));
+    assertFalse(XSDHelper.holdsDouble(Integer.class, 1.5));
+    assertFalse(XSDHelper.holdsDouble(Integer.class, Double.NaN));
+    assertTrue(XSDHelper.holdsDouble(Byte.class, 127.0));
+    assertFalse(XSDHelper.holdsDouble(Byte.class, 128.0));
+    assertTrue(XSDHelper.holdsDouble(Short.class, -32768.0));
+    assertFalse(XSDHelper.holdsDouble(Short.class, -32769.0));
+    assertTrue(XSDHelper.holdsDouble(Long.class, (double)Long.MIN_VALUE));
+    // Long.MAX_VALUE is 2^63 - 1, which rounds to 2^63 as a double
+    assertFalse(XSDHelper.holdsDouble(Long.class, (double)Long.MAX_VALUE));
+    assertTrue(XSDHelper.holdsDouble(BigDecimal.class, 1.5));
+    assertFalse(XSDHelper.holdsDouble(BigDecimal.class, Double.NaN));
+    assertFalse(XSDHelper.holdsDouble(BigDecimal.class, Double.NEGATIVE_INFINITY));
+    assertTrue(XSDHelper.holdsDouble(BigInteger.class, 1.0e30));
+    assertFalse(XSDHelper.holdsDouble(BigInteger.class, 1.5));
+    assertFalse(XSDHelper.holdsDouble(BigInteger.class, Double.POSITIVE_INFINITY));
+    assertFalse(XSDHelper.holdsDouble(String.class, 1.0));
+    assertFalse(XSDHelper.holdsDouble(Boolean.class, 1.0));
+  }
+
+  /**
+   * Test method for
+   * {@link uk.ac.hutton.obiama.msb.XSDHelper#fromDouble(java.lang.Class, double)}
+   * , which FunctionalDataValue uses to box values held as primitives, and
+   * whose result getDouble() returns the value of.
+   */
+  public final void testFromDouble() {
+    assertEquals(Integer.valueOf(Integer.MAX_VALUE), XSDHelper.fromDouble(Integer.class, Integer.MAX_VALUE));
+    assertEquals(Long.valueOf(-3L), XSDHelper.fromDouble(Long.class, -3.0));
+    assertEquals(Short.valueOf((short)7), XSDHelper.fromDouble(Short.class, 7.0));
+    assertEquals(Byte.valueOf((byte)-8), XSDHelper.fromDouble(Byte.class, -8.0));
+    assertEquals(Float.valueOf(0.1f), XSDHelper.fromDouble(Float.class, 0.1));
+    assertTrue(((Double)XSDHelper.fromDouble(Double.class, Double.NaN)).isNaN());
+    assertEquals(0, new BigDecimal("2.5").compareTo((BigDecimal)XSDHelper.fromDouble(BigDecimal.class, 2.5)));
+    assertEquals(new BigInteger("1000000000000000000000"), XSDHelper.fromDouble(BigInteger.class, 1.0e21));
+
+    double[] values = new double[] { 0.0, -1.0, 42.0, 1.0e15 };
+    Class<?>[] classes = new Class<?>[] { Double.class, Long.class, BigDecimal.class, BigInteger.class };
+    for(int i = 0; i < classes.length; i++) {
+      for(int j = 0; j < values.length; j++) {
+        assertEquals(values[j], ((Number)XSDHelper.fromDouble(classes[i], values[j])).doubleValue(), 0.0);
+      }
+    }
+
+    double[] invalid = new double[] { (double)Integer.MAX_VALUE + 1.0, 0.5, Double.NaN };
+    for(int i = 0; i < invalid.length; i++) {
+      try {
+        XSDHelper.fromDouble(Integer.class, invalid[i]);
+        fail("Converted " + invalid[i] + " to an int");
+      }
+      catch(IllegalArgumentException e) {
+        assertEquals(Double.toString(invalid[i]), e.getMessage());
+      }
+    }
+    try {
+      XSDHelper.fromDouble(BigInteger.class, Double.NaN);
+      fail("Converted NaN to a BigInteger");
+    }
+    catch(IllegalArgumentException e) {
+      // Expected
+    }
+  }
+
   /**
    * Test method for
    * {@link uk.ac.hutton.obiama.msb.XSDHelper#getTypeFor(java.lang.Object)}.